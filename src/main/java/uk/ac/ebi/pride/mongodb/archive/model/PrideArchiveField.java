@@ -122,11 +122,25 @@ public interface PrideArchiveField {
     String FILE_EXTENSION = "fileExtension";
     String FILE_NAME = "fileName";
     String FILE_IS_COMPRESS = "fileCompress";
+    /** Document fields of the File size and compression, the constants above are the names of their indexes **/
+    String FILE_SIZE_BYTES = "fileSizeBytes";
+    String FILE_COMPRESS = "compress";
 
     /** PSM Collections **/
     String PRIDE_PEPTIDE_COLLECTION_NAME = "pride_peptide_evidences";
     String PEPTIDE_SUMMARY_COLLECTION_NAME = "peptide_summary";
+    String PROTEIN_SUMMARY_COLLECTION_NAME = "protein_summary";
     String PRIDE_PSM_COLLECTION_NAME = "pride_psm_evidences";
+    /** Materialized counts of the molecules by project and assay **/
+    String PRIDE_MOLECULE_COUNTS_COLLECTION_NAME = "pride_molecule_counts";
+    String COUNT_PROTEINS = "proteins";
+    String COUNT_PEPTIDES = "peptides";
+    String COUNT_PSMS = "psms";
+    String COUNT_DISTINCT_PEPTIDE_SEQUENCES = "distinctPeptideSequences";
+    String COUNT_DISTINCT_SEQUENCES_STALE = "distinctSequencesStale";
+    String COUNT_RECOMPUTED_DATE = "recomputedDate";
+    String COUNT_UPDATED_DATE = "updatedDate";
+    String COUNT_VERSION = "countVersion";
     String PSM_SPECTRUM_ACCESSIONS = "psmAccessions";
     String PEPTIDE_SEQUENCE = "peptideSequence";
     String MODIFIED_PEPTIDE_SEQUENCE = "modifiedPeptideSequence";
@@ -224,10 +238,19 @@ public interface PrideArchiveField {
 
     String USI = "usi";
     String SPECTRA_USI = "spectraUsi";
+    String USI_COLLECTION = "usiCollection";
+    String USI_MS_RUN = "usiMsRun";
+    String USI_INDEX_TYPE = "usiIndexType";
+    String USI_INDEX = "usiIndex";
+    String PEPTIDOFORM = "peptidoform";
+    String MODIFICATION_SITES = "modificationSites";
+    String USI_FIELDS_VERSION = "usiFieldsVersion";
     String PSM_SUMMARY_FILE = "fileName";
 
     String BEST_SEARCH_ENGINE_SCORE = "best_search_engine_score";
     String PSMS_COUNT = "psms_count";
     String BEST_USIS = "best_usis";
     String PTMS_MAP = "ptms_map";
+    String ASSAYS_COUNT = "assays_count";
+    String MAX_SEQUENCE_COVERAGE = "max_sequence_coverage";
 }
@@ -6,6 +6,8 @@ import uk.ac.ebi.pride.archive.dataprovider.user.Contact;
 
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Pride Archive Field Enums this is used to Query the PRIDE Archive and other resources.
@@ -45,10 +47,34 @@ public enum PrideFieldEnum {
     FILE_SOURCE_FOLDER(PrideArchiveField.FILE_SOURCE_TYPE, new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME}, String.class),
     FILE_CHECKSUM(PrideArchiveField.FILE_CHECKSUM, new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME}, String.class),
     FILE_PUBLIC_LOCATIONS (PrideArchiveField.FILE_PUBLIC_LOCATIONS, new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME}, String.class),
-    FILE_SIZE_MB (PrideArchiveField.FILE_SIZE_MB,new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME}, String.class),
+    FILE_SIZE_MB (PrideArchiveField.FILE_SIZE_MB,new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME}, Long.class),
+    FILE_SIZE_BYTES (PrideArchiveField.FILE_SIZE_BYTES,new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME, PrideArchiveField.PRIDE_MSRUN_COLLECTION_NAME}, Long.class),
     FILE_EXTENSION (PrideArchiveField.FILE_EXTENSION,new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME},String.class),
     FILE_NAME (PrideArchiveField.FILE_NAME,new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME}, String.class),
-    FILE_IS_COMPRESS (PrideArchiveField.FILE_NAME, new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME},Boolean.class);
+    FILE_IS_COMPRESS (PrideArchiveField.FILE_IS_COMPRESS, new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME},Boolean.class),
+    FILE_COMPRESS (PrideArchiveField.FILE_COMPRESS, new String[]{PrideArchiveField.PRIDE_FILE_COLLECTION_NAME},Boolean.class),
+
+    /** Molecules collections **/
+    CHARGE(PrideArchiveField.CHARGE, new String[]{PrideArchiveField.PRIDE_PSM_COLLECTION_NAME}, Integer.class),
+    PRECURSOR_MASS(PrideArchiveField.PRECURSOR_MASS, new String[]{PrideArchiveField.PRIDE_PSM_COLLECTION_NAME}, Double.class),
+    IS_DECOY(PrideArchiveField.IS_DECOY, new String[]{PrideArchiveField.PRIDE_PSM_COLLECTION_NAME, PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME, PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME}, Boolean.class),
+    IS_VALIDATED(PrideArchiveField.IS_VALIDATED, new String[]{PrideArchiveField.PRIDE_PSM_COLLECTION_NAME, PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME, PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME, PrideArchiveField.PRIDE_ASSAY_COLLECTION_NAME}, Boolean.class),
+    START_POSITION(PrideArchiveField.START_POSITION, new String[]{PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME}, Integer.class),
+    END_POSITION(PrideArchiveField.END_POSITION, new String[]{PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME}, Integer.class),
+    NUMBER_PEPTIDES(PrideArchiveField.NUMBER_PEPTIDEEVIDENCES, new String[]{PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME}, Integer.class),
+    NUMBER_PSMS(PrideArchiveField.NUMBER_PSMS, new String[]{PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME}, Integer.class),
+    PROTEIN_COVERAGE(PrideArchiveField.PROTEIN_COVERAGE, new String[]{PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME}, Double.class),
+    PEPTIDE_SUMMARY_BEST_SCORE(PrideArchiveField.BEST_SEARCH_ENGINE_SCORE, new String[]{PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME}, Double.class),
+    PEPTIDE_SUMMARY_PSMS_COUNT(PrideArchiveField.PSMS_COUNT, new String[]{PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME}, Integer.class),
+    PROTEIN_SUMMARY_ASSAYS_COUNT(PrideArchiveField.ASSAYS_COUNT, new String[]{PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME}, Integer.class),
+    PROTEIN_SUMMARY_MAX_COVERAGE(PrideArchiveField.MAX_SEQUENCE_COVERAGE, new String[]{PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME}, Double.class);
+
+    private static final Map<String, PrideFieldEnum> BY_FIELD_NAME = new HashMap<>();
+
+    static {
+        for (PrideFieldEnum field : values())
+            BY_FIELD_NAME.putIfAbsent(field.getFieldName().toLowerCase(), field);
+    }
 
     private String fieldName;
     private Class classType;
@@ -80,6 +106,15 @@ public enum PrideFieldEnum {
         return classType;
     }
 
+    /**
+     * Find a field by the name used in the documents, ignoring the case.
+     * @param fieldName Field name
+     * @return Field or null if the field is not known
+     */
+    public static PrideFieldEnum fromFieldName(String fieldName) {
+        return (fieldName != null) ? BY_FIELD_NAME.get(fieldName.toLowerCase()) : null;
+    }
+
     @Override
     public String toString() {
         return "PrideFieldEnum{" +
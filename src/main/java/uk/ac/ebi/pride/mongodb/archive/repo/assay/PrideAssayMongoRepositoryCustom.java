@@ -4,7 +4,9 @@ package uk.ac.ebi.pride.mongodb.archive.repo.assay;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * This code is licensed under the Apache License, Version 2.0 (the
@@ -20,4 +22,19 @@ import java.util.List;
 public interface PrideAssayMongoRepositoryCustom {
 
     List<MongoPrideAssay> filterByAttributes(List<Triple<String, String, String>> filters);
+
+    /**
+     * Stream all the {@link MongoPrideAssay} using a server-side cursor, the Stream must be closed after use.
+     * @param batchSize Number of documents fetched in each round trip
+     * @param includeFields Optional projection of the fields to be retrieved
+     * @return Stream of {@link MongoPrideAssay}
+     */
+    Stream<MongoPrideAssay> streamAll(int batchSize, String... includeFields);
+
+    /**
+     * Find the {@link MongoPrideAssay} of a list of accessions with one $in query.
+     * @param accessions Accessions
+     * @return List of {@link MongoPrideAssay}
+     */
+    List<MongoPrideAssay> findByAccessions(Collection<String> accessions);
 }
@@ -4,12 +4,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * This code is licensed under the Apache License, Version 2.0 (the
@@ -48,4 +52,15 @@ public class PrideAssayMongoRepositoryImpl implements PrideAssayMongoRepositoryC
         Query queryMongo = PrideMongoUtils.buildQuery(filters);
         return mongoTemplate.find(queryMongo, MongoPrideAssay.class);
     }
+
+    @Override
+    public Stream<MongoPrideAssay> streamAll(int batchSize, String... includeFields) {
+        return PrideMongoUtils.streamAll(mongoTemplate, MongoPrideAssay.class, batchSize, includeFields);
+    }
+
+    @Override
+    public List<MongoPrideAssay> findByAccessions(Collection<String> accessions) {
+        Query queryMongo = Query.query(Criteria.where(PrideArchiveField.ASSAY_ACCESSION).in(accessions));
+        return mongoTemplate.find(queryMongo, MongoPrideAssay.class);
+    }
 }
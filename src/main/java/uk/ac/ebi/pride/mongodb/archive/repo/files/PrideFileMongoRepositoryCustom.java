@@ -4,8 +4,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
 
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * Custom Repository that allows customized search on the MongoDB.
@@ -16,9 +20,67 @@ public interface PrideFileMongoRepositoryCustom {
 
     Page<MongoPrideFile> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page);
 
+    /**
+     * Filter By Attributes using keyset pagination, the cost of a page doesn't depend on how deep the page is.
+     *
+     * @param filters           Attributes in {@link Triple} structure
+     * @param sortField         Field used to sort the results before the _id, null to sort only by _id
+     * @param continuationToken Token returned by the previous page, null for the first page
+     * @param size              Number of elements in the page
+     * @return {@link KeysetPage} of {@link MongoPrideFile}
+     */
+    KeysetPage<MongoPrideFile> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size);
+
     List<MongoPrideFile> filterByAttributes(List<Triple<String, String, String>> filters);
 
     List<MongoPrideFile> findByProjectAccessions(List<String> accessions);
 
+    /**
+     * Find the {@link MongoPrideFile} of a list of accessions with one $in query.
+     * @param accessions Accessions
+     * @return List of {@link MongoPrideFile}
+     */
+    List<MongoPrideFile> findByAccessions(Collection<String> accessions);
+
     List<String> findProjectAccessionsWhereChecksumIsNull();
+
+    /**
+     * Add Project accessions to a File using $addToSet, the File is not read before the update.
+     * @param fileAccession File accession
+     * @param projectAccessions Project accessions
+     * @return True if the File is in the database
+     */
+    boolean addProjectAccessions(String fileAccession, Collection<String> projectAccessions);
+
+    /**
+     * Add the same Project accessions to many Files in one write ($in + $addToSet).
+     * @param fileAccessions File accessions
+     * @param projectAccessions Project accessions
+     * @return Number of Files found in the database
+     */
+    long addProjectAccessions(Collection<String> fileAccessions, Collection<String> projectAccessions);
+
+    /**
+     * Add Analysis accessions to a File using $addToSet, the File is not read before the update.
+     * @param fileAccession File accession
+     * @param analysisAccessions Analysis accessions
+     * @return True if the File is in the database
+     */
+    boolean addAnalysisAccessions(String fileAccession, Collection<String> analysisAccessions);
+
+    /**
+     * Set the values of some fields of a File ($set), the rest of the File is not modified.
+     * @param fileAccession File accession
+     * @param fields Field names and values
+     * @return True if the File is in the database
+     */
+    boolean updateFields(String fileAccession, Map<String, Object> fields);
+
+    /**
+     * Stream all the {@link MongoPrideFile} using a server-side cursor, the Stream must be closed after use.
+     * @param batchSize Number of documents fetched in each round trip
+     * @param includeFields Optional projection of the fields to be retrieved
+     * @return Stream of {@link MongoPrideFile}
+     */
+    Stream<MongoPrideFile> streamAll(int batchSize, String... includeFields);
 }
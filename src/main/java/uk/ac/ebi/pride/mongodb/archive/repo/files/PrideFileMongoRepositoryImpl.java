@@ -11,13 +11,20 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.data.mongodb.core.query.Update;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPagination;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * @author ypriverol
@@ -42,6 +49,14 @@ public class PrideFileMongoRepositoryImpl implements PrideFileMongoRepositoryCus
         this.mongoOperations = mongoTemplate;
     }
 
+    private MongoCountCache countCache;
+
+    @Autowired
+    @Qualifier("archiveCountCache")
+    public void setCountCache(MongoCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     @Override
     public Page<MongoPrideFile> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page) {
 //        Criteria queryCriteria = PrideMongoUtils.buildCriteria(filters);
@@ -51,7 +66,13 @@ public class PrideFileMongoRepositoryImpl implements PrideFileMongoRepositoryCus
 //        }
         queryMongo.with(page);
         List<MongoPrideFile> files = mongoTemplate.find(queryMongo, MongoPrideFile.class);
-        return PageableExecutionUtils.getPage(files, page, () -> mongoOperations.count(queryMongo, MongoPrideFile.class));
+        return PageableExecutionUtils.getPage(files, page, () -> countCache.count(mongoOperations, queryMongo, MongoPrideFile.class));
+    }
+
+    @Override
+    public KeysetPage<MongoPrideFile> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        return KeysetPagination.find(mongoTemplate, queryMongo, MongoPrideFile.class, sortField, continuationToken, size);
     }
 
     @Override
@@ -61,6 +82,12 @@ public class PrideFileMongoRepositoryImpl implements PrideFileMongoRepositoryCus
         return mongoTemplate.find(queryMongo, MongoPrideFile.class);
     }
 
+    @Override
+    public List<MongoPrideFile> findByAccessions(Collection<String> accessions) {
+        Query queryMongo = Query.query(Criteria.where(PrideArchiveField.ACCESSION).in(accessions));
+        return mongoTemplate.find(queryMongo, MongoPrideFile.class);
+    }
+
     @Override
     public List<MongoPrideFile> findByProjectAccessions(List<String> accessions) {
         Criteria criteria = new Criteria(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).in(accessions);
@@ -74,4 +101,39 @@ public class PrideFileMongoRepositoryImpl implements PrideFileMongoRepositoryCus
         return mongoTemplate.getCollection(PrideArchiveField.PRIDE_FILE_COLLECTION_NAME)
                 .distinct(PrideArchiveField.ACCESSION, Filters.exists(PrideArchiveField.CHECKSUM, false), String.class).into(new ArrayList<>());
     }
+
+    @Override
+    public boolean addProjectAccessions(String fileAccession, Collection<String> projectAccessions) {
+        Update update = new Update().addToSet(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).each(projectAccessions.toArray());
+        return mongoTemplate.updateFirst(queryByAccession(fileAccession), update, MongoPrideFile.class).getMatchedCount() > 0;
+    }
+
+    @Override
+    public long addProjectAccessions(Collection<String> fileAccessions, Collection<String> projectAccessions) {
+        Query query = Query.query(Criteria.where(PrideArchiveField.ACCESSION).in(fileAccessions));
+        Update update = new Update().addToSet(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).each(projectAccessions.toArray());
+        return mongoTemplate.updateMulti(query, update, MongoPrideFile.class).getMatchedCount();
+    }
+
+    @Override
+    public boolean addAnalysisAccessions(String fileAccession, Collection<String> analysisAccessions) {
+        Update update = new Update().addToSet(PrideArchiveField.EXTERNAL_ANALYSIS_ACCESSIONS).each(analysisAccessions.toArray());
+        return mongoTemplate.updateFirst(queryByAccession(fileAccession), update, MongoPrideFile.class).getMatchedCount() > 0;
+    }
+
+    @Override
+    public boolean updateFields(String fileAccession, Map<String, Object> fields) {
+        Update update = new Update();
+        fields.forEach(update::set);
+        return mongoTemplate.updateFirst(queryByAccession(fileAccession), update, MongoPrideFile.class).getMatchedCount() > 0;
+    }
+
+    private static Query queryByAccession(String fileAccession) {
+        return Query.query(Criteria.where(PrideArchiveField.ACCESSION).is(fileAccession));
+    }
+
+    @Override
+    public Stream<MongoPrideFile> streamAll(int batchSize, String... includeFields) {
+        return PrideMongoUtils.streamAll(mongoTemplate, MongoPrideFile.class, batchSize, includeFields);
+    }
 }
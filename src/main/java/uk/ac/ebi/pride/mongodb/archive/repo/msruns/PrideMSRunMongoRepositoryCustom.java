@@ -4,9 +4,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.Collection;
 
 /**
  * Custom Repository that allows customized search on the MongoDB.
@@ -17,11 +20,46 @@ public interface PrideMSRunMongoRepositoryCustom {
 
     Page<MongoPrideMSRun> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page);
 
+    /**
+     * Filter By Attributes using keyset pagination, the cost of a page doesn't depend on how deep the page is.
+     *
+     * @param filters           Attributes in {@link Triple} structure
+     * @param sortField         Field used to sort the results before the _id, null to sort only by _id
+     * @param continuationToken Token returned by the previous page, null for the first page
+     * @param size              Number of elements in the page
+     * @return {@link KeysetPage} of {@link MongoPrideMSRun}
+     */
+    KeysetPage<MongoPrideMSRun> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size);
+
     List<MongoPrideMSRun> filterByAttributes(List<Triple<String, String, String>> filters);
 
     List<MongoPrideMSRun> filterMSRunByProjectAccession(String projectAccession);
 
     List<MongoPrideMSRun> findByProjectAccessions(List<String> accessions);
 
+    /**
+     * Find the {@link MongoPrideMSRun} of a list of accessions with one $in query.
+     * @param accessions Accessions
+     * @return List of {@link MongoPrideMSRun}
+     */
+    List<MongoPrideMSRun> findByAccessions(Collection<String> accessions);
+
     Optional<MongoPrideMSRun> findMsRunByAccession(String accession);
+
+    /**
+     * Set the value of one field of a MSRun ($set) and return the updated MSRun, the MSRun is not read before the update.
+     * @param accession Accession of the MSRun
+     * @param fieldName Name of the field in the database
+     * @param value New value
+     * @return The updated MSRun, empty if the MSRun is not in the database
+     */
+    Optional<MongoPrideMSRun> updateField(String accession, String fieldName, Object value);
+
+    /**
+     * Stream all the {@link MongoPrideMSRun} using a server-side cursor, the Stream must be closed after use.
+     * @param batchSize Number of documents fetched in each round trip
+     * @param includeFields Optional projection of the fields to be retrieved
+     * @return Stream of {@link MongoPrideMSRun}
+     */
+    Stream<MongoPrideMSRun> streamAll(int batchSize, String... includeFields);
 }
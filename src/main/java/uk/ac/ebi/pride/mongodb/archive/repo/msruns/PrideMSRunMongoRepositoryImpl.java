@@ -9,13 +9,20 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.query.Update;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPagination;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.Collection;
 
 /**
  * @author ypriverol
@@ -39,6 +46,14 @@ public class PrideMSRunMongoRepositoryImpl implements PrideMSRunMongoRepositoryC
         this.mongoOperations = mongoTemplate;
     }
 
+    private MongoCountCache countCache;
+
+    @Autowired
+    @Qualifier("archiveCountCache")
+    public void setCountCache(MongoCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     @Override
     public Page<MongoPrideMSRun> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page) {
 //        Criteria queryCriteria = PrideMongoUtils.buildCriteria(filters);
@@ -48,7 +63,13 @@ public class PrideMSRunMongoRepositoryImpl implements PrideMSRunMongoRepositoryC
 //        }
         queryMongo.with(page);
         List<MongoPrideMSRun> files =  mongoTemplate.find(queryMongo, MongoPrideMSRun.class);
-        return PageableExecutionUtils.getPage(files, page, () -> mongoOperations.count(queryMongo, MongoPrideMSRun.class));
+        return PageableExecutionUtils.getPage(files, page, () -> countCache.count(mongoOperations, queryMongo, MongoPrideMSRun.class));
+    }
+
+    @Override
+    public KeysetPage<MongoPrideMSRun> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        return KeysetPagination.find(mongoTemplate, queryMongo, MongoPrideMSRun.class, sortField, continuationToken, size);
     }
 
     @Override
@@ -65,6 +86,12 @@ public class PrideMSRunMongoRepositoryImpl implements PrideMSRunMongoRepositoryC
         return mongoTemplate.find(queryMongo, MongoPrideMSRun.class);
     }
 
+    @Override
+    public List<MongoPrideMSRun> findByAccessions(Collection<String> accessions) {
+        Query queryMongo = Query.query(Criteria.where(PrideArchiveField.ACCESSION).in(accessions));
+        return mongoTemplate.find(queryMongo, MongoPrideMSRun.class);
+    }
+
     @Override
     public List<MongoPrideMSRun> findByProjectAccessions(List<String> accessions) {
         Criteria criteria = new Criteria(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).in(accessions);
@@ -81,4 +108,17 @@ public class PrideMSRunMongoRepositoryImpl implements PrideMSRunMongoRepositoryC
             return Optional.of(result);
         return Optional.empty();
     }
+
+    @Override
+    public Optional<MongoPrideMSRun> updateField(String accession, String fieldName, Object value) {
+        Query queryMongo = Query.query(Criteria.where(PrideArchiveField.ACCESSION).is(accession));
+        MongoPrideMSRun result = mongoTemplate.findAndModify(queryMongo, Update.update(fieldName, value),
+                FindAndModifyOptions.options().returnNew(true), MongoPrideMSRun.class);
+        return Optional.ofNullable(result);
+    }
+
+    @Override
+    public Stream<MongoPrideMSRun> streamAll(int batchSize, String... includeFields) {
+        return PrideMongoUtils.streamAll(mongoTemplate, MongoPrideMSRun.class, batchSize, includeFields);
+    }
 }
@@ -4,6 +4,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideAnalysis;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
 
 import java.util.List;
 
@@ -23,4 +24,15 @@ import java.util.List;
 public interface PrideAnalysisMongoRepositoryCustom {
 
     Page<MongoPrideAnalysis> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page);
+
+    /**
+     * Filter By Attributes using keyset pagination, the cost of a page doesn't depend on how deep the page is.
+     *
+     * @param filters           Attributes in {@link Triple} structure
+     * @param sortField         Field used to sort the results before the _id, null to sort only by _id
+     * @param continuationToken Token returned by the previous page, null for the first page
+     * @param size              Number of elements in the page
+     * @return {@link KeysetPage} of {@link MongoPrideAnalysis}
+     */
+    KeysetPage<MongoPrideAnalysis> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size);
 }
@@ -11,6 +11,9 @@ import org.springframework.data.repository.support.PageableExecutionUtils;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideAnalysis;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPagination;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 import java.util.List;
 
@@ -46,12 +49,26 @@ public class PrideAnalysisMongoRepositoryImpl implements PrideAnalysisMongoRepos
         this.mongoOperations = mongoTemplate;
     }
 
+    private MongoCountCache countCache;
+
+    @Autowired
+    @Qualifier("archiveCountCache")
+    public void setCountCache(MongoCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     @Override
     public Page<MongoPrideAnalysis> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page) {
 //        Criteria queryCriteria = PrideMongoUtils.buildCriteria(filters);
         Query queryMongo = PrideMongoUtils.buildQuery(filters);
         queryMongo.with(page);
         List<MongoPrideAnalysis> files =  mongoTemplate.find(queryMongo, MongoPrideAnalysis.class);
-        return PageableExecutionUtils.getPage(files, page, () -> mongoOperations.count(queryMongo, MongoPrideAnalysis.class));
+        return PageableExecutionUtils.getPage(files, page, () -> countCache.count(mongoOperations, queryMongo, MongoPrideAnalysis.class));
+    }
+
+    @Override
+    public KeysetPage<MongoPrideAnalysis> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        return KeysetPagination.find(mongoTemplate, queryMongo, MongoPrideAnalysis.class, sortField, continuationToken, size);
     }
 }
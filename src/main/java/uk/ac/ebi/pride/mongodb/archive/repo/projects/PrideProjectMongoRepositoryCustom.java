@@ -2,9 +2,14 @@ package uk.ac.ebi.pride.mongodb.archive.repo.projects;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
+import uk.ac.ebi.pride.archive.dataprovider.param.CvParam;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 
 public interface PrideProjectMongoRepositoryCustom {
@@ -20,4 +25,21 @@ public interface PrideProjectMongoRepositoryCustom {
 
     Set<String> getAllProjectAccessions();
 
+    /**
+     * Replace the File relations of a Project ($set) and return the updated Project, the Project is not read before
+     * the update.
+     * @param accession Project accession
+     * @param fileRelations File relations
+     * @return The updated Project, empty if the Project is not in the database
+     */
+    Optional<MongoPrideProject> updateFileRelations(String accession, List<Triple<String, String, CvParam>> fileRelations);
+
+    /**
+     * Stream all the {@link MongoPrideProject} using a server-side cursor, the Stream must be closed after use.
+     * @param batchSize Number of documents fetched in each round trip
+     * @param includeFields Optional projection of the fields to be retrieved
+     * @return Stream of {@link MongoPrideProject}
+     */
+    Stream<MongoPrideProject> streamAll(int batchSize, String... includeFields);
+
 }
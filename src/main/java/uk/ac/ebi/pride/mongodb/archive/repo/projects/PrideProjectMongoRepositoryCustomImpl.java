@@ -8,13 +8,21 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
+import uk.ac.ebi.pride.archive.dataprovider.param.CvParam;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
+import java.util.Optional;
 
 
 public class PrideProjectMongoRepositoryCustomImpl implements PrideProjectMongoRepositoryCustom {
@@ -26,6 +34,14 @@ public class PrideProjectMongoRepositoryCustomImpl implements PrideProjectMongoR
         this.mongoTemplate = mongoTemplate;
     }
 
+    private MongoCountCache countCache;
+
+    @Autowired
+    @Qualifier("archiveCountCache")
+    public void setCountCache(MongoCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     /*
      sample_attributes = species
      ptmList = modifications
@@ -39,20 +55,21 @@ public class PrideProjectMongoRepositoryCustomImpl implements PrideProjectMongoR
 
         Query query = new Query();
         List<Criteria> criteriaList = new ArrayList<>();
+        // The values are joined as regexes, the anchored prefixes and exact values are rewritten to use the index
         if (accessions != null) {
             String regExStr = String.join("|", accessions);
-            criteriaList.add(Criteria.where(PrideArchiveField.ACCESSION).regex(regExStr));
+            criteriaList.add(PrideMongoUtils.regexCriteria(PrideArchiveField.ACCESSION, regExStr));
         }
         if (sampleAttributes != null) {
             String regExStr = String.join("|", sampleAttributes);
-            criteriaList.add(Criteria.where(PrideArchiveField.SAMPLE_ATTRIBUTES_NAMES).regex(regExStr));
+            criteriaList.add(PrideMongoUtils.regexCriteria(PrideArchiveField.SAMPLE_ATTRIBUTES_NAMES, regExStr));
         }
 
         query.addCriteria(new Criteria().orOperator(criteriaList.toArray(new Criteria[criteriaList.size()])));
 
         List<MongoPrideProject> mongoPrideProjects = mongoTemplate.find(query, MongoPrideProject.class);
 
-        return PageableExecutionUtils.getPage(mongoPrideProjects, page, () -> mongoTemplate.count(query, MongoPrideProject.class));
+        return PageableExecutionUtils.getPage(mongoPrideProjects, page, () -> countCache.count(mongoTemplate, query, MongoPrideProject.class));
     }
 
     @Override
@@ -63,4 +80,18 @@ public class PrideProjectMongoRepositoryCustomImpl implements PrideProjectMongoR
 
         return projectAccessions;
     }
+
+    @Override
+    public Optional<MongoPrideProject> updateFileRelations(String accession, List<Triple<String, String, CvParam>> fileRelations) {
+        Query query = Query.query(Criteria.where(PrideArchiveField.ACCESSION).is(accession));
+        MongoPrideProject project = mongoTemplate.findAndModify(query, Update.update(PrideArchiveField.FILE_RELATIONS_IN_PROJECT, fileRelations),
+                FindAndModifyOptions.options().returnNew(true), MongoPrideProject.class);
+        countCache.invalidate(mongoTemplate.getCollectionName(MongoPrideProject.class));
+        return Optional.ofNullable(project);
+    }
+
+    @Override
+    public Stream<MongoPrideProject> streamAll(int batchSize, String... includeFields) {
+        return PrideMongoUtils.streamAll(mongoTemplate, MongoPrideProject.class, batchSize, includeFields);
+    }
 }
@@ -8,6 +8,7 @@ import uk.ac.ebi.pride.mongodb.archive.repo.assay.PrideAssayMongoRepository;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 
 /**
@@ -53,6 +54,26 @@ public class PrideAssayMongoService {
         return assayRepository.filterByAttributes(filters);
     }
 
+    /**
+     * Get all the assays using a server-side cursor. The Stream must be closed after use.
+     *
+     * @param batchSize     Number of assays fetched in each round trip
+     * @param includeFields Optional fields to be retrieved, if empty the full assay is retrieved
+     * @return Stream of {@link MongoPrideAssay}
+     */
+    public Stream<MongoPrideAssay> findAllStream(int batchSize, String... includeFields) {
+        return assayRepository.streamAll(batchSize, includeFields);
+    }
+
+    /**
+     * Get all the assays using a server-side cursor with the default batch size.
+     *
+     * @return Stream of {@link MongoPrideAssay}
+     */
+    public Stream<MongoPrideAssay> findAllStream() {
+        return findAllStream(PrideMongoUtils.DEFAULT_CURSOR_BATCH_SIZE);
+    }
+
 
 
 }
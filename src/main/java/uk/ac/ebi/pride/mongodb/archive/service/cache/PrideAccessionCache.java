@@ -0,0 +1,97 @@
+package uk.ac.ebi.pride.mongodb.archive.service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
+import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.mongodb.utils.ReadThroughCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process cache of the Projects, Files and MSRuns read by accession. The services read through this cache in the
+ * findByAccession methods and invalidate the accessions they write. Every instance of the application has its own
+ * cache, writes done by other instances are only seen when the entries expire, so the time to live must be short.
+ *
+ * The entities are mutable, every read returns a deep copy of the cached entity made with a round trip through the
+ * mapping converter, so a caller that modifies its entity doesn't change the entity seen by the others.
+ *
+ * @author ypriverol
+ */
+@Component
+@Slf4j
+public class PrideAccessionCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    public static final int DEFAULT_TTL_SECONDS = 60;
+
+    private final ReadThroughCache<MongoPrideProject> projects;
+    private final ReadThroughCache<MongoPrideFile> files;
+    private final ReadThroughCache<MongoPrideMSRun> msRuns;
+
+    /** Converter used to copy the entities, the entities are mapped without custom conversions **/
+    private final MappingMongoConverter converter;
+
+    public PrideAccessionCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_SECONDS);
+    }
+
+    @Autowired
+    public PrideAccessionCache(@Value("${mongodb.cache.accession.max.entries:" + DEFAULT_MAX_ENTRIES + "}") int maxEntries,
+                               @Value("${mongodb.cache.accession.ttl.seconds:" + DEFAULT_TTL_SECONDS + "}") long ttlSeconds) {
+        this.converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        this.converter.afterPropertiesSet();
+        this.projects = new ReadThroughCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS, x -> copy(x, MongoPrideProject.class));
+        this.files = new ReadThroughCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS, x -> copy(x, MongoPrideFile.class));
+        this.msRuns = new ReadThroughCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS, x -> copy(x, MongoPrideMSRun.class));
+        log.info("Accession cache -- max entries: " + maxEntries + " time to live (s): " + ttlSeconds);
+    }
+
+    /**
+     * Deep copy of an entity, the entity is written to a document and read back.
+     */
+    <T> T copy(T entity, Class<T> entityClass) {
+        Document document = new Document();
+        converter.write(entity, document);
+        return converter.read(entityClass, document);
+    }
+
+    public ReadThroughCache<MongoPrideProject> getProjects() {
+        return projects;
+    }
+
+    public ReadThroughCache<MongoPrideFile> getFiles() {
+        return files;
+    }
+
+    public ReadThroughCache<MongoPrideMSRun> getMsRuns() {
+        return msRuns;
+    }
+
+    /**
+     * Hit, miss and eviction statistics of every cache.
+     * @return Map with the statistics by cache name
+     */
+    public Map<String, String> getStatistics() {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        statistics.put("projects", projects.toString());
+        statistics.put("files", files.toString());
+        statistics.put("msRuns", msRuns.toString());
+        return statistics;
+    }
+
+    public void invalidateAll() {
+        projects.invalidateAll();
+        files.invalidateAll();
+        msRuns.invalidateAll();
+    }
+}
@@ -3,6 +3,8 @@ package uk.ac.ebi.pride.mongodb.archive.service.files;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.core.MongoOperations;
@@ -15,11 +17,14 @@ import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
 import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
 import uk.ac.ebi.pride.mongodb.archive.repo.files.PrideFileMongoRepository;
 import uk.ac.ebi.pride.mongodb.archive.repo.msruns.PrideMSRunMongoRepository;
+import uk.ac.ebi.pride.mongodb.archive.service.cache.PrideAccessionCache;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.SequenceBlockAllocator;
 
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This Service allows to handle the Project File Repositories.
@@ -35,8 +40,20 @@ public class PrideFileMongoService {
 
     final PrideMSRunMongoRepository msRunMongoRepository;
 
+    /** Prefix and number of digits of the File accessions **/
+    public static final String FILE_ACCESSION_PREFIX = "PXF";
+    public static final int FILE_ACCESSION_DIGITS = 11;
+
     MongoOperations mongoOperations;
 
+    /** Number of File accessions reserved in each round trip to the counter collection **/
+    @Value("${mongodb.file.accession.block.size:" + SequenceBlockAllocator.DEFAULT_BLOCK_SIZE + "}")
+    int accessionBlockSize = SequenceBlockAllocator.DEFAULT_BLOCK_SIZE;
+
+    private volatile SequenceBlockAllocator accessionAllocator;
+
+    PrideAccessionCache accessionCache;
+
     @Autowired
     @Qualifier("archiveMongoTemplate")
     public void setMongoOperations(MongoTemplate mongoTemplate) {
@@ -49,6 +66,21 @@ public class PrideFileMongoService {
         this.msRunMongoRepository = msRunMongoRepository;
     }
 
+    @Autowired(required = false)
+    public void setAccessionCache(PrideAccessionCache accessionCache) {
+        this.accessionCache = accessionCache;
+    }
+
+    private void invalidateCache(String fileAccession) {
+        if (accessionCache != null)
+            accessionCache.getFiles().invalidate(fileAccession);
+    }
+
+    private void invalidateCache(Collection<String> fileAccessions) {
+        if (accessionCache != null)
+            accessionCache.getFiles().invalidateAll(fileAccessions);
+    }
+
     /*
      * Return an accession for inserting
      * */
@@ -58,7 +90,9 @@ public class PrideFileMongoService {
     }
 
     public MongoPrideFile save(MongoPrideFile prideFile) {
-        return fileRepository.save(prideFile);
+        prideFile = fileRepository.save(prideFile);
+        invalidateCache(prideFile.getAccession());
+        return prideFile;
     }
 
     /**
@@ -68,21 +102,66 @@ public class PrideFileMongoService {
      * @return MongoPrideFile
      */
     public MongoPrideFile insert(MongoPrideFile prideFile) {
-        NumberFormat formatter = new DecimalFormat("00000000000");
         if (prideFile.getAccession() == null) {
-            String accession = "PXF" + formatter.format(PrideMongoUtils.getNextSizedSequence(mongoOperations, PrideArchiveField.PRIDE_FILE_COLLECTION_NAME, 1));
-            prideFile.setAccession(accession);
+            prideFile.setAccession(SequenceBlockAllocator.formatAccession(FILE_ACCESSION_PREFIX, getAccessionAllocator().next(), FILE_ACCESSION_DIGITS));
             prideFile = fileRepository.save(prideFile);
+            invalidateCache(prideFile.getAccession());
             log.debug("A new project has been saved into MongoDB database with Accession -- " + prideFile.getAccession());
         } else
             log.error("A project with similar accession has been found in the MongoDB database, please use update function -- " + prideFile.getAccession());
         return prideFile;
     }
 
+    /**
+     * Create the accessions of a list of new Files and insert them in one bulk insert. The accessions of all the Files
+     * are reserved together, a submission with thousands of files only needs a few round trips to the counter collection.
+     * Files that already have an accession are not inserted.
+     *
+     * @param prideFiles New Files
+     * @return Inserted Files
+     */
+    public List<MongoPrideFile> insertAll(List<MongoPrideFile> prideFiles) {
+        List<MongoPrideFile> newFiles = new ArrayList<>(prideFiles.size());
+        for (MongoPrideFile prideFile : prideFiles) {
+            if (prideFile.getAccession() == null)
+                newFiles.add(prideFile);
+            else
+                log.error("A project with similar accession has been found in the MongoDB database, please use update function -- " + prideFile.getAccession());
+        }
+        if (newFiles.isEmpty())
+            return newFiles;
+
+        long[] accessions = getAccessionAllocator().next(newFiles.size());
+        for (int i = 0; i < accessions.length; i++)
+            newFiles.get(i).setAccession(SequenceBlockAllocator.formatAccession(FILE_ACCESSION_PREFIX, accessions[i], FILE_ACCESSION_DIGITS));
+        List<MongoPrideFile> insertedFiles = fileRepository.insert(newFiles);
+        invalidateCache(insertedFiles.stream().map(MongoPrideFile::getAccession).collect(Collectors.toList()));
+        log.info("New files have been saved into MongoDB database -- " + insertedFiles.size());
+        return insertedFiles;
+    }
+
+    /**
+     * The allocator is created on first use, when the MongoOperations and the block size are set.
+     */
+    private SequenceBlockAllocator getAccessionAllocator() {
+        SequenceBlockAllocator allocator = accessionAllocator;
+        if (allocator == null) {
+            synchronized (this) {
+                allocator = accessionAllocator;
+                if (allocator == null) {
+                    allocator = new SequenceBlockAllocator(mongoOperations, PrideArchiveField.PRIDE_FILE_COLLECTION_NAME, accessionBlockSize);
+                    accessionAllocator = allocator;
+                }
+            }
+        }
+        return allocator;
+    }
+
 
     /**
      * Insert is allowing using to create a File Accession for the File and insert the actual File into MongoDB. The method return a List of Tuples
-     * where the key is the submitted File and the value the inserted File.
+     * where the key is the submitted File and the value the inserted File. The Files and MSRuns that already have an id
+     * are updated, a re-ingest of the same entities doesn't fail with a duplicate key.
      *
      * @param prideFiles    MongoPride File List
      * @param msRunRawFiles MongoPrideMSRun File List
@@ -91,37 +170,48 @@ public class PrideFileMongoService {
     public List<Tuple<MongoPrideFile, MongoPrideFile>> insertAllFilesAndMsRuns(List<MongoPrideFile> prideFiles, List<MongoPrideMSRun> msRunRawFiles) {
         List<Tuple<MongoPrideFile, MongoPrideFile>> insertedFiles = new ArrayList<>();
         if (!prideFiles.isEmpty()) {
-            if (msRunRawFiles != null) {
-                for (MongoPrideMSRun msRunFile : msRunRawFiles) {
-                    try {
-                        msRunMongoRepository.save(msRunFile);
-                        log.info("A new MSRun has been saved into MongoDB database with Accession -- " + msRunFile.getAccession());
-                    } catch (org.springframework.dao.DuplicateKeyException ex) {
-                        Optional<MongoPrideMSRun> dbMsRun = msRunMongoRepository.findMsRunByAccession(msRunFile.getAccession());
-                        if (dbMsRun.isPresent() && dbMsRun.get().getFileSizeBytes() == msRunFile.getFileSizeBytes()) {
-                            log.info("This msRunFile already exists. Accession : " + msRunFile.getAccession());
-                        } else {
-                            throw ex;
-                        }
+            if (msRunRawFiles != null && !msRunRawFiles.isEmpty()) {
+                Set<Integer> duplicates = PrideMongoUtils.bulkSaveUnordered(mongoOperations, msRunRawFiles, MongoPrideMSRun.class);
+                // New MSRuns may have negative entries in the cache
+                if (accessionCache != null)
+                    accessionCache.getMsRuns().invalidateAll(msRunRawFiles.stream()
+                            .map(MongoPrideMSRun::getAccession).collect(Collectors.toList()));
+                if (!duplicates.isEmpty()) {
+                    List<MongoPrideMSRun> conflicts = duplicates.stream().map(msRunRawFiles::get).collect(Collectors.toList());
+                    Map<String, MongoPrideMSRun> dbMsRuns = msRunMongoRepository.findByAccessions(conflicts.stream()
+                            .map(MongoPrideMSRun::getAccession).collect(Collectors.toSet()))
+                            .stream().collect(Collectors.toMap(MongoPrideMSRun::getAccession, x -> x, (x, y) -> x));
+                    for (MongoPrideMSRun msRunFile : conflicts) {
+                        MongoPrideMSRun dbMsRun = dbMsRuns.get(msRunFile.getAccession());
+                        if (dbMsRun == null || dbMsRun.getFileSizeBytes() != msRunFile.getFileSizeBytes())
+                            throw new DuplicateKeyException("A different MSRun already exists with the same key. Accession : " + msRunFile.getAccession());
+                        log.info("This msRunFile already exists. Accession : " + msRunFile.getAccession());
                     }
                 }
+                log.info("New MSRuns have been saved into MongoDB database -- " + (msRunRawFiles.size() - duplicates.size()));
             } else {
                 log.info("No MSRun files available to saveProteinEvidences");
             }
 
-            for (MongoPrideFile file : prideFiles) {
-                try {
-                    insertedFiles.add(new Tuple<>(file, fileRepository.save(file)));
-                    log.debug("A new file has been saved into MongoDB database with Accession -- " + file.getAccession());
-                } catch (org.springframework.dao.DuplicateKeyException ex) {
-                    Optional<MongoPrideFile> dbFile = fileRepository.findPrideFileByAccession(file.getAccession());
-                    if (dbFile.isPresent() && dbFile.get().getChecksum().equals(file.getChecksum())) {
-                        log.info("This File already exists. Accession : " + file.getAccession());
-                    } else {
-                        throw ex;
-                    }
+            Set<Integer> duplicates = PrideMongoUtils.bulkSaveUnordered(mongoOperations, prideFiles, MongoPrideFile.class);
+            invalidateCache(prideFiles.stream().map(MongoPrideFile::getAccession).collect(Collectors.toList()));
+            if (!duplicates.isEmpty()) {
+                List<MongoPrideFile> conflicts = duplicates.stream().map(prideFiles::get).collect(Collectors.toList());
+                Map<String, MongoPrideFile> dbFiles = fileRepository.findByAccessions(conflicts.stream()
+                        .map(MongoPrideFile::getAccession).collect(Collectors.toSet()))
+                        .stream().collect(Collectors.toMap(MongoPrideFile::getAccession, x -> x, (x, y) -> x));
+                for (MongoPrideFile file : conflicts) {
+                    MongoPrideFile dbFile = dbFiles.get(file.getAccession());
+                    if (dbFile == null || !Objects.equals(dbFile.getChecksum(), file.getChecksum()))
+                        throw new DuplicateKeyException("A different File already exists with the same key. Accession : " + file.getAccession());
+                    log.info("This File already exists. Accession : " + file.getAccession());
                 }
             }
+            for (int i = 0; i < prideFiles.size(); i++) {
+                if (!duplicates.contains(i))
+                    insertedFiles.add(new Tuple<>(prideFiles.get(i), prideFiles.get(i)));
+            }
+            log.info("New files have been saved into MongoDB database -- " + insertedFiles.size());
         }
         return insertedFiles;
     }
@@ -144,24 +234,36 @@ public class PrideFileMongoService {
      * @return True if the File can be updated.
      */
     public boolean addProjectAccessions(String fileAccession, List<String> projectAccessions) {
-        Optional<MongoPrideFile> prideFile = fileRepository.findPrideFileByAccession(fileAccession);
-        if (prideFile.isPresent()) {
-            Set<String> currentProjectAccesions = prideFile.get().getProjectAccessions();
-            if (currentProjectAccesions == null)
-                currentProjectAccesions = new HashSet<>();
-            currentProjectAccesions.addAll(projectAccessions);
-            prideFile.get().setProjectAccessions(currentProjectAccesions);
-            fileRepository.save(prideFile.get());
-            log.info("The following MongoPrideFile -- " + prideFile.get().getAccession() + " has been updated with a new Project Accession -- " + projectAccessions);
+        boolean updated = fileRepository.addProjectAccessions(fileAccession, projectAccessions);
+        invalidateCache(fileAccession);
+        if (updated) {
+            log.info("The following MongoPrideFile -- " + fileAccession + " has been updated with a new Project Accession -- " + projectAccessions);
             return true;
         }
         log.error("The following  MongoPrideFile is not in the database -- " + fileAccession);
         return false;
     }
 
+    /**
+     * Add the same Project accessions to a list of Files in one write to the database.
+     *
+     * @param fileAccessions    File Accessions
+     * @param projectAccessions Project Archive Accessions
+     * @return Number of Files found in the database
+     */
+    public long addProjectAccessions(Collection<String> fileAccessions, List<String> projectAccessions) {
+        if (fileAccessions.isEmpty())
+            return 0;
+        long updated = fileRepository.addProjectAccessions(fileAccessions, projectAccessions);
+        invalidateCache(fileAccessions);
+        if (updated < fileAccessions.size())
+            log.error("Only " + updated + " of " + fileAccessions.size() + " MongoPrideFiles are in the database, Project Accession -- " + projectAccessions);
+        return updated;
+    }
+
 
     /**
-     * The current function add the following Project accession To the file Accession in the database. If the file is updated in the database
+     * The current function add the following Analysis accession To the file Accession in the database. If the file is updated in the database
      * the function return true, if the file can't be updated in the database.
      *
      * @param fileAccession      File Accession
@@ -169,21 +271,29 @@ public class PrideFileMongoService {
      * @return True if the File can be updated.
      */
     public boolean addAnalysisAccessions(String fileAccession, List<String> analysisAccessions) {
-        Optional<MongoPrideFile> prideFile = fileRepository.findPrideFileByAccession(fileAccession);
-        if (prideFile.isPresent()) {
-            Set<String> currentAnalysisAccesions = prideFile.get().getAnalysisAccessions();
-            if (currentAnalysisAccesions == null)
-                currentAnalysisAccesions = new HashSet<>();
-            currentAnalysisAccesions.addAll(analysisAccessions);
-            prideFile.get().setProjectAccessions(currentAnalysisAccesions);
-            fileRepository.save(prideFile.get());
-            log.info("The following MongoPrideFile -- " + prideFile.get().getAccession() + " has been updated with a new Analysis Accession -- " + analysisAccessions);
+        boolean updated = fileRepository.addAnalysisAccessions(fileAccession, analysisAccessions);
+        invalidateCache(fileAccession);
+        if (updated) {
+            log.info("The following MongoPrideFile -- " + fileAccession + " has been updated with a new Analysis Accession -- " + analysisAccessions);
             return true;
         }
         log.error("The following  MongoPrideFile is not in the database -- " + fileAccession);
         return false;
     }
 
+    /**
+     * Update some fields of a File without reading and saving the full File.
+     *
+     * @param fileAccession File Accession
+     * @param fields        Field names and new values
+     * @return True if the File can be updated.
+     */
+    public boolean updateFields(String fileAccession, Map<String, Object> fields) {
+        boolean updated = fileRepository.updateFields(fileAccession, fields);
+        invalidateCache(fileAccession);
+        return updated;
+    }
+
 
     /**
      * This method provides a way to search Files by different properties. The search Allows only to Filter the File using different properties. in the Ffile
@@ -200,6 +310,20 @@ public class PrideFileMongoService {
 
     }
 
+    /**
+     * Search Files by different properties using keyset pagination. The continuation token of the returned page is
+     * used to retrieve the next page, deep pages are as cheap as the first one.
+     *
+     * @param filterQuery       Filter query.
+     * @param continuationToken Token of the previous page, null for the first page.
+     * @param size              Number of files in the page.
+     * @return Page containing the files.
+     */
+    public KeysetPage<MongoPrideFile> searchFiles(String filterQuery, String continuationToken, int size) {
+        List<Triple<String, String, String>> filters = PrideMongoUtils.parseFilterParameters(filterQuery);
+        return fileRepository.filterByAttributes(filters, null, continuationToken, size);
+    }
+
     /**
      * Find by Project Accession the following Files.
      *
@@ -228,13 +352,16 @@ public class PrideFileMongoService {
     }
 
     /**
-     * Find a PRIDE File by the accession of the File
+     * Find a PRIDE File by the accession of the File. The File is read through the accession cache, the returned File
+     * is a copy of the cached one.
      *
      * @param fileAccession File accession
      * @return Optional
      */
     public Optional<MongoPrideFile> findByFileAccession(String fileAccession) {
-        return fileRepository.findPrideFileByAccession(fileAccession);
+        if (accessionCache == null)
+            return fileRepository.findPrideFileByAccession(fileAccession);
+        return accessionCache.getFiles().get(fileAccession, fileRepository::findPrideFileByAccession);
     }
 
     /**
@@ -247,17 +374,40 @@ public class PrideFileMongoService {
         return fileRepository.findAll(page);
     }
 
+    /**
+     * Get all the files from PRIDE Archive using a server-side cursor. The Stream must be closed after use.
+     *
+     * @param batchSize     Number of files fetched in each round trip
+     * @param includeFields Optional fields to be retrieved, if empty the full file is retrieved
+     * @return Stream of {@link MongoPrideFile}
+     */
+    public Stream<MongoPrideFile> findAllStream(int batchSize, String... includeFields) {
+        return fileRepository.streamAll(batchSize, includeFields);
+    }
+
+    /**
+     * Get all the files from PRIDE Archive using a server-side cursor with the default batch size.
+     *
+     * @return Stream of {@link MongoPrideFile}
+     */
+    public Stream<MongoPrideFile> findAllStream() {
+        return findAllStream(PrideMongoUtils.DEFAULT_CURSOR_BATCH_SIZE);
+    }
+
     /**
      * Delete all Files
      */
     public void deleteAll() {
         fileRepository.deleteAll();
+        if (accessionCache != null)
+            accessionCache.getFiles().invalidateAll();
     }
 
     public boolean deleteByAccession(String accession) {
         List<MongoPrideFile> prideFilesList = fileRepository.findByProjectAccessions(Collections.singletonList(accession));
         for (MongoPrideFile prideFile : prideFilesList) {
             fileRepository.delete(prideFile);
+            invalidateCache(prideFile.getAccession());
         }
         return true;
     }
@@ -0,0 +1,153 @@
+package uk.ac.ebi.pride.mongodb.archive.service.loaders;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
+import uk.ac.ebi.pride.mongodb.archive.repo.assay.PrideAssayMongoRepository;
+import uk.ac.ebi.pride.mongodb.archive.repo.files.PrideFileMongoRepository;
+import uk.ac.ebi.pride.mongodb.archive.repo.msruns.PrideMSRunMongoRepository;
+import uk.ac.ebi.pride.mongodb.utils.BatchingLoader;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Batched lookups of Files, MSRuns and Assays by accession. The lookups issued by concurrent requests within a few
+ * milliseconds are sent as one $in query per collection, and the same accession requested twice is only read once.
+ * The pages that resolve many accessions should use the find*ByAccessions methods, all the accessions are sent at
+ * once and the results come back in the same order.
+ *
+ * @author ypriverol
+ */
+@Service
+@Slf4j
+public class PrideAccessionLoaderService {
+
+    public static final int DEFAULT_SCHEDULER_THREADS = 1;
+    public static final int DEFAULT_QUERY_THREADS = 8;
+
+    /** Ends the batching windows, the queries run on the query executor **/
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService queryExecutor;
+    private final BatchingLoader<String, MongoPrideFile> fileLoader;
+    private final BatchingLoader<String, MongoPrideMSRun> msRunLoader;
+    private final BatchingLoader<String, MongoPrideAssay> assayLoader;
+
+    @Autowired
+    public PrideAccessionLoaderService(PrideFileMongoRepository fileRepository,
+                                       PrideMSRunMongoRepository msRunRepository,
+                                       PrideAssayMongoRepository assayRepository,
+                                       @Value("${mongodb.loader.window.millis:" + BatchingLoader.DEFAULT_WINDOW_MILLIS + "}") long windowMillis,
+                                       @Value("${mongodb.loader.max.batch.size:" + BatchingLoader.DEFAULT_MAX_BATCH_SIZE + "}") int maxBatchSize,
+                                       @Value("${mongodb.loader.threads:" + DEFAULT_SCHEDULER_THREADS + "}") int threads,
+                                       @Value("${mongodb.loader.query.threads:" + DEFAULT_QUERY_THREADS + "}") int queryThreads) {
+        this.scheduler = Executors.newScheduledThreadPool(threads, daemonThreads("accession-loader-"));
+        this.queryExecutor = Executors.newFixedThreadPool(queryThreads, daemonThreads("accession-query-"));
+        this.fileLoader = new BatchingLoader<>(byAccession(fileRepository::findByAccessions, MongoPrideFile::getAccession),
+                scheduler, queryExecutor, windowMillis, maxBatchSize);
+        this.msRunLoader = new BatchingLoader<>(byAccession(msRunRepository::findByAccessions, MongoPrideMSRun::getAccession),
+                scheduler, queryExecutor, windowMillis, maxBatchSize);
+        this.assayLoader = new BatchingLoader<>(byAccession(assayRepository::findByAccessions, MongoPrideAssay::getAccession),
+                scheduler, queryExecutor, windowMillis, maxBatchSize);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static <T> Function<Collection<String>, Map<String, T>> byAccession(Function<Collection<String>, List<T>> finder,
+                                                                             Function<T, String> accession) {
+        return accessions -> finder.apply(accessions).stream()
+                .collect(Collectors.toMap(accession, x -> x, (x, y) -> x));
+    }
+
+    public CompletableFuture<Optional<MongoPrideFile>> loadFile(String fileAccession) {
+        return fileLoader.load(fileAccession);
+    }
+
+    public Optional<MongoPrideFile> findFileByAccession(String fileAccession) {
+        return fileLoader.get(fileAccession);
+    }
+
+    /**
+     * Find a list of Files with one query.
+     * @param fileAccessions File accessions
+     * @return Files in the same order as the accessions, empty if the File doesn't exist
+     */
+    public List<Optional<MongoPrideFile>> findFilesByAccessions(Collection<String> fileAccessions) {
+        return fileLoader.loadMany(fileAccessions);
+    }
+
+    public CompletableFuture<Optional<MongoPrideMSRun>> loadMSRun(String msRunAccession) {
+        return msRunLoader.load(msRunAccession);
+    }
+
+    public Optional<MongoPrideMSRun> findMSRunByAccession(String msRunAccession) {
+        return msRunLoader.get(msRunAccession);
+    }
+
+    /**
+     * Find a list of MSRuns with one query.
+     * @param msRunAccessions MSRun accessions
+     * @return MSRuns in the same order as the accessions, empty if the MSRun doesn't exist
+     */
+    public List<Optional<MongoPrideMSRun>> findMSRunsByAccessions(Collection<String> msRunAccessions) {
+        return msRunLoader.loadMany(msRunAccessions);
+    }
+
+    public CompletableFuture<Optional<MongoPrideAssay>> loadAssay(String assayAccession) {
+        return assayLoader.load(assayAccession);
+    }
+
+    public Optional<MongoPrideAssay> findAssayByAccession(String assayAccession) {
+        return assayLoader.get(assayAccession);
+    }
+
+    /**
+     * Find a list of Assays with one query.
+     * @param assayAccessions Assay accessions
+     * @return Assays in the same order as the accessions, empty if the Assay doesn't exist
+     */
+    public List<Optional<MongoPrideAssay>> findAssaysByAccessions(Collection<String> assayAccessions) {
+        return assayLoader.loadMany(assayAccessions);
+    }
+
+    /**
+     * Number of requests, de-duplicated requests and batches of every loader.
+     * @return Map with the statistics by loader name
+     */
+    public Map<String, String> getStatistics() {
+        Map<String, String> statistics = new LinkedHashMap<>();
+        statistics.put("files", fileLoader.toString());
+        statistics.put("msRuns", msRunLoader.toString());
+        statistics.put("assays", assayLoader.toString());
+        return statistics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        queryExecutor.shutdown();
+    }
+}
@@ -9,13 +9,16 @@ import uk.ac.ebi.pride.archive.dataprovider.param.CvParam;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
 import uk.ac.ebi.pride.mongodb.archive.repo.msruns.PrideMSRunMongoRepository;
+import uk.ac.ebi.pride.mongodb.archive.service.cache.PrideAccessionCache;
 import uk.ac.ebi.pride.mongodb.archive.transformers.MSRunTransfromer;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
 import uk.ac.ebi.pride.utilities.obo.OBOMapper;
 import uk.ac.ebi.pride.utilities.ols.web.service.cache.OntologyCacheService;
 
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This code is licensed under the Apache License, Version 2.0 (the
@@ -40,6 +43,8 @@ public class PrideMsRunMongoService implements IMSRunService {
     @Autowired
     OntologyCacheService ontologyCacheService;
 
+    PrideAccessionCache accessionCache;
+
 
     @Autowired
     public PrideMsRunMongoService(PrideMSRunMongoRepository msRunRepository) {
@@ -51,6 +56,16 @@ public class PrideMsRunMongoService implements IMSRunService {
         }
     }
 
+    @Autowired(required = false)
+    public void setAccessionCache(PrideAccessionCache accessionCache) {
+        this.accessionCache = accessionCache;
+    }
+
+    private void invalidateCache(String accession) {
+        if (accessionCache != null)
+            accessionCache.getMsRuns().invalidate(accession);
+    }
+
 
     /**
      * We can update an existing {@link MongoPrideMSRun}
@@ -66,6 +81,7 @@ public class PrideMsRunMongoService implements IMSRunService {
         } else if (mongoPrideMSRun.getId() != null) {
             mongoPrideMSRun = msRunRepository.save(mongoPrideMSRun);
         }
+        invalidateCache(mongoPrideMSRun.getAccession());
         return Optional.of(mongoPrideMSRun);
     }
 
@@ -94,6 +110,7 @@ public class PrideMsRunMongoService implements IMSRunService {
         if (msRunOptional.isPresent()) {
             MongoPrideMSRun msRun = MSRunTransfromer.transformMetadata(msRunOptional.get(), msRunMetadata, ontologyCacheService);
             msRun = msRunRepository.save(msRun);
+            invalidateCache(accession);
             return Optional.of(msRun);
         }
         return Optional.empty();
@@ -108,47 +125,46 @@ public class PrideMsRunMongoService implements IMSRunService {
      */
     public Optional<MongoPrideMSRun> updateMSRunMetadataParts(String fieldName, MsRunProvider msRunFieldData, String accession) {
 
-        Optional<MongoPrideMSRun> msRunOptional = msRunRepository.findMsRunByAccession(accession);
-        Set<CvParam> mongoCvParams = new HashSet<>();
-        if (msRunOptional.isPresent()) {
-            MongoPrideMSRun msRun = msRunOptional.get();
-            switch (fieldName) {
-                case PrideArchiveField.MS_RUN_FILE_PROPERTIES:
-                    mongoCvParams = (Set<CvParam>) msRunFieldData.getFileProperties();
-                    msRun.setFileProperties(mongoCvParams);
-                    break;
-                case PrideArchiveField.MS_RUN_INSTRUMENT_PROPERTIES:
-                    mongoCvParams = (Set<CvParam>) msRunFieldData.getInstrumentProperties();
-                    msRun.setInstrumentProperties(mongoCvParams);
-                    break;
-                case PrideArchiveField.MS_RUN_MS_DATA:
-                    mongoCvParams = (Set<CvParam>) msRunFieldData.getMsData();
-                    msRun.setMsData(mongoCvParams);
-                    break;
-                case PrideArchiveField.MS_RUN_SCAN_SETTINGS:
-                    mongoCvParams = (Set<CvParam>) msRunFieldData.getScanSettings();
-                    msRun.setScanSettings(mongoCvParams);
-                    break;
-                case PrideArchiveField.MS_RUN_ID_SETTINGS:
-                    msRun.setIdSettings(msRunFieldData.getIdSettings()
-                            .stream().map(x -> (IdSetting) x).collect(Collectors.toSet()));
-                    break;
-            }
-            msRun = msRunRepository.save(msRun);
-            return Optional.of(msRun);
+        Object value;
+        switch (fieldName) {
+            case PrideArchiveField.MS_RUN_FILE_PROPERTIES:
+                value = msRunFieldData.getFileProperties();
+                break;
+            case PrideArchiveField.MS_RUN_INSTRUMENT_PROPERTIES:
+                value = msRunFieldData.getInstrumentProperties();
+                break;
+            case PrideArchiveField.MS_RUN_MS_DATA:
+                value = msRunFieldData.getMsData();
+                break;
+            case PrideArchiveField.MS_RUN_SCAN_SETTINGS:
+                value = msRunFieldData.getScanSettings();
+                break;
+            case PrideArchiveField.MS_RUN_ID_SETTINGS:
+                value = msRunFieldData.getIdSettings()
+                        .stream().map(x -> (IdSetting) x).collect(Collectors.toSet());
+                break;
+            default:
+                // Unknown part, nothing to update
+                return msRunRepository.findMsRunByAccession(accession);
         }
-        return Optional.empty();
+        // Only the requested part is written, the rest of the MSRun is not read or rewritten
+        Optional<MongoPrideMSRun> msRun = msRunRepository.updateField(accession, fieldName, value);
+        invalidateCache(accession);
+        return msRun;
     }
 
 
     /**
-     * Find a corresponding msRun by the accession.
+     * Find a corresponding msRun by the accession. The MSRun is read through the accession cache, the returned MSRun
+     * is a copy of the cached one.
      *
      * @param accession Accession of the msRuns
      * @return Optional MSRun
      */
     public Optional<MongoPrideMSRun> findMSRunByAccession(String accession) {
-        return msRunRepository.findMsRunByAccession(accession);
+        if (accessionCache == null)
+            return msRunRepository.findMsRunByAccession(accession);
+        return accessionCache.getMsRuns().get(accession, msRunRepository::findMsRunByAccession);
     }
 
 
@@ -161,17 +177,40 @@ public class PrideMsRunMongoService implements IMSRunService {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Get all the MSRuns using a server-side cursor. The Stream must be closed after use.
+     *
+     * @param batchSize     Number of MSRuns fetched in each round trip
+     * @param includeFields Optional fields to be retrieved, if empty the full MSRun is retrieved
+     * @return Stream of {@link MongoPrideMSRun}
+     */
+    public Stream<MongoPrideMSRun> findAllStream(int batchSize, String... includeFields) {
+        return msRunRepository.streamAll(batchSize, includeFields);
+    }
+
+    /**
+     * Get all the MSRuns using a server-side cursor with the default batch size.
+     *
+     * @return Stream of {@link MongoPrideMSRun}
+     */
+    public Stream<MongoPrideMSRun> findAllStream() {
+        return findAllStream(PrideMongoUtils.DEFAULT_CURSOR_BATCH_SIZE);
+    }
+
     /**
      * Delete all Files
      */
     public void deleteAll() {
         msRunRepository.deleteAll();
+        if (accessionCache != null)
+            accessionCache.getMsRuns().invalidateAll();
     }
 
     public boolean deleteByAccession(String accession) {
         List<MongoPrideMSRun> prideMSRunFilesList = msRunRepository.findByProjectAccessions(Collections.singletonList(accession));
         for (MongoPrideMSRun prideFile : prideMSRunFilesList) {
             msRunRepository.delete(prideFile);
+            invalidateCache(prideFile.getAccession());
         }
         return true;
     }
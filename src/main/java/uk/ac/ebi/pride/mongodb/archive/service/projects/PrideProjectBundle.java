@@ -0,0 +1,45 @@
+package uk.ac.ebi.pride.mongodb.archive.service.projects;
+
+import lombok.Builder;
+import lombok.Data;
+import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
+import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.mongodb.archive.model.sample.MongoISampleMSRunRow;
+import uk.ac.ebi.pride.mongodb.archive.model.sdrf.MongoPrideSdrf;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * All the information needed to render a Project: the Project, Files, MSRuns, Assays, Samples and SDRFs. The parts
+ * that failed or didn't finish in time are empty and their names are in failedParts.
+ *
+ * @author ypriverol
+ */
+@Data
+@Builder
+public class PrideProjectBundle {
+
+    public static final String PROJECT = "project";
+    public static final String FILES = "files";
+    public static final String MS_RUNS = "msRuns";
+    public static final String ASSAYS = "assays";
+    public static final String SAMPLES = "samples";
+    public static final String SDRFS = "sdrfs";
+
+    private MongoPrideProject project;
+    private List<MongoPrideFile> files;
+    private List<MongoPrideMSRun> msRuns;
+    private List<MongoPrideAssay> assays;
+    private List<MongoISampleMSRunRow> samples;
+    private List<MongoPrideSdrf> sdrfs;
+
+    /** Names of the parts that failed or timed out **/
+    private Set<String> failedParts;
+
+    public boolean isComplete() {
+        return failedParts == null || failedParts.isEmpty();
+    }
+}
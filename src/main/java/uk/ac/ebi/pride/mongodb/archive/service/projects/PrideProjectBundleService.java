@@ -0,0 +1,169 @@
+package uk.ac.ebi.pride.mongodb.archive.service.projects;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
+import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.mongodb.archive.model.sample.MongoISampleMSRunRow;
+import uk.ac.ebi.pride.mongodb.archive.model.sdrf.MongoPrideSdrf;
+import uk.ac.ebi.pride.mongodb.archive.repo.assay.PrideAssayMongoRepository;
+import uk.ac.ebi.pride.mongodb.archive.service.assays.PrideAssayMongoService;
+import uk.ac.ebi.pride.mongodb.archive.service.files.PrideFileMongoService;
+import uk.ac.ebi.pride.mongodb.archive.service.msruns.PrideMsRunMongoService;
+import uk.ac.ebi.pride.mongodb.archive.service.samples.PrideSampleMongoService;
+import uk.ac.ebi.pride.mongodb.archive.service.sdrf.PrideSdrfMongoService;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Build the full view of a Project. The Project, Files, MSRuns, Assays, Samples and SDRFs are independent queries,
+ * they run at the same time in a bounded pool, so the time to build the view is the time of the slowest query. Every
+ * query has a timeout, the parts that fail or don't finish in time are returned empty and listed in
+ * {@link PrideProjectBundle#getFailedParts()}.
+ *
+ * @author ypriverol
+ */
+@Service
+@Slf4j
+public class PrideProjectBundleService {
+
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    final PrideProjectMongoService projectService;
+    final PrideFileMongoService fileService;
+    final PrideMsRunMongoService msRunService;
+    final PrideAssayMongoService assayService;
+    final PrideSampleMongoService sampleService;
+    final PrideSdrfMongoService sdrfService;
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    @Autowired
+    public PrideProjectBundleService(PrideProjectMongoService projectService,
+                                     PrideFileMongoService fileService,
+                                     PrideMsRunMongoService msRunService,
+                                     PrideAssayMongoRepository assayRepository,
+                                     PrideSampleMongoService sampleService,
+                                     PrideSdrfMongoService sdrfService,
+                                     @Value("${mongodb.project.bundle.threads:" + DEFAULT_THREADS + "}") int threads,
+                                     @Value("${mongodb.project.bundle.queue.size:" + DEFAULT_QUEUE_SIZE + "}") int queueSize,
+                                     @Value("${mongodb.project.bundle.timeout.millis:" + DEFAULT_TIMEOUT_MILLIS + "}") long timeoutMillis) {
+        this.projectService = projectService;
+        this.fileService = fileService;
+        this.msRunService = msRunService;
+        // PrideAssayMongoService is not a Spring bean, it only needs the repository
+        this.assayService = new PrideAssayMongoService(assayRepository);
+        this.sampleService = sampleService;
+        this.sdrfService = sdrfService;
+        this.timeoutMillis = timeoutMillis;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "project-bundle-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the full view of a Project.
+     *
+     * @param projectAccession Project accession
+     * @return The Project bundle, empty if the Project doesn't exist
+     */
+    public Optional<PrideProjectBundle> getProjectBundle(String projectAccession) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        Future<Optional<MongoPrideProject>> project = submit(() -> projectService.findByAccession(projectAccession));
+        Future<List<MongoPrideFile>> files = submit(() -> fileService.findFilesByProjectAccession(projectAccession));
+        Future<List<MongoPrideMSRun>> msRuns = submit(() -> msRunService.getMSRunsByProject(projectAccession));
+        Future<List<MongoPrideAssay>> assays = submit(() -> assayService.findAssayByProjectAccession(projectAccession));
+        Future<List<MongoISampleMSRunRow>> samples = submit(() -> sampleService.getSamplesMRunProjectAccession(projectAccession));
+        Future<List<MongoPrideSdrf>> sdrfs = submit(() -> sdrfService.findByProjectAccession(projectAccession));
+
+        Set<String> failedParts = new LinkedHashSet<>();
+        Optional<MongoPrideProject> mongoProject = await(project, PrideProjectBundle.PROJECT, projectAccession, deadline, null, failedParts);
+        if (mongoProject != null && !mongoProject.isPresent()) {
+            // The Project doesn't exist, the other parts are not needed
+            cancelAll(files, msRuns, assays, samples, sdrfs);
+            return Optional.empty();
+        }
+
+        PrideProjectBundle bundle = PrideProjectBundle.builder()
+                .project(mongoProject != null ? mongoProject.get() : null)
+                .files(await(files, PrideProjectBundle.FILES, projectAccession, deadline, Collections.emptyList(), failedParts))
+                .msRuns(await(msRuns, PrideProjectBundle.MS_RUNS, projectAccession, deadline, Collections.emptyList(), failedParts))
+                .assays(await(assays, PrideProjectBundle.ASSAYS, projectAccession, deadline, Collections.emptyList(), failedParts))
+                .samples(await(samples, PrideProjectBundle.SAMPLES, projectAccession, deadline, Collections.emptyList(), failedParts))
+                .sdrfs(await(sdrfs, PrideProjectBundle.SDRFS, projectAccession, deadline, Collections.emptyList(), failedParts))
+                .failedParts(failedParts)
+                .build();
+        if (!bundle.isComplete())
+            log.warn("Partial project bundle -- " + projectAccession + " -- failed parts: " + failedParts);
+        return Optional.of(bundle);
+    }
+
+    private <T> Future<T> submit(Callable<T> query) {
+        try {
+            return executor.submit(query);
+        } catch (RejectedExecutionException e) {
+            // The pool is saturated, the part is reported as failed instead of blocking the caller
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Wait for a part until the deadline, the parts that fail or time out return the fallback value.
+     */
+    private <T> T await(Future<T> future, String part, String projectAccession, long deadline, T fallback, Set<String> failedParts) {
+        try {
+            return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.error("Timeout retrieving the " + part + " of the project -- " + projectAccession);
+        } catch (ExecutionException e) {
+            log.error("Error retrieving the " + part + " of the project -- " + projectAccession + " -- " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        failedParts.add(part);
+        return fallback;
+    }
+
+    private static void cancelAll(Future<?>... futures) {
+        for (Future<?> future : futures)
+            future.cancel(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
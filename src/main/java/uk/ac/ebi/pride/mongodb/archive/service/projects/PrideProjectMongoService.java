@@ -13,6 +13,8 @@ import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
 import uk.ac.ebi.pride.mongodb.archive.repo.assay.PrideAssayMongoRepository;
 import uk.ac.ebi.pride.mongodb.archive.repo.projects.PrideProjectMongoRepository;
+import uk.ac.ebi.pride.mongodb.archive.service.cache.PrideAccessionCache;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
 
 import java.util.Arrays;
 import java.util.List;
@@ -33,12 +35,24 @@ public class PrideProjectMongoService {
     final PrideProjectMongoRepository repository;
     final PrideAssayMongoRepository assayMongoRepository;
 
+    PrideAccessionCache accessionCache;
+
     @Autowired
     public PrideProjectMongoService(PrideProjectMongoRepository repository, PrideAssayMongoRepository assayMongoRepository) {
         this.repository = repository;
         this.assayMongoRepository = assayMongoRepository;
     }
 
+    @Autowired(required = false)
+    public void setAccessionCache(PrideAccessionCache accessionCache) {
+        this.accessionCache = accessionCache;
+    }
+
+    private void invalidateCache(String accession) {
+        if (accessionCache != null)
+            accessionCache.getProjects().invalidate(accession);
+    }
+
     /**
      * This function insert a project in the Mongo Database, if the project already exist in the database, the function will skip the function.
      *
@@ -48,6 +62,7 @@ public class PrideProjectMongoService {
     public Optional<MongoPrideProject> insert(MongoPrideProject project) {
         if (!repository.findByAccession(project.getAccession()).isPresent()) {
             project = repository.save(project);
+            invalidateCache(project.getAccession());
             log.info("A new project has been saved into MongoDB database with Accession -- " + project.getAccession());
         } else
             log.info("A project with similar accession has been found in the MongoDB database, please use update function -- " + project.getAccession());
@@ -63,6 +78,7 @@ public class PrideProjectMongoService {
     public Optional<MongoPrideProject> update(MongoPrideProject project) {
         if (repository.findByAccession(project.getAccession()).isPresent()) {
             project = repository.save(project);
+            invalidateCache(project.getAccession());
             log.info("project has been updated in MongoDB with accession -- " + project.getAccession());
         } else
             log.info("The project do not exists in the database the insert function should be used -- " + project.getAccession());
@@ -82,6 +98,7 @@ public class PrideProjectMongoService {
             project.setId((ObjectId) optionalProject.get().getId());
         }
             project = repository.save(project);
+            invalidateCache(project.getAccession());
             log.info("project has been Inserted or updated in MongoDB with accession -- " + project.getAccession());
         return Optional.of(project);
     }
@@ -95,29 +112,31 @@ public class PrideProjectMongoService {
      * @return MongoPrideProject
      */
     public Optional<MongoPrideProject> updateFileRelations(String projectAccession, List<Triple<String, String, CvParamProvider>> projectFileRelations) {
-        Optional<MongoPrideProject> project = repository.findByAccession(projectAccession);
-        List projectFiles = projectFileRelations.stream()
-                .map(x -> new Triple(x.getFirst(), x.getSecond(), new CvParam(x.getThird().getCvLabel(),
+        List<Triple<String, String, CvParam>> projectFiles = projectFileRelations.stream()
+                .map(x -> new Triple<>(x.getFirst(), x.getSecond(), new CvParam(x.getThird().getCvLabel(),
                         x.getThird().getAccession(), x.getThird().getName(), x.getThird().getValue())))
                 .collect(Collectors.toList());
-        if (project.isPresent()) {
-            project.get().setSubmittedFileRelations(projectFiles);
-            repository.save(project.get());
-            log.info("Update the current project -- " + project.get().getAccession() + " with the File relations -- " + projectFileRelations);
-        } else
-            log.info("The requested project is not in the Database -- " + project.get().getAccession());
+        Optional<MongoPrideProject> project = repository.updateFileRelations(projectAccession, projectFiles);
+        invalidateCache(projectAccession);
+        if (project.isPresent())
+            log.info("Update the current project -- " + projectAccession + " with the File relations -- " + projectFileRelations);
+        else
+            log.info("The requested project is not in the Database -- " + projectAccession);
         return project;
     }
 
 
     /**
-     * This method return the Pride Mongo Project by accession of the Project PX or PRD
+     * This method return the Pride Mongo Project by accession of the Project PX or PRD. The Project is read through the
+     * accession cache, the returned Project is a copy of the cached one.
      *
      * @param accession PX accession
      * @return Optional
      */
     public Optional<MongoPrideProject> findByAccession(String accession) {
-        return repository.findByAccession(accession);
+        if (accessionCache == null)
+            return repository.findByAccession(accession);
+        return accessionCache.getProjects().get(accession, repository::findByAccession);
     }
 
     public List<MongoPrideProject> findByMultipleAccessions(List<String> accessions) {
@@ -174,24 +193,38 @@ public class PrideProjectMongoService {
     }
 
     /**
-     * Return all the Projects from the database using Stream. It is important to know that
-     * this method is only retrieving the Stream of the List returned
+     * Return all the Projects from the database using Stream. The projects are read from a server-side cursor,
+     * the Stream must be closed after use to release the cursor.
      *
-     * @return
+     * @return Stream of {@link MongoPrideProject}
      */
     public Stream<MongoPrideProject> findAllStream() {
-        return repository.findAll().stream();
+        return findAllStream(PrideMongoUtils.DEFAULT_CURSOR_BATCH_SIZE);
+    }
+
+    /**
+     * Return all the Projects from the database using a server-side cursor. The Stream must be closed after use.
+     *
+     * @param batchSize     Number of projects fetched in each round trip
+     * @param includeFields Optional fields to be retrieved, if empty the full project is retrieved
+     * @return Stream of {@link MongoPrideProject}
+     */
+    public Stream<MongoPrideProject> findAllStream(int batchSize, String... includeFields) {
+        return repository.streamAll(batchSize, includeFields);
     }
 
 
     public void deleteAll() {
         repository.deleteAll();
+        if (accessionCache != null)
+            accessionCache.getProjects().invalidateAll();
     }
 
     public boolean deleteByAccession(String accession) {
         Optional<MongoPrideProject> project = repository.findByAccession(accession);
         if (project.isPresent()) {
             repository.delete(project.get());
+            invalidateCache(accession);
             return true;
         }
 
@@ -1,9 +1,25 @@
 package uk.ac.ebi.pride.mongodb.configs;
 
 import com.mongodb.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.mongodb.MongoDbFactory;
 import org.springframework.data.mongodb.config.AbstractMongoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import uk.ac.ebi.pride.mongodb.utils.ExplainSummary;
+import uk.ac.ebi.pride.mongodb.utils.IndexAdvisor;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This Abstract class is used to Configure all the connections to Spring.
@@ -11,27 +27,181 @@ import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
  */
 public abstract class   AbstractPrideMongoConfiguration extends AbstractMongoConfiguration {
 
+    @Value("${mongodb.metrics.enabled:true}")
+    private boolean metricsEnabled = true;
+
+    @Value("${mongodb.metrics.max.shapes:" + MongoCommandMetricsListener.DEFAULT_MAX_SHAPES + "}")
+    private int metricsMaxShapes = MongoCommandMetricsListener.DEFAULT_MAX_SHAPES;
+
+    @Value("${mongodb.slow.query.enabled:true}")
+    private boolean slowQueryEnabled = true;
+
+    @Value("${mongodb.slow.query.threshold.millis:" + MongoSlowQueryListener.DEFAULT_THRESHOLD_MILLIS + "}")
+    private long slowQueryThresholdMillis = MongoSlowQueryListener.DEFAULT_THRESHOLD_MILLIS;
+
+    @Value("${mongodb.slow.query.explain:true}")
+    private boolean slowQueryExplain = true;
+
+    @Value("${mongodb.slow.query.max.examined.ratio:" + ExplainSummary.DEFAULT_MAX_EXAMINED_RATIO + "}")
+    private double slowQueryMaxExaminedRatio = ExplainSummary.DEFAULT_MAX_EXAMINED_RATIO;
+
+    @Value("${mongodb.slow.query.explain.interval.minutes:" + MongoSlowQueryListener.DEFAULT_EXPLAIN_INTERVAL_MINUTES + "}")
+    private long slowQueryExplainIntervalMinutes = MongoSlowQueryListener.DEFAULT_EXPLAIN_INTERVAL_MINUTES;
+
+    @Value("${mongodb.index.advisor.enabled:true}")
+    private boolean indexAdvisorEnabled = true;
+
+    @Value("${mongodb.index.auto.creation:false}")
+    private boolean autoIndexCreation = false;
+
+    @Value("${mongodb.index.management.mode:" + MongoIndexManager.DEFAULT_MODE + "}")
+    private String indexManagementMode = MongoIndexManager.DEFAULT_MODE;
+
+    @Value("${mongodb.count.cache.max.entries:" + MongoCountCache.DEFAULT_MAX_ENTRIES + "}")
+    private int countCacheMaxEntries = MongoCountCache.DEFAULT_MAX_ENTRIES;
+
+    @Value("${mongodb.count.cache.ttl.seconds:" + MongoCountCache.DEFAULT_TTL_SECONDS + "}")
+    private long countCacheTtlSeconds = MongoCountCache.DEFAULT_TTL_SECONDS;
+
+    @Value("${mongodb.count.cache.cap:" + MongoCountCache.DEFAULT_COUNT_CAP + "}")
+    private int countCacheCap = MongoCountCache.DEFAULT_COUNT_CAP;
+
+    private final IndexAdvisor indexAdvisor = new IndexAdvisor();
+
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+
+    /** Client and factory of the database, shared by the beans of the configuration, guarded by this **/
+    private MongoClient mongoClient;
+    private MongoDbFactory mongoDbFactory;
+
+    /**
+     * The metrics are registered in the application registry, or in the global registry if there is none.
+     * @param meterRegistry Micrometer registry
+     */
+    @Autowired
+    public void setMeterRegistry(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry.getIfUnique(() -> Metrics.globalRegistry);
+    }
+
+    /**
+     * The client is created once by configuration: every client registers its own pool metrics with the same tags and
+     * starts its own slow query explain thread.
+     * @return MongoClient of the database
+     */
     @Override
     public MongoClient mongoClient() {
-        MongoClient mongoClient = configureMachineFromURI(getMongoURI());
+        return client();
+    }
+
+    /** Not a bean method, the calls of the configuration are not resolved to a bean of another configuration **/
+    private synchronized MongoClient client() {
+        if (mongoClient == null)
+            mongoClient = configureMachineFromURI(getMongoURI());
         return mongoClient;
     }
 
+    /**
+     * The indexes of the models are managed by {@link MongoIndexManager}, creating them when the mapping context starts
+     * blocks the startup against large collections. The manager creates the missing indexes in the background unless
+     * the verify or none mode is configured.
+     */
     @Override
-    public MongoDbFactory mongoDbFactory(){
-        return new SimpleMongoDbFactory(mongoClient(), getDatabaseName());
+    protected boolean autoIndexCreation() {
+        return autoIndexCreation;
     }
 
+    /**
+     * The factory of the mongoDbFactory bean and of the templates, it uses the client of the configuration.
+     * @return MongoDbFactory of the database
+     */
+    @Override
+    public synchronized MongoDbFactory mongoDbFactory(){
+        if (mongoDbFactory == null)
+            mongoDbFactory = new SimpleMongoDbFactory(client(), getDatabaseName());
+        return mongoDbFactory;
+    }
 
     /**
-     * This method create a connection from an URI
+     * Template with the same converter that {@link MongoTemplate} creates by default, but with the auto index creation
+     * of the mapping context disabled unless mongodb.index.auto.creation is set.
+     * @param mongoDbFactory Factory of the database
+     * @return MongoTemplate
+     */
+    protected MongoTemplate createMongoTemplate(MongoDbFactory mongoDbFactory) {
+        MongoCustomConversions conversions = new MongoCustomConversions(Collections.emptyList());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.setAutoIndexCreation(autoIndexCreation);
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(new DefaultDbRefResolver(mongoDbFactory), mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return new MongoTemplate(mongoDbFactory, converter);
+    }
+
+
+    /**
+     * This method create a connection from an URI. The options of the URI take precedence over the ones of the
+     * client, the command and connection pool listeners report the latency of the commands and the state of the pool,
+     * the slow query listener logs and explains the slow queries and the index advisor records the query patterns.
      * @param uri URI in String format
      * @return MongoClient
      */
     public MongoClient configureMachineFromURI(String uri){
-        MongoClientURI clientURI = new MongoClientURI(uri);
-        return new MongoClient(clientURI);
+        MongoClientOptions.Builder options = MongoClientOptions.builder();
+        if (metricsEnabled) {
+            options.addCommandListener(new MongoCommandMetricsListener(meterRegistry, getMetricsName(), metricsMaxShapes));
+            options.addConnectionPoolListener(new MongoPoolMetricsListener(meterRegistry, getMetricsName()));
+        }
+        if (indexAdvisorEnabled)
+            options.addCommandListener(new MongoIndexAdvisorListener(indexAdvisor));
+        MongoSlowQueryListener slowQueryListener = null;
+        if (slowQueryEnabled) {
+            slowQueryListener = new MongoSlowQueryListener(getMetricsName(), slowQueryThresholdMillis, slowQueryExplain,
+                    slowQueryMaxExaminedRatio, slowQueryExplainIntervalMinutes);
+            options.addCommandListener(slowQueryListener);
+        }
+        MongoClientURI clientURI = new MongoClientURI(uri, options);
+        MongoClient mongoClient = new MongoClient(clientURI);
+        if (slowQueryListener != null)
+            slowQueryListener.setMongoClient(mongoClient);
+        return mongoClient;
     }
 
     public abstract String getMongoURI();
+
+    /**
+     * Query patterns sent by the client, see {@link uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils#adviseIndexes}.
+     * @return {@link IndexAdvisor}
+     */
+    public IndexAdvisor indexAdvisor() {
+        return indexAdvisor;
+    }
+
+    /**
+     * Index manager of the models of the database, the mode is none, verify or create (default).
+     * @param mongoTemplate Template of the database
+     * @param modelPackage Package of the @Document models
+     * @return {@link MongoIndexManager}
+     */
+    protected MongoIndexManager createIndexManager(MongoTemplate mongoTemplate, String modelPackage) {
+        return new MongoIndexManager(getMetricsName(), mongoTemplate, modelPackage, indexManagementMode);
+    }
+
+    /**
+     * Cache of the counts of the filterByAttributes pages. The bean listens to the mapping events to invalidate the
+     * counts of the collections that are written.
+     * @return {@link MongoCountCache}
+     */
+    protected MongoCountCache createCountCache() {
+        return new MongoCountCache(countCacheMaxEntries, countCacheTtlSeconds, TimeUnit.SECONDS, countCacheCap);
+    }
+
+    /**
+     * Name of the client in the tags of the metrics.
+     * @return Client name
+     */
+    protected String getMetricsName() {
+        return getDatabaseName();
+    }
 }
@@ -7,6 +7,8 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import uk.ac.ebi.pride.mongodb.utils.IndexAdvisor;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 /**
  * Configures the Mongo-based repositories. For details, see:
@@ -52,7 +54,23 @@ public class ArchiveMongoConfig extends AbstractPrideMongoConfiguration {
   @Override
   @Bean(name = "archiveMongoTemplate")
   public MongoTemplate mongoTemplate() {
-    return new MongoTemplate(super.mongoDbFactory());
+    return createMongoTemplate(super.mongoDbFactory());
+  }
+
+  @Override
+  @Bean(name = "archiveIndexAdvisor")
+  public IndexAdvisor indexAdvisor() {
+    return super.indexAdvisor();
+  }
+
+  @Bean(name = "archiveIndexManager")
+  public MongoIndexManager indexManager() {
+    return createIndexManager(mongoTemplate(), "uk.ac.ebi.pride.mongodb.archive.model");
+  }
+
+  @Bean(name = "archiveCountCache")
+  public MongoCountCache countCache() {
+    return createCountCache();
   }
 
   @Override
@@ -64,4 +82,9 @@ public class ArchiveMongoConfig extends AbstractPrideMongoConfiguration {
   public String getMongoURI() {
         return mongoURI;
     }
+
+  @Override
+  protected String getMetricsName() {
+    return "archive";
+  }
 }
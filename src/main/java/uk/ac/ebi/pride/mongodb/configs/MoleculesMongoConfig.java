@@ -8,6 +8,8 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import uk.ac.ebi.pride.mongodb.utils.IndexAdvisor;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 @Configuration
 @EnableTransactionManagement
@@ -25,7 +27,23 @@ public class MoleculesMongoConfig extends AbstractPrideMongoConfiguration {
     @Override
     @Bean(name = "moleculesMongoTemplate")
     public MongoTemplate mongoTemplate() {
-        return new MongoTemplate(super.mongoDbFactory());
+        return createMongoTemplate(super.mongoDbFactory());
+    }
+
+    @Override
+    @Bean(name = "moleculesIndexAdvisor")
+    public IndexAdvisor indexAdvisor() {
+        return super.indexAdvisor();
+    }
+
+    @Bean(name = "moleculesIndexManager")
+    public MongoIndexManager indexManager() {
+        return createIndexManager(mongoTemplate(), "uk.ac.ebi.pride.mongodb.molecules.model");
+    }
+
+    @Bean(name = "moleculesCountCache")
+    public MongoCountCache countCache() {
+        return createCountCache();
     }
 
     @Override
@@ -37,4 +55,9 @@ public class MoleculesMongoConfig extends AbstractPrideMongoConfiguration {
     public String getMongoURI() {
         return mongoURI;
     }
-}
\ No newline at end of file
+
+    @Override
+    protected String getMetricsName() {
+        return "molecules";
+    }
+}
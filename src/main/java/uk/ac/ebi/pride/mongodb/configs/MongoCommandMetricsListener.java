@@ -0,0 +1,105 @@
+package uk.ac.ebi.pride.mongodb.configs;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import uk.ac.ebi.pride.mongodb.utils.QueryShape;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Driver listener that reports the latency of every command as a Micrometer timer (mongodb.driver.commands) tagged
+ * by client, database, collection, command, query shape and status. The shape is the fingerprint of the filter
+ * computed by {@link QueryShape}, only the first maxShapes distinct shapes are reported, the rest are tagged as
+ * "other" to keep the number of timers bounded.
+ *
+ * @author ypriverol
+ */
+public class MongoCommandMetricsListener implements CommandListener {
+
+    public static final String METRIC_NAME = "mongodb.driver.commands";
+    public static final int DEFAULT_MAX_SHAPES = 500;
+
+    private static final String OTHER_SHAPE = "other";
+    static final String NO_COLLECTION = "none";
+
+    private final MeterRegistry registry;
+    private final String clientName;
+    private final int maxShapes;
+
+    /** Tags of the commands that are running, by request id **/
+    private final Map<Integer, Tags> running = new ConcurrentHashMap<>();
+    private final Set<String> shapes = ConcurrentHashMap.newKeySet();
+
+    public MongoCommandMetricsListener(MeterRegistry registry, String clientName) {
+        this(registry, clientName, DEFAULT_MAX_SHAPES);
+    }
+
+    public MongoCommandMetricsListener(MeterRegistry registry, String clientName, int maxShapes) {
+        this.registry = registry;
+        this.clientName = clientName;
+        this.maxShapes = maxShapes;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String commandName = event.getCommandName();
+        BsonDocument command = event.getCommand();
+        running.put(event.getRequestId(), Tags.of(
+                "client", clientName,
+                "database", event.getDatabaseName(),
+                "collection", collection(commandName, command),
+                "command", commandName,
+                "shape", boundedShape(QueryShape.commandShape(commandName, command))));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event.getRequestId(), event.getCommandName(), "success", event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getRequestId(), event.getCommandName(), "failed", event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void record(int requestId, String commandName, String status, long elapsedNanos) {
+        Tags tags = running.remove(requestId);
+        if (tags == null)
+            tags = Tags.of("client", clientName, "database", "unknown", "collection", NO_COLLECTION,
+                    "command", commandName, "shape", QueryShape.NO_SHAPE);
+        Timer.builder(METRIC_NAME)
+                .description("Latency of the MongoDB commands")
+                .tags(tags)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The collection commands have the name of the collection as value of the command, getMore has it in a field.
+     */
+    static String collection(String commandName, BsonDocument command) {
+        BsonValue collection = "getMore".equals(commandName) ? command.get("collection") : command.get(commandName);
+        return (collection != null && collection.isString()) ? collection.asString().getValue() : NO_COLLECTION;
+    }
+
+    private String boundedShape(String shape) {
+        if (shapes.contains(shape))
+            return shape;
+        if (shapes.size() >= maxShapes)
+            return OTHER_SHAPE;
+        shapes.add(shape);
+        return shape;
+    }
+}
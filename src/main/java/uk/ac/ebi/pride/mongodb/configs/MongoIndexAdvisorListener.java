@@ -0,0 +1,37 @@
+package uk.ac.ebi.pride.mongodb.configs;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import uk.ac.ebi.pride.mongodb.utils.IndexAdvisor;
+
+/**
+ * Driver listener that records the query pattern of every command in an {@link IndexAdvisor}. The pattern is read
+ * while the command is started, the command document is only valid during the callback.
+ *
+ * @author ypriverol
+ */
+public class MongoIndexAdvisorListener implements CommandListener {
+
+    private final IndexAdvisor indexAdvisor;
+
+    public MongoIndexAdvisorListener(IndexAdvisor indexAdvisor) {
+        this.indexAdvisor = indexAdvisor;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        String collection = MongoCommandMetricsListener.collection(event.getCommandName(), event.getCommand());
+        if (!MongoCommandMetricsListener.NO_COLLECTION.equals(collection))
+            indexAdvisor.recordCommand(event.getCommandName(), collection, event.getCommand());
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+    }
+}
@@ -0,0 +1,276 @@
+package uk.ac.ebi.pride.mongodb.configs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver.IndexDefinitionHolder;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.util.ClassTypeInformation;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Manage the indexes declared with @Indexed, @CompoundIndex and @TextIndexed in the @Document models instead of the
+ * auto index creation of the mapping context. The declared indexes are compared with the indexes that exist in the
+ * database (same name or same keys), and depending on the mode:
+ *
+ * - none: nothing is checked.
+ * - verify: the missing indexes are logged when the application starts, only the index lists are read. The
+ *   deployments that manage their indexes outside the application opt in to this mode.
+ * - create (default): the missing indexes are also created one by one with the background option in a background
+ *   thread, the startup is not blocked. The progress of the build reported by the server is logged while the index
+ *   is built.
+ *
+ * @author ypriverol
+ */
+@Slf4j
+public class MongoIndexManager implements InitializingBean, DisposableBean {
+
+    public static final String DEFAULT_MODE = "create";
+    public static final long PROGRESS_INTERVAL_SECONDS = 30;
+
+    public enum Mode {
+        NONE, VERIFY, CREATE;
+
+        public static Mode fromName(String name) {
+            return Mode.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final String clientName;
+    private final MongoTemplate mongoTemplate;
+    private final String modelPackage;
+    private final Mode mode;
+
+    private final ExecutorService buildExecutor;
+    private final ScheduledExecutorService progressExecutor;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile String building;
+
+    /**
+     * Create the index manager.
+     * @param clientName Name of the database in the log
+     * @param mongoTemplate Template of the database
+     * @param modelPackage Package of the @Document models stored in the database
+     * @param mode none, verify or create
+     */
+    public MongoIndexManager(String clientName, MongoTemplate mongoTemplate, String modelPackage, String mode) {
+        this.clientName = clientName;
+        this.mongoTemplate = mongoTemplate;
+        this.modelPackage = modelPackage;
+        this.mode = Mode.fromName(mode);
+        this.buildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-build-" + clientName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.progressExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-build-progress-" + clientName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (mode == Mode.NONE)
+            return;
+        try {
+            Map<String, List<IndexDefinitionHolder>> missing = findMissingIndexes();
+            if (missing.isEmpty()) {
+                log.info("Indexes -- " + clientName + " -- all the declared indexes exist");
+                return;
+            }
+            missing.forEach((collection, indexes) -> indexes.forEach(index ->
+                    log.warn("Missing index -- " + clientName + " -- " + collection + " -- " + index.getIndexOptions().get("name")
+                            + " " + index.getIndexKeys().toJson())));
+            if (mode == Mode.CREATE)
+                createIndexes(missing);
+        } catch (RuntimeException e) {
+            // The application can work without the indexes, it must start even if the check fails
+            log.error("Error checking the indexes -- " + clientName + " -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indexes declared in the models that don't exist in the database.
+     * @return Map with the missing indexes by collection
+     */
+    public Map<String, List<IndexDefinitionHolder>> findMissingIndexes() {
+        Map<String, List<IndexDefinitionHolder>> missing = new LinkedHashMap<>();
+        for (Map.Entry<String, List<IndexDefinitionHolder>> entry : declaredIndexes().entrySet()) {
+            String collection = entry.getKey();
+            List<Document> existing = new ArrayList<>();
+            if (mongoTemplate.collectionExists(collection))
+                mongoTemplate.getCollection(collection).listIndexes().into(existing);
+            for (IndexDefinitionHolder index : entry.getValue()) {
+                if (!exists(index, existing, collection))
+                    missing.computeIfAbsent(collection, x -> new ArrayList<>()).add(index);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Create the indexes in a background thread, one by one.
+     * @param missing Indexes by collection
+     * @return Future that completes when all the indexes are built
+     */
+    public Future<?> createIndexes(Map<String, List<IndexDefinitionHolder>> missing) {
+        missing.values().forEach(indexes -> total.addAndGet(indexes.size()));
+        return buildExecutor.submit(() -> {
+            for (Map.Entry<String, List<IndexDefinitionHolder>> entry : missing.entrySet())
+                for (IndexDefinitionHolder index : entry.getValue())
+                    createIndex(entry.getKey(), index);
+            building = null;
+            log.info("Index build finished -- " + clientName + " -- " + getProgress());
+        });
+    }
+
+    private void createIndex(String collection, IndexDefinitionHolder index) {
+        String name = String.valueOf(index.getIndexOptions().get("name"));
+        building = collection + "." + name;
+        log.info("Building index -- " + clientName + " -- " + building + " -- " + getProgress());
+        long start = System.currentTimeMillis();
+        ScheduledFuture<?> progress = progressExecutor.scheduleAtFixedRate(() -> logServerProgress(collection),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try {
+            mongoTemplate.indexOps(collection).ensureIndex(inBackground(index));
+            created.incrementAndGet();
+            log.info("Index built -- " + clientName + " -- " + building + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            log.error("Error building the index -- " + clientName + " -- " + building + " -- " + e.getMessage());
+        } finally {
+            progress.cancel(false);
+        }
+    }
+
+    /**
+     * The server reports the documents scanned by the index build in currentOp.
+     */
+    private void logServerProgress(String collection) {
+        try {
+            Document currentOp = mongoTemplate.getDb().getSiblingDatabase("admin").runCommand(new Document("currentOp", 1)
+                    .append("command.createIndexes", collection));
+            Object operations = currentOp.get("inprog");
+            if (operations instanceof List) {
+                for (Object operation : (List<?>) operations) {
+                    if (operation instanceof Document && ((Document) operation).get("msg") != null)
+                        log.info("Building index -- " + clientName + " -- " + building + " -- " + ((Document) operation).get("msg"));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.debug("Index build progress not available -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indexes declared in the @Document models of the package, by collection.
+     */
+    private Map<String, List<IndexDefinitionHolder>> declaredIndexes() {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(org.springframework.data.mongodb.core.mapping.Document.class));
+        MongoMappingContext mappingContext = (MongoMappingContext) mongoTemplate.getConverter().getMappingContext();
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+
+        Map<String, List<IndexDefinitionHolder>> indexes = new LinkedHashMap<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(modelPackage)) {
+            Class<?> model = ClassUtils.resolveClassName(candidate.getBeanClassName(), getClass().getClassLoader());
+            for (IndexDefinitionHolder index : resolver.resolveIndexFor(ClassTypeInformation.from(model)))
+                indexes.computeIfAbsent(index.getCollection(), x -> new ArrayList<>()).add(index);
+        }
+        return indexes;
+    }
+
+    /**
+     * An index exists if there is an index with the same name or with the same keys.
+     */
+    private boolean exists(IndexDefinitionHolder index, List<Document> existing, String collection) {
+        Object name = index.getIndexOptions().get("name");
+        Map<String, Object> keys = normalize(index.getIndexKeys());
+        for (Document existingIndex : existing) {
+            boolean sameKeys = keys.equals(normalize((Document) existingIndex.get("key")));
+            if (name != null && name.equals(existingIndex.get("name"))) {
+                if (!sameKeys && !index.getIndexKeys().containsValue("text"))
+                    log.warn("Index with the same name and different keys -- " + clientName + " -- " + collection + " -- " + name);
+                return true;
+            }
+            if (sameKeys)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The directions are stored as 1, 1.0 or 1L depending on the client that created the index.
+     */
+    private static Map<String, Object> normalize(Document keys) {
+        if (keys == null)
+            return Collections.emptyMap();
+        Map<String, Object> normalized = new LinkedHashMap<>();
+        keys.forEach((key, value) -> normalized.put(key, (value instanceof Number) ? (int) Math.signum(((Number) value).doubleValue()) : value));
+        return normalized;
+    }
+
+    /**
+     * The same index with the background option, the collection is not locked while the index is built.
+     */
+    private static IndexDefinition inBackground(IndexDefinition index) {
+        Document options = new Document(index.getIndexOptions());
+        options.put("background", true);
+        return new IndexDefinition() {
+            @Override
+            public Document getIndexKeys() {
+                return index.getIndexKeys();
+            }
+
+            @Override
+            public Document getIndexOptions() {
+                return options;
+            }
+        };
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Progress of the index build.
+     * @return Indexes built, failed and total, and the index being built
+     */
+    public String getProgress() {
+        return "created=" + created.get() + ", failed=" + failed.get() + ", total=" + total.get()
+                + (building != null ? ", building=" + building : "");
+    }
+
+    @Override
+    public void destroy() {
+        buildExecutor.shutdownNow();
+        progressExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package uk.ac.ebi.pride.mongodb.configs;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionAddedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListenerAdapter;
+import com.mongodb.event.ConnectionPoolOpenedEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueEnteredEvent;
+import com.mongodb.event.ConnectionPoolWaitQueueExitedEvent;
+import com.mongodb.event.ConnectionRemovedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Driver listener that reports the state of the connection pool of every server as Micrometer meters tagged by client
+ * and server: connections in the pool (mongodb.driver.pool.size), connections checked out
+ * (mongodb.driver.pool.checkedout), threads waiting for a connection (mongodb.driver.pool.waitqueuesize) and the time
+ * the threads wait for a connection (mongodb.driver.pool.wait).
+ *
+ * @author ypriverol
+ */
+@SuppressWarnings("deprecation")
+public class MongoPoolMetricsListener extends ConnectionPoolListenerAdapter {
+
+    private final MeterRegistry registry;
+    private final String clientName;
+
+    private final Map<ServerId, PoolMetrics> pools = new ConcurrentHashMap<>();
+
+    /** The wait queue events are sent by the thread that asks for the connection **/
+    private final ThreadLocal<Long> waitStart = new ThreadLocal<>();
+
+    public MongoPoolMetricsListener(MeterRegistry registry, String clientName) {
+        this.registry = registry;
+        this.clientName = clientName;
+    }
+
+    @Override
+    public void connectionPoolOpened(ConnectionPoolOpenedEvent event) {
+        pool(event.getServerId());
+    }
+
+    @Override
+    public void connectionAdded(ConnectionAddedEvent event) {
+        pool(event.getConnectionId().getServerId()).size.incrementAndGet();
+    }
+
+    @Override
+    public void connectionRemoved(ConnectionRemovedEvent event) {
+        pool(event.getConnectionId().getServerId()).size.decrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        pool(event.getConnectionId().getServerId()).checkedOut.incrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        pool(event.getConnectionId().getServerId()).checkedOut.decrementAndGet();
+    }
+
+    @Override
+    public void waitQueueEntered(ConnectionPoolWaitQueueEnteredEvent event) {
+        pool(event.getServerId()).waitQueueSize.incrementAndGet();
+        waitStart.set(System.nanoTime());
+    }
+
+    @Override
+    public void waitQueueExited(ConnectionPoolWaitQueueExitedEvent event) {
+        PoolMetrics pool = pool(event.getServerId());
+        pool.waitQueueSize.decrementAndGet();
+        Long start = waitStart.get();
+        if (start != null) {
+            waitStart.remove();
+            pool.waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private PoolMetrics pool(ServerId serverId) {
+        return pools.computeIfAbsent(serverId, id -> new PoolMetrics(Tags.of(
+                "client", clientName,
+                "server", id.getAddress().toString())));
+    }
+
+    /**
+     * Meters of the pool of one server, the gauges read the counters of this object.
+     */
+    private class PoolMetrics {
+
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger checkedOut = new AtomicInteger();
+        private final AtomicInteger waitQueueSize = new AtomicInteger();
+        private final Timer waitTime;
+
+        private PoolMetrics(Tags tags) {
+            Gauge.builder("mongodb.driver.pool.size", size, AtomicInteger::get)
+                    .description("Connections in the pool")
+                    .tags(tags).register(registry);
+            Gauge.builder("mongodb.driver.pool.checkedout", checkedOut, AtomicInteger::get)
+                    .description("Connections checked out of the pool")
+                    .tags(tags).register(registry);
+            Gauge.builder("mongodb.driver.pool.waitqueuesize", waitQueueSize, AtomicInteger::get)
+                    .description("Threads waiting for a connection")
+                    .tags(tags).register(registry);
+            this.waitTime = Timer.builder("mongodb.driver.pool.wait")
+                    .description("Time waiting for a connection of the pool")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package uk.ac.ebi.pride.mongodb.configs;
+
+import com.mongodb.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import uk.ac.ebi.pride.mongodb.utils.ExplainSummary;
+import uk.ac.ebi.pride.mongodb.utils.LruTtlCache;
+import uk.ac.ebi.pride.mongodb.utils.QueryShape;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Driver listener that logs the find, count, distinct and aggregate commands slower than a threshold, with the full
+ * command (filter, sort, skip, limit, pipeline). The slow commands are explained with "executionStats" in a background
+ * thread and the winning plan is logged, the plans with a COLLSCAN or that examine too many documents for the
+ * documents they return are logged as warnings. Every query shape of a collection is explained at most once in the
+ * explain interval, the explain runs the query again.
+ *
+ * @author ypriverol
+ */
+@Slf4j
+public class MongoSlowQueryListener implements CommandListener {
+
+    public static final long DEFAULT_THRESHOLD_MILLIS = 500;
+    public static final long DEFAULT_EXPLAIN_INTERVAL_MINUTES = 10;
+    public static final int MAX_LOGGED_COMMAND_LENGTH = 10000;
+
+    private static final Set<String> QUERY_COMMANDS = new HashSet<>(Arrays.asList("find", "count", "distinct", "aggregate"));
+
+    private final String clientName;
+    private final long thresholdNanos;
+    private final boolean explain;
+    private final double maxExaminedRatio;
+
+    /** Copy of the query commands that are running, the event document is only valid during the callback **/
+    private final Map<Integer, BsonDocument> running = new ConcurrentHashMap<>();
+    private final LruTtlCache<String, Boolean> explainedShapes;
+    private final ThreadPoolExecutor explainExecutor;
+    private volatile MongoClient mongoClient;
+
+    /**
+     * Create the listener.
+     * @param clientName Name of the client in the log
+     * @param thresholdMillis Commands slower than this time are logged
+     * @param explain Explain the slow commands
+     * @param maxExaminedRatio Maximum documents examined for every document returned before the plan is flagged
+     * @param explainIntervalMinutes Time before the same query shape is explained again
+     */
+    public MongoSlowQueryListener(String clientName, long thresholdMillis, boolean explain, double maxExaminedRatio,
+                                  long explainIntervalMinutes) {
+        this.clientName = clientName;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.explain = explain;
+        this.maxExaminedRatio = maxExaminedRatio;
+        this.explainedShapes = new LruTtlCache<>(1000, explainIntervalMinutes, TimeUnit.MINUTES);
+        // One background thread, the explains that don't fit in the queue are dropped
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "slow-query-explain-" + clientName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.explainExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Client used to run the explain commands, the listener is created before the client.
+     * @param mongoClient Client that sends the commands
+     */
+    public void setMongoClient(MongoClient mongoClient) {
+        this.mongoClient = mongoClient;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (QUERY_COMMANDS.contains(event.getCommandName()))
+            running.put(event.getRequestId(), event.getCommand().clone());
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        BsonDocument command = running.remove(event.getRequestId());
+        long elapsed = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        if (command == null || elapsed < thresholdNanos)
+            return;
+        String commandName = event.getCommandName();
+        String database = command.containsKey("$db") ? command.getString("$db").getValue() : null;
+        log.warn("Slow query -- " + clientName + " -- " + commandName + " took " + TimeUnit.NANOSECONDS.toMillis(elapsed)
+                + " ms -- " + truncate(queryPart(command).toJson()));
+        if (explain && database != null)
+            explainLater(database, commandName, command);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        running.remove(event.getRequestId());
+    }
+
+    private void explainLater(String database, String commandName, BsonDocument command) {
+        BsonDocument query = queryPart(command);
+        String collection = command.isString(commandName) ? command.getString(commandName).getValue() : "";
+        String shapeKey = collection + "|" + QueryShape.commandShape(commandName, query);
+        if (explainedShapes.get(shapeKey) != null)
+            return;
+        explainedShapes.put(shapeKey, Boolean.TRUE);
+        try {
+            explainExecutor.execute(() -> explain(database, commandName, query));
+        } catch (RejectedExecutionException e) {
+            log.debug("Explain queue is full, slow query not explained -- " + shapeKey);
+        }
+    }
+
+    private void explain(String database, String commandName, BsonDocument query) {
+        MongoClient client = mongoClient;
+        if (client == null)
+            return;
+        try {
+            Document result = client.getDatabase(database).runCommand(new BsonDocument("explain", query)
+                    .append("verbosity", new BsonString("executionStats")));
+            ExplainSummary summary = ExplainSummary.of(result);
+            if (summary == null) {
+                log.info("Slow query explain without plan -- " + clientName + " -- " + truncate(query.toJson()));
+            } else if (summary.isInefficient(maxExaminedRatio)) {
+                log.warn("Slow query needs an index -- " + clientName + " -- " + commandName
+                        + (summary.isCollectionScan() ? " -- COLLSCAN" : "")
+                        + " -- examined/returned: " + String.format("%.1f", summary.getExaminedRatio())
+                        + " -- " + summary + " -- " + truncate(query.toJson()));
+            } else {
+                log.info("Slow query plan -- " + clientName + " -- " + commandName + " -- " + summary
+                        + " -- " + truncate(query.toJson()));
+            }
+        } catch (RuntimeException e) {
+            log.error("Error explaining the slow query -- " + truncate(query.toJson()) + " -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * The command without the session, cluster time and read preference fields added by the driver.
+     */
+    private static BsonDocument queryPart(BsonDocument command) {
+        BsonDocument query = new BsonDocument();
+        command.forEach((key, value) -> {
+            if (!key.startsWith("$") && !"lsid".equals(key) && !"txnNumber".equals(key))
+                query.append(key, value);
+        });
+        return query;
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_LOGGED_COMMAND_LENGTH ? text : text.substring(0, MAX_LOGGED_COMMAND_LENGTH) + "...";
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.ebi.pride.mongodb.molecules.model.counts;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Builder;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+
+import java.util.Date;
+
+/**
+ * Number of proteins, peptides, PSMs and distinct peptide sequences of a project (assayAccession is null) or of one
+ * assay of a project. The counts are incremented by the ingest methods of the molecules service and recomputed from
+ * the molecule collections when they were never recomputed or when the distinct sequences are stale.
+ *
+ * @author ypriverol
+ */
+@Data
+@Builder
+@Document(collection = PrideArchiveField.PRIDE_MOLECULE_COUNTS_COLLECTION_NAME)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PrideMongoMoleculeCounts implements PrideArchiveField {
+
+    /** projectAccession for the project counts, projectAccession:assayAccession for the assay counts **/
+    @Id
+    private String id;
+
+    @Indexed(name = EXTERNAL_PROJECT_ACCESSION)
+    @Field(EXTERNAL_PROJECT_ACCESSION)
+    private String projectAccession;
+
+    @Indexed(name = PROTEIN_ASSAY_ACCESSION, sparse = true)
+    @Field(PROTEIN_ASSAY_ACCESSION)
+    private String assayAccession;
+
+    @Field(COUNT_PROTEINS)
+    private long proteins;
+
+    @Field(COUNT_PEPTIDES)
+    private long peptides;
+
+    @Field(COUNT_PSMS)
+    private long psms;
+
+    @Field(COUNT_DISTINCT_PEPTIDE_SEQUENCES)
+    private long distinctPeptideSequences;
+
+    /** New peptides were added after the distinct sequences were computed **/
+    @Field(COUNT_DISTINCT_SEQUENCES_STALE)
+    private Boolean distinctSequencesStale;
+
+    @Field(COUNT_RECOMPUTED_DATE)
+    private Date recomputedDate;
+
+    @Field(COUNT_UPDATED_DATE)
+    private Date updatedDate;
+
+    /** Incremented by every write of the counters, a recompute only replaces the counts it read **/
+    @Field(COUNT_VERSION)
+    private Long countVersion;
+
+    /**
+     * Identifier of the counts of a project or of an assay.
+     * @param projectAccession Project accession
+     * @param assayAccession Assay accession, null for the counts of the project
+     * @return Identifier
+     */
+    public static String id(String projectAccession, String assayAccession) {
+        return (assayAccession == null) ? projectAccession : projectAccession + ":" + assayAccession;
+    }
+
+    /**
+     * The counts can be returned without recomputing them.
+     * @return true if the counts were recomputed and no peptide was added since then
+     */
+    public boolean isUpToDate() {
+        return recomputedDate != null && !Boolean.TRUE.equals(distinctSequencesStale);
+    }
+}
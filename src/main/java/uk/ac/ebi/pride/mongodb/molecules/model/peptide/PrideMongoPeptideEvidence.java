@@ -37,7 +37,10 @@ import java.util.stream.Collectors;
 @Data
 @Builder
 @Document(collection = PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME)
-@CompoundIndexes({@CompoundIndex(name = "compound_peptide_accession", def = "{'assayAccession' : 1, 'proteinAccession': 1, 'peptideAccession':1}", unique = true)})
+@CompoundIndexes({@CompoundIndex(name = "compound_peptide_accession", def = "{'assayAccession' : 1, 'proteinAccession': 1, 'peptideAccession':1}", unique = true),
+        @CompoundIndex(name = "peptide_project_id_index", def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '_id' : 1 }"),
+        @CompoundIndex(name = "peptide_project_valid_protein_index", def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '" + PrideArchiveField.IS_VALIDATED + "' : 1, '" + PrideArchiveField.PROTEIN_ACCESSION + "' : 1 }"),
+        @CompoundIndex(name = "peptide_project_valid_sequence_index", def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '" + PrideArchiveField.IS_VALIDATED + "' : 1, '" + PrideArchiveField.PEPTIDE_SEQUENCE + "' : 1 }")})
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class PrideMongoPeptideEvidence implements PrideArchiveField, PeptideSequenceProvider {
 
@@ -6,6 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -16,6 +17,8 @@ import java.util.Map;
 @Data
 @Builder
 @Document(collection = PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME)
+@CompoundIndex(name = "peptide_summary_sequence_protein_index", unique = true,
+        def = "{'" + PrideArchiveField.PEPTIDE_SEQUENCE + "' : 1, '" + PrideArchiveField.PROTEIN_ACCESSION + "' : 1 }")
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class PrideMongoPeptideSummary implements PrideArchiveField {
 
@@ -30,6 +33,7 @@ public class PrideMongoPeptideSummary implements PrideArchiveField {
     @Field(PrideArchiveField.PROTEIN_ACCESSION)
     private String proteinAccession;
 
+    @Indexed(name = EXTERNAL_PROJECT_ACCESSIONS)
     @Field(EXTERNAL_PROJECT_ACCESSIONS)
     private String[] projectAccessions;
 
@@ -42,6 +46,7 @@ public class PrideMongoPeptideSummary implements PrideArchiveField {
     @Field(BEST_USIS)
     private String[] bestUsis;
 
+    /** Sites of every modification accession of the PSMs **/
     @Field(PTMS_MAP)
     Map<String, String[]> ptmsMap;
 
@@ -0,0 +1,45 @@
+package uk.ac.ebi.pride.mongodb.molecules.model.peptide;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import org.springframework.data.mongodb.core.mapping.Field;
+import uk.ac.ebi.pride.archive.dataprovider.param.CvParamProvider;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+
+/**
+ * View of a {@link PrideMongoPeptideEvidence} for the list endpoints. Only these fields are read from the database,
+ * the PSM accessions, modifications and additional attributes are not included.
+ *
+ * @author ypriverol
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PridePeptideEvidenceView implements PrideArchiveField {
+
+    private String peptideAccession;
+
+    private String proteinAccession;
+
+    private String assayAccession;
+
+    private String projectAccession;
+
+    private String peptideSequence;
+
+    @Field(value = BEST_PSM_SCORE)
+    private CvParamProvider bestPSMScore;
+
+    @Field(value = IS_DECOY)
+    private Boolean isDecoy;
+
+    @Field(value = START_POSITION)
+    private Integer startPosition;
+
+    @Field(value = END_POSITION)
+    private Integer endPosition;
+
+    @Field(value = MISSED_CLEAVAGES)
+    private Integer missedCleavages;
+
+    private Boolean isValid;
+}
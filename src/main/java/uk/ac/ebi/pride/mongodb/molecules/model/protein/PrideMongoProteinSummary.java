@@ -0,0 +1,54 @@
+package uk.ac.ebi.pride.mongodb.molecules.model.protein;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Builder;
+import lombok.Data;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+
+/**
+ * Summary of a protein across all the projects, keyed by the UniProt or Ensembl accession mapped in the protein
+ * evidences. A protein evidence with both mappings is counted in the summary of both accessions.
+ *
+ * @author ypriverol
+ */
+@Data
+@Builder
+@Document(collection = PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PrideMongoProteinSummary implements PrideArchiveField {
+
+    @Id
+    @JsonIgnore
+    private ObjectId id;
+
+    /** UniProt or Ensembl mapped accession **/
+    @Indexed(name = PROTEIN_ACCESSION, unique = true)
+    @Field(PROTEIN_ACCESSION)
+    private String proteinAccession;
+
+    @Field(PROTEIN_DESCRIPTION)
+    private String proteinDescription;
+
+    @Indexed(name = EXTERNAL_PROJECT_ACCESSIONS)
+    @Field(EXTERNAL_PROJECT_ACCESSIONS)
+    private String[] projectAccessions;
+
+    @Field(ASSAYS_COUNT)
+    private Integer assaysCount;
+
+    @Indexed(name = PSMS_COUNT)
+    @Field(PSMS_COUNT)
+    private Integer psmsCount;
+
+    @Field(BEST_SEARCH_ENGINE_SCORE)
+    private Double bestSearchEngineScore;
+
+    @Field(MAX_SEQUENCE_COVERAGE)
+    private Double maxSequenceCoverage;
+}
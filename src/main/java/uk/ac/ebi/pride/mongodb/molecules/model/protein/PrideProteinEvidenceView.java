@@ -0,0 +1,41 @@
+package uk.ac.ebi.pride.mongodb.molecules.model.protein;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import uk.ac.ebi.pride.archive.dataprovider.param.CvParam;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+
+/**
+ * View of a {@link PrideMongoProteinEvidence} for the list endpoints. Only these fields are read from the database,
+ * the protein sequence, modifications, group members and additional attributes are not included.
+ *
+ * @author ypriverol
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PrideProteinEvidenceView implements PrideArchiveField {
+
+    private String reportedAccession;
+
+    private String assayAccession;
+
+    private String projectAccession;
+
+    private String uniprotMappedProteinAccession;
+
+    private String ensemblMappedProteinAccession;
+
+    private String proteinDescription;
+
+    private CvParam bestSearchEngineScore;
+
+    private Boolean isValid;
+
+    private boolean isDecoy;
+
+    private Integer numberPeptides;
+
+    private Integer numberPSMs;
+
+    private double sequenceCoverage;
+}
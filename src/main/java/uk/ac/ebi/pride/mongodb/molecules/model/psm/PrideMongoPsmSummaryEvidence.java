@@ -13,6 +13,8 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import uk.ac.ebi.pride.archive.dataprovider.param.CvParam;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.utils.PeptidoformModifications;
+import uk.ac.ebi.pride.mongodb.utils.SpectrumUsi;
 
 import java.util.Set;
 
@@ -24,11 +26,22 @@ import java.util.Set;
         unique = false,
         def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '" + PrideArchiveField.PROTEIN_ASSAY_ACCESSION +"' : 1, '" + PrideArchiveField.PEPTIDE_SEQUENCE + "' : 1 }"), @CompoundIndex(name = "project_inverse_psm", unique = false,
         def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : -1, '" + PrideArchiveField.PEPTIDE_SEQUENCE + "' : 1 }"
+), @CompoundIndex(name = "psm_project_id_index", unique = false,
+        def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '_id' : 1 }"
+), @CompoundIndex(name = "psm_project_usi_index", unique = false,
+        def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '" + PrideArchiveField.USI_INDEX + "' : 1, '" + PrideArchiveField.USI_INDEX_TYPE + "' : 1 }"
+), @CompoundIndex(name = "psm_project_peptidoform_index", unique = false,
+        def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '" + PrideArchiveField.PEPTIDOFORM + "' : 1 }"
+), @CompoundIndex(name = "psm_project_modification_index", unique = false,
+        def = "{'" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "' : 1, '" + PrideArchiveField.MODIFICATION_SITES + "' : 1 }"
 )
       })
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class PrideMongoPsmSummaryEvidence implements PrideArchiveField{
 
+    /** Version of the fields derived from the USI, it changes when a new derived field is added **/
+    public static final int CURRENT_USI_FIELDS_VERSION = 1;
+
     /** Generated accession **/
     @Id
     @Indexed(name = PrideArchiveField.ID)
@@ -78,5 +91,52 @@ public class PrideMongoPsmSummaryEvidence implements PrideArchiveField{
     @Field (value = PrideArchiveField.PSM_SUMMARY_FILE)
     private String fileName;
 
+    /** Collection (project) of the USI **/
+    @Field(value = PrideArchiveField.USI_COLLECTION)
+    private String usiCollection;
+
+    /** MS Run (file) of the USI **/
+    @Field(value = PrideArchiveField.USI_MS_RUN)
+    private String usiMsRun;
+
+    /** Index type of the USI (scan, index, nativeId) **/
+    @Field(value = PrideArchiveField.USI_INDEX_TYPE)
+    private String usiIndexType;
+
+    /** Index of the spectrum in the MS Run, e.g. the scan number **/
+    @Field(value = PrideArchiveField.USI_INDEX)
+    private String usiIndex;
+
+    /** Peptidoform of the USI interpretation **/
+    @Field(value = PrideArchiveField.PEPTIDOFORM)
+    private String peptidoform;
+
+    /** Modifications of the peptidoform, accession and accession@site (UNIMOD:21, UNIMOD:21@S) **/
+    @Field(value = PrideArchiveField.MODIFICATION_SITES)
+    private Set<String> modificationSites;
+
+    /** Version of the USI fields of the PSM, the PSMs without the current version are completed by the backfill **/
+    @Indexed(name = PrideArchiveField.USI_FIELDS_VERSION)
+    @Field(value = PrideArchiveField.USI_FIELDS_VERSION)
+    private Integer usiFieldsVersion;
+
+    /**
+     * Fill the USI components (collection, MS Run, index type, index, peptidoform) and the modification sites of the
+     * peptidoform from the USI of the PSM. The charge is only filled if the PSM doesn't have one.
+     */
+    public void populateUsiFields() {
+        usiFieldsVersion = CURRENT_USI_FIELDS_VERSION;
+        SpectrumUsi spectrumUsi = SpectrumUsi.parse(usi);
+        if (spectrumUsi == null)
+            return;
+        usiCollection = spectrumUsi.getCollection();
+        usiMsRun = spectrumUsi.getMsRun();
+        usiIndexType = spectrumUsi.getIndexType();
+        usiIndex = spectrumUsi.getIndex();
+        peptidoform = spectrumUsi.getPeptidoform();
+        modificationSites = PeptidoformModifications.modificationSites(peptidoform);
+        if (charge == null)
+            charge = spectrumUsi.getCharge();
+    }
 
 }
@@ -0,0 +1,13 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.counts;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import uk.ac.ebi.pride.mongodb.molecules.model.counts.PrideMongoMoleculeCounts;
+
+import java.util.Optional;
+
+@Repository
+public interface PrideMoleculeCountsMongoRepository extends MongoRepository<PrideMongoMoleculeCounts, String>, PrideMoleculeCountsMongoRepositoryCustom {
+
+    Optional<PrideMongoMoleculeCounts> findByAssayAccession(String assayAccession);
+}
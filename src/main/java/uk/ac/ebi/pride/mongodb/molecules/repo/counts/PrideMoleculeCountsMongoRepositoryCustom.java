@@ -0,0 +1,43 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.counts;
+
+import uk.ac.ebi.pride.mongodb.molecules.model.counts.PrideMongoMoleculeCounts;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @author ypriverol
+ */
+public interface PrideMoleculeCountsMongoRepositoryCustom {
+
+    /**
+     * Increment a counter of a project and of one of its assays.
+     * @param projectAccession Project accession
+     * @param assayAccession Assay accession, null to only increment the project
+     * @param counter Counter (proteins, peptides or psms)
+     * @param count Number to add
+     */
+    void increment(String projectAccession, String assayAccession, String counter, long count);
+
+    /**
+     * Set a counter to 0 in all the projects and assays, after all the documents of a collection are deleted.
+     * @param counter Counter (proteins, peptides or psms)
+     */
+    void resetCounter(String counter);
+
+    /**
+     * Recompute all the counts of a project and its assays from the molecule collections. The counts are only replaced
+     * if they were not incremented while they were recomputed, otherwise the recompute is retried.
+     * @param projectAccession Project accession
+     * @return Counts of the project and of its assays
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the counts keep changing during the retries
+     */
+    List<PrideMongoMoleculeCounts> recompute(String projectAccession);
+
+    /**
+     * Project of an assay, from the molecules of the assay.
+     * @param assayAccession Assay accession
+     * @return Project accession
+     */
+    Optional<String> findProjectAccessionByAssay(String assayAccession);
+}
@@ -0,0 +1,237 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.counts;
+
+import com.mongodb.bulk.BulkWriteError;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.counts.PrideMongoMoleculeCounts;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * @author ypriverol
+ */
+@Slf4j
+public class PrideMoleculeCountsMongoRepositoryImpl implements PrideMoleculeCountsMongoRepositoryCustom {
+
+    private static final String COUNT = "count";
+
+    /** Number of times a recompute is retried when the counts are incremented meanwhile **/
+    public static final int MAX_RECOMPUTE_ATTEMPTS = 3;
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    @Qualifier("moleculesMongoTemplate")
+    public void setMongoTemplate(MongoTemplate template) {
+        this.mongoTemplate = template;
+    }
+
+    @Override
+    public void increment(String projectAccession, String assayAccession, String counter, long count) {
+        if (projectAccession == null || count == 0)
+            return;
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoMoleculeCounts.class);
+        bulkOperations.upsert(byId(projectAccession, null), incrementUpdate(projectAccession, null, counter, count));
+        if (assayAccession != null)
+            bulkOperations.upsert(byId(projectAccession, assayAccession), incrementUpdate(projectAccession, assayAccession, counter, count));
+        bulkOperations.execute();
+    }
+
+    private static Query byId(String projectAccession, String assayAccession) {
+        return Query.query(Criteria.where("_id").is(PrideMongoMoleculeCounts.id(projectAccession, assayAccession)));
+    }
+
+    private static Update incrementUpdate(String projectAccession, String assayAccession, String counter, long count) {
+        Update update = new Update().inc(counter, count).inc(PrideArchiveField.COUNT_VERSION, 1)
+                .setOnInsert(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, projectAccession)
+                .currentDate(PrideArchiveField.COUNT_UPDATED_DATE);
+        if (assayAccession != null)
+            update.setOnInsert(PrideArchiveField.PROTEIN_ASSAY_ACCESSION, assayAccession);
+        // The new peptides may add new sequences, the distinct sequences can only be recomputed
+        if (PrideArchiveField.COUNT_PEPTIDES.equals(counter))
+            update.set(PrideArchiveField.COUNT_DISTINCT_SEQUENCES_STALE, true);
+        return update;
+    }
+
+    @Override
+    public void resetCounter(String counter) {
+        Update update = new Update().set(counter, 0L).inc(PrideArchiveField.COUNT_VERSION, 1)
+                .currentDate(PrideArchiveField.COUNT_UPDATED_DATE);
+        if (PrideArchiveField.COUNT_PEPTIDES.equals(counter))
+            update.set(PrideArchiveField.COUNT_DISTINCT_PEPTIDE_SEQUENCES, 0L).set(PrideArchiveField.COUNT_DISTINCT_SEQUENCES_STALE, false);
+        mongoTemplate.updateMulti(new Query(), update, PrideMongoMoleculeCounts.class);
+    }
+
+    @Override
+    public List<PrideMongoMoleculeCounts> recompute(String projectAccession) {
+        for (int attempt = 1; ; attempt++) {
+            Optional<List<PrideMongoMoleculeCounts>> counts = recomputeOnce(projectAccession);
+            if (counts.isPresent())
+                return counts.get();
+            if (attempt == MAX_RECOMPUTE_ATTEMPTS)
+                throw new OptimisticLockingFailureException("The molecule counts of the project " + projectAccession
+                        + " were incremented during " + attempt + " recomputes");
+            log.info("Molecule counts incremented during the recompute, recomputing again -- " + projectAccession);
+        }
+    }
+
+    /**
+     * Recompute the counts and replace the counts with the version read before the aggregations. The upsert of a
+     * document incremented meanwhile doesn't match its version and fails with a duplicate key, the recompute is then
+     * retried, the other documents are replaced.
+     * @return Counts of the project and of its assays, empty if some counts were incremented during the recompute
+     */
+    private Optional<List<PrideMongoMoleculeCounts>> recomputeOnce(String projectAccession) {
+        String collectionName = mongoTemplate.getCollectionName(PrideMongoMoleculeCounts.class);
+        Query current = Query.query(Criteria.where(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession));
+        current.fields().include("_id").include(PrideArchiveField.COUNT_VERSION);
+        Map<String, Object> versions = new LinkedHashMap<>();
+        for (Document document : mongoTemplate.find(current, Document.class, collectionName))
+            versions.put(document.get("_id").toString(), document.get(PrideArchiveField.COUNT_VERSION));
+
+        Date now = new Date();
+        Map<String, PrideMongoMoleculeCounts> counts = new LinkedHashMap<>();
+        counts(counts, projectAccession, null, now);
+
+        Document match = new Document("$match", new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, projectAccession));
+        Document countByAssay = new Document("$group", new Document("_id", "$" + PrideArchiveField.PROTEIN_ASSAY_ACCESSION)
+                .append(COUNT, new Document("$sum", 1)));
+
+        for (Document group : aggregate(PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME, match, countByAssay))
+            addCount(counts, projectAccession, group, PrideArchiveField.COUNT_PROTEINS, now);
+        for (Document group : aggregate(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME, match, countByAssay))
+            addCount(counts, projectAccession, group, PrideArchiveField.COUNT_PSMS, now);
+
+        // Peptides by assay, distinct sequences by assay and distinct sequences of the project in one pass
+        Document facet = new Document("$facet", new Document()
+                .append(PrideArchiveField.COUNT_PEPTIDES, Collections.singletonList(countByAssay))
+                .append("sequencesByAssay", Arrays.asList(
+                        new Document("$group", new Document("_id", new Document("assay", "$" + PrideArchiveField.PROTEIN_ASSAY_ACCESSION)
+                                .append("sequence", "$" + PrideArchiveField.PEPTIDE_SEQUENCE))),
+                        new Document("$group", new Document("_id", "$_id.assay").append(COUNT, new Document("$sum", 1)))))
+                .append("sequences", Arrays.asList(
+                        new Document("$group", new Document("_id", "$" + PrideArchiveField.PEPTIDE_SEQUENCE)),
+                        new Document("$count", COUNT))));
+        for (Document result : aggregate(PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME, match, facet)) {
+            for (Document group : result.getList(PrideArchiveField.COUNT_PEPTIDES, Document.class))
+                addCount(counts, projectAccession, group, PrideArchiveField.COUNT_PEPTIDES, now);
+            for (Document group : result.getList("sequencesByAssay", Document.class)) {
+                if (group.get("_id") != null)
+                    counts(counts, projectAccession, group.get("_id").toString(), now)
+                            .setDistinctPeptideSequences(((Number) group.get(COUNT)).longValue());
+            }
+            for (Document total : result.getList("sequences", Document.class))
+                counts.get(PrideMongoMoleculeCounts.id(projectAccession, null))
+                        .setDistinctPeptideSequences(((Number) total.get(COUNT)).longValue());
+        }
+
+        // Replace the counts of the project, the assays that don't exist anymore are removed
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoMoleculeCounts.class);
+        versions.forEach((id, version) -> {
+            if (!counts.containsKey(id))
+                bulkOperations.remove(byVersion(id, version));
+        });
+        for (PrideMongoMoleculeCounts projectCounts : counts.values()) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(projectCounts, document);
+            bulkOperations.upsert(byVersion(projectCounts.getId(), versions.get(projectCounts.getId())),
+                    PrideMongoUtils.setAllFields(document).inc(PrideArchiveField.COUNT_VERSION, 1));
+        }
+        try {
+            bulkOperations.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != PrideMongoUtils.DUPLICATE_KEY_ERROR_CODE)
+                    throw e;
+            }
+            return Optional.empty();
+        }
+        log.info("Molecule counts recomputed -- " + projectAccession + " -- assays: " + (counts.size() - 1));
+        return Optional.of(new ArrayList<>(counts.values()));
+    }
+
+    /**
+     * Counts with the version read before the recompute, a null version matches the counts without version and the
+     * counts that didn't exist.
+     */
+    private static Query byVersion(String id, Object version) {
+        return Query.query(Criteria.where("_id").is(id).and(PrideArchiveField.COUNT_VERSION).is(version));
+    }
+
+    private List<Document> aggregate(String collectionName, Document... pipeline) {
+        return mongoTemplate.getCollection(collectionName).aggregate(Arrays.asList(pipeline))
+                .allowDiskUse(true).into(new ArrayList<>());
+    }
+
+    /**
+     * Add the count of an assay to the assay and to the project, the documents without assay only count for the project.
+     */
+    private static void addCount(Map<String, PrideMongoMoleculeCounts> counts, String projectAccession, Document group,
+                                 String counter, Date now) {
+        long count = ((Number) group.get(COUNT)).longValue();
+        increment(counts(counts, projectAccession, null, now), counter, count);
+        if (group.get("_id") != null)
+            increment(counts(counts, projectAccession, group.get("_id").toString(), now), counter, count);
+    }
+
+    private static void increment(PrideMongoMoleculeCounts counts, String counter, long count) {
+        switch (counter) {
+            case PrideArchiveField.COUNT_PROTEINS:
+                counts.setProteins(counts.getProteins() + count);
+                break;
+            case PrideArchiveField.COUNT_PEPTIDES:
+                counts.setPeptides(counts.getPeptides() + count);
+                break;
+            case PrideArchiveField.COUNT_PSMS:
+                counts.setPsms(counts.getPsms() + count);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown molecule counter -- " + counter);
+        }
+    }
+
+    private static PrideMongoMoleculeCounts counts(Map<String, PrideMongoMoleculeCounts> counts, String projectAccession,
+                                                   String assayAccession, Date now) {
+        return counts.computeIfAbsent(PrideMongoMoleculeCounts.id(projectAccession, assayAccession),
+                id -> PrideMongoMoleculeCounts.builder()
+                        .id(id)
+                        .projectAccession(projectAccession)
+                        .assayAccession(assayAccession)
+                        .distinctSequencesStale(false)
+                        .recomputedDate(now)
+                        .updatedDate(now)
+                        .build());
+    }
+
+    @Override
+    public Optional<String> findProjectAccessionByAssay(String assayAccession) {
+        for (String collectionName : Arrays.asList(PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME,
+                PrideArchiveField.PRIDE_PSM_COLLECTION_NAME, PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME)) {
+            Document molecule = mongoTemplate.getCollection(collectionName)
+                    .find(new Document(PrideArchiveField.PROTEIN_ASSAY_ACCESSION, assayAccession))
+                    .projection(new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, 1))
+                    .first();
+            if (molecule != null && molecule.getString(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION) != null)
+                return Optional.of(molecule.getString(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION));
+        }
+        return Optional.empty();
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
 
 import java.util.Collection;
 import java.util.List;
@@ -23,6 +24,26 @@ public interface PridePeptideEvidenceMongoRepositoryCustom {
      */
     Page<PrideMongoPeptideEvidence> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page) ;
 
+    /**
+     * Filter By Attributes returning a projection of the documents, only the fields of the view are read.
+     * @param filters Attributes in {@link Triple} structure
+     * @param page Pageable
+     * @param view Class of the view (DTO) with the fields to read
+     * @return Page of views
+     */
+    <T> Page<T> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page, Class<T> view);
+
+    /**
+     * Filter By Attributes using keyset pagination, the cost of a page doesn't depend on how deep the page is.
+     *
+     * @param filters           Attributes in {@link Triple} structure
+     * @param sortField         Field used to sort the results before the _id, null to sort only by _id
+     * @param continuationToken Token returned by the previous page, null for the first page
+     * @param size              Number of elements in the page
+     * @return {@link KeysetPage} of {@link PrideMongoPeptideEvidence}
+     */
+    KeysetPage<PrideMongoPeptideEvidence> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size);
+
     /**
      * Find by A list of Accessions
      * @param accessions Accessions of the PSMs
@@ -1,5 +1,6 @@
 package uk.ac.ebi.pride.mongodb.molecules.repo.peptide;
 
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
@@ -7,19 +8,24 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.data.util.CloseableIterator;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPagination;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * @author ypriverol
@@ -47,12 +53,34 @@ public class PridePeptideEvidenceMongoRepositoryImpl implements PridePeptideEvid
         this.mongoOperations = mongoTemplate;
     }
 
+    private MongoCountCache countCache;
+
+    @Autowired
+    @Qualifier("moleculesCountCache")
+    public void setCountCache(MongoCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     @Override
     public Page<PrideMongoPeptideEvidence> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page) {
         Query queryMongo = PrideMongoUtils.buildQuery(filters);
         queryMongo.with(page);
             List<PrideMongoPeptideEvidence> files =  mongoTemplate.find(queryMongo, PrideMongoPeptideEvidence.class);
-        return PageableExecutionUtils.getPage(files, page, () -> mongoOperations.count(queryMongo, PrideMongoPeptideEvidence.class));
+        return PageableExecutionUtils.getPage(files, page, () -> countCache.count(mongoOperations, queryMongo, PrideMongoPeptideEvidence.class));
+    }
+
+    @Override
+    public <T> Page<T> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page, Class<T> view) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        queryMongo.with(page);
+        List<T> peptides = mongoTemplate.query(PrideMongoPeptideEvidence.class).as(view).matching(queryMongo).all();
+        return PageableExecutionUtils.getPage(peptides, page, () -> countCache.count(mongoOperations, queryMongo, PrideMongoPeptideEvidence.class));
+    }
+
+    @Override
+    public KeysetPage<PrideMongoPeptideEvidence> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        return KeysetPagination.find(mongoTemplate, queryMongo, PrideMongoPeptideEvidence.class, sortField, continuationToken, size);
     }
 
     @Override
@@ -71,42 +99,46 @@ public class PridePeptideEvidenceMongoRepositoryImpl implements PridePeptideEvid
         Query queryMongo = new Query().addCriteria(criteria);
         queryMongo.with(page);
         List<PrideMongoPeptideEvidence> files =  mongoTemplate.find(queryMongo, PrideMongoPeptideEvidence.class);
-        return PageableExecutionUtils.getPage(files, page, () -> mongoOperations.count(queryMongo, PrideMongoPeptideEvidence.class));
+        return PageableExecutionUtils.getPage(files, page, () -> countCache.count(mongoOperations, queryMongo, PrideMongoPeptideEvidence.class));
 
     }
 
     @Override
     public Set<String> findProteinAccessionByProjectAccessions(String projectAccession) {
-        // { "$and" : [{ "projectAccession" : "PRD000016" }, { "$or" : [{ "isValid" : true }, { "additionalAttributes" : { "$elemMatch" : { "accession" : "PRIDE:0000511", "value" : "true" } } }] }] }
-        Criteria criteria = new Criteria().andOperator(
-                Criteria.where(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession)
-                ,new Criteria().orOperator(validatedCriteria, additionalAttributesCriteria)
-        );
-
-        Query query = Query.query(criteria);
-        String proteinAccessionFld = PrideArchiveField.PROTEIN_ACCESSION;
-        query.fields().include(proteinAccessionFld).exclude("_id");
-
-        List<Map> strings = mongoTemplate.find(query, Map.class, PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME);
-
-        return strings.stream().map(s -> (String)s.get(proteinAccessionFld)).collect(Collectors.toSet());
+        return findDistinctValidatedValues(projectAccession, PrideArchiveField.PROTEIN_ACCESSION);
     }
 
     @Override
     public Set<String> findPeptideSequenceByProjectAccessions(String projectAccession) {
-        // { "$and" : [{ "projectAccession" : "PRD000016" }, { "$or" : [{ "isValid" : true }, { "additionalAttributes" : { "$elemMatch" : { "accession" : "PRIDE:0000511", "value" : "true" } } }] }] }
-        Criteria criteria = new Criteria().andOperator(
-                Criteria.where(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession)
-                ,new Criteria().orOperator(validatedCriteria, additionalAttributesCriteria)
-        );
-
-        Query query = Query.query(criteria);
-        String peptideSequenceFld = PrideArchiveField.PEPTIDE_SEQUENCE;
-        query.fields().include(peptideSequenceFld).exclude("_id");
+        return findDistinctValidatedValues(projectAccession, PrideArchiveField.PEPTIDE_SEQUENCE);
+    }
 
-        List<Map> strings = mongoTemplate.find(query, Map.class, PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME);
+    /**
+     * Distinct values of a field in the validated peptides of a project, a peptide is validated if isValid is true or
+     * if it has the PRIDE:0000511 attribute. The values are grouped in the server and read with a cursor. The $or of
+     * both conditions is split in two aggregations: the isValid one is covered by the index (projectAccession, isValid,
+     * field) and doesn't read the documents, the second one only reads the documents that are not valid.
+     */
+    private Set<String> findDistinctValidatedValues(String projectAccession, String field) {
+        Set<String> values = new HashSet<>();
+        addDistinctValues(values, field, Criteria.where(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession)
+                .and(PrideArchiveField.IS_VALIDATED).is(true));
+        addDistinctValues(values, field, new Criteria().andOperator(
+                Criteria.where(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession).and(PrideArchiveField.IS_VALIDATED).ne(true),
+                additionalAttributesCriteria));
+        return values;
+    }
 
-        return strings.stream().map(s -> (String)s.get(peptideSequenceFld)).collect(Collectors.toSet());
+    private void addDistinctValues(Set<String> values, String field, Criteria criteria) {
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.match(criteria), Aggregation.group(field))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).cursorBatchSize(PrideMongoUtils.DEFAULT_CURSOR_BATCH_SIZE).build());
+        try (CloseableIterator<Document> groups = mongoTemplate.aggregateStream(aggregation, PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME, Document.class)) {
+            groups.forEachRemaining(group -> {
+                Object value = group.get("_id");
+                if (value != null)
+                    values.add(value.toString());
+            });
+        }
     }
 
 }
@@ -8,7 +8,7 @@ import org.springframework.stereotype.Repository;
 import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideSummary;
 
 @Repository
-public interface PridePeptideSummaryMongoRepository extends MongoRepository<PrideMongoPeptideSummary, ObjectId> {
+public interface PridePeptideSummaryMongoRepository extends MongoRepository<PrideMongoPeptideSummary, ObjectId>, PridePeptideSummaryMongoRepositoryCustom {
 
     Page<PrideMongoPeptideSummary> findByPeptideSequence(String peptideSequence, Pageable pageable);
     Page<PrideMongoPeptideSummary> findByPeptideSequenceAndProteinAccession(String peptideSequence, String proteinAccession, Pageable pageable);
@@ -0,0 +1,18 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.peptide;
+
+import java.util.Collection;
+
+/**
+ * @author ypriverol
+ */
+public interface PridePeptideSummaryMongoRepositoryCustom {
+
+    /**
+     * Rebuild the peptide summaries of the peptide sequences of the projects from the PSMs and peptide evidences. Only
+     * the summaries of the sequences that are (or were) in the projects are recomputed.
+     *
+     * @param projectAccessions Projects whose PSMs changed
+     * @return Number of peptide sequences refreshed
+     */
+    long refreshPeptideSummaries(Collection<String> projectAccessions);
+}
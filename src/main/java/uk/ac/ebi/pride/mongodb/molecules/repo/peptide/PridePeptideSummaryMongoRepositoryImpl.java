@@ -0,0 +1,202 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.peptide;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideSummary;
+import uk.ac.ebi.pride.mongodb.utils.PeptidoformModifications;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Build the {@link PrideMongoPeptideSummary} of a group of peptide sequences with one aggregation on the PSMs that
+ * writes the summaries with $merge (MongoDB 4.2). The PSMs of every sequence are grouped by project: the number of PSMs,
+ * the USI of the first PSM of the project (validated PSMs first) and the modifications. The PSMs don't have proteins or
+ * scores, the proteins and the best score of the sequence are read from the peptide evidences with a $lookup.
+ *
+ * @author ypriverol
+ */
+@Slf4j
+public class PridePeptideSummaryMongoRepositoryImpl implements PridePeptideSummaryMongoRepositoryCustom {
+
+    /** Number of peptide sequences refreshed by each aggregation **/
+    public static final int DEFAULT_SEQUENCE_BATCH_SIZE = 1000;
+
+    /** Maximum number of USIs of a summary, one by project **/
+    public static final int DEFAULT_MAX_BEST_USIS = 10;
+
+    /** Unique index of the summaries, the $merge stage needs it on its "on" fields **/
+    public static final String SUMMARY_INDEX_NAME = "peptide_summary_sequence_protein_index";
+
+    private static final String PSMS = "psms";
+    private static final String USIS = "usis";
+    private static final String SITES = "sites";
+    private static final String EVIDENCE = "evidence";
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    @Qualifier("moleculesMongoTemplate")
+    public void setMongoTemplate(MongoTemplate template) {
+        this.mongoTemplate = template;
+    }
+
+    @Override
+    public long refreshPeptideSummaries(Collection<String> projectAccessions) {
+        List<String> projects = new ArrayList<>(new LinkedHashSet<>(projectAccessions));
+        if (projects.isEmpty())
+            return 0;
+        PrideMongoUtils.ensureUniqueIndex(mongoTemplate, PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME, SUMMARY_INDEX_NAME,
+                PrideArchiveField.PEPTIDE_SEQUENCE, PrideArchiveField.PROTEIN_ACCESSION);
+
+        // The sequences of the PSMs of the projects and the sequences whose summaries contain the projects, the
+        // projects may not have PSMs of these sequences anymore
+        Set<String> sequences = new LinkedHashSet<>();
+        addDistinctValues(sequences, PrideArchiveField.PRIDE_PSM_COLLECTION_NAME, PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, projects);
+        addDistinctValues(sequences, PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME, PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, projects);
+
+        long refreshed = 0;
+        List<String> batch = new ArrayList<>(DEFAULT_SEQUENCE_BATCH_SIZE);
+        for (String sequence : sequences) {
+            batch.add(sequence);
+            if (batch.size() == DEFAULT_SEQUENCE_BATCH_SIZE) {
+                refreshed += refresh(projects, batch);
+                batch.clear();
+                log.info("Peptide summaries refreshed -- " + projects + " -- sequences: " + refreshed + " of " + sequences.size());
+            }
+        }
+        if (!batch.isEmpty())
+            refreshed += refresh(projects, batch);
+        log.info("Peptide summaries refreshed -- " + projects + " -- sequences: " + refreshed);
+        return refreshed;
+    }
+
+    private void addDistinctValues(Set<String> values, String collectionName, String projectField, List<String> projects) {
+        List<Document> pipeline = Arrays.asList(
+                new Document("$match", new Document(projectField, new Document("$in", projects))),
+                new Document("$group", new Document("_id", "$" + PrideArchiveField.PEPTIDE_SEQUENCE)));
+        for (Document group : mongoTemplate.getCollection(collectionName).aggregate(pipeline).allowDiskUse(true)
+                .batchSize(PrideMongoUtils.DEFAULT_CURSOR_BATCH_SIZE)) {
+            if (group.get("_id") != null)
+                values.add(group.get("_id").toString());
+        }
+    }
+
+    /**
+     * Remove the projects from the summaries of the sequences, merge the recomputed summaries and delete the summaries
+     * without projects.
+     */
+    private int refresh(List<String> projects, List<String> sequences) {
+        mongoTemplate.updateMulti(Query.query(Criteria.where(PrideArchiveField.PEPTIDE_SEQUENCE).in(sequences)
+                        .and(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).in(projects)),
+                new Update().pullAll(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, projects.toArray()), PrideMongoPeptideSummary.class);
+        mongoTemplate.getCollection(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME).aggregate(summaryPipeline(sequences))
+                .allowDiskUse(true).toCollection();
+        mongoTemplate.remove(Query.query(Criteria.where(PrideArchiveField.PEPTIDE_SEQUENCE).in(sequences)
+                .and(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).size(0)), PrideMongoPeptideSummary.class);
+        return sequences.size();
+    }
+
+    /**
+     * Aggregation that computes the summaries of the sequences and merges them on (peptideSequence, proteinAccession).
+     * The sequences without peptide evidences have no protein and no summary, $merge can't match a null protein.
+     */
+    static List<Document> summaryPipeline(List<String> sequences) {
+        List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$match", new Document(PrideArchiveField.PEPTIDE_SEQUENCE, new Document("$in", sequences))
+                .append(PrideArchiveField.IS_DECOY, new Document("$ne", true))));
+        pipeline.add(new Document("$sort", new Document(PrideArchiveField.PEPTIDE_SEQUENCE, 1)
+                .append(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, 1)
+                .append(PrideArchiveField.IS_VALIDATED, -1)));
+
+        // PSMs by sequence and project, then by sequence
+        pipeline.add(new Document("$group", new Document("_id", new Document("sequence", "$" + PrideArchiveField.PEPTIDE_SEQUENCE)
+                .append("project", "$" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION))
+                .append(PSMS, new Document("$sum", 1))
+                .append(USIS, new Document("$first", "$" + PrideArchiveField.USI))
+                .append(SITES, new Document("$addToSet", "$" + PrideArchiveField.MODIFICATION_SITES))));
+        pipeline.add(new Document("$group", new Document("_id", "$_id.sequence")
+                .append(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, new Document("$push", "$_id.project"))
+                .append(PSMS, new Document("$sum", "$" + PSMS))
+                .append(USIS, new Document("$push", "$" + USIS))
+                .append(SITES, new Document("$push", "$" + SITES))));
+        pipeline.add(new Document("$project", new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, 1)
+                .append(PSMS, 1)
+                .append(USIS, new Document("$slice", Arrays.asList("$" + USIS, DEFAULT_MAX_BEST_USIS)))
+                .append(SITES, union("$" + SITES, union("$$this", new Document("$ifNull", Arrays.asList("$$this", Collections.emptyList())))))));
+
+        // Proteins and best score of the sequence from the peptide evidences, $lookup + $unwind is executed as one stage
+        pipeline.add(new Document("$lookup", new Document("from", PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME)
+                .append("localField", "_id")
+                .append("foreignField", PrideArchiveField.PEPTIDE_SEQUENCE)
+                .append("as", EVIDENCE)));
+        pipeline.add(new Document("$unwind", "$" + EVIDENCE));
+        pipeline.add(new Document("$group", new Document("_id", new Document("sequence", "$_id")
+                .append("protein", "$" + EVIDENCE + "." + PrideArchiveField.PROTEIN_ACCESSION))
+                .append(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, new Document("$first", "$" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS))
+                .append(PSMS, new Document("$first", "$" + PSMS))
+                .append(USIS, new Document("$first", "$" + USIS))
+                .append(SITES, new Document("$first", "$" + SITES))
+                .append("score", new Document("$max", new Document("$convert", new Document("input", "$" + EVIDENCE + "." + PrideArchiveField.BEST_PSM_SCORE + ".value")
+                        .append("to", "double").append("onError", null).append("onNull", null))))));
+
+        pipeline.add(new Document("$project", new Document("_id", 0)
+                .append(PrideArchiveField.PEPTIDE_SEQUENCE, "$_id.sequence")
+                .append(PrideArchiveField.PROTEIN_ACCESSION, "$_id.protein")
+                .append(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, 1)
+                .append(PrideArchiveField.BEST_SEARCH_ENGINE_SCORE, "$score")
+                .append(PrideArchiveField.PSMS_COUNT, "$" + PSMS)
+                .append(PrideArchiveField.BEST_USIS, "$" + USIS)
+                .append(PrideArchiveField.PTMS_MAP, ptmsMap("$" + SITES))));
+        pipeline.add(new Document("$match", new Document(PrideArchiveField.PROTEIN_ACCESSION, new Document("$exists", true).append("$ne", null))));
+        pipeline.add(new Document("$merge", new Document("into", PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME)
+                .append("on", Arrays.asList(PrideArchiveField.PEPTIDE_SEQUENCE, PrideArchiveField.PROTEIN_ACCESSION))
+                .append("whenMatched", "replace")
+                .append("whenNotMatched", "insert")));
+        return pipeline;
+    }
+
+    /**
+     * Union of the arrays of an array, the element expression is evaluated for every element ($$this).
+     */
+    private static Document union(Object input, Object element) {
+        return new Document("$reduce", new Document("input", input)
+                .append("initialValue", Collections.emptyList())
+                .append("in", new Document("$setUnion", Arrays.asList("$$value", element))));
+    }
+
+    /**
+     * The modification sites are stored as accession and accession@site, the map contains the sites of every
+     * modification accession, e.g. {UNIMOD:21: [S, T]}.
+     */
+    private static Document ptmsMap(String sites) {
+        Document isAccession = new Document("$eq", Arrays.asList(new Document("$indexOfCP", Arrays.asList("$$site", PeptidoformModifications.SITE_SEPARATOR)), -1));
+        Document accessionPrefix = new Document("$concat", Arrays.asList("$$accession", PeptidoformModifications.SITE_SEPARATOR));
+        Document isSiteOfAccession = new Document("$eq", Arrays.asList(new Document("$indexOfCP", Arrays.asList("$$site", accessionPrefix)), 0));
+        Document site = new Document("$substrCP", Arrays.asList("$$site", new Document("$strLenCP", accessionPrefix),
+                new Document("$strLenCP", "$$site")));
+        return new Document("$arrayToObject", new Document("$map", new Document("input", filter(sites, isAccession))
+                .append("as", "accession")
+                .append("in", new Document("k", "$$accession")
+                        .append("v", new Document("$map", new Document("input", filter(sites, isSiteOfAccession))
+                                .append("as", "site")
+                                .append("in", site))))));
+    }
+
+    private static Document filter(String input, Document condition) {
+        return new Document("$filter", new Document("input", input).append("as", "site").append("cond", condition));
+    }
+}
@@ -13,6 +13,9 @@ import org.springframework.data.repository.support.PageableExecutionUtils;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinEvidence;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPagination;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 import java.util.Collection;
 import java.util.List;
@@ -36,13 +39,35 @@ public class PrideProteinMongoRepositoryImpl implements PrideProteinMongoReposit
         this.mongoOperations = mongoTemplate;
     }
 
+    private MongoCountCache countCache;
+
+    @Autowired
+    @Qualifier("moleculesCountCache")
+    public void setCountCache(MongoCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     @Override
     public Page<PrideMongoProteinEvidence> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page) {
         // Criteria queryCriteria = PrideMongoUtils.buildCriteria(filters);
         Query queryMongo = PrideMongoUtils.buildQuery(filters);
         queryMongo.with(page);
         List<PrideMongoProteinEvidence> files =  mongoTemplate.find(queryMongo, PrideMongoProteinEvidence.class);
-        return PageableExecutionUtils.getPage(files, page, () -> mongoOperations.count(queryMongo, PrideMongoProteinEvidence.class));
+        return PageableExecutionUtils.getPage(files, page, () -> countCache.count(mongoOperations, queryMongo, PrideMongoProteinEvidence.class));
+    }
+
+    @Override
+    public <T> Page<T> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page, Class<T> view) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        queryMongo.with(page);
+        List<T> proteins = mongoTemplate.query(PrideMongoProteinEvidence.class).as(view).matching(queryMongo).all();
+        return PageableExecutionUtils.getPage(proteins, page, () -> countCache.count(mongoOperations, queryMongo, PrideMongoProteinEvidence.class));
+    }
+
+    @Override
+    public KeysetPage<PrideMongoProteinEvidence> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        return KeysetPagination.find(mongoTemplate, queryMongo, PrideMongoProteinEvidence.class, sortField, continuationToken, size);
     }
 
     @Override
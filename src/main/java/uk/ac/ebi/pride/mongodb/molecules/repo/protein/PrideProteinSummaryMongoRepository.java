@@ -0,0 +1,18 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.protein;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinSummary;
+
+import java.util.Optional;
+
+@Repository
+public interface PrideProteinSummaryMongoRepository extends MongoRepository<PrideMongoProteinSummary, ObjectId>, PrideProteinSummaryMongoRepositoryCustom {
+
+    Optional<PrideMongoProteinSummary> findByProteinAccession(String proteinAccession);
+
+    Page<PrideMongoProteinSummary> findByProjectAccessions(String projectAccession, Pageable pageable);
+}
@@ -0,0 +1,18 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.protein;
+
+import java.util.Collection;
+
+/**
+ * @author ypriverol
+ */
+public interface PrideProteinSummaryMongoRepositoryCustom {
+
+    /**
+     * Rebuild the protein summaries of the mapped accessions of the projects from the protein evidences. Only the
+     * summaries of the accessions that are (or were) in the projects are recomputed.
+     *
+     * @param projectAccessions Projects whose protein evidences changed
+     * @return Number of protein accessions refreshed
+     */
+    long refreshProteinSummaries(Collection<String> projectAccessions);
+}
@@ -0,0 +1,160 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.protein;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinSummary;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Build the {@link PrideMongoProteinSummary} of a group of mapped accessions with one aggregation on the protein
+ * evidences that writes the summaries with $merge (MongoDB 4.2). The evidences are grouped by their UniProt and Ensembl
+ * mapped accessions: projects, number of assays, total PSMs, best score and maximum sequence coverage.
+ *
+ * @author ypriverol
+ */
+@Slf4j
+public class PrideProteinSummaryMongoRepositoryImpl implements PrideProteinSummaryMongoRepositoryCustom {
+
+    /** Number of protein accessions refreshed by each aggregation **/
+    public static final int DEFAULT_ACCESSION_BATCH_SIZE = 1000;
+
+    /** Unique index of the summaries, the $merge stage needs it on its "on" field **/
+    public static final String SUMMARY_INDEX_NAME = PrideArchiveField.PROTEIN_ACCESSION;
+
+    private static final String ACCESSIONS = "accessions";
+
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    @Qualifier("moleculesMongoTemplate")
+    public void setMongoTemplate(MongoTemplate template) {
+        this.mongoTemplate = template;
+    }
+
+    @Override
+    public long refreshProteinSummaries(Collection<String> projectAccessions) {
+        List<String> projects = new ArrayList<>(new LinkedHashSet<>(projectAccessions));
+        if (projects.isEmpty())
+            return 0;
+        PrideMongoUtils.ensureUniqueIndex(mongoTemplate, PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME, SUMMARY_INDEX_NAME,
+                PrideArchiveField.PROTEIN_ACCESSION);
+
+        // The mapped accessions of the protein evidences of the projects and the accessions whose summaries contain
+        // the projects, the projects may not have evidences of these proteins anymore
+        Set<String> accessions = new LinkedHashSet<>();
+        addDistinctValues(accessions, PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME, Arrays.asList(
+                new Document("$match", new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, new Document("$in", projects))),
+                new Document("$project", new Document(ACCESSIONS, mappedAccessions())),
+                new Document("$unwind", "$" + ACCESSIONS),
+                new Document("$group", new Document("_id", "$" + ACCESSIONS))));
+        addDistinctValues(accessions, PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME, Arrays.asList(
+                new Document("$match", new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, new Document("$in", projects))),
+                new Document("$group", new Document("_id", "$" + PrideArchiveField.PROTEIN_ACCESSION))));
+
+        long refreshed = 0;
+        List<String> batch = new ArrayList<>(DEFAULT_ACCESSION_BATCH_SIZE);
+        for (String accession : accessions) {
+            batch.add(accession);
+            if (batch.size() == DEFAULT_ACCESSION_BATCH_SIZE) {
+                refreshed += refresh(projects, batch);
+                batch.clear();
+                log.info("Protein summaries refreshed -- " + projects + " -- accessions: " + refreshed + " of " + accessions.size());
+            }
+        }
+        if (!batch.isEmpty())
+            refreshed += refresh(projects, batch);
+        log.info("Protein summaries refreshed -- " + projects + " -- accessions: " + refreshed);
+        return refreshed;
+    }
+
+    private void addDistinctValues(Set<String> values, String collectionName, List<Document> pipeline) {
+        for (Document group : mongoTemplate.getCollection(collectionName).aggregate(pipeline).allowDiskUse(true)
+                .batchSize(PrideMongoUtils.DEFAULT_CURSOR_BATCH_SIZE)) {
+            if (group.get("_id") != null)
+                values.add(group.get("_id").toString());
+        }
+    }
+
+    /**
+     * Remove the projects from the summaries of the accessions, merge the recomputed summaries and delete the summaries
+     * without projects.
+     */
+    private int refresh(List<String> projects, List<String> accessions) {
+        mongoTemplate.updateMulti(Query.query(Criteria.where(PrideArchiveField.PROTEIN_ACCESSION).in(accessions)
+                        .and(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).in(projects)),
+                new Update().pullAll(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, projects.toArray()), PrideMongoProteinSummary.class);
+        mongoTemplate.getCollection(PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME).aggregate(summaryPipeline(accessions))
+                .allowDiskUse(true).toCollection();
+        mongoTemplate.remove(Query.query(Criteria.where(PrideArchiveField.PROTEIN_ACCESSION).in(accessions)
+                .and(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS).size(0)), PrideMongoProteinSummary.class);
+        return accessions.size();
+    }
+
+    /**
+     * Aggregation that computes the summaries of the accessions and merges them on the protein accession.
+     */
+    static List<Document> summaryPipeline(List<String> accessions) {
+        List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$match", new Document("$or", Arrays.asList(
+                new Document(PrideArchiveField.UNIPROT_MAPPED_PROTEIN_ACCESSION, new Document("$in", accessions)),
+                new Document(PrideArchiveField.ENSEMBL_MAPPED_PROTEIN_ACCESSION, new Document("$in", accessions))))
+                .append(PrideArchiveField.IS_DECOY, new Document("$ne", true))));
+
+        // One document by mapped accession of the batch, an evidence can be mapped to UniProt and Ensembl
+        pipeline.add(new Document("$project", new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, 1)
+                .append(PrideArchiveField.PROTEIN_ASSAY_ACCESSION, 1)
+                .append(PrideArchiveField.PROTEIN_DESCRIPTION, 1)
+                .append(PrideArchiveField.NUMBER_PSMS, 1)
+                .append(PrideArchiveField.PROTEIN_COVERAGE, 1)
+                .append(PrideArchiveField.BEST_SEARCH_ENGINE, 1)
+                .append(ACCESSIONS, new Document("$filter", new Document("input", mappedAccessions())
+                        .append("cond", new Document("$in", Arrays.asList("$$this", accessions)))))));
+        pipeline.add(new Document("$unwind", "$" + ACCESSIONS));
+        pipeline.add(new Document("$group", new Document("_id", "$" + ACCESSIONS)
+                .append(PrideArchiveField.PROTEIN_DESCRIPTION, new Document("$max", "$" + PrideArchiveField.PROTEIN_DESCRIPTION))
+                .append(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, new Document("$addToSet", "$" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION))
+                .append(PrideArchiveField.ASSAYS_COUNT, new Document("$addToSet", "$" + PrideArchiveField.PROTEIN_ASSAY_ACCESSION))
+                .append(PrideArchiveField.PSMS_COUNT, new Document("$sum", "$" + PrideArchiveField.NUMBER_PSMS))
+                .append(PrideArchiveField.BEST_SEARCH_ENGINE_SCORE, new Document("$max", new Document("$convert",
+                        new Document("input", "$" + PrideArchiveField.BEST_SEARCH_ENGINE + ".value")
+                                .append("to", "double").append("onError", null).append("onNull", null))))
+                .append(PrideArchiveField.MAX_SEQUENCE_COVERAGE, new Document("$max", "$" + PrideArchiveField.PROTEIN_COVERAGE))));
+
+        pipeline.add(new Document("$project", new Document("_id", 0)
+                .append(PrideArchiveField.PROTEIN_ACCESSION, "$_id")
+                .append(PrideArchiveField.PROTEIN_DESCRIPTION, 1)
+                .append(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS, 1)
+                .append(PrideArchiveField.ASSAYS_COUNT, new Document("$size", "$" + PrideArchiveField.ASSAYS_COUNT))
+                .append(PrideArchiveField.PSMS_COUNT, 1)
+                .append(PrideArchiveField.BEST_SEARCH_ENGINE_SCORE, 1)
+                .append(PrideArchiveField.MAX_SEQUENCE_COVERAGE, 1)));
+        pipeline.add(new Document("$merge", new Document("into", PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME)
+                .append("on", PrideArchiveField.PROTEIN_ACCESSION)
+                .append("whenMatched", "replace")
+                .append("whenNotMatched", "insert")));
+        return pipeline;
+    }
+
+    /**
+     * UniProt and Ensembl accessions of a protein evidence, without the missing mappings.
+     */
+    private static Document mappedAccessions() {
+        return new Document("$setDifference", Arrays.asList(
+                Arrays.asList("$" + PrideArchiveField.UNIPROT_MAPPED_PROTEIN_ACCESSION, "$" + PrideArchiveField.ENSEMBL_MAPPED_PROTEIN_ACCESSION),
+                Arrays.asList(null, "")));
+    }
+}
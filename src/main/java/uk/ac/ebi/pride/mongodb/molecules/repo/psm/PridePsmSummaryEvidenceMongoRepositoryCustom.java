@@ -1,13 +1,17 @@
 package uk.ac.ebi.pride.mongodb.molecules.repo.psm;
 
+import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.core.query.Criteria;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * @author ypriverol
@@ -23,6 +27,17 @@ public interface PridePsmSummaryEvidenceMongoRepositoryCustom {
      */
     Page<PrideMongoPsmSummaryEvidence> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page);
 
+    /**
+     * Filter By Attributes using keyset pagination, the cost of a page doesn't depend on how deep the page is.
+     *
+     * @param filters           Attributes in {@link Triple} structure
+     * @param sortField         Field used to sort the results before the _id, null to sort only by _id
+     * @param continuationToken Token returned by the previous page, null for the first page
+     * @param size              Number of elements in the page
+     * @return {@link KeysetPage} of {@link PrideMongoPsmSummaryEvidence}
+     */
+    KeysetPage<PrideMongoPsmSummaryEvidence> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size);
+
     Page<PrideMongoPsmSummaryEvidence> filterByAttributes(Criteria criteria, Pageable page);
 
     Page<PrideMongoPsmSummaryEvidence> findPsmSummaryEvidencesByUsis(List<String> usis, Pageable page);
@@ -30,4 +45,69 @@ public interface PridePsmSummaryEvidenceMongoRepositoryCustom {
     List<PrideMongoPsmSummaryEvidence> findPsmSummaryEvidencesByProjectAccession(String prjAccession, Pageable page);
 
     long bulkupdatePsms(Map<String, String> map);
+
+    /**
+     * Upsert a batch of {@link PrideMongoPsmSummaryEvidence} using one unordered bulk write. The PSMs are matched by the
+     * unique USI, existing PSMs are updated and new PSMs are inserted. The fields of an existing PSM are replaced, the
+     * null fields of the new version are removed. The PSMs without USI are skipped.
+     *
+     * @param psms PSMs to be upserted
+     * @return Number of PSMs matched or inserted
+     */
+    long upsertPsmSummaryEvidences(List<PrideMongoPsmSummaryEvidence> psms);
+
+    /**
+     * Fill the parsed USI fields (collection, MS Run, index type, index, peptidoform, modification sites and the
+     * missing charges) of the PSMs stored before these fields existed. The PSMs are read with a cursor and updated with
+     * bulk writes. The PSMs are selected by their indexed usiFieldsVersion, the PSMs already processed have the current
+     * version and are skipped, so the backfill can be restarted.
+     *
+     * @param projectAccession Project to backfill, null to backfill all the PSMs
+     * @param batchSize        Number of PSMs updated in each bulk write
+     * @return Number of updated PSMs
+     */
+    long backfillUsiFields(String projectAccession, int batchSize);
+
+    /**
+     * Stream the ids of the PSMs of a project in _id order, the Stream must be closed after use.
+     *
+     * @param projectAccession Project accession, null for all the PSMs
+     * @param afterId          Only the ids greater than this id are returned, null to start from the first PSM
+     * @param batchSize        Number of ids fetched in each round trip
+     * @return Stream of ids
+     */
+    Stream<ObjectId> streamPsmIds(String projectAccession, ObjectId afterId, int batchSize);
+
+    /**
+     * Compute the spectraUsi (the USI without the peptidoform and charge) of the PSMs in a range of ids. The value is
+     * computed by the server with a pipeline update, when the server rejects the pipeline update because it doesn't
+     * support it (MongoDB < 4.2) the PSMs of the range are read and updated with a bulk write.
+     *
+     * @param projectAccession Project accession, null for all the PSMs
+     * @param fromId           Lower bound of the range (exclusive), null for no lower bound
+     * @param toId             Upper bound of the range (inclusive)
+     * @return Number of modified PSMs
+     */
+    long updateSpectraUsi(String projectAccession, ObjectId fromId, ObjectId toId);
+
+    /**
+     * Last id processed by a backfill job.
+     * @param jobId Job identifier
+     * @return Last processed id, empty if the job never ran
+     */
+    Optional<ObjectId> findBackfillCheckpoint(String jobId);
+
+    /**
+     * Store the last id processed by a backfill job.
+     * @param jobId Job identifier
+     * @param lastId Last id processed, all the previous ids are also processed
+     * @param processed Number of PSMs processed in the current run
+     */
+    void saveBackfillCheckpoint(String jobId, ObjectId lastId, long processed);
+
+    /**
+     * Remove the checkpoint of a completed backfill job, the next run of the job starts from the first PSM.
+     * @param jobId Job identifier
+     */
+    void deleteBackfillCheckpoint(String jobId);
 }
@@ -1,33 +1,83 @@
 package uk.ac.ebi.pride.mongodb.molecules.repo.psm;
 
+import com.mongodb.MongoServerException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PropertyHandler;
 import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
-import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.data.util.Pair;
+import org.springframework.data.util.StreamUtils;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.repo.counts.PrideMoleculeCountsMongoRepository;
+import uk.ac.ebi.pride.mongodb.utils.PeptidoformModifications;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+import uk.ac.ebi.pride.mongodb.utils.SpectrumUsi;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPagination;
+import uk.ac.ebi.pride.mongodb.utils.CappedCount;
+import uk.ac.ebi.pride.mongodb.utils.CappedPage;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * @author ypriverol
  */
+@Slf4j
 public class PridePsmSummaryEvidenceMongoRepositoryImpl implements PridePsmSummaryEvidenceMongoRepositoryCustom {
 
+    private static final String MONGO_ID = "_id";
+
+    /** Collection that keeps the progress of the backfill jobs **/
+    private static final String BACKFILL_CHECKPOINT_COLLECTION = "backfill_checkpoints";
+    private static final String CHECKPOINT_LAST_ID = "lastId";
+    private static final String CHECKPOINT_PROCESSED = "processed";
+    private static final String CHECKPOINT_UPDATED_DATE = "updatedDate";
+
+    /**
+     * The spectraUsi is the USI without the interpretation, the first five parts of the USI:
+     * mzspec:collection:msRun:indexType:index
+     */
+    private static final Document SPECTRA_USI_EXPRESSION = new Document("$reduce", new Document()
+            .append("input", new Document("$slice", Arrays.asList(new Document("$split", Arrays.asList("$" + PrideArchiveField.USI, ":")), 1, 4)))
+            .append("initialValue", new Document("$arrayElemAt", Arrays.asList(new Document("$split", Arrays.asList("$" + PrideArchiveField.USI, ":")), 0)))
+            .append("in", new Document("$concat", Arrays.asList("$$value", ":", "$$this"))));
+
+    /**
+     * Error codes of the servers without pipeline updates (MongoDB < 4.2), the update document must be an object:
+     * FailedToParse and TypeMismatch
+     */
+    private static final Set<Integer> PIPELINE_UPDATE_UNSUPPORTED_CODES = new HashSet<>(Arrays.asList(9, 14));
+
     MongoTemplate mongoTemplate;
 
     @Autowired
@@ -36,6 +86,14 @@ public class PridePsmSummaryEvidenceMongoRepositoryImpl implements PridePsmSumma
         this.mongoTemplate = template;
     }
 
+    /** Counts of the projects, the new PSMs are added to them **/
+    PrideMoleculeCountsMongoRepository countsRepository;
+
+    @Autowired(required = false)
+    public void setCountsRepository(PrideMoleculeCountsMongoRepository countsRepository) {
+        this.countsRepository = countsRepository;
+    }
+
 
     MongoOperations mongoOperations;
 
@@ -45,12 +103,26 @@ public class PridePsmSummaryEvidenceMongoRepositoryImpl implements PridePsmSumma
         this.mongoOperations = mongoTemplate;
     }
 
+    private MongoCountCache countCache;
+
+    @Autowired
+    @Qualifier("moleculesCountCache")
+    public void setCountCache(MongoCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     @Override
     public Page<PrideMongoPsmSummaryEvidence> filterByAttributes(List<Triple<String, String, String>> filters, Pageable page) {
         Query queryMongo = PrideMongoUtils.buildQuery(filters);
         queryMongo.with(page);
         List<PrideMongoPsmSummaryEvidence> files = mongoTemplate.find(queryMongo, PrideMongoPsmSummaryEvidence.class);
-        return PageableExecutionUtils.getPage(files, page, () -> 100);
+        return CappedPage.of(files, page, () -> countPsms(queryMongo, page));
+    }
+
+    @Override
+    public KeysetPage<PrideMongoPsmSummaryEvidence> filterByAttributes(List<Triple<String, String, String>> filters, String sortField, String continuationToken, int size) {
+        Query queryMongo = PrideMongoUtils.buildQuery(filters);
+        return KeysetPagination.find(mongoTemplate, queryMongo, PrideMongoPsmSummaryEvidence.class, sortField, continuationToken, size);
     }
 
     @Override
@@ -59,7 +131,18 @@ public class PridePsmSummaryEvidenceMongoRepositoryImpl implements PridePsmSumma
         queryMongo.addCriteria(criteria);
         queryMongo.with(page);
         List<PrideMongoPsmSummaryEvidence> psms = mongoTemplate.find(queryMongo, PrideMongoPsmSummaryEvidence.class);
-        return PageableExecutionUtils.getPage(psms, page, psms::size);
+        return CappedPage.of(psms, page, () -> countPsms(queryMongo, page));
+    }
+
+    /**
+     * The PSM collection is too big to count large filters, the count is capped a few pages after the requested page.
+     * The total of the {@link CappedPage} is exact for small filters and means "at least" for the large ones.
+     */
+    private CappedCount countPsms(Query queryMongo, Pageable page) {
+        if (page.isUnpaged())
+            return CappedCount.exact(countCache.count(mongoOperations, queryMongo, PrideMongoPsmSummaryEvidence.class));
+        return countCache.countForPage(mongoOperations, queryMongo, PrideMongoPsmSummaryEvidence.class,
+                page.getOffset(), page.getPageSize());
     }
 
 //    @Override
@@ -77,8 +160,7 @@ public class PridePsmSummaryEvidenceMongoRepositoryImpl implements PridePsmSumma
         Query queryMongo = new Query().addCriteria(queryCriteria);
         queryMongo.with(page);
         List<PrideMongoPsmSummaryEvidence> files =  mongoTemplate.find(queryMongo, PrideMongoPsmSummaryEvidence.class);
-        return PageableExecutionUtils.getPage(files, page, () ->
-                mongoOperations.count(queryMongo, PrideMongoPsmSummaryEvidence.class));
+        return CappedPage.of(files, page, () -> countPsms(queryMongo, page));
 
     }
 
@@ -100,7 +182,186 @@ public class PridePsmSummaryEvidenceMongoRepositoryImpl implements PridePsmSumma
             Query query = Query.query(Criteria.where(PrideArchiveField.USI).is(k));
             list.add(Pair.of(query, update));
         });
-        return bulkOperations.updateMulti(list).execute().getModifiedCount();
+        long modified = bulkOperations.updateMulti(list).execute().getModifiedCount();
+        countCache.invalidate(mongoTemplate.getCollectionName(PrideMongoPsmSummaryEvidence.class));
+        return modified;
+    }
+
+    @Override
+    public long upsertPsmSummaryEvidences(List<PrideMongoPsmSummaryEvidence> psms) {
+        // The same USI can only be upserted once in an unordered batch, the last version of the PSM wins. The PSMs
+        // without USI can't be matched, they would all be upserted on {usi: null}
+        Map<String, PrideMongoPsmSummaryEvidence> psmsByUsi = new LinkedHashMap<>();
+        psms.forEach(psm -> {
+            if (psm.getUsi() == null || psm.getUsi().trim().isEmpty()) {
+                log.warn("PSM without USI skipped -- project: " + psm.getProjectAccession() + " assay: " + psm.getAssayAccession());
+                return;
+            }
+            psm.populateUsiFields();
+            psmsByUsi.put(psm.getUsi(), psm);
+        });
+        if (psmsByUsi.isEmpty())
+            return 0;
+
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(PrideMongoPsmSummaryEvidence.class);
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoPsmSummaryEvidence.class);
+        List<Pair<Query, Update>> upserts = new ArrayList<>(psmsByUsi.size());
+        psmsByUsi.forEach((usi, psm) -> {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(psm, document);
+            document.remove("_id");
+            upserts.add(Pair.of(Query.query(Criteria.where(PrideArchiveField.USI).is(usi)), replaceFields(entity, document)));
+        });
+        BulkWriteResult result = bulkOperations.upsert(upserts).execute();
+        if (!result.getUpserts().isEmpty()) {
+            countCache.invalidate(mongoTemplate.getCollectionName(PrideMongoPsmSummaryEvidence.class));
+            incrementCounts(new ArrayList<>(psmsByUsi.values()), result.getUpserts());
+        }
+        return result.getMatchedCount() + result.getUpserts().size();
+    }
+
+    /**
+     * Update that sets the fields of a converted PSM and unsets the mapped fields that are null, the converter doesn't
+     * write them. A re-ingested PSM replaces all the fields of the stored one, as a save does.
+     */
+    private static Update replaceFields(MongoPersistentEntity<?> entity, Document document) {
+        Update update = PrideMongoUtils.setAllFields(document);
+        entity.doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> {
+            if (!property.isIdProperty() && !document.containsKey(property.getFieldName()))
+                update.unset(property.getFieldName());
+        });
+        return update;
+    }
+
+    /**
+     * Add the inserted PSMs to the counts of their projects and assays, the updated PSMs were already counted.
+     */
+    private void incrementCounts(List<PrideMongoPsmSummaryEvidence> psms, List<BulkWriteUpsert> inserted) {
+        if (countsRepository == null)
+            return;
+        // Project and assay accessions of the inserted PSMs, the assay can be null
+        Map<List<String>, Long> counts = new LinkedHashMap<>();
+        inserted.forEach(upsert -> {
+            PrideMongoPsmSummaryEvidence psm = psms.get(upsert.getIndex());
+            counts.merge(Arrays.asList(psm.getProjectAccession(), psm.getAssayAccession()), 1L, Long::sum);
+        });
+        counts.forEach((key, count) -> countsRepository.increment(key.get(0), key.get(1), PrideArchiveField.COUNT_PSMS, count));
+    }
+
+    @Override
+    public long backfillUsiFields(String projectAccession, int batchSize) {
+        // The missing versions are indexed as null, the $ne only scans the index entries of the PSMs to backfill
+        Query query = new Query(Criteria.where(PrideArchiveField.USI_FIELDS_VERSION)
+                .ne(PrideMongoPsmSummaryEvidence.CURRENT_USI_FIELDS_VERSION)).cursorBatchSize(batchSize);
+        if (projectAccession != null)
+            query.addCriteria(Criteria.where(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession));
+        query.fields().include(PrideArchiveField.USI).include(PrideArchiveField.CHARGE);
+
+        String collectionName = mongoTemplate.getCollectionName(PrideMongoPsmSummaryEvidence.class);
+        List<Pair<Query, Update>> updates = new ArrayList<>(batchSize);
+        long updated = 0;
+        try (CloseableIterator<Document> psms = mongoTemplate.stream(query, Document.class, collectionName)) {
+            while (psms.hasNext()) {
+                Document psm = psms.next();
+                updates.add(Pair.of(Query.query(Criteria.where("_id").is(psm.get("_id"))),
+                        usiFieldsUpdate(SpectrumUsi.parse(psm.getString(PrideArchiveField.USI)), psm.get(PrideArchiveField.CHARGE) == null)));
+                if (updates.size() == batchSize) {
+                    updated += mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoPsmSummaryEvidence.class)
+                            .updateOne(updates).execute().getModifiedCount();
+                    updates.clear();
+                    log.info("USI fields backfill -- updated PSMs: " + updated);
+                }
+            }
+        }
+        if (!updates.isEmpty())
+            updated += mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoPsmSummaryEvidence.class)
+                    .updateOne(updates).execute().getModifiedCount();
+        return updated;
+    }
+
+    @Override
+    public Stream<ObjectId> streamPsmIds(String projectAccession, ObjectId afterId, int batchSize) {
+        Query query = new Query().cursorBatchSize(batchSize).with(Sort.by(Sort.Direction.ASC, MONGO_ID));
+        if (projectAccession != null)
+            query.addCriteria(Criteria.where(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession));
+        if (afterId != null)
+            query.addCriteria(Criteria.where(MONGO_ID).gt(afterId));
+        query.fields().include(MONGO_ID);
+        String collectionName = mongoTemplate.getCollectionName(PrideMongoPsmSummaryEvidence.class);
+        return StreamUtils.createStreamFromIterator(mongoTemplate.stream(query, Document.class, collectionName))
+                .map(document -> document.getObjectId(MONGO_ID));
+    }
+
+    @Override
+    public long updateSpectraUsi(String projectAccession, ObjectId fromId, ObjectId toId) {
+        Document idRange = new Document("$lte", toId);
+        if (fromId != null)
+            idRange.append("$gt", fromId);
+        Document filter = new Document(MONGO_ID, idRange);
+        if (projectAccession != null)
+            filter.append(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, projectAccession);
+
+        try {
+            return mongoTemplate.getCollection(mongoTemplate.getCollectionName(PrideMongoPsmSummaryEvidence.class))
+                    .updateMany(filter, Collections.singletonList(new Document("$set",
+                            new Document(PrideArchiveField.SPECTRA_USI, SPECTRA_USI_EXPRESSION))))
+                    .getModifiedCount();
+        } catch (MongoServerException e) {
+            // Pipeline updates need MongoDB 4.2, any other error is thrown
+            if (!PIPELINE_UPDATE_UNSUPPORTED_CODES.contains(e.getCode()))
+                throw e;
+            log.warn("The server doesn't support pipeline updates, the spectraUsi will be computed by the client -- " + e.getMessage());
+        }
+
+        Query query = new BasicQuery(filter);
+        query.fields().include(PrideArchiveField.USI).include(PrideArchiveField.SPECTRA_USI);
+        List<Pair<Query, Update>> updates = new ArrayList<>();
+        for (Document psm : mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(PrideMongoPsmSummaryEvidence.class))) {
+            SpectrumUsi usi = SpectrumUsi.parse(psm.getString(PrideArchiveField.USI));
+            if (usi != null && !usi.getSpectraUsi().equals(psm.getString(PrideArchiveField.SPECTRA_USI)))
+                updates.add(Pair.of(Query.query(Criteria.where(MONGO_ID).is(psm.get(MONGO_ID))),
+                        Update.update(PrideArchiveField.SPECTRA_USI, usi.getSpectraUsi())));
+        }
+        if (updates.isEmpty())
+            return 0;
+        return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoPsmSummaryEvidence.class)
+                .updateOne(updates).execute().getModifiedCount();
+    }
+
+    @Override
+    public Optional<ObjectId> findBackfillCheckpoint(String jobId) {
+        Document checkpoint = mongoTemplate.findById(jobId, Document.class, BACKFILL_CHECKPOINT_COLLECTION);
+        return Optional.ofNullable(checkpoint).map(document -> document.getObjectId(CHECKPOINT_LAST_ID));
+    }
+
+    @Override
+    public void saveBackfillCheckpoint(String jobId, ObjectId lastId, long processed) {
+        Update update = new Update().set(CHECKPOINT_LAST_ID, lastId).set(CHECKPOINT_PROCESSED, processed)
+                .currentDate(CHECKPOINT_UPDATED_DATE);
+        mongoTemplate.upsert(Query.query(Criteria.where(MONGO_ID).is(jobId)), update, BACKFILL_CHECKPOINT_COLLECTION);
+    }
+
+    @Override
+    public void deleteBackfillCheckpoint(String jobId) {
+        mongoTemplate.remove(Query.query(Criteria.where(MONGO_ID).is(jobId)), BACKFILL_CHECKPOINT_COLLECTION);
+    }
+
+    /**
+     * The fields are also set when the USI is not valid, the PSM is then marked as processed.
+     */
+    private static Update usiFieldsUpdate(SpectrumUsi usi, boolean missingCharge) {
+        Update update = new Update()
+                .set(PrideArchiveField.USI_COLLECTION, (usi != null) ? usi.getCollection() : null)
+                .set(PrideArchiveField.USI_MS_RUN, (usi != null) ? usi.getMsRun() : null)
+                .set(PrideArchiveField.USI_INDEX_TYPE, (usi != null) ? usi.getIndexType() : null)
+                .set(PrideArchiveField.USI_INDEX, (usi != null) ? usi.getIndex() : null)
+                .set(PrideArchiveField.PEPTIDOFORM, (usi != null) ? usi.getPeptidoform() : null)
+                .set(PrideArchiveField.MODIFICATION_SITES, PeptidoformModifications.modificationSites((usi != null) ? usi.getPeptidoform() : null))
+                .set(PrideArchiveField.USI_FIELDS_VERSION, PrideMongoPsmSummaryEvidence.CURRENT_USI_FIELDS_VERSION);
+        if (missingCharge && usi != null && usi.getCharge() != null)
+            update.set(PrideArchiveField.CHARGE, usi.getCharge());
+        return update;
     }
 
     /**
@@ -3,6 +3,7 @@ package uk.ac.ebi.pride.mongodb.molecules.service.molecules;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -10,19 +11,29 @@ import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.counts.PrideMongoMoleculeCounts;
 import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
 import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideSummary;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PridePeptideEvidenceView;
 import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinSummary;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideProteinEvidenceView;
 import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.repo.counts.PrideMoleculeCountsMongoRepository;
 import uk.ac.ebi.pride.mongodb.molecules.repo.peptide.PridePeptideEvidenceMongoRepository;
 import uk.ac.ebi.pride.mongodb.molecules.repo.peptide.PridePeptideSummaryMongoRepository;
 import uk.ac.ebi.pride.mongodb.molecules.repo.protein.PrideProteinMongoRepository;
+import uk.ac.ebi.pride.mongodb.molecules.repo.protein.PrideProteinSummaryMongoRepository;
 import uk.ac.ebi.pride.mongodb.molecules.repo.psm.PridePsmSummaryEvidenceMongoRepository;
+import uk.ac.ebi.pride.mongodb.utils.BulkWritePipeline;
+import uk.ac.ebi.pride.mongodb.utils.KeysetPage;
+import uk.ac.ebi.pride.mongodb.utils.PeptidoformModifications;
 import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
 import uk.ac.ebi.pride.utilities.util.StringUtils;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -32,16 +43,30 @@ public class PrideMoleculesMongoService {
     final PridePeptideEvidenceMongoRepository peptideMongoRepository;
     final PridePsmSummaryEvidenceMongoRepository psmMongoRepository;
     final PridePeptideSummaryMongoRepository pridePeptideSummaryMongoRepository;
+    final PrideMoleculeCountsMongoRepository countsMongoRepository;
+    final PrideProteinSummaryMongoRepository proteinSummaryMongoRepository;
+
+    /** Number of PSMs in each batch of the backfill jobs **/
+    @Value("${mongodb.molecules.backfill.batch.size:" + SpectraUsiBackfillJob.DEFAULT_BATCH_SIZE + "}")
+    int backfillBatchSize = SpectraUsiBackfillJob.DEFAULT_BATCH_SIZE;
+
+    /** Number of batches of the backfill jobs updated in parallel **/
+    @Value("${mongodb.molecules.backfill.threads:" + SpectraUsiBackfillJob.DEFAULT_WORKER_THREADS + "}")
+    int backfillWorkerThreads = SpectraUsiBackfillJob.DEFAULT_WORKER_THREADS;
 
     @Autowired
     public PrideMoleculesMongoService(PrideProteinMongoRepository proteinRepository,
                                       PridePeptideEvidenceMongoRepository peptideMongoRepository,
                                       PridePsmSummaryEvidenceMongoRepository psmMongoRepository,
-                                      PridePeptideSummaryMongoRepository pridePeptideSummaryMongoRepository) {
+                                      PridePeptideSummaryMongoRepository pridePeptideSummaryMongoRepository,
+                                      PrideMoleculeCountsMongoRepository countsMongoRepository,
+                                      PrideProteinSummaryMongoRepository proteinSummaryMongoRepository) {
         this.proteinMongoRepository = proteinRepository;
         this.peptideMongoRepository = peptideMongoRepository;
         this.psmMongoRepository = psmMongoRepository;
         this.pridePeptideSummaryMongoRepository = pridePeptideSummaryMongoRepository;
+        this.countsMongoRepository = countsMongoRepository;
+        this.proteinSummaryMongoRepository = proteinSummaryMongoRepository;
     }
 
     /**
@@ -59,6 +84,19 @@ public class PrideMoleculesMongoService {
         return proteins;
     }
 
+    /**
+     * Find the proteins of a project as {@link PrideProteinEvidenceView}, without the protein sequence, modifications
+     * and attributes.
+     *
+     * @param projectAccession Project Accession
+     * @param page             Page Number of Proteins to be retrieve .
+     * @return Page of {@link PrideProteinEvidenceView}
+     */
+    public Page<PrideProteinEvidenceView> findProteinViewsByProjectAccession(String projectAccession, Pageable page) {
+        List<Triple<String, String, String>> filters = PrideMongoUtils.parseFilterParameters("projectAccession=in=" + projectAccession);
+        return proteinMongoRepository.filterByAttributes(filters, page, PrideProteinEvidenceView.class);
+    }
+
     /**
      * Save an specific Protein in MongoDB
      *
@@ -76,6 +114,8 @@ public class PrideMoleculesMongoService {
                     + " Protein: " + protein.getReportedAccession());
         }
         proteinMongoRepository.save(protein);
+        if (!currentProtein.isPresent())
+            countsMongoRepository.increment(protein.getProjectAccession(), protein.getAssayAccession(), PrideArchiveField.COUNT_PROTEINS, 1);
     }
 
     /**
@@ -85,6 +125,7 @@ public class PrideMoleculesMongoService {
      */
     public void insertProteinEvidences(PrideMongoProteinEvidence protein) {
         proteinMongoRepository.save(protein);
+        countsMongoRepository.increment(protein.getProjectAccession(), protein.getAssayAccession(), PrideArchiveField.COUNT_PROTEINS, 1);
     }
 
     /**
@@ -92,6 +133,7 @@ public class PrideMoleculesMongoService {
      */
     public void deleteAllProteinEvidences() {
         proteinMongoRepository.deleteAll();
+        countsMongoRepository.resetCounter(PrideArchiveField.COUNT_PROTEINS);
     }
 
     /**
@@ -117,6 +159,16 @@ public class PrideMoleculesMongoService {
         return proteinMongoRepository.findAll(page);
     }
 
+    /**
+     * Find all the proteins as {@link PrideProteinEvidenceView}. This method should be executed using the Pagination.
+     *
+     * @param page Page to be retrieved
+     * @return Page of {@link PrideProteinEvidenceView}
+     */
+    public Page<PrideProteinEvidenceView> findAllProteinEvidenceViews(Pageable page) {
+        return proteinMongoRepository.filterByAttributes(Collections.emptyList(), page, PrideProteinEvidenceView.class);
+    }
+
     /**
      * Find all {@link PrideMongoProteinEvidence}. This method should be executed using the Pagination.
      *
@@ -152,6 +204,19 @@ public class PrideMoleculesMongoService {
         return psms;
     }
 
+    /**
+     * Find the peptides of a project as {@link PridePeptideEvidenceView}, without the PSM accessions, modifications
+     * and attributes.
+     *
+     * @param projectAccession Project Accession
+     * @param page             Page to be retrieve
+     * @return Page of {@link PridePeptideEvidenceView}
+     */
+    public Page<PridePeptideEvidenceView> findPeptideEvidenceViewsByProjectAccession(String projectAccession, Pageable page) {
+        List<Triple<String, String, String>> filters = PrideMongoUtils.parseFilterParameters("projectAccession=in=" + projectAccession);
+        return peptideMongoRepository.filterByAttributes(filters, page, PridePeptideEvidenceView.class);
+    }
+
     /**
      * This functions allows to find all the PSMs for an specific project Accession
      *
@@ -168,23 +233,80 @@ public class PrideMoleculesMongoService {
 
 
     /**
-     * Counts how many PSMs are for a project accession.
+     * Counts how many peptide evidences are for a project accession, from the materialized counts of the project.
      *
      * @param projectAccession the project accession to search for
-     * @return the number of PSMs corresponding to the provided project accession
+     * @return the number of peptide evidences corresponding to the provided project accession
      */
     public long countByProjectAccession(String projectAccession) {
-        return findPeptideEvidencesByProjectAccession(projectAccession, PageRequest.of(0, 10)).getTotalElements();
+        return findProjectCounts(projectAccession, false).map(PrideMongoMoleculeCounts::getPeptides).orElse(0L);
     }
 
     /**
-     * Counts how many PSMs are for a assay accession and assay accession.
+     * Counts how many peptide evidences are for an assay accession, from the materialized counts of the assay.
      *
      * @param assayAccession the assay accession to search for
-     * @return the number of PSMs corresponding to the provided project accession
+     * @return the number of peptide evidences corresponding to the provided assay accession
      */
     public long countByAssayAccession(String assayAccession) {
-        return findPeptideEvidencesByProjectAccession(assayAccession, PageRequest.of(0, 10)).getTotalElements();
+        return findAssayCounts(assayAccession, false).map(PrideMongoMoleculeCounts::getPeptides).orElse(0L);
+    }
+
+    /**
+     * Number of proteins, peptides, PSMs and distinct peptide sequences of a project. The counts are recomputed with
+     * one aggregation by molecule collection when they were never computed or new peptides were added.
+     *
+     * @param projectAccession Project accession
+     * @return {@link PrideMongoMoleculeCounts} of the project
+     */
+    public Optional<PrideMongoMoleculeCounts> getProjectCounts(String projectAccession) {
+        return findProjectCounts(projectAccession, true);
+    }
+
+    /**
+     * Number of proteins, peptides, PSMs and distinct peptide sequences of an assay.
+     *
+     * @param assayAccession Assay accession
+     * @return {@link PrideMongoMoleculeCounts} of the assay
+     */
+    public Optional<PrideMongoMoleculeCounts> getAssayCounts(String assayAccession) {
+        return findAssayCounts(assayAccession, true);
+    }
+
+    /**
+     * Recompute the counts of a project and its assays from the molecule collections.
+     *
+     * @param projectAccession Project accession
+     * @return Counts of the project and its assays
+     */
+    public List<PrideMongoMoleculeCounts> recomputeCounts(String projectAccession) {
+        return countsMongoRepository.recompute(projectAccession);
+    }
+
+    /**
+     * The incremented counters are exact once the counts were recomputed, only the distinct sequences need a new
+     * aggregation after new peptides are added.
+     */
+    private Optional<PrideMongoMoleculeCounts> findProjectCounts(String projectAccession, boolean distinctSequences) {
+        Optional<PrideMongoMoleculeCounts> counts = countsMongoRepository.findById(PrideMongoMoleculeCounts.id(projectAccession, null));
+        if (counts.isPresent() && isCurrent(counts.get(), distinctSequences))
+            return counts;
+        String id = PrideMongoMoleculeCounts.id(projectAccession, null);
+        return countsMongoRepository.recompute(projectAccession).stream().filter(x -> id.equals(x.getId())).findFirst();
+    }
+
+    private Optional<PrideMongoMoleculeCounts> findAssayCounts(String assayAccession, boolean distinctSequences) {
+        Optional<PrideMongoMoleculeCounts> counts = countsMongoRepository.findByAssayAccession(assayAccession);
+        if (counts.isPresent() && isCurrent(counts.get(), distinctSequences))
+            return counts;
+        Optional<String> projectAccession = counts.isPresent() ? Optional.of(counts.get().getProjectAccession())
+                : countsMongoRepository.findProjectAccessionByAssay(assayAccession);
+        return projectAccession.flatMap(project -> countsMongoRepository.recompute(project).stream()
+                .filter(x -> assayAccession.equals(x.getAssayAccession())).findFirst());
+    }
+
+    private static boolean isCurrent(PrideMongoMoleculeCounts counts, boolean distinctSequences) {
+        return distinctSequences ? counts.isUpToDate() : counts.getRecomputedDate() != null;
     }
 
     /**
@@ -201,6 +323,8 @@ public class PrideMoleculesMongoService {
             peptideEvidence.setId(currentPeptide.get().getId());
 
         peptideMongoRepository.save(peptideEvidence);
+        if (!currentPeptide.isPresent())
+            countsMongoRepository.increment(peptideEvidence.getProjectAccession(), peptideEvidence.getAssayAccession(), PrideArchiveField.COUNT_PEPTIDES, 1);
     }
 
     /**
@@ -210,6 +334,7 @@ public class PrideMoleculesMongoService {
      */
     public void insertPeptideEvidence(PrideMongoPeptideEvidence peptideEvidence) {
         peptideMongoRepository.save(peptideEvidence);
+        countsMongoRepository.increment(peptideEvidence.getProjectAccession(), peptideEvidence.getAssayAccession(), PrideArchiveField.COUNT_PEPTIDES, 1);
     }
 
     /**
@@ -217,6 +342,7 @@ public class PrideMoleculesMongoService {
      */
     public void deleteAllPeptideEvidences() {
         peptideMongoRepository.deleteAll();
+        countsMongoRepository.resetCounter(PrideArchiveField.COUNT_PEPTIDES);
     }
 
 
@@ -284,6 +410,23 @@ public class PrideMoleculesMongoService {
         return peptideMongoRepository.filterByAttributes(filters, page);
     }
 
+    /**
+     * Retrieve the {@link PrideMongoPeptideEvidence} of a project using keyset pagination.
+     *
+     * @param projectAccession  project accession
+     * @param continuationToken Token of the previous page, null for the first page
+     * @param size              Number of peptide evidences in the page
+     * @return {@link KeysetPage}
+     */
+    public KeysetPage<PrideMongoPeptideEvidence> findPeptideEvidences(String projectAccession, String continuationToken, int size) {
+        StringJoiner filter = new StringJoiner(",");
+        if (!StringUtils.isEmpty(projectAccession))
+            filter.add(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "==" + projectAccession);
+
+        List<Triple<String, String, String>> filters = PrideMongoUtils.parseFilterParameters(filter.toString());
+        return peptideMongoRepository.filterByAttributes(filters, null, continuationToken, size);
+    }
+
     public Optional<PrideMongoPeptideEvidence> findPeptideEvidence(String projectAccession, String assayAccession,
                                                                    String reportedProtein, String peptideAccession) {
         return peptideMongoRepository.findPeptideByProteinAndAssayAccession(reportedProtein, assayAccession, peptideAccession);
@@ -313,16 +456,48 @@ public class PrideMoleculesMongoService {
      * @param psmSummaryEvidence {@link PrideMongoPsmSummaryEvidence}
      */
     public void insertPsmSummaryEvidence(PrideMongoPsmSummaryEvidence psmSummaryEvidence) {
+        psmSummaryEvidence.populateUsiFields();
         psmMongoRepository.save(psmSummaryEvidence);
+        countsMongoRepository.increment(psmSummaryEvidence.getProjectAccession(), psmSummaryEvidence.getAssayAccession(), PrideArchiveField.COUNT_PSMS, 1);
     }
 
+    /**
+     * Insert or update a PSM using the USI as key. The PSM is upserted in one round trip to the database.
+     *
+     * @param psmMongo {@link PrideMongoPsmSummaryEvidence}
+     */
     public void savePsmSummaryEvidence(PrideMongoPsmSummaryEvidence psmMongo) {
-        Optional<PrideMongoPeptideEvidence> currentPSM = psmMongoRepository
-                .findPsmSummaryByUsi(psmMongo.getUsi());
-        currentPSM.ifPresent(prideMongoPeptideEvidence -> psmMongo.setId(prideMongoPeptideEvidence.getId()));
+        psmMongoRepository.upsertPsmSummaryEvidences(Collections.singletonList(psmMongo));
+    }
 
-        psmMongoRepository.save(psmMongo);
+    /**
+     * Upsert all the PSMs of the stream using batched, unordered bulk writes with the default batch size, writer threads
+     * and pending batches of {@link BulkWritePipeline}.
+     *
+     * @param psms Stream of {@link PrideMongoPsmSummaryEvidence}
+     * @return Number of PSMs inserted or updated
+     */
+    public long bulkUpsertPsmSummaryEvidences(Stream<PrideMongoPsmSummaryEvidence> psms) throws InterruptedException, ExecutionException {
+        return bulkUpsertPsmSummaryEvidences(psms.iterator(), BulkWritePipeline.DEFAULT_BATCH_SIZE,
+                BulkWritePipeline.DEFAULT_WRITER_THREADS, BulkWritePipeline.DEFAULT_MAX_PENDING_BATCHES);
+    }
 
+    /**
+     * Upsert all the PSMs using batched, unordered bulk writes keyed on the unique USI. The producer blocks when
+     * maxPendingBatches batches are waiting to be written.
+     *
+     * @param psms              Iterator of {@link PrideMongoPsmSummaryEvidence}
+     * @param batchSize         Number of PSMs in each bulk write
+     * @param writerThreads     Number of bulk writes executed in parallel
+     * @param maxPendingBatches Maximum number of batches in memory waiting to be written
+     * @return Number of PSMs inserted or updated
+     */
+    public long bulkUpsertPsmSummaryEvidences(Iterator<PrideMongoPsmSummaryEvidence> psms, int batchSize, int writerThreads,
+                                              int maxPendingBatches) throws InterruptedException, ExecutionException {
+        BulkWritePipeline<PrideMongoPsmSummaryEvidence> pipeline = new BulkWritePipeline<>(batchSize, writerThreads, maxPendingBatches);
+        long upserted = pipeline.run(psms, psmMongoRepository::upsertPsmSummaryEvidences);
+        log.info("Number of PSMs inserted or updated in the bulk ingest -- " + upserted);
+        return upserted;
     }
 
     public Page<PrideMongoPsmSummaryEvidence> findPsmSummaryEvidences(String projectAccession,
@@ -346,6 +521,32 @@ public class PrideMoleculesMongoService {
 
     }
 
+    /**
+     * Retrieve the {@link PrideMongoPsmSummaryEvidence} of a project or an assay using keyset pagination.
+     *
+     * @param projectAccession  project accession
+     * @param assayAccession    assay accession
+     * @param continuationToken Token of the previous page, null for the first page
+     * @param size              Number of PSMs in the page
+     * @return {@link KeysetPage}
+     */
+    public KeysetPage<PrideMongoPsmSummaryEvidence> findPsmSummaryEvidences(String projectAccession, String assayAccession,
+                                                                            String continuationToken, int size) {
+        StringJoiner filter = new StringJoiner(",");
+        if (!StringUtils.isEmpty(projectAccession))
+            filter.add(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION + "==" + projectAccession);
+        if (!StringUtils.isEmpty(assayAccession))
+            filter.add(PrideArchiveField.PROTEIN_ASSAY_ACCESSION + "==" + assayAccession);
+
+        List<Triple<String, String, String>> filters = PrideMongoUtils.parseFilterParameters(filter.toString());
+        return psmMongoRepository.filterByAttributes(filters, null, continuationToken, size);
+    }
+
+    /**
+     * Find the PSMs matching the given filters, the empty filters are ignored. The modification is a regular expression
+     * over the USI of the PSMs, {@link #findPsmSummaryEvidencesByModification} searches a modification accession and
+     * site with the modification sites index.
+     */
     public Page<PrideMongoPsmSummaryEvidence> findPsmSummaryEvidences(String projectAccession,
                                                                       String fileName,
                                                                       String scan,
@@ -356,23 +557,45 @@ public class PrideMoleculesMongoService {
                                                                       PageRequest page) {
 
 
-        Criteria criteria = new Criteria();
+        List<Criteria> filters = new ArrayList<>();
 
         if (!StringUtils.isEmpty(projectAccession))
-            criteria = criteria.andOperator(new Criteria(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession));
+            filters.add(new Criteria(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession));
         if (!StringUtils.isEmpty(fileName))
-            criteria = criteria.andOperator(new Criteria(PrideArchiveField.FILE_NAME).regex(fileName));
-        if (!StringUtils.isEmpty(scan))
-            criteria = criteria.andOperator(new Criteria(PrideArchiveField.USI).regex("scan:" + scan + ":"));
+            filters.add(PrideMongoUtils.regexCriteria(PrideArchiveField.FILE_NAME, fileName));
+        if (!StringUtils.isEmpty(scan)) {
+            filters.add(new Criteria(PrideArchiveField.USI_INDEX).is(scan));
+            filters.add(new Criteria(PrideArchiveField.USI_INDEX_TYPE).is("scan"));
+        }
         if (!StringUtils.isEmpty(peptideSequence))
-            criteria = criteria.andOperator(new Criteria(PrideArchiveField.PEPTIDE_SEQUENCE).is(peptideSequence));
+            filters.add(new Criteria(PrideArchiveField.PEPTIDE_SEQUENCE).is(peptideSequence));
         if (charge != null)
-            criteria = criteria.andOperator(new Criteria(PrideArchiveField.CHARGE).is(charge));
+            filters.add(new Criteria(PrideArchiveField.CHARGE).is(charge));
         if (!StringUtils.isEmpty(modification))
-            criteria = criteria.andOperator(new Criteria(PrideArchiveField.USI).regex(modification));
-//        if (!StringUtils.isEmpty(peptidoform)) //TODO peptidoform should be a separate field in DB..regex is too slow
-//            criteria = criteria.andOperator(new Criteria(PrideArchiveField.USI).regex(peptidoform.replaceAll("\\[", "\\\\[")));
+            filters.add(new Criteria(PrideArchiveField.USI).regex(modification));
+        if (!StringUtils.isEmpty(peptidoform))
+            filters.add(new Criteria(PrideArchiveField.PEPTIDOFORM).is(peptidoform));
 
+        Criteria criteria = filters.isEmpty() ? new Criteria() : new Criteria().andOperator(filters.toArray(new Criteria[0]));
+        return psmMongoRepository.filterByAttributes(criteria, page);
+    }
+
+    /**
+     * Find the PSMs of a project that contain a modification, optionally on a given residue. The search uses the
+     * modification sites index, e.g. all PSMs with UNIMOD:21 on S in a project.
+     *
+     * @param projectAccession Project accession
+     * @param modification     Modification accession (UNIMOD:21, MOD:00046) or name
+     * @param site             Residue or terminal (N-term, C-term), null for any site
+     * @param page             Page
+     * @return Page of {@link PrideMongoPsmSummaryEvidence}
+     */
+    public Page<PrideMongoPsmSummaryEvidence> findPsmSummaryEvidencesByModification(String projectAccession,
+                                                                                    String modification,
+                                                                                    String site,
+                                                                                    Pageable page) {
+        Criteria criteria = new Criteria(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION).is(projectAccession)
+                .and(PrideArchiveField.MODIFICATION_SITES).is(PeptidoformModifications.modificationKey(modification, site));
         return psmMongoRepository.filterByAttributes(criteria, page);
     }
 
@@ -400,6 +623,59 @@ public class PrideMoleculesMongoService {
         return pridePeptideSummaryMongoRepository.findAll(pageRequest);
     }
 
+    /**
+     * Refresh the {@link PrideMongoPeptideSummary} of the peptide sequences of the projects after their PSMs changed.
+     * Only the summaries of the sequences of the projects are recomputed and merged in the summary collection.
+     *
+     * @param projectAccessions Project accessions
+     * @return Number of peptide sequences refreshed
+     */
+    public long refreshPeptideSummaries(String... projectAccessions) {
+        return pridePeptideSummaryMongoRepository.refreshPeptideSummaries(Arrays.asList(projectAccessions));
+    }
+
+    /**
+     * Find the {@link PrideMongoProteinSummary} of a UniProt or Ensembl accession.
+     *
+     * @param proteinAccession Mapped protein accession
+     * @return {@link PrideMongoProteinSummary} of the protein
+     */
+    public Optional<PrideMongoProteinSummary> findProteinSummary(String proteinAccession) {
+        return proteinSummaryMongoRepository.findByProteinAccession(proteinAccession);
+    }
+
+    /**
+     * Find the {@link PrideMongoProteinSummary} of the proteins identified in a project.
+     *
+     * @param projectAccession Project accession
+     * @param page             Page
+     * @return Page of {@link PrideMongoProteinSummary}
+     */
+    public Page<PrideMongoProteinSummary> findProteinSummariesByProjectAccession(String projectAccession, Pageable page) {
+        return proteinSummaryMongoRepository.findByProjectAccessions(projectAccession, page);
+    }
+
+    /**
+     * Find all the {@link PrideMongoProteinSummary}. This method should be executed using the Pagination.
+     *
+     * @param page Page
+     * @return Page of {@link PrideMongoProteinSummary}
+     */
+    public Page<PrideMongoProteinSummary> findAllProteinSummaries(Pageable page) {
+        return proteinSummaryMongoRepository.findAll(page);
+    }
+
+    /**
+     * Refresh the {@link PrideMongoProteinSummary} of the proteins of the projects after their protein evidences
+     * changed. Only the summaries of the mapped accessions of the projects are recomputed.
+     *
+     * @param projectAccessions Project accessions
+     * @return Number of protein accessions refreshed
+     */
+    public long refreshProteinSummaries(String... projectAccessions) {
+        return proteinSummaryMongoRepository.refreshProteinSummaries(Arrays.asList(projectAccessions));
+    }
+
     public long getNumberProteinEvidences() {
         return proteinMongoRepository.count();
     }
@@ -412,49 +688,30 @@ public class PrideMoleculesMongoService {
         return psmMongoRepository.count();
     }
 
+    /**
+     * Fill the parsed USI fields of the PSMs stored before these fields existed.
+     *
+     * @param projectAccession Project to backfill, null to backfill all the PSMs
+     * @return Number of updated PSMs
+     */
+    public long backfillUsiFields(String projectAccession) {
+        long updated = psmMongoRepository.backfillUsiFields(projectAccession, BulkWritePipeline.DEFAULT_BATCH_SIZE);
+        log.info("USI fields backfilled for -- " + ((projectAccession != null) ? projectAccession : "all projects") + " -- updated PSMs: " + updated);
+        return updated;
+    }
+
+    /**
+     * Fill the spectraUsi of all the PSMs of a project with a {@link SpectraUsiBackfillJob}. The job iterates the PSMs
+     * in _id order, computes the spectraUsi in the server when possible and stores a checkpoint after every batch, so
+     * it can be restarted after a failure. The checkpoint is removed when the job completes, the next run starts from
+     * the first PSM.
+     *
+     * @param projectAccession Project accession, null for all the PSMs
+     * @throws InterruptedException if the job is interrupted
+     * @throws ExecutionException if a batch can't be updated
+     */
     public void addSpectraUsi(String projectAccession) throws InterruptedException, ExecutionException {
-        int nThreads = 100;
-        ExecutorService executorService = Executors.newFixedThreadPool(nThreads);
-        int i = 0;
-        List<Callable<PsmUpdater>> psmUpdaters = new ArrayList<>(nThreads);
-        int size = 1000;
-        boolean breakLoop = false;
-        while (true) {
-            log.info("Page number : " + i);
-//            Page<PrideMongoPsmSummaryEvidence> prideMongoPsmSummaryEvidences = listPsmSummaryEvidences(PageRequest.of(i, size));
-//            List<PrideMongoPsmSummaryEvidence> psms = prideMongoPsmSummaryEvidences.getContent();
-//            String s = "mzspec:PXD000966:CPTAC_CompRef_00_iTRAQ_12_5Feb12_Cougar_11-10-11.mzML:scan:11850:[UNIMOD:214]YYWGGLYSWDMSK[UNIMOD:214]/2";
-//            List<String> strings = Collections.singletonList(s);
-//            List<PrideMongoPsmSummaryEvidence> psms = psmMongoRepository.findPsmSummaryEvidencesByUsis(strings, PageRequest.of(0, 100)).getContent();
-            List<PrideMongoPsmSummaryEvidence> psms = psmMongoRepository.findPsmSummaryEvidencesByProjectAccession(projectAccession, PageRequest.of(i, size));
-            i++;
-            if (psms.isEmpty()) {
-                breakLoop = true;
-            }
-            Map<String, String> map = new HashMap<>();
-            psms.forEach(p -> {
-                String usi = p.getUsi();
-                String spectraUsi = usi.substring(0, org.apache.commons.lang3.StringUtils.ordinalIndexOf(usi, ":", 5));
-                if (p.getSpectraUsi() == null || !p.getSpectraUsi().equals(spectraUsi)) {
-                    p.setSpectraUsi(spectraUsi);
-                    map.put(p.getUsi(), spectraUsi);
-                }
-            });
-            if (map.size() > 0) {
-                psmUpdaters.add(new PsmUpdater(map));
-            }
-            if (breakLoop || psmUpdaters.size() == nThreads) {
-                List<Future<PsmUpdater>> fFutures = executorService.invokeAll(psmUpdaters);
-                for (Future<PsmUpdater> future : fFutures) {
-                    PsmUpdater psmUpdater = future.get();
-                    log.info("Updated records: " + psmUpdater.getUpdatedRecords());
-                }
-                psmUpdaters.clear();
-            }
-            if (breakLoop) {
-                break;
-            }
-        }
+        new SpectraUsiBackfillJob(psmMongoRepository, projectAccession, backfillBatchSize, backfillWorkerThreads).run();
     }
 
     public long addSpectraUsi(Map<String, String> usiAndSpectraUsiMap) {
@@ -464,24 +721,4 @@ public class PrideMoleculesMongoService {
     public Optional<PrideMongoPsmSummaryEvidence> findPsmSummaryEvidencesSpectraUsi(String spectraUSI) {
         return psmMongoRepository.findPsmSummaryBySpectraUsi(spectraUSI);
     }
-
-    class PsmUpdater implements Callable {
-
-        private Map<String, String> map;
-        private long updatedRecords;
-
-        public long getUpdatedRecords() {
-            return updatedRecords;
-        }
-
-        PsmUpdater(Map<String, String> map) {
-            this.map = map;
-        }
-
-        @Override
-        public Object call() throws Exception {
-            updatedRecords = psmMongoRepository.bulkupdatePsms(map);
-            return this;
-        }
-    }
 }
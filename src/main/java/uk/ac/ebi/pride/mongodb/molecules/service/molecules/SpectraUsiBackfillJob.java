@@ -0,0 +1,138 @@
+package uk.ac.ebi.pride.mongodb.molecules.service.molecules;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import uk.ac.ebi.pride.mongodb.molecules.repo.psm.PridePsmSummaryEvidenceMongoRepository;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Resumable job that fills the spectraUsi of the PSMs of a project. The ids of the PSMs are read with one cursor in
+ * _id order and cut in ranges of batchSize PSMs, every range is updated by a bounded pool of workers. The ranges
+ * finish out of order, but the checkpoint only moves forward when all the previous ranges are done, so a job that
+ * stops can be restarted from the checkpoint without missing any PSM. The checkpoint is removed when the job completes.
+ *
+ * @author ypriverol
+ */
+@Slf4j
+public class SpectraUsiBackfillJob {
+
+    public static final int DEFAULT_BATCH_SIZE = 5000;
+    public static final int DEFAULT_WORKER_THREADS = 4;
+
+    private static final String JOB_PREFIX = "spectraUsi:";
+    private static final String ALL_PROJECTS = "all";
+
+    private final PridePsmSummaryEvidenceMongoRepository psmRepository;
+    private final String projectAccession;
+    private final int batchSize;
+    private final int workerThreads;
+
+    private long processed = 0;
+    private long modified = 0;
+    private ObjectId checkpoint;
+
+    public SpectraUsiBackfillJob(PridePsmSummaryEvidenceMongoRepository psmRepository, String projectAccession,
+                                 int batchSize, int workerThreads) {
+        if (batchSize < 1 || workerThreads < 1)
+            throw new IllegalArgumentException("The batch size and the number of workers must be positive");
+        this.psmRepository = psmRepository;
+        this.projectAccession = projectAccession;
+        this.batchSize = batchSize;
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Run the job from the last checkpoint.
+     * @return Number of modified PSMs
+     * @throws InterruptedException if the job is interrupted
+     * @throws ExecutionException if a range can't be updated, the checkpoint keeps the last range fully updated
+     */
+    public long run() throws InterruptedException, ExecutionException {
+        String jobId = JOB_PREFIX + ((projectAccession != null) ? projectAccession : ALL_PROJECTS);
+        checkpoint = psmRepository.findBackfillCheckpoint(jobId).orElse(null);
+        log.info("SpectraUsi backfill -- " + jobId + " -- starting after id: " + checkpoint);
+
+        long start = System.nanoTime();
+        ExecutorService executorService = Executors.newFixedThreadPool(workerThreads);
+        Deque<IdRange> inFlight = new ArrayDeque<>();
+        try (Stream<ObjectId> ids = psmRepository.streamPsmIds(projectAccession, checkpoint, batchSize)) {
+            Iterator<ObjectId> iterator = ids.iterator();
+            ObjectId lowerId = checkpoint;
+            ObjectId lastId = null;
+            int count = 0;
+            while (iterator.hasNext()) {
+                lastId = iterator.next();
+                if (++count == batchSize) {
+                    submit(executorService, inFlight, jobId, start, lowerId, lastId, count);
+                    lowerId = lastId;
+                    count = 0;
+                }
+            }
+            if (count > 0)
+                submit(executorService, inFlight, jobId, start, lowerId, lastId, count);
+            while (!inFlight.isEmpty())
+                completeOldest(inFlight, jobId, start);
+            // The job is complete, the next run starts again from the first PSM
+            psmRepository.deleteBackfillCheckpoint(jobId);
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        log.info("SpectraUsi backfill -- " + jobId + " -- finished, processed PSMs: " + processed + " modified PSMs: " + modified);
+        return modified;
+    }
+
+    private void submit(ExecutorService executorService, Deque<IdRange> inFlight, String jobId, long start,
+                        ObjectId lowerId, ObjectId upperId, int count) throws InterruptedException, ExecutionException {
+        // Bounded number of ranges in flight, the cursor waits for the oldest range
+        if (inFlight.size() >= 2 * workerThreads)
+            completeOldest(inFlight, jobId, start);
+        inFlight.add(new IdRange(upperId, count,
+                executorService.submit(() -> psmRepository.updateSpectraUsi(projectAccession, lowerId, upperId))));
+    }
+
+    private void completeOldest(Deque<IdRange> inFlight, String jobId, long start) throws InterruptedException, ExecutionException {
+        IdRange range = inFlight.poll();
+        modified += range.result.get();
+        processed += range.count;
+        checkpoint = range.upperId;
+        psmRepository.saveBackfillCheckpoint(jobId, checkpoint, processed);
+
+        double seconds = Math.max(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / 1000.0, 0.001);
+        log.info(String.format("SpectraUsi backfill -- %s -- processed: %d modified: %d rate: %.0f PSMs/s checkpoint: %s",
+                jobId, processed, modified, processed / seconds, checkpoint));
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public ObjectId getCheckpoint() {
+        return checkpoint;
+    }
+
+    private static class IdRange {
+        private final ObjectId upperId;
+        private final int count;
+        private final Future<Long> result;
+
+        private IdRange(ObjectId upperId, int count, Future<Long> result) {
+            this.upperId = upperId;
+            this.count = count;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Loader that coalesces the lookups of single keys in batches. The keys requested within a short window are sent to
+ * the batch function together (one $in query instead of one query for every key), and a key that is already being
+ * loaded is not requested twice, the callers share the same result. The batch is sent before the end of the window
+ * when it reaches the maximum batch size, or when a caller asks for a list of keys with {@link #loadMany(Collection)}.
+ * The scheduler only times the windows, the batches are queried on the query executor so a slow query doesn't delay
+ * the end of the windows of the other loaders sharing the scheduler.
+ *
+ * @author ypriverol
+ */
+public class BatchingLoader<K, V> {
+
+    /** Logger use to query and filter the data **/
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingLoader.class);
+
+    public static final long DEFAULT_WINDOW_MILLIS = 5;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /** Load a batch of keys, the keys that don't exist are not in the result **/
+    private final Function<Collection<K>, Map<K, V>> batchFunction;
+    private final ScheduledExecutorService scheduler;
+    private final Executor queryExecutor;
+    private final long windowMillis;
+    private final int maxBatchSize;
+
+    /** Keys being loaded and keys waiting for the next batch, guarded by this **/
+    private final Map<K, CompletableFuture<Optional<V>>> inFlight = new HashMap<>();
+    private List<K> pending = new ArrayList<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Create a loader.
+     * @param batchFunction Function that loads a batch of keys and returns the values by key
+     * @param scheduler Executor that ends the windows, it never runs the batch function
+     * @param queryExecutor Executor that runs the batch function of the batches sent at the end of the window or when
+     *                      they reach the maximum size
+     * @param windowMillis Time in milliseconds the keys are collected before sending the batch
+     * @param maxBatchSize Maximum number of keys in a batch
+     */
+    public BatchingLoader(Function<Collection<K>, Map<K, V>> batchFunction, ScheduledExecutorService scheduler,
+                          Executor queryExecutor, long windowMillis, int maxBatchSize) {
+        if (windowMillis < 0 || maxBatchSize < 1)
+            throw new IllegalArgumentException("The window can't be negative and the batch size must be positive");
+        this.batchFunction = batchFunction;
+        this.scheduler = scheduler;
+        this.queryExecutor = queryExecutor;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Request a key, the key is loaded with the next batch.
+     * @param key Key
+     * @return Future with the value, empty if the key doesn't exist
+     */
+    public CompletableFuture<Optional<V>> load(K key) {
+        CompletableFuture<Optional<V>> future;
+        List<K> batch = null;
+        synchronized (this) {
+            future = register(key);
+            if (pending.size() >= maxBatchSize)
+                batch = takePending();
+        }
+        if (batch != null)
+            dispatchAsync(batch);
+        return future;
+    }
+
+    /**
+     * Load a key and wait for the value.
+     * @param key Key
+     * @return Optional value
+     */
+    public Optional<V> get(K key) {
+        return join(load(key));
+    }
+
+    /**
+     * Load a list of keys. The keys are sent at once with the keys pending from other callers, without waiting for
+     * the end of the window. The batches are queried in the calling thread, the caller waits for them anyway.
+     * @param keys Keys
+     * @return Values in the same order as the keys, empty for the keys that don't exist
+     */
+    public List<Optional<V>> loadMany(Collection<K> keys) {
+        List<CompletableFuture<Optional<V>>> futures = new ArrayList<>(keys.size());
+        List<List<K>> batchList = new ArrayList<>();
+        synchronized (this) {
+            for (K key : keys) {
+                futures.add(register(key));
+                if (pending.size() >= maxBatchSize)
+                    batchList.add(takePending());
+            }
+            if (!pending.isEmpty())
+                batchList.add(takePending());
+        }
+        batchList.forEach(this::dispatch);
+
+        List<Optional<V>> values = new ArrayList<>(futures.size());
+        for (CompletableFuture<Optional<V>> future : futures)
+            values.add(join(future));
+        return values;
+    }
+
+    /** Must be called holding the lock **/
+    private CompletableFuture<Optional<V>> register(K key) {
+        requests.incrementAndGet();
+        CompletableFuture<Optional<V>> future = inFlight.get(key);
+        if (future != null) {
+            deduplicated.incrementAndGet();
+            return future;
+        }
+        future = new CompletableFuture<>();
+        inFlight.put(key, future);
+        pending.add(key);
+        // The first key of a batch starts the window
+        if (pending.size() == 1) {
+            try {
+                scheduler.schedule(this::dispatchPending, windowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Without a window the key would never be sent, the later requests of the key must not wait for it
+                LOGGER.error("The window of the batch can't be scheduled -- " + e.getMessage());
+                inFlight.remove(key);
+                pending.clear();
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    /** Must be called holding the lock **/
+    private List<K> takePending() {
+        List<K> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void dispatchPending() {
+        List<K> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        dispatchAsync(batch);
+    }
+
+    private void dispatchAsync(List<K> batch) {
+        if (batch.isEmpty())
+            return;
+        try {
+            queryExecutor.execute(() -> dispatch(batch));
+        } catch (RejectedExecutionException e) {
+            LOGGER.error("The batch of " + batch.size() + " keys can't be sent -- " + e.getMessage());
+            complete(batch, null, e);
+        }
+    }
+
+    private void dispatch(List<K> batch) {
+        if (batch.isEmpty())
+            return;
+        batches.incrementAndGet();
+        Map<K, V> values = null;
+        RuntimeException error = null;
+        try {
+            values = batchFunction.apply(batch);
+            if (values == null)
+                values = Collections.emptyMap();
+        } catch (RuntimeException e) {
+            LOGGER.error("Error loading a batch of " + batch.size() + " keys -- " + e.getMessage());
+            error = e;
+        }
+        complete(batch, values, error);
+    }
+
+    private void complete(List<K> batch, Map<K, V> values, RuntimeException error) {
+        List<CompletableFuture<Optional<V>>> futures = new ArrayList<>(batch.size());
+        // Later requests of these keys must go to the database again
+        synchronized (this) {
+            for (K key : batch)
+                futures.add(inFlight.remove(key));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (error != null)
+                futures.get(i).completeExceptionally(error);
+            else
+                futures.get(i).complete(Optional.ofNullable(values.get(batch.get(i))));
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getDeduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingLoader{" +
+                "requests=" + requests.get() +
+                ", deduplicated=" + deduplicated.get() +
+                ", batches=" + batches.get() +
+                '}';
+    }
+}
@@ -0,0 +1,129 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+
+/**
+ * The {@link BulkWritePipeline} groups the elements of an {@link Iterator} into batches and hands every batch to a
+ * writer function running on a bounded pool of writer threads. The number of batches waiting to be written is bounded,
+ * when the writers are slower than the producer the producer blocks (backpressure), so the memory used by the pipeline
+ * stays constant no matter how many elements are ingested.
+ *
+ * @author ypriverol
+ */
+public class BulkWritePipeline<T> {
+
+    /** Logger use to query and filter the data **/
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkWritePipeline.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_WRITER_THREADS = 4;
+    public static final int DEFAULT_MAX_PENDING_BATCHES = 8;
+
+    private final int batchSize;
+    private final int writerThreads;
+    private final int maxPendingBatches;
+
+    public BulkWritePipeline() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_WRITER_THREADS, DEFAULT_MAX_PENDING_BATCHES);
+    }
+
+    /**
+     * Create a pipeline.
+     * @param batchSize Number of elements sent to the writer in each call
+     * @param writerThreads Number of batches written in parallel
+     * @param maxPendingBatches Maximum number of batches queued or in flight before the producer blocks
+     */
+    public BulkWritePipeline(int batchSize, int writerThreads, int maxPendingBatches) {
+        if (batchSize < 1 || writerThreads < 1 || maxPendingBatches < 1)
+            throw new IllegalArgumentException("The batch size, writer threads and pending batches must be positive");
+        this.batchSize = batchSize;
+        this.writerThreads = writerThreads;
+        this.maxPendingBatches = Math.max(maxPendingBatches, writerThreads);
+    }
+
+    /**
+     * Consume all the elements of the iterator and write them in batches.
+     *
+     * @param items  Elements to be written
+     * @param writer Function that writes one batch and returns the number of written documents
+     * @return Total number of documents written
+     * @throws InterruptedException if the producer is interrupted while waiting for the writers
+     * @throws ExecutionException   if one of the batches can't be written, the pipeline stops at the first failure
+     */
+    public long run(Iterator<T> items, ToLongFunction<List<T>> writer) throws InterruptedException, ExecutionException {
+        ExecutorService executorService = Executors.newFixedThreadPool(writerThreads);
+        Semaphore pendingBatches = new Semaphore(maxPendingBatches);
+        AtomicLong written = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long submittedBatches = 0;
+        try {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (items.hasNext() && failure.get() == null) {
+                batch.add(items.next());
+                if (batch.size() == batchSize) {
+                    submit(executorService, pendingBatches, batch, writer, written, failure);
+                    batch = new ArrayList<>(batchSize);
+                    if (++submittedBatches % 100 == 0)
+                        LOGGER.info("Bulk pipeline -- batches submitted: " + submittedBatches + " documents written: " + written.get());
+                }
+            }
+            if (!batch.isEmpty() && failure.get() == null)
+                submit(executorService, pendingBatches, batch, writer, written, failure);
+
+            executorService.shutdown();
+            while (!executorService.awaitTermination(1, TimeUnit.MINUTES))
+                LOGGER.info("Bulk pipeline -- waiting for the writers, documents written: " + written.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+        if (failure.get() != null)
+            throw new ExecutionException("A batch can't be written, documents written before the failure -- " + written.get(), failure.get());
+        return written.get();
+    }
+
+    private void submit(ExecutorService executorService, Semaphore pendingBatches, List<T> batch,
+                        ToLongFunction<List<T>> writer, AtomicLong written, AtomicReference<Throwable> failure) throws InterruptedException {
+        pendingBatches.acquire();
+        try {
+            executorService.execute(() -> {
+                try {
+                    if (failure.get() == null)
+                        written.addAndGet(writer.applyAsLong(batch));
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pendingBatches.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingBatches.release();
+            throw e;
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public int getMaxPendingBatches() {
+        return maxPendingBatches;
+    }
+}
@@ -0,0 +1,49 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+/**
+ * Number of documents of a capped count. When the server stops counting at the cap the count is not exact and means
+ * "at least count" documents.
+ *
+ * @author ypriverol
+ */
+public class CappedCount {
+
+    private final long count;
+    private final boolean exact;
+
+    private CappedCount(long count, boolean exact) {
+        this.count = count;
+        this.exact = exact;
+    }
+
+    public static CappedCount exact(long count) {
+        return new CappedCount(count, true);
+    }
+
+    public static CappedCount capped(long cap) {
+        return new CappedCount(cap, false);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return true if the count is the number of documents, false if at least count documents match the query
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    public boolean isCapped() {
+        return !exact;
+    }
+
+    @Override
+    public String toString() {
+        return "CappedCount{" +
+                "count=" + count +
+                ", exact=" + exact +
+                '}';
+    }
+}
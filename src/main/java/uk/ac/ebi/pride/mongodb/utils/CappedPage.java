@@ -0,0 +1,53 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Page whose total can come from a capped count. If the total is not exact, the page has at least getTotalElements()
+ * elements after it and the last page is not known.
+ *
+ * @author ypriverol
+ */
+public class CappedPage<T> extends PageImpl<T> {
+
+    private final boolean exact;
+
+    public CappedPage(List<T> content, Pageable pageable, CappedCount total) {
+        super(content, pageable, total.getCount());
+        this.exact = total.isExact();
+    }
+
+    /**
+     * Build the page like PageableExecutionUtils: the count is only executed when the total can't be deduced from the
+     * content of the page.
+     * @param content Content of the page
+     * @param pageable Requested page
+     * @param totalSupplier Count of the query
+     * @return {@link CappedPage}
+     */
+    public static <T> CappedPage<T> of(List<T> content, Pageable pageable, Supplier<CappedCount> totalSupplier) {
+        if (pageable.isUnpaged() || pageable.getOffset() == 0) {
+            if (pageable.isUnpaged() || pageable.getPageSize() > content.size())
+                return new CappedPage<>(content, pageable, CappedCount.exact(content.size()));
+            return new CappedPage<>(content, pageable, totalSupplier.get());
+        }
+        if (!content.isEmpty() && pageable.getPageSize() > content.size())
+            return new CappedPage<>(content, pageable, CappedCount.exact(pageable.getOffset() + content.size()));
+        return new CappedPage<>(content, pageable, totalSupplier.get());
+    }
+
+    /**
+     * @return true if the total of the page is exact, false if there are at least getTotalElements() elements
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    public boolean isCapped() {
+        return !exact;
+    }
+}
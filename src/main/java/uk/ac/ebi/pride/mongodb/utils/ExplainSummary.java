@@ -0,0 +1,158 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of the output of explain("executionStats"): the stages of the winning plan, whether the plan scans the
+ * whole collection, and the number of keys and documents examined to return the results. The explain documents are
+ * read as {@link Map} and {@link List}, the plan is searched in the whole document so the explain of find, count and
+ * aggregate (where the plan is inside the $cursor stage) can be read in the same way.
+ *
+ * @author ypriverol
+ */
+public class ExplainSummary {
+
+    public static final double DEFAULT_MAX_EXAMINED_RATIO = 100;
+
+    private final String winningPlan;
+    private final boolean collectionScan;
+    private final long keysExamined;
+    private final long docsExamined;
+    private final long nReturned;
+
+    private ExplainSummary(String winningPlan, boolean collectionScan, long keysExamined, long docsExamined, long nReturned) {
+        this.winningPlan = winningPlan;
+        this.collectionScan = collectionScan;
+        this.keysExamined = keysExamined;
+        this.docsExamined = docsExamined;
+        this.nReturned = nReturned;
+    }
+
+    /**
+     * Read the result of an explain command.
+     * @param explain Result of the explain command
+     * @return Summary of the explain, null if the result has no query plan
+     */
+    public static ExplainSummary of(Map<String, ?> explain) {
+        Map<?, ?> queryPlanner = findDocument(explain, "queryPlanner");
+        if (queryPlanner == null || !(queryPlanner.get("winningPlan") instanceof Map))
+            return null;
+        Map<?, ?> plan = (Map<?, ?>) queryPlanner.get("winningPlan");
+        StringBuilder stages = new StringBuilder();
+        boolean collectionScan = appendStages(stages, plan);
+
+        Map<?, ?> executionStats = findDocument(explain, "executionStats");
+        long keysExamined = 0, docsExamined = 0, nReturned = 0;
+        if (executionStats != null) {
+            keysExamined = number(executionStats.get("totalKeysExamined"));
+            docsExamined = number(executionStats.get("totalDocsExamined"));
+            nReturned = number(executionStats.get("nReturned"));
+        }
+        return new ExplainSummary(stages.toString(), collectionScan, keysExamined, docsExamined, nReturned);
+    }
+
+    /**
+     * Append the stages from the root to the leaves: FETCH > IXSCAN projectAccession_1
+     * @return true if any of the stages is a COLLSCAN
+     */
+    private static boolean appendStages(StringBuilder stages, Map<?, ?> stage) {
+        String name = String.valueOf(stage.get("stage"));
+        stages.append(name);
+        if (stage.get("indexName") != null)
+            stages.append(' ').append(stage.get("indexName"));
+        boolean collectionScan = "COLLSCAN".equals(name);
+        if (stage.get("inputStage") instanceof Map) {
+            stages.append(" > ");
+            collectionScan |= appendStages(stages, (Map<?, ?>) stage.get("inputStage"));
+        } else if (stage.get("inputStages") instanceof List) {
+            stages.append(" > (");
+            boolean first = true;
+            for (Object input : (List<?>) stage.get("inputStages")) {
+                if (!(input instanceof Map))
+                    continue;
+                if (!first)
+                    stages.append(" | ");
+                collectionScan |= appendStages(stages, (Map<?, ?>) input);
+                first = false;
+            }
+            stages.append(')');
+        }
+        return collectionScan;
+    }
+
+    /**
+     * First document with the given key, depth first.
+     */
+    private static Map<?, ?> findDocument(Object value, String key) {
+        if (value instanceof Map) {
+            Map<?, ?> document = (Map<?, ?>) value;
+            if (document.get(key) instanceof Map)
+                return (Map<?, ?>) document.get(key);
+            for (Object child : document.values()) {
+                Map<?, ?> found = findDocument(child, key);
+                if (found != null)
+                    return found;
+            }
+        } else if (value instanceof List) {
+            for (Object child : (List<?>) value) {
+                Map<?, ?> found = findDocument(child, key);
+                if (found != null)
+                    return found;
+            }
+        }
+        return null;
+    }
+
+    private static long number(Object value) {
+        return (value instanceof Number) ? ((Number) value).longValue() : 0;
+    }
+
+    public String getWinningPlan() {
+        return winningPlan;
+    }
+
+    public boolean isCollectionScan() {
+        return collectionScan;
+    }
+
+    public long getKeysExamined() {
+        return keysExamined;
+    }
+
+    public long getDocsExamined() {
+        return docsExamined;
+    }
+
+    public long getNReturned() {
+        return nReturned;
+    }
+
+    /**
+     * Documents examined for every document returned.
+     * @return Ratio, the number of documents examined if nothing is returned
+     */
+    public double getExaminedRatio() {
+        return (double) docsExamined / Math.max(nReturned, 1);
+    }
+
+    /**
+     * The query scans the collection or examines too many documents for the documents it returns.
+     * @param maxExaminedRatio Maximum documents examined for every document returned
+     * @return true if the query needs an index
+     */
+    public boolean isInefficient(double maxExaminedRatio) {
+        return collectionScan || getExaminedRatio() > maxExaminedRatio;
+    }
+
+    @Override
+    public String toString() {
+        return "ExplainSummary{" +
+                "winningPlan='" + winningPlan + '\'' +
+                ", collectionScan=" + collectionScan +
+                ", keysExamined=" + keysExamined +
+                ", docsExamined=" + docsExamined +
+                ", nReturned=" + nReturned +
+                '}';
+    }
+}
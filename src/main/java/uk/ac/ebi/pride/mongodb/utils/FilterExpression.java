@@ -0,0 +1,192 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One clause of a filter, e.g. projectAccessions=all=PXD000001. The raw value keeps the escape characters of the
+ * filter, the values are unescaped: the in and all operators accept several values separated by '|' (or ',' when the
+ * clause is built from code), a range has two values (from and to) and the other operators one value. Expressions are
+ * immutable and can be shared by the cached parse results.
+ *
+ * @author ypriverol
+ */
+public final class FilterExpression {
+
+    public static final char ESCAPE = '\\';
+    public static final char CLAUSE_SEPARATOR = ',';
+    public static final char VALUE_SEPARATOR = '|';
+    public static final char OPERATOR_SEPARATOR = '=';
+
+    private static final String RANGE_START = "[";
+    private static final String RANGE_END = "]";
+    private static final String RANGE_SEPARATOR = "TO";
+
+    private final String field;
+    private final FilterOperator operator;
+    private final String rawValue;
+    private final List<String> values;
+
+    private FilterExpression(String field, FilterOperator operator, String rawValue, List<String> values) {
+        this.field = field;
+        this.operator = operator;
+        this.rawValue = rawValue;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Create an expression.
+     * @param field Field name
+     * @param operator Operator name
+     * @param rawValue Value with the escape characters of the filter
+     * @return The expression
+     * @throws IllegalArgumentException if the operator is unknown or the value is not valid for the operator
+     */
+    public static FilterExpression of(String field, String operator, String rawValue) {
+        FilterOperator filterOperator = FilterOperator.fromName(operator != null ? operator.trim() : null);
+        if (field == null || field.trim().isEmpty() || filterOperator == null || rawValue == null)
+            throw new IllegalArgumentException("Not well-formatted filter -- " + field + "=" + operator + "=" + rawValue);
+        return new FilterExpression(field.trim(), filterOperator, rawValue, parseValues(filterOperator, rawValue));
+    }
+
+    public static FilterExpression of(Triple<String, String, String> triple) {
+        return of(triple.getFirst(), triple.getSecond(), triple.getThird());
+    }
+
+    private static List<String> parseValues(FilterOperator operator, String rawValue) {
+        List<String> values = new ArrayList<>();
+        switch (operator) {
+            case IN:
+            case ALL:
+                for (String value : split(rawValue, VALUE_SEPARATOR, CLAUSE_SEPARATOR)) {
+                    if (!value.isEmpty())
+                        values.add(value);
+                }
+                if (values.isEmpty())
+                    throw new IllegalArgumentException("Missing values -- " + rawValue);
+                break;
+            case RANGE:
+                String range = unescape(rawValue).trim();
+                int separator = range.indexOf(RANGE_SEPARATOR);
+                if (!range.startsWith(RANGE_START) || !range.endsWith(RANGE_END) || separator < 0)
+                    throw new IllegalArgumentException("The range must have the format [from TO to] -- " + rawValue);
+                values.add(range.substring(RANGE_START.length(), separator).trim());
+                values.add(range.substring(separator + RANGE_SEPARATOR.length(), range.length() - RANGE_END.length()).trim());
+                break;
+            default:
+                // Backslashes of regular expressions are kept, only the filter separators are unescaped
+                values.add(unescape(rawValue));
+        }
+        return values;
+    }
+
+    /**
+     * Split a text by the unescaped separators and unescape the parts.
+     */
+    static List<String> split(String text, char... separators) {
+        List<String> parts = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ESCAPE && i + 1 < text.length() && isEscapable(text.charAt(i + 1))) {
+                current.append(text.charAt(++i));
+            } else if (contains(separators, c)) {
+                parts.add(current.toString().trim());
+                current.setLength(0);
+            } else
+                current.append(c);
+        }
+        parts.add(current.toString().trim());
+        return parts;
+    }
+
+    /**
+     * Remove the escape character before the filter separators, other backslashes are kept.
+     */
+    static String unescape(String text) {
+        if (text.indexOf(ESCAPE) < 0)
+            return text;
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ESCAPE && i + 1 < text.length() && isEscapable(text.charAt(i + 1)))
+                c = text.charAt(++i);
+            unescaped.append(c);
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * Escape the filter separators of a value, so it can be used in a filter.
+     * @param value Value
+     * @return Escaped value
+     */
+    public static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isEscapable(c))
+                escaped.append(ESCAPE);
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    static boolean isEscapable(char c) {
+        return c == CLAUSE_SEPARATOR || c == VALUE_SEPARATOR || c == OPERATOR_SEPARATOR;
+    }
+
+    private static boolean contains(char[] chars, char c) {
+        for (char value : chars) {
+            if (value == c)
+                return true;
+        }
+        return false;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public FilterOperator getOperator() {
+        return operator;
+    }
+
+    public String getRawValue() {
+        return rawValue;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public String getValue() {
+        return values.get(0);
+    }
+
+    public Triple<String, String, String> toTriple() {
+        return new Triple<>(field, operator.getName(), rawValue);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FilterExpression that = (FilterExpression) o;
+        return field.equals(that.field) && operator == that.operator && rawValue.equals(that.rawValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field, operator, rawValue);
+    }
+
+    @Override
+    public String toString() {
+        return field + OPERATOR_SEPARATOR + operator.getName() + OPERATOR_SEPARATOR + rawValue;
+    }
+}
@@ -0,0 +1,39 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+/**
+ * Operators of the filter language: field==value, field=in=value1|value2, field=all=value, field=range=[from TO to]
+ * and field=regex=expression.
+ *
+ * @author ypriverol
+ */
+public enum FilterOperator {
+
+    IS("is"),
+    IN("in"),
+    ALL("all"),
+    RANGE("range"),
+    REGEX("regex");
+
+    private final String name;
+
+    FilterOperator(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Find an operator by name, ignoring the case.
+     * @param name Name of the operator
+     * @return Operator or null if the name is not an operator
+     */
+    public static FilterOperator fromName(String name) {
+        for (FilterOperator operator : values()) {
+            if (operator.name.equalsIgnoreCase(name))
+                return operator;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser of the filter language used by the search endpoints:
+ *
+ * field1==value1,field2=in=value2|value3,field3=range=[2018-01-01 TO 2019-01-01],field4=regex=^PXD
+ *
+ * Clauses are separated by ',' and the values of in and all by '|'. The separators can be part of a value when they
+ * are escaped with a backslash (\, \| \=). The parse result of every filter is kept in a small LRU cache, the search
+ * endpoints receive the same filters again and again.
+ *
+ * @author ypriverol
+ */
+public class FilterParser {
+
+    /** Logger use to query and filter the data **/
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilterParser.class);
+
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    public static final int DEFAULT_CACHE_TTL_MINUTES = 60;
+
+    private static final LruTtlCache<String, List<FilterExpression>> CACHE =
+            new LruTtlCache<>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+
+    private FilterParser() {
+    }
+
+    /**
+     * Parse a filter. The clauses that are not well-formatted are skipped.
+     * @param filterQuery Filter
+     * @return Unmodifiable list of expressions
+     */
+    public static List<FilterExpression> parse(String filterQuery) {
+        if (filterQuery == null || filterQuery.trim().isEmpty())
+            return Collections.emptyList();
+        List<FilterExpression> expressions = CACHE.get(filterQuery);
+        if (expressions == null) {
+            expressions = Collections.unmodifiableList(parseClauses(filterQuery));
+            CACHE.put(filterQuery, expressions);
+        }
+        return expressions;
+    }
+
+    /**
+     * Parse several filters into one list of expressions.
+     * @param filterQueries Filters
+     * @return List of expressions
+     */
+    public static List<FilterExpression> parse(String... filterQueries) {
+        if (filterQueries.length == 1)
+            return parse(filterQueries[0]);
+        List<FilterExpression> expressions = new ArrayList<>();
+        for (String filterQuery : filterQueries)
+            expressions.addAll(parse(filterQuery));
+        return expressions;
+    }
+
+    private static List<FilterExpression> parseClauses(String filterQuery) {
+        List<FilterExpression> expressions = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= filterQuery.length(); i++) {
+            if (i == filterQuery.length() || filterQuery.charAt(i) == FilterExpression.CLAUSE_SEPARATOR) {
+                String clause = filterQuery.substring(start, i);
+                if (!clause.trim().isEmpty()) {
+                    FilterExpression expression = parseClause(clause);
+                    if (expression != null)
+                        expressions.add(expression);
+                }
+                start = i + 1;
+            } else if (isEscape(filterQuery, i))
+                i++;
+        }
+        return expressions;
+    }
+
+    /**
+     * Parse field==value or field=operator=value, the value keeps its escape characters.
+     */
+    private static FilterExpression parseClause(String clause) {
+        int first = nextSeparator(clause, 0);
+        int second = (first >= 0) ? nextSeparator(clause, first + 1) : -1;
+        try {
+            if (second == first + 1)
+                return FilterExpression.of(FilterExpression.unescape(clause.substring(0, first)),
+                        FilterOperator.IS.getName(), clause.substring(second + 1));
+            if (second > first + 1)
+                return FilterExpression.of(FilterExpression.unescape(clause.substring(0, first)),
+                        clause.substring(first + 1, second), clause.substring(second + 1));
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug(e.getMessage());
+            return null;
+        }
+        LOGGER.debug("The filter provided is not well-formatted, please format the filter in field:value -- " + clause);
+        return null;
+    }
+
+    private static int nextSeparator(String clause, int from) {
+        for (int i = from; i < clause.length(); i++) {
+            if (isEscape(clause, i))
+                i++;
+            else if (clause.charAt(i) == FilterExpression.OPERATOR_SEPARATOR)
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isEscape(String text, int index) {
+        return text.charAt(index) == FilterExpression.ESCAPE && index + 1 < text.length()
+                && FilterExpression.isEscapable(text.charAt(index + 1));
+    }
+
+    public static LruTtlCache<String, List<FilterExpression>> getCache() {
+        return CACHE;
+    }
+}
@@ -0,0 +1,107 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of the {@link IndexAdvisor} for one collection:
+ *
+ * - missingIndexes: compound indexes that would support the recorded queries that no index supports, with the
+ *   number of queries that need them.
+ * - redundantIndexes: indexes whose keys are a prefix of another index (existing or suggested), with the index that
+ *   makes them redundant. Every index slows down the writes, the redundant ones can be dropped.
+ * - unusedIndexes: indexes that none of the recorded queries can use, they are only candidates to be dropped because
+ *   the queries that were not recorded may need them.
+ *
+ * @author ypriverol
+ */
+public class IndexAdvice {
+
+    private final String collection;
+    private final List<SuggestedIndex> missingIndexes = new ArrayList<>();
+    private final Map<String, String> redundantIndexes = new LinkedHashMap<>();
+    private final List<String> unusedIndexes = new ArrayList<>();
+
+    public IndexAdvice(String collection) {
+        this.collection = collection;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public List<SuggestedIndex> getMissingIndexes() {
+        return Collections.unmodifiableList(missingIndexes);
+    }
+
+    /**
+     * Redundant indexes.
+     * @return Map with the index names and the index that makes them redundant
+     */
+    public Map<String, String> getRedundantIndexes() {
+        return Collections.unmodifiableMap(redundantIndexes);
+    }
+
+    public List<String> getUnusedIndexes() {
+        return Collections.unmodifiableList(unusedIndexes);
+    }
+
+    void addMissingIndex(SuggestedIndex index) {
+        missingIndexes.add(index);
+    }
+
+    void addRedundantIndex(String name, String coveredBy) {
+        redundantIndexes.putIfAbsent(name, coveredBy);
+    }
+
+    void addUnusedIndex(String name) {
+        unusedIndexes.add(name);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexAdvice{" +
+                "collection='" + collection + '\'' +
+                ", missingIndexes=" + missingIndexes +
+                ", redundantIndexes=" + redundantIndexes +
+                ", unusedIndexes=" + unusedIndexes +
+                '}';
+    }
+
+    /**
+     * Compound index suggested for a group of queries: equality fields, then sort fields, then range fields.
+     */
+    public static class SuggestedIndex {
+
+        private final List<String> keys;
+        private long queryCount;
+
+        SuggestedIndex(List<String> keys, long queryCount) {
+            this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+            this.queryCount = queryCount;
+        }
+
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        /**
+         * @return Number of recorded queries that need the index
+         */
+        public long getQueryCount() {
+            return queryCount;
+        }
+
+        void addQueries(long count) {
+            queryCount += count;
+        }
+
+        @Override
+        public String toString() {
+            return keys + " (" + queryCount + " queries)";
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Record the query patterns sent to every collection (equality fields, sort fields and range fields) and compare them
+ * with the indexes of the collection. The advice follows the equality, sort, range rule: an index supports a query if
+ * it starts with the equality fields of the query (in any order), followed by the sort fields (in order) and by a
+ * range field. The $or branches are recorded as separate patterns because MongoDB plans every branch separately.
+ *
+ * @author ypriverol
+ */
+public class IndexAdvisor {
+
+    public static final int MAX_PATTERNS_PER_COLLECTION = 1000;
+    public static final String ID_INDEX = "_id_";
+
+    private static final int MAX_OR_BRANCHES = 16;
+
+    private final Map<String, Map<QueryPattern, AtomicLong>> patterns = new ConcurrentHashMap<>();
+
+    /**
+     * Record the filter and the sort of a command.
+     * @param commandName Name of the command (find, count, distinct, findAndModify, aggregate, update or delete)
+     * @param collection Collection of the command
+     * @param command Command document
+     */
+    public void recordCommand(String commandName, String collection, Map<?, ?> command) {
+        switch (commandName) {
+            case "find":
+                record(collection, asMap(command.get("filter")), asMap(command.get("sort")));
+                break;
+            case "count":
+            case "distinct":
+                record(collection, asMap(command.get("query")), null);
+                break;
+            case "findAndModify":
+                record(collection, asMap(command.get("query")), asMap(command.get("sort")));
+                break;
+            case "aggregate":
+                recordPipeline(collection, command.get("pipeline"));
+                break;
+            case "update":
+                record(collection, firstStatementFilter(command.get("updates")), null);
+                break;
+            case "delete":
+                record(collection, firstStatementFilter(command.get("deletes")), null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Only the leading $match and $sort stages of a pipeline can use an index.
+     */
+    private void recordPipeline(String collection, Object pipeline) {
+        if (!(pipeline instanceof List))
+            return;
+        Map<?, ?> filter = null;
+        Map<?, ?> sort = null;
+        for (Object stage : (List<?>) pipeline) {
+            Map<?, ?> stageDocument = asMap(stage);
+            if (stageDocument == null)
+                break;
+            if (filter == null && sort == null && stageDocument.containsKey("$match"))
+                filter = asMap(stageDocument.get("$match"));
+            else if (sort == null && stageDocument.containsKey("$sort"))
+                sort = asMap(stageDocument.get("$sort"));
+            else
+                break;
+        }
+        record(collection, filter, sort);
+    }
+
+    /**
+     * Record a query.
+     * @param collection Collection of the query
+     * @param filter Filter of the query, null if the query has no filter
+     * @param sort Sort of the query, null if the query has no sort
+     */
+    public void record(String collection, Map<?, ?> filter, Map<?, ?> sort) {
+        List<String> sortFields = new ArrayList<>();
+        if (sort != null)
+            sort.keySet().forEach(key -> sortFields.add(String.valueOf(key)));
+        List<PatternBuilder> builders = (filter != null) ? parse(filter) : Collections.singletonList(new PatternBuilder());
+        Map<QueryPattern, AtomicLong> collectionPatterns = patterns.computeIfAbsent(collection, x -> new ConcurrentHashMap<>());
+        for (PatternBuilder builder : builders) {
+            QueryPattern pattern = builder.build(sortFields);
+            if (pattern.isEmpty())
+                continue;
+            AtomicLong count = collectionPatterns.get(pattern);
+            if (count == null) {
+                if (collectionPatterns.size() >= MAX_PATTERNS_PER_COLLECTION)
+                    continue;
+                count = collectionPatterns.computeIfAbsent(pattern, x -> new AtomicLong());
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    private static List<PatternBuilder> parse(Map<?, ?> filter) {
+        List<PatternBuilder> builders = Collections.singletonList(new PatternBuilder());
+        for (Map.Entry<?, ?> entry : filter.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            if ("$and".equals(key) && value instanceof List) {
+                for (Object clause : (List<?>) value)
+                    if (clause instanceof Map)
+                        builders = combine(builders, parse((Map<?, ?>) clause));
+            } else if ("$or".equals(key) && value instanceof List) {
+                List<PatternBuilder> branches = new ArrayList<>();
+                for (Object branch : (List<?>) value)
+                    if (branch instanceof Map)
+                        branches.addAll(parse((Map<?, ?>) branch));
+                if (!branches.isEmpty())
+                    builders = combine(builders, branches);
+            } else if (!key.startsWith("$")) {
+                // $nor, $text, $expr, $where... can't use the index bounds of a field
+                for (PatternBuilder builder : builders)
+                    builder.add(key, isEquality(value));
+            }
+        }
+        return builders;
+    }
+
+    private static List<PatternBuilder> combine(List<PatternBuilder> left, List<PatternBuilder> right) {
+        List<PatternBuilder> combined = new ArrayList<>();
+        for (PatternBuilder first : left)
+            for (PatternBuilder second : right)
+                if (combined.size() < MAX_OR_BRANCHES)
+                    combined.add(first.merge(second));
+        return combined;
+    }
+
+    /**
+     * Values and $eq/$in are equalities, the rest of the operators and the regular expressions are ranges.
+     */
+    private static boolean isEquality(Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> document = (Map<?, ?>) value;
+            boolean operators = false;
+            for (Object key : document.keySet())
+                if (String.valueOf(key).startsWith("$"))
+                    operators = true;
+            return !operators || document.containsKey("$eq") || document.containsKey("$in");
+        }
+        return !isRegex(value);
+    }
+
+    /**
+     * Java patterns come from the templates, BsonRegularExpression from the commands seen by the driver listeners.
+     */
+    private static boolean isRegex(Object value) {
+        return value instanceof Pattern || (value != null && "BsonRegularExpression".equals(value.getClass().getSimpleName()));
+    }
+
+    private static Map<?, ?> firstStatementFilter(Object statements) {
+        if (statements instanceof List && !((List<?>) statements).isEmpty()) {
+            Map<?, ?> statement = asMap(((List<?>) statements).get(0));
+            return (statement != null) ? asMap(statement.get("q")) : null;
+        }
+        return null;
+    }
+
+    private static Map<?, ?> asMap(Object value) {
+        return (value instanceof Map) ? (Map<?, ?>) value : null;
+    }
+
+    public Set<String> getCollections() {
+        return Collections.unmodifiableSet(patterns.keySet());
+    }
+
+    /**
+     * Query patterns of a collection.
+     * @param collection Collection name
+     * @return Map with the patterns and the number of queries of every pattern
+     */
+    public Map<QueryPattern, Long> getPatterns(String collection) {
+        Map<QueryPattern, Long> counts = new LinkedHashMap<>();
+        patterns.getOrDefault(collection, Collections.emptyMap()).entrySet().stream()
+                .sorted((x, y) -> Long.compare(y.getValue().get(), x.getValue().get()))
+                .forEach(entry -> counts.put(entry.getKey(), entry.getValue().get()));
+        return counts;
+    }
+
+    public void reset() {
+        patterns.clear();
+    }
+
+    /**
+     * Compare the recorded patterns of a collection with its indexes.
+     * @param collection Collection name
+     * @param indexes Indexes of the collection
+     * @return {@link IndexAdvice}
+     */
+    public IndexAdvice advise(String collection, Collection<Index> indexes) {
+        IndexAdvice advice = new IndexAdvice(collection);
+        Map<QueryPattern, Long> recorded = getPatterns(collection);
+
+        // The largest patterns first, the smaller ones are usually supported by the indexes suggested for them
+        List<QueryPattern> unsupported = new ArrayList<>();
+        for (QueryPattern pattern : recorded.keySet())
+            if (indexes.stream().noneMatch(index -> supports(index.getKeys(), pattern)))
+                unsupported.add(pattern);
+        unsupported.sort(Comparator.comparingInt((QueryPattern pattern) -> pattern.getSuggestedKeys().size()).reversed());
+        List<IndexAdvice.SuggestedIndex> suggestions = new ArrayList<>();
+        for (QueryPattern pattern : unsupported) {
+            IndexAdvice.SuggestedIndex suggestion = suggestions.stream()
+                    .filter(index -> supports(index.getKeys(), pattern)).findFirst().orElse(null);
+            if (suggestion != null)
+                suggestion.addQueries(recorded.get(pattern));
+            else
+                suggestions.add(new IndexAdvice.SuggestedIndex(pattern.getSuggestedKeys(), recorded.get(pattern)));
+        }
+        suggestions.sort(Comparator.comparingLong(IndexAdvice.SuggestedIndex::getQueryCount).reversed());
+        suggestions.forEach(advice::addMissingIndex);
+
+        for (Index index : indexes) {
+            if (index.isKeep() || ID_INDEX.equals(index.getName()))
+                continue;
+            for (Index other : indexes) {
+                if (other != index && isPrefix(index.getKeys(), other.getKeys())
+                        && (index.getKeys().size() < other.getKeys().size() || index.getName().compareTo(other.getName()) > 0))
+                    advice.addRedundantIndex(index.getName(), other.getName());
+            }
+            for (IndexAdvice.SuggestedIndex suggestion : suggestions)
+                if (isPrefix(index.getKeys(), suggestion.getKeys()))
+                    advice.addRedundantIndex(index.getName(), "suggested " + suggestion.getKeys());
+            if (!recorded.isEmpty() && recorded.keySet().stream().noneMatch(pattern -> canUse(index.getKeys(), pattern)))
+                advice.addUnusedIndex(index.getName());
+        }
+        return advice;
+    }
+
+    /**
+     * The index starts with the equality fields, followed by the sort fields and by a range field.
+     */
+    static boolean supports(List<String> keys, QueryPattern pattern) {
+        int i = 0;
+        while (i < keys.size() && pattern.getEquality().contains(keys.get(i)))
+            i++;
+        if (i < pattern.getEquality().size())
+            return false;
+        for (String sortField : pattern.getSort()) {
+            if (i < keys.size() && keys.get(i).equals(sortField))
+                i++;
+            else if (!pattern.getEquality().contains(sortField))
+                return false;
+        }
+        return pattern.getRange().isEmpty() || (i < keys.size() && pattern.getRange().contains(keys.get(i)));
+    }
+
+    /**
+     * The planner can use an index for a query if the first key of the index is in the query.
+     */
+    private static boolean canUse(List<String> keys, QueryPattern pattern) {
+        if (keys.isEmpty())
+            return false;
+        String first = keys.get(0);
+        return pattern.getEquality().contains(first) || pattern.getRange().contains(first) || pattern.getSort().contains(first);
+    }
+
+    private static boolean isPrefix(List<String> prefix, List<String> keys) {
+        return prefix.size() <= keys.size() && keys.subList(0, prefix.size()).equals(prefix);
+    }
+
+    /**
+     * Index of a collection. The indexes that must be kept (unique, sparse, partial, TTL) are never reported as
+     * redundant or unused.
+     */
+    public static class Index {
+
+        private final String name;
+        private final List<String> keys;
+        private final boolean keep;
+
+        public Index(String name, List<String> keys, boolean keep) {
+            this.name = name;
+            this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+            this.keep = keep;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        public boolean isKeep() {
+            return keep;
+        }
+
+        @Override
+        public String toString() {
+            return name + keys;
+        }
+    }
+
+    /**
+     * Fields of a query: equality fields, sort fields in order and range fields.
+     */
+    public static class QueryPattern {
+
+        private final Set<String> equality;
+        private final List<String> sort;
+        private final Set<String> range;
+
+        QueryPattern(Set<String> equality, List<String> sort, Set<String> range) {
+            this.equality = Collections.unmodifiableSet(equality);
+            this.sort = Collections.unmodifiableList(sort);
+            this.range = Collections.unmodifiableSet(range);
+        }
+
+        public Set<String> getEquality() {
+            return equality;
+        }
+
+        public List<String> getSort() {
+            return sort;
+        }
+
+        public Set<String> getRange() {
+            return range;
+        }
+
+        public boolean isEmpty() {
+            return equality.isEmpty() && sort.isEmpty() && range.isEmpty();
+        }
+
+        /**
+         * Equality fields, then the sort fields, then the range fields.
+         * @return Keys of the index that supports the pattern
+         */
+        public List<String> getSuggestedKeys() {
+            List<String> keys = new ArrayList<>(equality);
+            for (String field : sort)
+                if (!keys.contains(field))
+                    keys.add(field);
+            for (String field : range)
+                if (!keys.contains(field))
+                    keys.add(field);
+            return keys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            QueryPattern that = (QueryPattern) o;
+            return equality.equals(that.equality) && sort.equals(that.sort) && range.equals(that.range);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(equality, sort, range);
+        }
+
+        @Override
+        public String toString() {
+            return "{equality=" + equality + ", sort=" + sort + ", range=" + range + '}';
+        }
+    }
+
+    private static class PatternBuilder {
+
+        private final Set<String> equality = new TreeSet<>();
+        private final Set<String> range = new TreeSet<>();
+
+        void add(String field, boolean isEquality) {
+            (isEquality ? equality : range).add(field);
+        }
+
+        PatternBuilder merge(PatternBuilder other) {
+            PatternBuilder merged = new PatternBuilder();
+            merged.equality.addAll(equality);
+            merged.equality.addAll(other.equality);
+            merged.range.addAll(range);
+            merged.range.addAll(other.range);
+            return merged;
+        }
+
+        QueryPattern build(List<String> sort) {
+            // A field compared for equality and for a range uses the equality bounds
+            Set<String> rangeOnly = new TreeSet<>(range);
+            rangeOnly.removeAll(equality);
+            return new QueryPattern(new TreeSet<>(equality), new ArrayList<>(sort), rangeOnly);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of results retrieved with keyset (seek) pagination. Instead of a page number the page returns an opaque
+ * continuation token that points after the last element of the page, the token is used to retrieve the next page.
+ * The cost of retrieving a page doesn't depend on how deep the page is.
+ *
+ * @author ypriverol
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final String continuationToken;
+
+    public KeysetPage(List<T> content, String continuationToken) {
+        this.content = (content != null) ? content : Collections.emptyList();
+        this.continuationToken = continuationToken;
+    }
+
+    /**
+     * Elements of the current page.
+     * @return List of elements
+     */
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * Token to retrieve the next page, null if this is the last page.
+     * @return continuation token
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean hasNext() {
+        return continuationToken != null;
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetPage{" +
+                "size=" + content.size() +
+                ", continuationToken='" + continuationToken + '\'' +
+                '}';
+    }
+}
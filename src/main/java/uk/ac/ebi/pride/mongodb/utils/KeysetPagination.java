@@ -0,0 +1,118 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset (seek) pagination for the custom repositories. The page is sorted by an optional top-level field and the
+ * _id of the document, the continuation token stores the sort key of the last document of the page and the next page
+ * starts right after it. The queries should be supported by an index on (sortField, _id) or on the equality filters
+ * followed by _id, so a deep page costs the same as the first one.
+ *
+ * @author ypriverol
+ */
+public class KeysetPagination {
+
+    private static final String MONGO_ID = "_id";
+    private static final String TOKEN_SORT_FIELD = "f";
+    private static final String TOKEN_SORT_VALUE = "v";
+    private static final String TOKEN_ID = "i";
+
+    private KeysetPagination() {
+    }
+
+    /**
+     * Retrieve one page of the query using keyset pagination.
+     *
+     * @param mongoOperations   Mongo operations of the database
+     * @param query             Query with the filters, the sort and limit are set by this method
+     * @param entityClass       Class of the documents
+     * @param sortField         Top-level field used to sort the documents before the _id, null to sort only by _id
+     * @param continuationToken Token returned by the previous page, null or empty for the first page
+     * @param size              Number of elements in the page
+     * @return {@link KeysetPage}
+     */
+    public static <T> KeysetPage<T> find(MongoOperations mongoOperations, Query query, Class<T> entityClass,
+                                         String sortField, String continuationToken, int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("The page size must be positive -- " + size);
+
+        String field = (sortField == null || sortField.trim().isEmpty() || MONGO_ID.equals(sortField)) ? null : sortField;
+        if (continuationToken != null && !continuationToken.trim().isEmpty())
+            query.addCriteria(seekCriteria(decodeToken(continuationToken, field), field));
+
+        query.with((field == null) ? Sort.by(Sort.Direction.ASC, MONGO_ID) : Sort.by(Sort.Direction.ASC, field, MONGO_ID));
+        query.limit(size + 1);
+
+        List<Document> documents = mongoOperations.find(query, Document.class, mongoOperations.getCollectionName(entityClass));
+        String nextToken = null;
+        if (documents.size() > size) {
+            documents = documents.subList(0, size);
+            nextToken = encodeToken(documents.get(size - 1), field);
+        }
+        List<T> content = documents.stream()
+                .map(document -> mongoOperations.getConverter().read(entityClass, document))
+                .collect(Collectors.toList());
+        return new KeysetPage<>(content, nextToken);
+    }
+
+    /**
+     * Documents after the sort key (sortValue, _id) of the token. The range on the sort field bounds the index scan and
+     * the $or only keeps the documents with the same value after the last _id. The null and missing values are sorted
+     * first and can't be compared with $gt, the page after a null value continues with the nulls and then every value.
+     * @param token Decoded continuation token
+     * @param sortField Sort field, null if the page is sorted only by _id
+     * @return Seek criteria
+     */
+    static Criteria seekCriteria(Document token, String sortField) {
+        Object lastId = token.get(TOKEN_ID);
+        if (sortField == null)
+            return Criteria.where(MONGO_ID).gt(lastId);
+        Object lastValue = token.get(TOKEN_SORT_VALUE);
+        if (lastValue == null)
+            return new Criteria().orOperator(Criteria.where(sortField).is(null).and(MONGO_ID).gt(lastId),
+                    Criteria.where(sortField).ne(null));
+        return Criteria.where(sortField).gte(lastValue).orOperator(Criteria.where(sortField).gt(lastValue),
+                Criteria.where(MONGO_ID).gt(lastId));
+    }
+
+    /**
+     * Encode the sort key of the last document of a page as an opaque token.
+     * @param lastDocument Last document of the page
+     * @param sortField Sort field, null if the page is sorted only by _id
+     * @return Continuation token
+     */
+    static String encodeToken(Document lastDocument, String sortField) {
+        Document token = new Document(TOKEN_ID, lastDocument.get(MONGO_ID));
+        if (sortField != null)
+            token.append(TOKEN_SORT_FIELD, sortField).append(TOKEN_SORT_VALUE, lastDocument.get(sortField));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a continuation token and check that it was generated for the same sort field.
+     * @param continuationToken Token
+     * @param sortField Sort field of the current request
+     * @return Document with the sort key
+     */
+    static Document decodeToken(String continuationToken, String sortField) {
+        Document token;
+        try {
+            token = Document.parse(new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("The continuation token is not valid -- " + continuationToken, e);
+        }
+        String tokenField = token.getString(TOKEN_SORT_FIELD);
+        if (!token.containsKey(TOKEN_ID) || (sortField == null ? tokenField != null : !sortField.equals(tokenField)))
+            throw new IllegalArgumentException("The continuation token doesn't belong to a page sorted by -- " + ((sortField == null) ? MONGO_ID : sortField));
+        return token;
+    }
+}
@@ -0,0 +1,150 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Small thread-safe LRU cache with a time to live for every entry. When the cache is full the least recently used
+ * entry is evicted, expired entries are removed when they are accessed. The cache keeps hit, miss and eviction
+ * statistics.
+ *
+ * @author ypriverol
+ */
+public class LruTtlCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LruTtlCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, ttl, unit, System::nanoTime);
+    }
+
+    /**
+     * Create a cache.
+     * @param maxSize Maximum number of entries
+     * @param ttl Time to live of each entry
+     * @param unit Unit of the time to live
+     * @param clock Source of the time in nanoseconds
+     */
+    public LruTtlCache(int maxSize, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (maxSize < 1 || ttl < 0)
+            throw new IllegalArgumentException("The cache size must be positive and the time to live can't be negative");
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                boolean evict = size() > LruTtlCache.this.maxSize;
+                if (evict)
+                    evictions.incrementAndGet();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Retrieve a value from the cache.
+     * @param key Key of the value
+     * @return The value or null if the key is not in the cache or the entry expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && clock.getAsLong() - entry.created > ttlNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Check if the key has a live entry, the check doesn't change the statistics.
+     * @param key Key of the value
+     * @return True if the cache contains the key
+     */
+    public synchronized boolean containsKey(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null && clock.getAsLong() - entry.created <= ttlNanos;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.getAsLong()));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove all the entries whose key matches the predicate.
+     * @param predicate Predicate on the keys
+     */
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        Iterator<K> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (predicate.test(keys.next()))
+                keys.remove();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "LruTtlCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                ", evictions=" + evictions.get() +
+                '}';
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long created;
+
+        private Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts used to build the pages of the filterByAttributes methods. Counting a filtered query on a big collection is
+ * expensive, the {@link MongoCountCache} avoids most of these counts:
+ *
+ * - Unfiltered queries use the collection metadata (estimatedDocumentCount) instead of counting the documents.
+ * - Counts are cached by collection and normalized filter (the order of the top-level fields and of the $and/$or/$in
+ *   elements doesn't change the key) during a time to live.
+ * - For very large filters a capped count can be used, the server stops counting when the cap is reached and the
+ *   result means "at least cap" documents.
+ *
+ * The cache is a bean of each database configuration. The counts of a collection are invalidated when documents are
+ * saved or deleted through the template or the repositories, the repositories invalidate them after their updates.
+ *
+ * @author ypriverol
+ */
+public class MongoCountCache extends AbstractMongoEventListener<Object> {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_TTL_SECONDS = 300;
+    public static final int DEFAULT_COUNT_CAP = 10_000;
+
+    /** Logical operators whose elements are filters and can be reordered **/
+    private static final Set<String> LOGICAL_OPERATORS = new HashSet<>(Arrays.asList("$and", "$or", "$nor"));
+
+    /** Operators whose values can be reordered without changing the result of the query **/
+    private static final Set<String> UNORDERED_VALUE_OPERATORS = new HashSet<>(Arrays.asList("$in", "$nin", "$all"));
+
+    private final LruTtlCache<String, Long> counts;
+
+    private final int countCap;
+
+    /** The counts of a collection are invalidated by changing its generation, the old keys expire in the LRU **/
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public MongoCountCache(int maxEntries, long ttl, TimeUnit unit) {
+        this(maxEntries, ttl, unit, DEFAULT_COUNT_CAP);
+    }
+
+    public MongoCountCache(int maxEntries, long ttl, TimeUnit unit, int countCap) {
+        if (countCap < 1)
+            throw new IllegalArgumentException("The count cap must be positive -- " + countCap);
+        this.counts = new LruTtlCache<>(maxEntries, ttl, unit);
+        this.countCap = countCap;
+    }
+
+    /**
+     * Exact number of documents matching the query, the skip, limit and sort of the query are ignored.
+     * @param mongoOperations Mongo operations of the database
+     * @param query Query
+     * @param entityClass Class of the documents
+     * @return Number of documents
+     */
+    public long count(MongoOperations mongoOperations, Query query, Class<?> entityClass) {
+        return count(mongoOperations, query, entityClass, 0).getCount();
+    }
+
+    /**
+     * Number of documents matching the query, the server stops counting at the cap.
+     * @param mongoOperations Mongo operations of the database
+     * @param query Query
+     * @param entityClass Class of the documents
+     * @param cap Maximum number of documents to count, 0 for an exact count
+     * @return {@link CappedCount}, at most cap
+     */
+    public CappedCount countAtMost(MongoOperations mongoOperations, Query query, Class<?> entityClass, long cap) {
+        return count(mongoOperations, query, entityClass, cap);
+    }
+
+    /**
+     * Total of a page for very large filters. The cap is rounded to the next multiple of the count cap after the
+     * requested page, so the page always knows if there is a next page while the number of cached keys stays small.
+     * @param mongoOperations Mongo operations of the database
+     * @param query Query
+     * @param entityClass Class of the documents
+     * @param offset Offset of the requested page
+     * @param pageSize Size of the requested page
+     * @return {@link CappedCount}, at most the cap
+     */
+    public CappedCount countForPage(MongoOperations mongoOperations, Query query, Class<?> entityClass, long offset, int pageSize) {
+        long cap = ((offset + pageSize) / countCap + 1) * countCap;
+        return count(mongoOperations, query, entityClass, cap);
+    }
+
+    private CappedCount count(MongoOperations mongoOperations, Query query, Class<?> entityClass, long cap) {
+        String collectionName = mongoOperations.getCollectionName(entityClass);
+        Document queryObject = query.getQueryObject();
+        if (queryObject.isEmpty()) {
+            // The metadata count is cheap enough to be always fresh
+            long total = mongoOperations.getCollection(collectionName).estimatedDocumentCount();
+            return (cap > 0 && total > cap) ? CappedCount.capped(cap) : CappedCount.exact(total);
+        }
+
+        String key = collectionName + "|" + generation(collectionName).get() + "|" + cap + "|" + normalize(queryObject);
+        Long total = counts.get(key);
+        if (total == null) {
+            Query countQuery = new BasicQuery(queryObject);
+            if (cap > 0)
+                countQuery.limit((int) Math.min(cap, Integer.MAX_VALUE));
+            total = mongoOperations.count(countQuery, entityClass);
+            counts.put(key, total);
+        }
+        return (cap > 0 && total >= cap) ? CappedCount.capped(cap) : CappedCount.exact(total);
+    }
+
+    private AtomicLong generation(String collectionName) {
+        return generations.computeIfAbsent(collectionName, name -> new AtomicLong());
+    }
+
+    /**
+     * Invalidate the cached counts of one collection, it should be called after the writes that don't publish
+     * mapping events (updates and bulk operations).
+     * @param collectionName Name of the collection
+     */
+    public void invalidate(String collectionName) {
+        generation(collectionName).incrementAndGet();
+    }
+
+    public void invalidateAll() {
+        counts.invalidateAll();
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        invalidate(event.getCollectionName());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        invalidate(event.getCollectionName());
+    }
+
+    public LruTtlCache<String, Long> getCache() {
+        return counts;
+    }
+
+    public int getCountCap() {
+        return countCap;
+    }
+
+    /**
+     * Canonical representation of a filter. The top-level fields and the fields of the $and/$or/$nor clauses are
+     * sorted by name, the clauses and the values of $in/$nin/$all are sorted by their representation. The embedded
+     * documents are kept as they are, the order of their fields is part of an equality match.
+     * @param queryObject Filter
+     * @return Canonical JSON of the filter
+     */
+    static String normalize(Document queryObject) {
+        Document normalized = normalizeFilter(queryObject);
+        try {
+            return normalized.toJson();
+        } catch (RuntimeException e) {
+            // Values without a codec, the string representation is still deterministic
+            return normalized.toString();
+        }
+    }
+
+    private static Document normalizeFilter(Map<String, Object> filter) {
+        Map<String, Object> sorted = new TreeMap<>();
+        filter.forEach((key, value) -> sorted.put(key, normalizeValue(key, value)));
+        return new Document(sorted);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object normalizeValue(String key, Object value) {
+        if (LOGICAL_OPERATORS.contains(key) && value instanceof List) {
+            List<Object> clauses = new ArrayList<>();
+            for (Object clause : (List<Object>) value)
+                clauses.add((clause instanceof Map) ? normalizeFilter((Map<String, Object>) clause) : clause);
+            clauses.sort(Comparator.comparing(MongoCountCache::asString));
+            return clauses;
+        }
+        if (UNORDERED_VALUE_OPERATORS.contains(key) && (value instanceof List || value instanceof Object[])) {
+            List<Object> values = new ArrayList<>((value instanceof List) ? (List<Object>) value : Arrays.asList((Object[]) value));
+            values.sort(Comparator.comparing(MongoCountCache::asString));
+            return values;
+        }
+        if (value instanceof Map && isOperatorDocument((Map<String, Object>) value)) {
+            // Operators of a field, e.g. {$in: [...]}, the order of the operators is kept
+            Document operators = new Document();
+            ((Map<String, Object>) value).forEach((operator, operand) -> operators.put(operator, normalizeValue(operator, operand)));
+            return operators;
+        }
+        return value;
+    }
+
+    private static boolean isOperatorDocument(Map<String, Object> value) {
+        return !value.isEmpty() && value.keySet().stream().allMatch(key -> key.startsWith("$"));
+    }
+
+    private static String asString(Object value) {
+        if (value instanceof Document) {
+            try {
+                return ((Document) value).toJson();
+            } catch (RuntimeException e) {
+                return value.toString();
+            }
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,126 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extract the modifications of a peptidoform (ProForma notation used in the USI), for example:
+ *
+ * [UNIMOD:214]-YYWGGLYS[UNIMOD:21]WDMSK[UNIMOD:214]
+ *
+ * Every modification is indexed twice, by its accession (UNIMOD:21) and by its accession and site (UNIMOD:21@S).
+ * Modifications before the first residue are placed on the N-term, modifications after a '-' that follows the
+ * residues on the C-term. These keys are stored in a multikey field of the PSMs and allow searching PSMs by modification
+ * using an index.
+ *
+ * @author ypriverol
+ */
+public class PeptidoformModifications {
+
+    public static final String SITE_SEPARATOR = "@";
+    public static final String N_TERM = "N-term";
+    public static final String C_TERM = "C-term";
+
+    private static final Pattern UNIMOD = Pattern.compile("^(?:UNIMOD|U):(\\d+)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PSI_MOD = Pattern.compile("^(?:MOD|M):(\\d+)$", Pattern.CASE_INSENSITIVE);
+
+    private PeptidoformModifications() {
+    }
+
+    /**
+     * Modification keys of a peptidoform.
+     * @param peptidoform Peptidoform in ProForma notation
+     * @return Set of keys, accession and accession@site for every modification. The modifications after an unclosed
+     * bracket are ignored.
+     */
+    public static Set<String> modificationSites(String peptidoform) {
+        Set<String> sites = new TreeSet<>();
+        if (peptidoform == null || peptidoform.indexOf('[') < 0)
+            return sites;
+
+        String lastResidue = null;
+        int length = peptidoform.length();
+        int i = 0;
+        while (i < length) {
+            char c = peptidoform.charAt(i);
+            if (c == '[') {
+                int end = closingBracket(peptidoform, i);
+                // A malformed peptidoform keeps the modifications before the unclosed bracket
+                if (end < 0)
+                    break;
+                String site;
+                if (lastResidue == null)
+                    site = N_TERM;
+                else if (peptidoform.charAt(i - 1) == '-')
+                    site = C_TERM;
+                else
+                    site = lastResidue;
+                addModification(sites, peptidoform.substring(i + 1, end), site);
+                i = end + 1;
+            } else {
+                if (Character.isLetter(c))
+                    lastResidue = String.valueOf(Character.toUpperCase(c));
+                i++;
+            }
+        }
+        return sites;
+    }
+
+    /**
+     * Key used to search a modification.
+     * @param accession Accession of the modification (UNIMOD:21, MOD:00046)
+     * @param site Residue or terminal, null to search the modification on any site
+     * @return Key of the modification
+     */
+    public static String modificationKey(String accession, String site) {
+        String key = normalizeAccession(accession.trim());
+        if (site == null || site.trim().isEmpty())
+            return key;
+        String normalizedSite = site.trim();
+        if (normalizedSite.length() == 1)
+            normalizedSite = normalizedSite.toUpperCase();
+        else if (normalizedSite.equalsIgnoreCase(N_TERM))
+            normalizedSite = N_TERM;
+        else if (normalizedSite.equalsIgnoreCase(C_TERM))
+            normalizedSite = C_TERM;
+        return key + SITE_SEPARATOR + normalizedSite;
+    }
+
+    private static void addModification(Set<String> sites, String modification, String site) {
+        // Alternative names of the same modification are separated by '|'
+        for (String alternative : modification.split("\\|")) {
+            if (!alternative.trim().isEmpty()) {
+                sites.add(modificationKey(alternative, null));
+                sites.add(modificationKey(alternative, site));
+            }
+        }
+    }
+
+    private static String normalizeAccession(String accession) {
+        Matcher unimod = UNIMOD.matcher(accession);
+        if (unimod.matches())
+            return "UNIMOD:" + unimod.group(1);
+        Matcher psiMod = PSI_MOD.matcher(accession);
+        if (psiMod.matches())
+            return "MOD:" + psiMod.group(1);
+        return accession;
+    }
+
+    /**
+     * Position of the bracket that closes the bracket at start, the modifications can contain brackets.
+     * @return Position of the closing bracket, -1 if the bracket is not closed
+     */
+    private static int closingBracket(String peptidoform, int start) {
+        int depth = 0;
+        for (int i = start; i < peptidoform.length(); i++) {
+            char c = peptidoform.charAt(i);
+            if (c == '[')
+                depth++;
+            else if (c == ']' && --depth == 0)
+                return i;
+        }
+        return -1;
+    }
+}
@@ -1,12 +1,28 @@
 package uk.ac.ebi.pride.mongodb.utils;
 
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.data.util.StreamUtils;
 import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
 import uk.ac.ebi.pride.archive.dataprovider.common.Tuple;
 import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
@@ -16,8 +32,9 @@ import uk.ac.ebi.pride.mongodb.archive.model.projects.CounterCollection;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * @author ypriverol
@@ -27,6 +44,16 @@ public class PrideMongoUtils {
     /** Logger use to query and filter the data **/
     private static final Logger LOGGER = LoggerFactory.getLogger(PrideMongoUtils.class);
 
+    /** Default number of documents fetched from the server in each round trip of a cursor **/
+    public static final int DEFAULT_CURSOR_BATCH_SIZE = 500;
+
+    /** Error code of the MongoDB duplicate key write errors **/
+    public static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
+    /** Query documents built from the filters, the search endpoints receive the same filters again and again **/
+    private static final LruTtlCache<String, Document> QUERY_TEMPLATES = new LruTtlCache<>(FilterParser.DEFAULT_CACHE_SIZE,
+            FilterParser.DEFAULT_CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+
     /**
      * This function generates an accession by incremented by the parameter size
      * @param seqName The collection in the MongoDB
@@ -38,39 +65,107 @@ public class PrideMongoUtils {
         return counter.getSeq();
     }
 
+    /**
+     * Save a list of documents with one unordered bulk write. The documents without an id get a new one and are
+     * inserted, the documents with an id are upserted by _id, as a save of the repository would do, then a re-ingest
+     * of the same entities updates them. The upserts set the fields of the document, the fields removed from the
+     * entity are kept in the database. The documents that can't be written because of a duplicate key don't stop the
+     * write of the others, their positions in the list are returned, any other write error is thrown.
+     *
+     * @param mongo Mongo operations of the database
+     * @param documents Documents to be saved
+     * @param entityClass Class of the documents
+     * @return Positions in the list of the documents rejected with a duplicate key error
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Set<Integer> bulkSaveUnordered(MongoOperations mongo, List<?> documents, Class<?> entityClass) {
+        if (documents.isEmpty())
+            return Collections.emptySet();
+        MongoConverter converter = mongo.getConverter();
+        MongoPersistentEntity persistentEntity = converter.getMappingContext().getRequiredPersistentEntity(entityClass);
+        MongoPersistentProperty idProperty = persistentEntity.getRequiredIdProperty();
+
+        // One write by document, the indexes of the write errors are the positions in the list
+        BulkOperations bulk = mongo.bulkOps(BulkOperations.BulkMode.UNORDERED, entityClass);
+        for (Object document : documents) {
+            PersistentPropertyAccessor accessor = persistentEntity.getPropertyAccessor(document);
+            if (accessor.getProperty(idProperty) == null) {
+                accessor.setProperty(idProperty, converter.getConversionService().convert(new ObjectId(), idProperty.getType()));
+                bulk.insert(document);
+            } else {
+                Document converted = new Document();
+                converter.write(document, converted);
+                bulk.upsert(Query.query(Criteria.where("_id").is(converted.get("_id"))), setAllFields(converted));
+            }
+        }
+        try {
+            bulk.execute();
+            return Collections.emptySet();
+        } catch (BulkOperationException e) {
+            Set<Integer> duplicates = new HashSet<>();
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_ERROR_CODE)
+                    throw e;
+                duplicates.add(error.getIndex());
+            }
+            return duplicates;
+        }
+    }
+
+    /**
+     * Update that sets every field of a converted document with $set, the _id is only set when the document is
+     * inserted by an upsert. Update.fromDocument keeps the fields without operators, the document is then sent as a
+     * replacement and the bulk updates reject it.
+     *
+     * @param document Document written by the converter
+     * @return Update with the fields of the document
+     */
+    public static Update setAllFields(Document document) {
+        Update update = new Update();
+        document.forEach((key, value) -> {
+            if ("_id".equals(key))
+                update.setOnInsert(key, value);
+            else
+                update.set(key, value);
+        });
+        return update;
+    }
+
+    /**
+     * Create a unique index if it doesn't exist, $merge needs a unique index on its "on" fields and fails without it.
+     * The index can't be created while the collection contains documents with the same keys, these documents must be
+     * removed first.
+     *
+     * @param mongo Mongo operations of the database
+     * @param collectionName Collection of the index
+     * @param indexName Name of the index
+     * @param fields Ascending fields of the index
+     * @throws IllegalStateException if the collection contains duplicated keys
+     */
+    public static void ensureUniqueIndex(MongoOperations mongo, String collectionName, String indexName, String... fields) {
+        Index index = new Index().named(indexName).unique();
+        for (String field : fields)
+            index.on(field, Sort.Direction.ASC);
+        try {
+            mongo.indexOps(collectionName).ensureIndex(index);
+        } catch (DuplicateKeyException e) {
+            throw new IllegalStateException("The unique index " + indexName + " can't be created, the collection "
+                    + collectionName + " contains duplicated " + Arrays.toString(fields) + " -- " + e.getMessage(), e);
+        }
+    }
+
     /**
      * This function is also replicated in other PRIDE libraries for Query purpose. The query Filter has the structure:
-     * field1==value1, field2==value2, field=all=value2...
+     * field1==value1, field2==value2, field=all=value2... The filters are parsed by the {@link FilterParser}, the
+     * values keep their escape characters and are unescaped when the Query is built.
      *
      * @param filterQueryList Lists of Queries and filters
      * @return LinkedMultiValueMap with the key and the values.
      */
     public static List<Triple<String, String, String>> parseFilterParameters(String ... filterQueryList){
         List<Triple<String, String, String>> filters = new ArrayList<>();
-        Pattern composite = Pattern.compile("(.*)=(.*)=(.*)");
-        for(String filterQuery: filterQueryList){
-            if(filterQuery != null && !filterQuery.trim().isEmpty()){
-                String[] filtersString = (filterQuery).split(",");
-                if(filtersString.length > 0){
-                    Arrays.asList(filtersString).forEach(filter ->{
-                        String[] filterString = filter.split("==");
-                        Matcher matcher = composite.matcher(filter);
-                        if(filterString.length == 2)
-                            filters.add(new Triple<>(filterString[0], "is", filterString[1]));
-                        else if(matcher.find()){
-                            if(matcher.group(2).equalsIgnoreCase("in")) {
-//                                filters.add(new ImmutableTriple<>(matcher.group(1), matcher.group(2), matcher.group(3).replace("|", ",")));
-                                filters.add(new Triple<>(matcher.group(1), matcher.group(2), matcher.group(3)));
-                            }else{
-                                filters.add(new Triple<>(matcher.group(1), matcher.group(2), matcher.group(3)));
-                            }
-                        } else
-                            LOGGER.debug("The filter provided is not well-formatted, please format the filter in field:value -- " + filter);
-
-                    });
-                }
-            }
-        }
+        for (FilterExpression expression : FilterParser.parse(filterQueryList))
+            filters.add(expression.toTriple());
         return filters;
     }
 
@@ -80,127 +175,225 @@ public class PrideMongoUtils {
      * @return Final Criteria to Filter
      */
     public static Criteria buildCriteria(List<Triple<String,String, String>> filters) {
-        Criteria filterCriteria = null;
-        if(!filters.isEmpty()){
-            for(Triple filter: filters){
-                filterCriteria = convertStringToCriteria(filterCriteria, (String)filter.getFirst(), (String)filter.getSecond(), (String)filter.getThird());
-            }
-        }
-        return filterCriteria;
+        List<Criteria> filterCriteria = toCriteria(filters);
+        if (filterCriteria.isEmpty())
+            return null;
+        if (filterCriteria.size() == 1)
+            return filterCriteria.get(0);
+        return new Criteria().andOperator(filterCriteria.toArray(new Criteria[0]));
     }
 
     /**
-     * Filter Criteria for Collection
+     * Filter Criteria for Collection. The query of every list of filters is built once and kept as a template, every
+     * call returns a copy of the template that can be modified (page, sort, projection) by the caller.
      * @param filters Filters to Create Criteria
      * @return Final Criteria to Filter
      */
     public static Query buildQuery(List<Triple<String,String, String>> filters) {
-        List<Criteria> filterCriteria = new ArrayList<>();
-        Query query = new Query();
-        if(!filters.isEmpty()){
-            for(Triple filter: filters){
-                filterCriteria.add(convertStringToCriteria((String)filter.getFirst(), (String)filter.getSecond(), (String)filter.getThird()));
-            }
-        }
-        if (filterCriteria.size() > 0){
-            query.addCriteria(new Criteria().andOperator(filterCriteria.toArray(new Criteria[filterCriteria.size()])));
+        if (filters.isEmpty())
+            return new Query();
+        String key = queryTemplateKey(filters);
+        Document template = QUERY_TEMPLATES.get(key);
+        if (template == null) {
+            Query query = new Query();
+            List<Criteria> filterCriteria = toCriteria(filters);
+            if (!filterCriteria.isEmpty())
+                query.addCriteria(new Criteria().andOperator(filterCriteria.toArray(new Criteria[0])));
+            template = query.getQueryObject();
+            QUERY_TEMPLATES.put(key, template);
         }
-        return query;
-    }
-
-    private static Criteria convertStringToCriteria(Criteria filterCriteria, String filterField, String operator, String valueFilter) {
-        if(filterCriteria == null){
-            if (operator.equalsIgnoreCase("in"))
-                filterCriteria = new Criteria(filterField).in(valueFilter.split(","));
-            else if (operator.equalsIgnoreCase("is"))
-                filterCriteria = new Criteria(filterField).is(valueFilter);
-            else if (operator.equalsIgnoreCase("all"))
-                filterCriteria = new Criteria(filterField).all(valueFilter);
-            else if (operator.equalsIgnoreCase("range")) {
-                Tuple<Object, Object> betweenClass = parseBetweenObjects(parseFilterBetween(valueFilter), filterField);
-                filterCriteria = Criteria.where(filterField).gte(betweenClass.getKey()).lt(betweenClass.getValue());
-            } else if (operator.equalsIgnoreCase("regex")) {
-                filterCriteria = Criteria.where(filterField).regex(valueFilter);
-            }
-        }else{
-            if (operator.equalsIgnoreCase("in"))
-                filterCriteria = filterCriteria.andOperator(new Criteria(filterField).in(valueFilter.split(",")));
-            else if (operator.equalsIgnoreCase("is"))
-                filterCriteria = filterCriteria.andOperator(new Criteria(filterField).is(valueFilter));
-            else if (operator.equalsIgnoreCase("all"))
-                filterCriteria = filterCriteria.andOperator(new Criteria(filterField).all(valueFilter));
-            else if (operator.equalsIgnoreCase("range")) {
-                Tuple<Object, Object> betweenClass = parseBetweenObjects(parseFilterBetween(valueFilter), filterField);
-                filterCriteria = Criteria.where(filterField).gte(betweenClass.getKey()).lt(betweenClass.getValue());
-            } else if (operator.equalsIgnoreCase("regex")) {
-                filterCriteria = filterCriteria.andOperator(new Criteria(filterField).regex(valueFilter));
-            }
+        return new BasicQuery(copyDocument(template));
+    }
+
+    private static String queryTemplateKey(List<Triple<String,String, String>> filters) {
+        StringBuilder key = new StringBuilder();
+        for (Triple<String, String, String> filter : filters)
+            key.append(filter.getFirst()).append('\0').append(filter.getSecond()).append('\0')
+                    .append(filter.getThird()).append('\1');
+        return key.toString();
+    }
 
+    private static List<Criteria> toCriteria(List<Triple<String,String, String>> filters) {
+        List<Criteria> filterCriteria = new ArrayList<>(filters.size());
+        for (Triple<String, String, String> filter : filters) {
+            try {
+                filterCriteria.add(toCriteria(FilterExpression.of(filter)));
+            } catch (IllegalArgumentException e) {
+                LOGGER.debug("The filter is not valid and it will be ignored -- " + e.getMessage());
+            }
         }
         return filterCriteria;
     }
 
-    private static Criteria convertStringToCriteria(String filterField, String operator, String valueFilter) {
-        Criteria filterCriteria = null;
-        if (operator.equalsIgnoreCase("in"))
-            filterCriteria = new Criteria(filterField).in(valueFilter.split(","));
-        else if (operator.equalsIgnoreCase("is"))
-            filterCriteria = new Criteria(filterField).is(valueFilter);
-        else if (operator.equalsIgnoreCase("all"))
-            filterCriteria = new Criteria(filterField).all(valueFilter);
-        else if (operator.equalsIgnoreCase("range")) {
-            Tuple<Object, Object> betweenClass = parseBetweenObjects(parseFilterBetween(valueFilter), filterField);
-            filterCriteria = Criteria.where(filterField).gte(betweenClass.getKey()).lt(betweenClass.getValue());
-        } else if (operator.equalsIgnoreCase("regex")) {
-            filterCriteria = Criteria.where(filterField).regex(valueFilter);
+    /**
+     * Convert a filter expression into a Criteria. The values are converted to the type of the field in
+     * {@link PrideFieldEnum}, so the filters on numeric, boolean and date fields match the documents and use the indexes.
+     * @param expression Filter expression
+     * @return Criteria
+     */
+    public static Criteria toCriteria(FilterExpression expression) {
+        String filterField = expression.getField();
+        Class<?> classType = fieldType(filterField);
+        switch (expression.getOperator()) {
+            case IN:
+                return new Criteria(filterField).in(convertFilterValues(classType, expression.getValues()));
+            case ALL:
+                return new Criteria(filterField).all(convertFilterValues(classType, expression.getValues()));
+            case RANGE:
+                Tuple<Object, Object> betweenClass = parseBetweenObjects(expression.getValues().get(0), expression.getValues().get(1), classType);
+                return Criteria.where(filterField).gte(betweenClass.getKey()).lt(betweenClass.getValue());
+            case REGEX:
+                return regexCriteria(filterField, expression.getValue());
+            default:
+                // A date matches the whole day
+                if (classType == Date.class) {
+                    Tuple<Object, Object> day = parseBetweenObjects(expression.getValue(), expression.getValue(), classType);
+                    if (day.getKey() instanceof Date)
+                        return Criteria.where(filterField).gte(day.getKey()).lt(day.getValue());
+                }
+                return new Criteria(filterField).is(convertFilterValue(classType, expression.getValue()));
         }
-        return filterCriteria;
     }
 
     /**
-     * PArse the values between a Range.
-     * @param stringTuple The Tuple containing the first Value of the range and the Second value.
-     * @param filterField The filterField.
-     * @return The Obejcts to filter,
+     * Regex Criteria that can use the index of the field. Exact (^value$) and prefix (^value) expressions are
+     * rewritten by the {@link RegexRewriter} into an equality, an anchored prefix or a $in.
+     * @param field Field name
+     * @param regex Regular expression
+     * @return Criteria
      */
-    private static Tuple<Object, Object> parseBetweenObjects(Tuple<String, String> stringTuple, String filterField) {
-        Class classType = String.class;
-        Tuple<Object, Object> resultTuple = new Tuple<>(stringTuple.getKey(), stringTuple.getValue());
-        for(PrideFieldEnum field: PrideFieldEnum.values()){
-            if(field.getFieldName().equalsIgnoreCase(filterField)){
-                classType = field.getClassType();
-            }
+    public static Criteria regexCriteria(String field, String regex) {
+        List<Object> values = RegexRewriter.rewrite(regex);
+        if (values == null)
+            return Criteria.where(field).regex(regex);
+        if (values.size() == 1) {
+            Object value = values.get(0);
+            return (value instanceof Pattern) ? Criteria.where(field).regex((Pattern) value) : Criteria.where(field).is(value);
         }
-        try{
-            if(classType == Date.class){
-                Date date = new SimpleDateFormat("yyyy-MM-dd").parse(stringTuple.getKey());
-                Date startDate = uk.ac.ebi.pride.utilities.util.DateUtils.atStartOfDay(date);
+        return Criteria.where(field).in(values);
+    }
 
-                date = new SimpleDateFormat("yyyy-MM-dd").parse(stringTuple.getValue());
-                Date endDate = uk.ac.ebi.pride.utilities.util.DateUtils.atEndOfDay(date);
-                resultTuple = new Tuple<>(startDate, endDate);
+    private static Class<?> fieldType(String filterField) {
+        PrideFieldEnum field = PrideFieldEnum.fromFieldName(filterField);
+        return (field != null) ? field.getClassType() : String.class;
+    }
 
+    private static List<Object> convertFilterValues(Class<?> classType, List<String> values) {
+        List<Object> converted = new ArrayList<>(values.size());
+        for (String value : values)
+            converted.add(convertFilterValue(classType, value));
+        return converted;
+    }
 
-            }
-        }catch(ParseException ex){
-            LOGGER.error(ex.getMessage());
+    /**
+     * Convert a filter value to the type of the field. Values that can't be converted are kept as String.
+     * @param classType Type of the field
+     * @param value Value of the filter
+     * @return Converted value
+     */
+    static Object convertFilterValue(Class<?> classType, String value) {
+        String trimmed = value.trim();
+        try {
+            if (classType == Integer.class)
+                return Integer.valueOf(trimmed);
+            if (classType == Long.class)
+                return Long.valueOf(trimmed);
+            if (classType == Double.class)
+                return Double.valueOf(trimmed);
+            if (classType == Boolean.class && (trimmed.equalsIgnoreCase("true") || trimmed.equalsIgnoreCase("false")))
+                return Boolean.valueOf(trimmed);
+            if (classType == Date.class)
+                return new SimpleDateFormat("yyyy-MM-dd").parse(trimmed);
+        } catch (NumberFormatException | ParseException e) {
+            LOGGER.debug("The filter value can't be converted to " + classType.getSimpleName() + " -- " + value);
         }
-        return resultTuple;
+        return value;
+    }
 
+    /**
+     * Copy of a query document, the nested documents and lists are copied too.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Document)
+            return copyDocument((Document) value);
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List<Object>) value).size());
+            for (Object item : (List<Object>) value)
+                copy.add(copyValue(item));
+            return copy;
+        }
+        return value;
+    }
+
+    private static Document copyDocument(Document document) {
+        Document copy = new Document();
+        for (Map.Entry<String, Object> entry : document.entrySet())
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        return copy;
     }
 
     /**
-     * Parse a Range String
-     * @param valueFilter Value String
-     * @return a Tuple of Start and End Values.
+     * PArse the values between a Range. Dates go from the start of the first day to the end of the last day.
+     * @param from The first Value of the range.
+     * @param to The Second value of the range.
+     * @param classType Type of the field.
+     * @return The Obejcts to filter,
      */
-    private static Tuple<String, String> parseFilterBetween(String valueFilter) {
-        Pattern composite = Pattern.compile("\\[(.*)TO(.*)\\]");
-        Matcher matcher = composite.matcher(valueFilter);
-        Tuple<String, String> queries = null;
-        if(matcher.find())
-             queries = new Tuple<>(matcher.group(1).trim(), matcher.group(2).trim());
-        return queries;
+    private static Tuple<Object, Object> parseBetweenObjects(String from, String to, Class<?> classType) {
+        Object start = convertFilterValue(classType, from);
+        Object end = convertFilterValue(classType, to);
+        if (start instanceof Date && end instanceof Date)
+            return new Tuple<>(uk.ac.ebi.pride.utilities.util.DateUtils.atStartOfDay((Date) start),
+                    uk.ac.ebi.pride.utilities.util.DateUtils.atEndOfDay((Date) end));
+        return new Tuple<>(start, end);
+    }
+
+    /**
+     * Stream all the documents of a collection using a server-side cursor. Only one batch of documents is kept in memory,
+     * the returned {@link Stream} must be closed to release the cursor (e.g. try-with-resources).
+     *
+     * @param mongoOperations Mongo operations of the database
+     * @param entityClass     Class of the documents
+     * @param batchSize       Number of documents fetched in each round trip
+     * @param includeFields   Optional fields to be retrieved, if empty all the fields are retrieved
+     * @return Stream of documents
+     */
+    public static <T> Stream<T> streamAll(MongoOperations mongoOperations, Class<T> entityClass, int batchSize, String... includeFields) {
+        Query query = new Query().cursorBatchSize(batchSize);
+        if (includeFields != null)
+            Arrays.stream(includeFields).forEach(field -> query.fields().include(field));
+        CloseableIterator<T> iterator = mongoOperations.stream(query, entityClass);
+        return StreamUtils.createStreamFromIterator(iterator);
+    }
+
+    /**
+     * Compare the query patterns recorded by the {@link IndexAdvisor} with the indexes that exist in the database. The
+     * text and geo indexes are not compared, and the unique, sparse and partial indexes are never reported as redundant.
+     *
+     * @param mongoOperations Mongo operations of the database
+     * @param indexAdvisor    Index advisor of the same database
+     * @return Advice for every collection with recorded queries
+     */
+    public static List<IndexAdvice> adviseIndexes(MongoOperations mongoOperations, IndexAdvisor indexAdvisor) {
+        List<IndexAdvice> adviceList = new ArrayList<>();
+        for (String collection : new TreeSet<>(indexAdvisor.getCollections())) {
+            if (!mongoOperations.collectionExists(collection))
+                continue;
+            List<IndexAdvisor.Index> indexes = new ArrayList<>();
+            for (IndexInfo indexInfo : mongoOperations.indexOps(collection).getIndexInfo()) {
+                if (indexInfo.getIndexFields().stream().anyMatch(field -> field.isText() || field.isGeo()))
+                    continue;
+                List<String> keys = new ArrayList<>();
+                indexInfo.getIndexFields().forEach(field -> keys.add(field.getKey()));
+                boolean keep = indexInfo.isUnique() || indexInfo.isSparse() || indexInfo.getPartialFilterExpression() != null;
+                indexes.add(new IndexAdvisor.Index(indexInfo.getName(), keys, keep));
+            }
+            IndexAdvice advice = indexAdvisor.advise(collection, indexes);
+            LOGGER.info("Index advice -- " + advice);
+            adviceList.add(advice);
+        }
+        return adviceList;
     }
 
     /**
@@ -0,0 +1,143 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Fingerprint of the shape of a MongoDB command: the fields and operators of the filter, with all the values replaced
+ * by "?". Two queries that only differ in their values, in the order of the fields or in the length of a $in list have
+ * the same shape, so the shape can be used to group the commands in the metrics:
+ *
+ * {projectAccession: "PXD000001", fileSizeBytes: {$gt: 10}} -> {fileSizeBytes:{$gt:?},projectAccession:?}
+ *
+ * The documents are read as {@link Map} and the arrays as {@link List}, the BSON documents of the driver implement
+ * both interfaces.
+ *
+ * @author ypriverol
+ */
+public class QueryShape {
+
+    public static final String NO_SHAPE = "none";
+    public static final int MAX_SHAPE_LENGTH = 200;
+
+    /** Operators whose values are a set, the order and the number of values are not part of the shape **/
+    private static final Set<String> SET_OPERATORS = new HashSet<>(Arrays.asList("$in", "$nin", "$all"));
+
+    private QueryShape() {
+    }
+
+    /**
+     * Shape of a command, only the parts that select the documents (filter and sort) are included.
+     * @param commandName Name of the command (find, aggregate, count...)
+     * @param command Command document
+     * @return Shape of the command, {@link #NO_SHAPE} for the commands without a filter
+     */
+    public static String commandShape(String commandName, Map<String, ?> command) {
+        String shape;
+        switch (commandName) {
+            case "find":
+                shape = shape(command.get("filter"));
+                if (command.get("sort") instanceof Map)
+                    shape += " sort:" + keys((Map<?, ?>) command.get("sort"));
+                break;
+            case "aggregate":
+                shape = shape(command.get("pipeline"));
+                break;
+            case "count":
+            case "distinct":
+            case "findAndModify":
+                shape = shape(command.get("query"));
+                break;
+            case "update":
+                shape = firstStatementShape(command.get("updates"));
+                break;
+            case "delete":
+                shape = firstStatementShape(command.get("deletes"));
+                break;
+            default:
+                return NO_SHAPE;
+        }
+        return truncate(shape);
+    }
+
+    /**
+     * Shape of a value: documents keep their keys in alphabetical order, arrays keep the shapes of their elements in
+     * order (the stages of a pipeline, the clauses of a $or), the values of $in, $nin and $all are reduced to their
+     * sorted distinct shapes and every other value is replaced by "?".
+     * @param value Value
+     * @return Shape
+     */
+    public static String shape(Object value) {
+        if (value == null)
+            return "{}";
+        StringBuilder shape = new StringBuilder();
+        appendShape(shape, value, false);
+        return shape.toString();
+    }
+
+    private static void appendShape(StringBuilder shape, Object value, boolean setValues) {
+        if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((key, fieldValue) -> sorted.put(String.valueOf(key), fieldValue));
+            shape.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+                if (!first)
+                    shape.append(',');
+                shape.append(entry.getKey()).append(':');
+                appendShape(shape, entry.getValue(), SET_OPERATORS.contains(entry.getKey()));
+                first = false;
+            }
+            shape.append('}');
+        } else if (value instanceof Collection) {
+            // A $in of 3 or of 3000 values has the same shape, the other arrays keep their order
+            Collection<String> elements = setValues ? new TreeSet<>() : new ArrayList<>();
+            for (Object element : (Collection<?>) value)
+                elements.add(shape(element));
+            shape.append('[').append(String.join(",", elements)).append(']');
+        } else {
+            shape.append('?');
+        }
+    }
+
+    /**
+     * The statements of a bulk update or delete usually have the same shape, only the first one is used.
+     */
+    private static String firstStatementShape(Object statements) {
+        if (statements instanceof List && !((List<?>) statements).isEmpty()) {
+            Object statement = ((List<?>) statements).get(0);
+            if (statement instanceof Map)
+                return shape(((Map<?, ?>) statement).get("q"));
+        }
+        return "{}";
+    }
+
+    /**
+     * The order of the sort keys matters, the directions are not part of the shape.
+     */
+    private static String keys(Map<?, ?> document) {
+        StringBuilder keys = new StringBuilder("{");
+        for (Object key : document.keySet()) {
+            if (keys.length() > 1)
+                keys.append(',');
+            keys.append(key);
+        }
+        return keys.append('}').toString();
+    }
+
+    /**
+     * Long shapes are cut and identified by the hash of the full shape.
+     */
+    private static String truncate(String shape) {
+        if (shape.length() <= MAX_SHAPE_LENGTH)
+            return shape;
+        return shape.substring(0, MAX_SHAPE_LENGTH) + "...#" + Integer.toHexString(shape.hashCode());
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Read-through cache of documents by accession. The result of the loader is cached even when the document doesn't
+ * exist (negative entry), so repeated lookups of a missing accession don't go to the database. Writes must invalidate
+ * the accession; a value loaded while an invalidation happens is returned but not cached, so a slow read can't put
+ * back the old version of a document that was just updated.
+ *
+ * The documents are mutable, a copy function can be given so every caller gets its own copy and the changes done by a
+ * caller don't leak to the cached document seen by the others.
+ *
+ * @author ypriverol
+ */
+public class ReadThroughCache<V> {
+
+    private final LruTtlCache<String, Optional<V>> cache;
+
+    /** Incremented on every invalidation, a load only caches its value if no invalidation happened meanwhile **/
+    private final AtomicLong generation = new AtomicLong();
+
+    /** Copy of the cached documents returned to the callers **/
+    private final UnaryOperator<V> copier;
+
+    public ReadThroughCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, ttl, unit, System::nanoTime, UnaryOperator.identity());
+    }
+
+    public ReadThroughCache(int maxSize, long ttl, TimeUnit unit, UnaryOperator<V> copier) {
+        this(maxSize, ttl, unit, System::nanoTime, copier);
+    }
+
+    public ReadThroughCache(int maxSize, long ttl, TimeUnit unit, LongSupplier clock) {
+        this(maxSize, ttl, unit, clock, UnaryOperator.identity());
+    }
+
+    public ReadThroughCache(int maxSize, long ttl, TimeUnit unit, LongSupplier clock, UnaryOperator<V> copier) {
+        this.cache = new LruTtlCache<>(maxSize, ttl, unit, clock);
+        this.copier = copier;
+    }
+
+    /**
+     * Get a document from the cache or load it from the database.
+     * @param accession Accession of the document
+     * @param loader Function that reads the document from the database
+     * @return Optional document, empty if the document doesn't exist. The document is a copy of the cached one when
+     * the cache has a copy function
+     */
+    public Optional<V> get(String accession, Function<String, Optional<V>> loader) {
+        if (accession == null)
+            return loader.apply(null);
+        Optional<V> value = cache.get(accession);
+        if (value != null)
+            return value.map(copier);
+        long loadGeneration = generation.get();
+        value = loader.apply(accession);
+        if (value == null)
+            value = Optional.empty();
+        synchronized (cache) {
+            if (loadGeneration == generation.get())
+                cache.put(accession, value);
+        }
+        return value.map(copier);
+    }
+
+    public void invalidate(String accession) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.invalidate(accession);
+        }
+    }
+
+    public void invalidateAll(Iterable<String> accessions) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            for (String accession : accessions)
+                cache.invalidate(accession);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.invalidateAll();
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "ReadThroughCache{" +
+                "size=" + size() +
+                ", maxSize=" + cache.getMaxSize() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+}
@@ -0,0 +1,143 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrite the regular expressions of the filters into forms that MongoDB can resolve with an index:
+ *
+ * ^PXD000001$          -> equality "PXD000001"
+ * ^PXD0000             -> anchored prefix, MongoDB turns it into index bounds
+ * ^PXD000001$|^PXD0002 -> $in ["PXD000001", /^PXD0002/]
+ *
+ * Only the alternatives made of literal characters (escaped metacharacters are allowed) and anchored at the start are
+ * rewritten; the expressions with classes, groups, quantifiers or without the ^ anchor are kept as they are. MongoDB has
+ * no substring index, an unanchored "contains" expression still scans the keys of the index of the field.
+ *
+ * @author ypriverol
+ */
+public class RegexRewriter {
+
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private RegexRewriter() {
+    }
+
+    /**
+     * Rewrite a regular expression in a list of exact values (String) and anchored prefixes (Pattern).
+     * @param regex Regular expression
+     * @return List of values and prefixes for a $in, or null if the expression can't be rewritten
+     */
+    public static List<Object> rewrite(String regex) {
+        if (regex == null || regex.isEmpty())
+            return null;
+        List<Object> values = new ArrayList<>();
+        for (String alternative : splitAlternatives(regex)) {
+            Object value = rewriteAlternative(alternative);
+            if (value == null)
+                return null;
+            values.add(value);
+        }
+        return values;
+    }
+
+    /**
+     * Build an anchored regular expression that matches the values starting with any of the prefixes.
+     * @param prefixes Literal prefixes
+     * @return Regular expression
+     */
+    public static String prefixRegex(Collection<String> prefixes) {
+        StringBuilder regex = new StringBuilder();
+        for (String prefix : prefixes) {
+            if (regex.length() > 0)
+                regex.append('|');
+            regex.append('^').append(escape(prefix));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Escape the metacharacters of a literal.
+     * @param literal Literal text
+     * @return Regular expression that matches the literal
+     */
+    public static String escape(String literal) {
+        StringBuilder escaped = new StringBuilder(literal.length() + 8);
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (METACHARACTERS.indexOf(c) >= 0)
+                escaped.append('\\');
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Split by the unescaped '|', the alternatives with groups or classes are not literals and are rejected later.
+     */
+    private static List<String> splitAlternatives(String regex) {
+        List<String> alternatives = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '|') {
+                alternatives.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        alternatives.add(regex.substring(start));
+        return alternatives;
+    }
+
+    /**
+     * An exact value (String), an anchored prefix (Pattern) or null if the alternative is not a literal anchored at the
+     * start.
+     */
+    private static Object rewriteAlternative(String alternative) {
+        if (!alternative.startsWith("^"))
+            return null;
+        String body = alternative.substring(1);
+        boolean exact = false;
+        if (body.endsWith(".*") && !isEscaped(body, body.length() - 2))
+            body = body.substring(0, body.length() - 2);
+        else if (body.endsWith("$") && !isEscaped(body, body.length() - 1)) {
+            body = body.substring(0, body.length() - 1);
+            exact = true;
+        }
+        String literal = unescapeLiteral(body);
+        if (literal == null || literal.isEmpty())
+            return null;
+        return exact ? literal : Pattern.compile("^" + escape(literal));
+    }
+
+    /**
+     * The literal text of an expression, null if the expression has unescaped metacharacters or escape sequences that
+     * are not metacharacters (\d, \w...).
+     */
+    private static String unescapeLiteral(String body) {
+        StringBuilder literal = new StringBuilder(body.length());
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= body.length() || METACHARACTERS.indexOf(body.charAt(i + 1)) < 0)
+                    return null;
+                literal.append(body.charAt(++i));
+            } else if (METACHARACTERS.indexOf(c) >= 0)
+                return null;
+            else
+                literal.append(c);
+        }
+        return literal.toString();
+    }
+
+    private static boolean isEscaped(String text, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && text.charAt(i) == '\\'; i--)
+            backslashes++;
+        return backslashes % 2 == 1;
+    }
+}
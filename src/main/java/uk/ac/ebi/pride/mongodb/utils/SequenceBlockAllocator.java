@@ -0,0 +1,108 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Hi/lo allocator of sequence values. Instead of one findAndModify on the counter collection for every value, the
+ * allocator reserves a block of values with one $inc of the block size and hands them out locally. The allocator is
+ * thread-safe and the reserved values are unique across processes, the values not used when the process stops are
+ * lost (the sequence can have gaps).
+ *
+ * @author ypriverol
+ */
+public class SequenceBlockAllocator {
+
+    /** Logger use to query and filter the data **/
+    private static final Logger LOGGER = LoggerFactory.getLogger(SequenceBlockAllocator.class);
+
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+
+    /** Reserve a block of the given size and return the last value of the block **/
+    private final IntUnaryOperator blockReserver;
+    private final int blockSize;
+
+    /** Next value to be handed out and last value of the current block **/
+    private long nextValue = 1;
+    private long lastValue = 0;
+    private long reservedBlocks = 0;
+
+    public SequenceBlockAllocator(MongoOperations mongoOperations, String sequenceName, int blockSize) {
+        this(size -> PrideMongoUtils.getNextSizedSequence(mongoOperations, sequenceName, size), blockSize);
+    }
+
+    /**
+     * Create an allocator.
+     * @param blockReserver Function that reserves a block of values and returns the last value of the block
+     * @param blockSize Number of values reserved in each round trip
+     */
+    public SequenceBlockAllocator(IntUnaryOperator blockReserver, int blockSize) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("The block size must be positive -- " + blockSize);
+        this.blockReserver = blockReserver;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Next value of the sequence.
+     * @return Sequence value
+     */
+    public synchronized long next() {
+        if (nextValue > lastValue)
+            reserveBlock(blockSize);
+        return nextValue++;
+    }
+
+    /**
+     * Reserve a number of values. The values left in the current block are used first, the missing values are reserved
+     * in one round trip, so the values are unique but not always contiguous.
+     * @param count Number of values
+     * @return Sequence values
+     */
+    public synchronized long[] next(int count) {
+        long[] values = new long[count];
+        int i = 0;
+        while (i < count && nextValue <= lastValue)
+            values[i++] = nextValue++;
+        if (i < count) {
+            reserveBlock(Math.max(blockSize, count - i));
+            while (i < count)
+                values[i++] = nextValue++;
+        }
+        return values;
+    }
+
+    private void reserveBlock(int size) {
+        long last = blockReserver.applyAsInt(size);
+        nextValue = last - size + 1;
+        lastValue = last;
+        if (++reservedBlocks % 100 == 0)
+            LOGGER.info("Sequence blocks reserved -- " + reservedBlocks + " last value -- " + lastValue);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public synchronized long getReservedBlocks() {
+        return reservedBlocks;
+    }
+
+    /**
+     * Format an accession as prefix followed by the zero padded number, e.g. PXF00000000001.
+     * @param prefix Prefix of the accession
+     * @param number Number
+     * @param width Minimum number of digits
+     * @return Accession
+     */
+    public static String formatAccession(String prefix, long number, int width) {
+        String digits = Long.toString(number);
+        StringBuilder accession = new StringBuilder(prefix.length() + Math.max(width, digits.length())).append(prefix);
+        for (int i = digits.length(); i < width; i++)
+            accession.append('0');
+        return accession.append(digits).toString();
+    }
+}
@@ -0,0 +1,103 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+/**
+ * Components of a Universal Spectrum Identifier (USI), the USI has the following structure:
+ *
+ * mzspec:collection:msRun:indexType:index[:peptidoform/charge]
+ *
+ * For example mzspec:PXD000561:Adult_Frontalcortex_bRP_Elite_85_f09:scan:17555:VLHPLEGAVVIIFK/2. The peptidoform can
+ * contain colons (UNIMOD:21), then only the first five colons are separators.
+ *
+ * @author ypriverol
+ */
+public class SpectrumUsi {
+
+    public static final String USI_PREFIX = "mzspec";
+
+    private final String collection;
+    private final String msRun;
+    private final String indexType;
+    private final String index;
+    private final String peptidoform;
+    private final Integer charge;
+
+    private SpectrumUsi(String collection, String msRun, String indexType, String index, String peptidoform, Integer charge) {
+        this.collection = collection;
+        this.msRun = msRun;
+        this.indexType = indexType;
+        this.index = index;
+        this.peptidoform = peptidoform;
+        this.charge = charge;
+    }
+
+    /**
+     * Parse a USI.
+     * @param usi USI
+     * @return The parsed {@link SpectrumUsi} or null if the USI is not valid
+     */
+    public static SpectrumUsi parse(String usi) {
+        if (usi == null)
+            return null;
+        String[] parts = usi.trim().split(":", 6);
+        if (parts.length < 5 || !USI_PREFIX.equalsIgnoreCase(parts[0]))
+            return null;
+        for (int i = 1; i < 5; i++) {
+            if (parts[i].isEmpty())
+                return null;
+        }
+
+        String peptidoform = null;
+        Integer charge = null;
+        if (parts.length == 6 && !parts[5].isEmpty()) {
+            String interpretation = parts[5];
+            int chargeSeparator = interpretation.lastIndexOf('/');
+            peptidoform = interpretation;
+            if (chargeSeparator > 0) {
+                try {
+                    charge = Integer.parseInt(interpretation.substring(chargeSeparator + 1));
+                    peptidoform = interpretation.substring(0, chargeSeparator);
+                } catch (NumberFormatException e) {
+                    // Not a charge, the slash belongs to the peptidoform
+                }
+            }
+        }
+        return new SpectrumUsi(parts[1], parts[2], parts[3], parts[4], peptidoform, charge);
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getMsRun() {
+        return msRun;
+    }
+
+    public String getIndexType() {
+        return indexType;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getPeptidoform() {
+        return peptidoform;
+    }
+
+    public Integer getCharge() {
+        return charge;
+    }
+
+    /**
+     * USI of the spectrum without the interpretation (peptidoform and charge).
+     * @return Spectrum USI
+     */
+    public String getSpectraUsi() {
+        return String.join(":", USI_PREFIX, collection, msRun, indexType, index);
+    }
+
+    @Override
+    public String toString() {
+        return getSpectraUsi() + ((peptidoform != null) ? ":" + peptidoform + ((charge != null) ? "/" + charge : "") : "");
+    }
+}
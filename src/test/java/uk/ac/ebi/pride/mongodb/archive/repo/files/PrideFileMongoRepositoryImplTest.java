@@ -0,0 +1,106 @@
+package uk.ac.ebi.pride.mongodb.archive.repo.files;
+
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The updates of {@link PrideFileMongoRepositoryImpl} change the files with one atomic partial update.
+ *
+ * @author ypriverol
+ */
+public class PrideFileMongoRepositoryImplTest {
+
+    private MongoTemplate mongoTemplate;
+    private PrideFileMongoRepositoryImpl repository;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        repository = new PrideFileMongoRepositoryImpl();
+        repository.setMongoTemplate(mongoTemplate);
+        repository.setMongoOperations(mongoTemplate);
+    }
+
+    @Test
+    public void addProjectAccessions() {
+        Mockito.when(mongoTemplate.updateFirst(Mockito.any(Query.class), Mockito.any(Update.class), Mockito.eq(MongoPrideFile.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null), UpdateResult.acknowledged(0, 0L, null));
+
+        Assert.assertTrue(repository.addProjectAccessions("PXF00000001", Arrays.asList("PXD000001", "PXD000002")));
+        Assert.assertFalse(repository.addProjectAccessions("PXF00000002", Collections.singletonList("PXD000001")));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate, Mockito.times(2)).updateFirst(query.capture(), update.capture(), Mockito.eq(MongoPrideFile.class));
+        Assert.assertEquals("PXF00000001", query.getAllValues().get(0).getQueryObject().get(PrideArchiveField.ACCESSION));
+        Assert.assertEquals(Arrays.asList("PXD000001", "PXD000002"),
+                addedToSet(update.getAllValues().get(0), PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS));
+        Mockito.verify(mongoTemplate, Mockito.never()).save(Mockito.any());
+    }
+
+    @Test
+    public void addProjectAccessionsToManyFiles() {
+        Mockito.when(mongoTemplate.updateMulti(Mockito.any(Query.class), Mockito.any(Update.class), Mockito.eq(MongoPrideFile.class)))
+                .thenReturn(UpdateResult.acknowledged(2, 1L, null));
+
+        Assert.assertEquals(2, repository.addProjectAccessions(Arrays.asList("PXF00000001", "PXF00000002"),
+                Collections.singletonList("PXD000001")));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).updateMulti(query.capture(), update.capture(), Mockito.eq(MongoPrideFile.class));
+        Assert.assertEquals(new Document("$in", Arrays.asList("PXF00000001", "PXF00000002")),
+                query.getValue().getQueryObject().get(PrideArchiveField.ACCESSION));
+        Assert.assertEquals(Collections.singletonList("PXD000001"), addedToSet(update.getValue(), PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS));
+    }
+
+    @Test
+    public void addAnalysisAccessions() {
+        Mockito.when(mongoTemplate.updateFirst(Mockito.any(Query.class), Mockito.any(Update.class), Mockito.eq(MongoPrideFile.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        Assert.assertTrue(repository.addAnalysisAccessions("PXF00000001", Collections.singletonList("PAD000001")));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).updateFirst(Mockito.any(Query.class), update.capture(), Mockito.eq(MongoPrideFile.class));
+        // The analysis accessions don't replace the project accessions
+        Assert.assertEquals(Collections.singletonList("PAD000001"), addedToSet(update.getValue(), PrideArchiveField.EXTERNAL_ANALYSIS_ACCESSIONS));
+        Assert.assertFalse(update.getValue().modifies(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS));
+    }
+
+    @Test
+    public void updateFields() {
+        Mockito.when(mongoTemplate.updateFirst(Mockito.any(Query.class), Mockito.any(Update.class), Mockito.eq(MongoPrideFile.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put(PrideArchiveField.CHECKSUM, "b1946ac92492d2347c6235b4d2611184");
+        fields.put(PrideArchiveField.FILE_SIZE_BYTES, 1024L);
+        Assert.assertTrue(repository.updateFields("PXF00000001", fields));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).updateFirst(Mockito.any(Query.class), update.capture(), Mockito.eq(MongoPrideFile.class));
+        Assert.assertEquals(new Document(fields), update.getValue().getUpdateObject().get("$set"));
+    }
+
+    private static List<Object> addedToSet(Update update, String field) {
+        Update.Each each = (Update.Each) ((Document) update.getUpdateObject().get("$addToSet")).get(field);
+        return Arrays.asList((Object[]) each.getValue());
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.ebi.pride.mongodb.archive.repo.projects;
+
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * {@link PrideProjectMongoRepositoryCustomImpl} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideProjectMongoRepositoryCustomImplTest {
+
+    private MongoTemplate mongoTemplate;
+    private PrideProjectMongoRepositoryCustomImpl repository;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        Mockito.when(mongoTemplate.find(Mockito.any(Query.class), Mockito.eq(MongoPrideProject.class))).thenReturn(Collections.emptyList());
+        repository = new PrideProjectMongoRepositoryCustomImpl(mongoTemplate);
+        repository.setCountCache(new MongoCountCache(100, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void findByMultipleAttributesKeepsTheRegexes() {
+        repository.findByMultipleAttributes(PageRequest.of(0, 10), new String[]{"00001", "PXD000002"},
+                new String[]{"Homo sapiens.*"}, null, null, null, null, null);
+
+        // The accessions are still searched as "contains" and the sample attributes as patterns
+        List<?> or = (List<?>) captureQuery().getQueryObject().get("$or");
+        Assert.assertEquals("00001|PXD000002", ((Pattern) ((Document) or.get(0)).get(PrideArchiveField.ACCESSION)).pattern());
+        Assert.assertEquals("Homo sapiens.*", ((Pattern) ((Document) or.get(1)).get(PrideArchiveField.SAMPLE_ATTRIBUTES_NAMES)).pattern());
+    }
+
+    @Test
+    public void findByMultipleAttributesWithAnchoredAccessions() {
+        repository.findByMultipleAttributes(PageRequest.of(0, 10), new String[]{"^PXD000001$"},
+                null, null, null, null, null, null);
+
+        // The exact accessions are searched by equality
+        List<?> or = (List<?>) captureQuery().getQueryObject().get("$or");
+        Assert.assertEquals(new Document(PrideArchiveField.ACCESSION, "PXD000001"), or.get(0));
+    }
+
+    private Query captureQuery() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(mongoTemplate).find(query.capture(), Mockito.eq(MongoPrideProject.class));
+        return query.getValue();
+    }
+}
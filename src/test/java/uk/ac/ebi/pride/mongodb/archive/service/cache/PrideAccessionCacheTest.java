@@ -0,0 +1,46 @@
+package uk.ac.ebi.pride.mongodb.archive.service.cache;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link PrideAccessionCache} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideAccessionCacheTest {
+
+    @Test
+    public void mutationsDoNotLeak() {
+        PrideAccessionCache accessionCache = new PrideAccessionCache(10, 60);
+        AtomicInteger loads = new AtomicInteger();
+        MongoPrideFile stored = MongoPrideFile.builder()
+                .id(new ObjectId())
+                .accession("PXF00000000001")
+                .fileName("run_1.raw")
+                .projectAccessions(new HashSet<>(Arrays.asList("PXD000001")))
+                .build();
+
+        MongoPrideFile file = accessionCache.getFiles().get("PXF00000000001", x -> {
+            loads.incrementAndGet();
+            return Optional.of(stored);
+        }).get();
+        file.setFileName("changed.raw");
+        file.getProjectAccessions().add("PXD000002");
+
+        // The cached File keeps the values read from the database
+        MongoPrideFile cached = accessionCache.getFiles().get("PXF00000000001", x -> Optional.empty()).get();
+        Assert.assertEquals(1, loads.get());
+        Assert.assertNotSame(file, cached);
+        Assert.assertEquals("run_1.raw", cached.getFileName());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("PXD000001")), cached.getProjectAccessions());
+        Assert.assertEquals(stored.getId(), cached.getId());
+    }
+}
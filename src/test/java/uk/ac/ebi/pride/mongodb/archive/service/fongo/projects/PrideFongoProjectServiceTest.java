@@ -17,6 +17,7 @@ import uk.ac.ebi.pride.data.io.SubmissionFileParser;
 import uk.ac.ebi.pride.data.model.DataFile;
 import uk.ac.ebi.pride.data.model.Submission;
 import uk.ac.ebi.pride.mongodb.archive.config.PrideProjectFongoTestConfig;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
 import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
 import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
 import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
@@ -29,6 +30,7 @@ import java.io.File;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * {@link PrideProjectMongoService} and {@link PrideFileMongoService} Units tests.
@@ -164,6 +166,29 @@ public class PrideFongoProjectServiceTest {
 
     }
 
+    /**
+     * Stream the projects from a server-side cursor with a batch smaller than the number of projects and a projection.
+     */
+    @Test
+    public void findAllStream() {
+        for (int i = 0; i < 5; i++)
+            prideProjectService.insert(MongoPrideProject.builder()
+                    .accession("PXT00000" + i)
+                    .title("Streamed project " + i)
+                    .build());
+
+        try (Stream<MongoPrideProject> projects = prideProjectService.findAllStream(2, PrideArchiveField.ACCESSION)) {
+            List<MongoPrideProject> streamed = projects.filter(project -> project.getAccession().startsWith("PXT"))
+                    .collect(Collectors.toList());
+            Assert.assertEquals(5, streamed.size());
+            streamed.forEach(project -> Assert.assertNull(project.getTitle()));
+        }
+
+        try (Stream<MongoPrideProject> projects = prideProjectService.findAllStream()) {
+            Assert.assertTrue(projects.anyMatch(project -> "Streamed project 3".equals(project.getTitle())));
+        }
+    }
+
     /**
      * Return file realations from Submission PX
      * @param insertedDataFileAccession inserted file
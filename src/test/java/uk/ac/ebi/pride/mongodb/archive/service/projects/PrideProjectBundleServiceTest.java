@@ -0,0 +1,127 @@
+package uk.ac.ebi.pride.mongodb.archive.service.projects;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import uk.ac.ebi.pride.mongodb.archive.model.assay.MongoPrideAssay;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+import uk.ac.ebi.pride.mongodb.archive.model.msrun.MongoPrideMSRun;
+import uk.ac.ebi.pride.mongodb.archive.model.projects.MongoPrideProject;
+import uk.ac.ebi.pride.mongodb.archive.model.sample.MongoISampleMSRunRow;
+import uk.ac.ebi.pride.mongodb.archive.model.sdrf.MongoPrideSdrf;
+import uk.ac.ebi.pride.mongodb.archive.repo.assay.PrideAssayMongoRepository;
+import uk.ac.ebi.pride.mongodb.archive.service.files.PrideFileMongoService;
+import uk.ac.ebi.pride.mongodb.archive.service.msruns.PrideMsRunMongoService;
+import uk.ac.ebi.pride.mongodb.archive.service.samples.PrideSampleMongoService;
+import uk.ac.ebi.pride.mongodb.archive.service.sdrf.PrideSdrfMongoService;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link PrideProjectBundleService} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideProjectBundleServiceTest {
+
+    private static final String PROJECT = "PXD000001";
+
+    private PrideProjectMongoService projectService;
+    private PrideFileMongoService fileService;
+    private PrideMsRunMongoService msRunService;
+    private PrideAssayMongoRepository assayRepository;
+    private PrideSampleMongoService sampleService;
+    private PrideSdrfMongoService sdrfService;
+    private PrideProjectBundleService bundleService;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        projectService = Mockito.mock(PrideProjectMongoService.class);
+        fileService = Mockito.mock(PrideFileMongoService.class);
+        msRunService = Mockito.mock(PrideMsRunMongoService.class);
+        assayRepository = Mockito.mock(PrideAssayMongoRepository.class);
+        sampleService = Mockito.mock(PrideSampleMongoService.class);
+        sdrfService = Mockito.mock(PrideSdrfMongoService.class);
+
+        Mockito.when(projectService.findByAccession(PROJECT)).thenReturn(Optional.of(MongoPrideProject.builder().accession(PROJECT).build()));
+        Mockito.when(fileService.findFilesByProjectAccession(PROJECT)).thenReturn(Collections.singletonList(MongoPrideFile.builder().accession("PXF00000000001").build()));
+        Mockito.when(msRunService.getMSRunsByProject(PROJECT)).thenReturn(Collections.singletonList(Mockito.mock(MongoPrideMSRun.class)));
+        Mockito.when(assayRepository.filterByAttributes(Mockito.anyList())).thenReturn(Collections.singletonList(MongoPrideAssay.builder().accession("12345").build()));
+        Mockito.when(sampleService.getSamplesMRunProjectAccession(PROJECT)).thenReturn(Collections.singletonList(MongoISampleMSRunRow.builder().build()));
+        Mockito.when(sdrfService.findByProjectAccession(PROJECT)).thenReturn(Collections.singletonList(MongoPrideSdrf.builder().build()));
+
+        bundleService = new PrideProjectBundleService(projectService, fileService, msRunService, assayRepository,
+                sampleService, sdrfService, 6, 10, 500);
+    }
+
+    @After
+    public void shutdown() {
+        release.countDown();
+        bundleService.shutdown();
+    }
+
+    @Test
+    public void completeBundle() {
+        PrideProjectBundle bundle = bundleService.getProjectBundle(PROJECT).get();
+        Assert.assertTrue(bundle.isComplete());
+        Assert.assertEquals(PROJECT, bundle.getProject().getAccession());
+        Assert.assertEquals("PXF00000000001", bundle.getFiles().get(0).getAccession());
+        Assert.assertEquals(1, bundle.getMsRuns().size());
+        Assert.assertEquals("12345", bundle.getAssays().get(0).getAccession());
+        Assert.assertEquals(1, bundle.getSamples().size());
+        Assert.assertEquals(1, bundle.getSdrfs().size());
+    }
+
+    @Test
+    public void missingProject() {
+        Mockito.when(projectService.findByAccession(PROJECT)).thenReturn(Optional.empty());
+        Assert.assertFalse(bundleService.getProjectBundle(PROJECT).isPresent());
+    }
+
+    @Test
+    public void failedPart() {
+        Mockito.when(fileService.findFilesByProjectAccession(PROJECT)).thenThrow(new IllegalStateException("database down"));
+
+        PrideProjectBundle bundle = bundleService.getProjectBundle(PROJECT).get();
+        Assert.assertFalse(bundle.isComplete());
+        Assert.assertEquals(Collections.singleton(PrideProjectBundle.FILES), bundle.getFailedParts());
+        Assert.assertTrue(bundle.getFiles().isEmpty());
+        Assert.assertEquals(1, bundle.getMsRuns().size());
+    }
+
+    @Test
+    public void slowPartTimesOut() {
+        Mockito.when(msRunService.getMSRunsByProject(PROJECT)).thenAnswer(invocation -> {
+            release.await();
+            return Collections.emptyList();
+        });
+
+        long start = System.nanoTime();
+        PrideProjectBundle bundle = bundleService.getProjectBundle(PROJECT).get();
+        // The bundle is returned at the deadline with the other parts
+        Assert.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        Assert.assertEquals(Collections.singleton(PrideProjectBundle.MS_RUNS), bundle.getFailedParts());
+        Assert.assertTrue(bundle.getMsRuns().isEmpty());
+        Assert.assertEquals(PROJECT, bundle.getProject().getAccession());
+        Assert.assertEquals(1, bundle.getSdrfs().size());
+    }
+
+    @Test
+    public void projectTimesOut() {
+        Mockito.when(projectService.findByAccession(PROJECT)).thenAnswer(invocation -> {
+            release.await();
+            return Optional.empty();
+        });
+
+        // The Project part failed, the bundle is returned without the Project
+        PrideProjectBundle bundle = bundleService.getProjectBundle(PROJECT).get();
+        Assert.assertNull(bundle.getProject());
+        Assert.assertTrue(bundle.getFailedParts().contains(PrideProjectBundle.PROJECT));
+    }
+}
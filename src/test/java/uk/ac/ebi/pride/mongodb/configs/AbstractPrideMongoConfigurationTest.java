@@ -0,0 +1,56 @@
+package uk.ac.ebi.pride.mongodb.configs;
+
+import com.mongodb.MongoClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.MongoDbFactory;
+
+/**
+ * {@link AbstractPrideMongoConfiguration} unit tests.
+ *
+ * @author ypriverol
+ */
+public class AbstractPrideMongoConfigurationTest {
+
+    private AbstractPrideMongoConfiguration configuration;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        configuration = new AbstractPrideMongoConfiguration() {
+            @Override
+            public String getMongoURI() {
+                return "mongodb://localhost:27017/test";
+            }
+
+            @Override
+            protected String getDatabaseName() {
+                return "test";
+            }
+        };
+        ObjectProvider<MeterRegistry> registry = Mockito.mock(ObjectProvider.class);
+        Mockito.when(registry.getIfUnique(Mockito.any())).thenReturn(new SimpleMeterRegistry());
+        configuration.setMeterRegistry(registry);
+    }
+
+    @After
+    public void close() {
+        configuration.mongoClient().close();
+    }
+
+    @Test
+    public void oneClientByConfiguration() {
+        // The factory bean and the factories of the templates use the same client, with one set of listeners
+        MongoClient client = configuration.mongoClient();
+        Assert.assertSame(client, configuration.mongoClient());
+        MongoDbFactory factory = configuration.mongoDbFactory();
+        Assert.assertSame(factory, configuration.mongoDbFactory());
+        Assert.assertEquals(1, client.getMongoClientOptions().getConnectionPoolListeners().size());
+    }
+}
@@ -0,0 +1,138 @@
+package uk.ac.ebi.pride.mongodb.configs;
+
+import com.mongodb.client.ListIndexesIterable;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver.IndexDefinitionHolder;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MongoIndexManager} unit tests.
+ *
+ * @author ypriverol
+ */
+public class MongoIndexManagerTest {
+
+    private static final String COLLECTION = "index_manager_models";
+    private static final String MODEL_PACKAGE = "uk.ac.ebi.pride.mongodb.configs";
+
+    private MongoTemplate mongoTemplate;
+    private IndexOperations indexOperations;
+    private final List<Document> existing = new ArrayList<>();
+    private MongoIndexManager indexManager;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        indexOperations = Mockito.mock(IndexOperations.class);
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        ListIndexesIterable<Document> indexes = Mockito.mock(ListIndexesIterable.class);
+        Mockito.when(mongoTemplate.getConverter()).thenReturn(converter);
+        Mockito.when(mongoTemplate.collectionExists(COLLECTION)).thenReturn(true);
+        Mockito.when(mongoTemplate.getCollection(COLLECTION)).thenReturn(collection);
+        Mockito.when(mongoTemplate.indexOps(COLLECTION)).thenReturn(indexOperations);
+        Mockito.when(collection.listIndexes()).thenReturn(indexes);
+        Mockito.when(indexes.into(Mockito.anyList())).thenAnswer(invocation -> {
+            Collection<Document> target = invocation.getArgument(0);
+            target.addAll(existing);
+            return target;
+        });
+        existing.add(new Document("name", "_id_").append("key", new Document("_id", 1)));
+    }
+
+    @After
+    public void destroy() {
+        if (indexManager != null)
+            indexManager.destroy();
+    }
+
+    @Test
+    public void createByDefault() {
+        Assert.assertEquals(MongoIndexManager.Mode.CREATE, MongoIndexManager.Mode.fromName(MongoIndexManager.DEFAULT_MODE));
+    }
+
+    @Test
+    public void reportMissingIndexes() {
+        indexManager = new MongoIndexManager("test", mongoTemplate, MODEL_PACKAGE, "verify");
+        Assert.assertEquals(Arrays.asList("model_accession", "model_size"), missingNames());
+
+        // An index exists with the same name, or with the same keys and another name
+        existing.add(new Document("name", "model_accession").append("key", new Document("accession", 1)));
+        existing.add(new Document("name", "size_1").append("key", new Document("size", 1.0)));
+        Assert.assertTrue(indexManager.findMissingIndexes().isEmpty());
+    }
+
+    @Test
+    public void verifyDoesNotCreate() {
+        indexManager = new MongoIndexManager("test", mongoTemplate, MODEL_PACKAGE, "verify");
+        indexManager.afterPropertiesSet();
+        Mockito.verify(mongoTemplate, Mockito.never()).indexOps(Mockito.anyString());
+    }
+
+    @Test
+    public void createMissingIndexesInBackground() throws Exception {
+        existing.add(new Document("name", "model_accession").append("key", new Document("accession", 1)));
+        indexManager = new MongoIndexManager("test", mongoTemplate, MODEL_PACKAGE, "create");
+        indexManager.createIndexes(indexManager.findMissingIndexes()).get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<IndexDefinition> index = ArgumentCaptor.forClass(IndexDefinition.class);
+        Mockito.verify(indexOperations).ensureIndex(index.capture());
+        Assert.assertEquals(new Document("size", 1), index.getValue().getIndexKeys());
+        Assert.assertEquals("model_size", index.getValue().getIndexOptions().get("name"));
+        Assert.assertEquals(true, index.getValue().getIndexOptions().get("background"));
+        Assert.assertTrue(indexManager.getProgress().startsWith("created=1, failed=0, total=1"));
+    }
+
+    @Test
+    public void createOnStartup() {
+        indexManager = new MongoIndexManager("test", mongoTemplate, MODEL_PACKAGE, MongoIndexManager.DEFAULT_MODE);
+        indexManager.afterPropertiesSet();
+        Mockito.verify(indexOperations, Mockito.timeout(5000).times(2)).ensureIndex(Mockito.any(IndexDefinition.class));
+    }
+
+    private List<String> missingNames() {
+        Map<String, List<IndexDefinitionHolder>> missing = indexManager.findMissingIndexes();
+        Assert.assertEquals(1, missing.size());
+        List<String> names = new ArrayList<>();
+        for (IndexDefinitionHolder index : missing.get(COLLECTION))
+            names.add(String.valueOf(index.getIndexOptions().get("name")));
+        return names;
+    }
+
+    @org.springframework.data.mongodb.core.mapping.Document(collection = COLLECTION)
+    static class IndexedModel {
+
+        @Id
+        String id;
+
+        @Indexed(name = "model_accession", unique = true)
+        String accession;
+
+        @Indexed(name = "model_size")
+        long size;
+    }
+}
@@ -0,0 +1,231 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.counts;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.counts.PrideMongoMoleculeCounts;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link PrideMoleculeCountsMongoRepositoryImpl} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideMoleculeCountsMongoRepositoryImplTest {
+
+    private static final String PROJECT = "PXD000001";
+    private static final String PROJECT_ID = PrideMongoMoleculeCounts.id(PROJECT, null);
+    private static final String ASSAY_ID = PrideMongoMoleculeCounts.id(PROJECT, "12345");
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulkOperations;
+    private PrideMoleculeCountsMongoRepositoryImpl repository;
+
+    @Before
+    public void setUp() {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        bulkOperations = Mockito.mock(BulkOperations.class);
+        Mockito.when(mongoTemplate.getConverter()).thenReturn(converter);
+        Mockito.when(mongoTemplate.getCollectionName(PrideMongoMoleculeCounts.class)).thenReturn(PrideArchiveField.PRIDE_MOLECULE_COUNTS_COLLECTION_NAME);
+        Mockito.when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoMoleculeCounts.class)).thenReturn(bulkOperations);
+        Mockito.when(bulkOperations.upsert(Mockito.any(Query.class), Mockito.any(Update.class))).thenReturn(bulkOperations);
+        Mockito.when(bulkOperations.remove(Mockito.any(Query.class))).thenReturn(bulkOperations);
+
+        repository = new PrideMoleculeCountsMongoRepositoryImpl();
+        repository.setMongoTemplate(mongoTemplate);
+    }
+
+    @Test
+    public void increment() {
+        repository.increment(PROJECT, "12345", PrideArchiveField.COUNT_PEPTIDES, 2);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(bulkOperations, Mockito.times(2)).upsert(query.capture(), update.capture());
+        Mockito.verify(bulkOperations).execute();
+
+        Assert.assertEquals(new Document("_id", PROJECT_ID), query.getAllValues().get(0).getQueryObject());
+        Assert.assertEquals(new Document("_id", ASSAY_ID), query.getAllValues().get(1).getQueryObject());
+        Document assayUpdate = update.getAllValues().get(1).getUpdateObject();
+        // Every increment changes the version, a concurrent recompute doesn't replace it
+        Assert.assertEquals(new Document(PrideArchiveField.COUNT_PEPTIDES, 2L).append(PrideArchiveField.COUNT_VERSION, 1),
+                assayUpdate.get("$inc"));
+        Assert.assertEquals(new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, PROJECT)
+                .append(PrideArchiveField.PROTEIN_ASSAY_ACCESSION, "12345"), assayUpdate.get("$setOnInsert"));
+        Assert.assertEquals(new Document(PrideArchiveField.COUNT_DISTINCT_SEQUENCES_STALE, true), assayUpdate.get("$set"));
+        Assert.assertFalse(((Document) update.getAllValues().get(0).getUpdateObject().get("$setOnInsert"))
+                .containsKey(PrideArchiveField.PROTEIN_ASSAY_ACCESSION));
+    }
+
+    @Test
+    public void incrementNothing() {
+        repository.increment(PROJECT, "12345", PrideArchiveField.COUNT_PSMS, 0);
+        repository.increment(null, "12345", PrideArchiveField.COUNT_PSMS, 1);
+        Mockito.verifyZeroInteractions(bulkOperations);
+    }
+
+    @Test
+    public void recompute() {
+        currentCounts(new Document("_id", PROJECT_ID).append(PrideArchiveField.COUNT_VERSION, 7L),
+                new Document("_id", PrideMongoMoleculeCounts.id(PROJECT, "removed")).append(PrideArchiveField.COUNT_VERSION, 2L));
+        moleculeCounts();
+        Mockito.when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 1, 1, Collections.emptyList()));
+
+        Map<String, PrideMongoMoleculeCounts> counts = byId(repository.recompute(PROJECT));
+        Assert.assertEquals(2, counts.size());
+        PrideMongoMoleculeCounts projectCounts = counts.get(PROJECT_ID);
+        Assert.assertEquals(5, projectCounts.getProteins());
+        Assert.assertEquals(9, projectCounts.getPeptides());
+        Assert.assertEquals(30, projectCounts.getPsms());
+        Assert.assertEquals(6, projectCounts.getDistinctPeptideSequences());
+        PrideMongoMoleculeCounts assayCounts = counts.get(ASSAY_ID);
+        Assert.assertEquals(3, assayCounts.getProteins());
+        Assert.assertEquals(9, assayCounts.getPeptides());
+        Assert.assertEquals(20, assayCounts.getPsms());
+        Assert.assertEquals(4, assayCounts.getDistinctPeptideSequences());
+        Assert.assertEquals("12345", assayCounts.getAssayAccession());
+
+        // The counts are only replaced in the version that was read, the assays that don't exist anymore are removed
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(bulkOperations, Mockito.times(2)).upsert(query.capture(), update.capture());
+        Assert.assertEquals(new Document("_id", PROJECT_ID).append(PrideArchiveField.COUNT_VERSION, 7L),
+                query.getAllValues().get(0).getQueryObject());
+        Assert.assertEquals(new Document("_id", ASSAY_ID).append(PrideArchiveField.COUNT_VERSION, null),
+                query.getAllValues().get(1).getQueryObject());
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(bulkOperations).remove(removed.capture());
+        Assert.assertEquals(new Document("_id", PrideMongoMoleculeCounts.id(PROJECT, "removed")).append(PrideArchiveField.COUNT_VERSION, 2L),
+                removed.getValue().getQueryObject());
+
+        for (Update recomputed : update.getAllValues()) {
+            Document updateObject = recomputed.getUpdateObject();
+            // Only update operators, the version is incremented as for any other write
+            updateObject.keySet().forEach(key -> Assert.assertTrue(key, key.startsWith("$")));
+            Assert.assertEquals(new Document(PrideArchiveField.COUNT_VERSION, 1), updateObject.get("$inc"));
+            Document set = (Document) updateObject.get("$set");
+            Assert.assertFalse(set.containsKey("_id"));
+            Assert.assertFalse(set.containsKey(PrideArchiveField.COUNT_VERSION));
+            Assert.assertEquals(false, set.get(PrideArchiveField.COUNT_DISTINCT_SEQUENCES_STALE));
+        }
+        Document projectSet = (Document) update.getAllValues().get(0).getUpdateObject().get("$set");
+        Assert.assertEquals(5L, projectSet.get(PrideArchiveField.COUNT_PROTEINS));
+        Assert.assertEquals(30L, projectSet.get(PrideArchiveField.COUNT_PSMS));
+        Assert.assertEquals(6L, projectSet.get(PrideArchiveField.COUNT_DISTINCT_PEPTIDE_SEQUENCES));
+    }
+
+    @Test
+    public void recomputeAgainAfterIncrement() {
+        currentCounts(new Document("_id", PROJECT_ID).append(PrideArchiveField.COUNT_VERSION, 7L));
+        moleculeCounts();
+        // The project was incremented between the read of the versions and the replacement of the counts
+        Mockito.when(bulkOperations.execute())
+                .thenThrow(bulkException(PrideMongoUtils.DUPLICATE_KEY_ERROR_CODE))
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()));
+
+        Assert.assertEquals(2, repository.recompute(PROJECT).size());
+        Mockito.verify(bulkOperations, Mockito.times(2)).execute();
+        Mockito.verify(mongoTemplate, Mockito.times(2)).find(Mockito.any(Query.class), Mockito.eq(Document.class),
+                Mockito.eq(PrideArchiveField.PRIDE_MOLECULE_COUNTS_COLLECTION_NAME));
+    }
+
+    @Test(expected = OptimisticLockingFailureException.class)
+    public void recomputeFailsWhenCountsKeepChanging() {
+        currentCounts();
+        moleculeCounts();
+        Mockito.when(bulkOperations.execute()).thenThrow(bulkException(PrideMongoUtils.DUPLICATE_KEY_ERROR_CODE));
+        try {
+            repository.recompute(PROJECT);
+        } finally {
+            Mockito.verify(bulkOperations, Mockito.times(PrideMoleculeCountsMongoRepositoryImpl.MAX_RECOMPUTE_ATTEMPTS)).execute();
+        }
+    }
+
+    @Test(expected = BulkOperationException.class)
+    public void recomputeThrowsOtherErrors() {
+        currentCounts();
+        moleculeCounts();
+        Mockito.when(bulkOperations.execute()).thenThrow(bulkException(121));
+        try {
+            repository.recompute(PROJECT);
+        } finally {
+            Mockito.verify(bulkOperations, Mockito.times(1)).execute();
+        }
+    }
+
+    private void currentCounts(Document... documents) {
+        Mockito.when(mongoTemplate.find(Mockito.any(Query.class), Mockito.eq(Document.class),
+                Mockito.eq(PrideArchiveField.PRIDE_MOLECULE_COUNTS_COLLECTION_NAME))).thenReturn(Arrays.asList(documents));
+    }
+
+    /**
+     * 3 proteins of the assay 12345 and 2 without assay, 20 PSMs of the assay and 10 without assay, 9 peptides of the
+     * assay with 4 distinct sequences and 6 distinct sequences in the project.
+     */
+    private void moleculeCounts() {
+        aggregation(PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME,
+                new Document("_id", "12345").append("count", 3), new Document("_id", null).append("count", 2));
+        aggregation(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME,
+                new Document("_id", "12345").append("count", 20), new Document("_id", null).append("count", 10));
+        aggregation(PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME, new Document()
+                .append(PrideArchiveField.COUNT_PEPTIDES, Collections.singletonList(new Document("_id", "12345").append("count", 9)))
+                .append("sequencesByAssay", Collections.singletonList(new Document("_id", "12345").append("count", 4)))
+                .append("sequences", Collections.singletonList(new Document("count", 6))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void aggregation(String collectionName, Document... results) {
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        AggregateIterable<Document> iterable = Mockito.mock(AggregateIterable.class);
+        Mockito.when(mongoTemplate.getCollection(collectionName)).thenReturn(collection);
+        Mockito.when(collection.aggregate(Mockito.anyList())).thenReturn(iterable);
+        Mockito.when(iterable.allowDiskUse(true)).thenReturn(iterable);
+        Mockito.when(iterable.into(Mockito.any(Collection.class))).thenAnswer(invocation -> {
+            Collection<Document> target = invocation.getArgument(0);
+            target.addAll(Arrays.asList(results));
+            return target;
+        });
+    }
+
+    private static BulkOperationException bulkException(int code) {
+        BulkWriteError error = new BulkWriteError(code, "write error", new BsonDocument(), 0);
+        return new BulkOperationException("Bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(0, 0, 0, 0, Collections.emptyList()),
+                Collections.singletonList(error), null, new ServerAddress()));
+    }
+
+    private static Map<String, PrideMongoMoleculeCounts> byId(List<PrideMongoMoleculeCounts> counts) {
+        return counts.stream().collect(Collectors.toMap(PrideMongoMoleculeCounts::getId, Function.identity()));
+    }
+}
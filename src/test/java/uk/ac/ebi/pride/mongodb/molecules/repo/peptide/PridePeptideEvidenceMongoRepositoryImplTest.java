@@ -0,0 +1,123 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.peptide;
+
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.util.CloseableIterator;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PridePeptideEvidenceView;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link PridePeptideEvidenceMongoRepositoryImpl} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PridePeptideEvidenceMongoRepositoryImplTest {
+
+    private static final String PROJECT = "PXD000001";
+
+    private MongoTemplate mongoTemplate;
+    private PridePeptideEvidenceMongoRepositoryImpl repository;
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        repository = new PridePeptideEvidenceMongoRepositoryImpl();
+        repository.setMongoTemplate(mongoTemplate);
+        repository.setMongoOperations(mongoTemplate);
+
+        // Values of the valid peptides, then values of the peptides validated by the attribute
+        Mockito.when(mongoTemplate.aggregateStream(Mockito.any(Aggregation.class),
+                Mockito.eq(PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME), Mockito.eq(Document.class)))
+                .thenReturn(groups("P12345", null), groups("Q67890", "P12345"));
+    }
+
+    @Test
+    public void proteinAccessionsGroupedInTheServer() {
+        Assert.assertEquals(new HashSet<>(Arrays.asList("P12345", "Q67890")), repository.findProteinAccessionByProjectAccessions(PROJECT));
+
+        List<Aggregation> aggregations = captureAggregations();
+        List<Document> valid = aggregations.get(0).toPipeline(Aggregation.DEFAULT_CONTEXT);
+        Assert.assertEquals(new Document("$match", new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, PROJECT)
+                .append(PrideArchiveField.IS_VALIDATED, true)), valid.get(0));
+        Assert.assertEquals(new Document("$group", new Document("_id", "$" + PrideArchiveField.PROTEIN_ACCESSION)), valid.get(1));
+        Assert.assertTrue(aggregations.get(0).getOptions().isAllowDiskUse());
+
+        // The second aggregation only reads the peptides that are not valid and have the attribute
+        Document match = (Document) aggregations.get(1).toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).get("$match");
+        List<?> and = (List<?>) match.get("$and");
+        Assert.assertEquals(new Document(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION, PROJECT)
+                .append(PrideArchiveField.IS_VALIDATED, new Document("$ne", true)), and.get(0));
+        Assert.assertTrue(((Document) and.get(1)).containsKey(PrideArchiveField.ADDITIONAL_ATTRIBUTES));
+        Assert.assertEquals(2, closed.get());
+    }
+
+    @Test
+    public void peptideSequencesGroupedInTheServer() {
+        Assert.assertEquals(2, repository.findPeptideSequenceByProjectAccessions(PROJECT).size());
+        Assert.assertEquals(new Document("$group", new Document("_id", "$" + PrideArchiveField.PEPTIDE_SEQUENCE)),
+                captureAggregations().get(0).toPipeline(Aggregation.DEFAULT_CONTEXT).get(1));
+    }
+
+    @Test
+    public void viewReadsStoredFields() {
+        // The fields of the view are read with their property names, they must be the fields of the stored peptides
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        Set<String> storedFields = fieldNames(mappingContext, PrideMongoPeptideEvidence.class);
+        Set<String> viewFields = fieldNames(mappingContext, PridePeptideEvidenceView.class);
+        for (String field : viewFields)
+            Assert.assertTrue(field, storedFields.contains(field));
+        Assert.assertFalse(viewFields.contains(PrideArchiveField.PSM_SPECTRUM_ACCESSIONS));
+    }
+
+    private static Set<String> fieldNames(MongoMappingContext mappingContext, Class<?> type) {
+        Set<String> fields = new HashSet<>();
+        mappingContext.getRequiredPersistentEntity(type)
+                .doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> fields.add(property.getFieldName()));
+        return fields;
+    }
+
+    private List<Aggregation> captureAggregations() {
+        ArgumentCaptor<Aggregation> captor = ArgumentCaptor.forClass(Aggregation.class);
+        Mockito.verify(mongoTemplate, Mockito.times(2)).aggregateStream(captor.capture(),
+                Mockito.eq(PrideArchiveField.PRIDE_PEPTIDE_COLLECTION_NAME), Mockito.eq(Document.class));
+        return captor.getAllValues();
+    }
+
+    private CloseableIterator<Document> groups(String... ids) {
+        Iterator<Document> iterator = Arrays.stream(ids).map(id -> new Document("_id", id)).iterator();
+        return new CloseableIterator<Document>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Document next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.peptide;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PrideMongoPeptideSummary;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link PridePeptideSummaryMongoRepositoryImpl} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PridePeptideSummaryMongoRepositoryImplTest {
+
+    private static final String PROJECT = "PXD000001";
+
+    private MongoTemplate mongoTemplate;
+    private IndexOperations indexOperations;
+    private MongoCollection<Document> psms;
+    private PridePeptideSummaryMongoRepositoryImpl repository;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        indexOperations = Mockito.mock(IndexOperations.class);
+        Mockito.when(mongoTemplate.indexOps(PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME)).thenReturn(indexOperations);
+        psms = collection(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME, new Document("_id", "PEPTIDE"), new Document("_id", null));
+        collection(PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME, new Document("_id", "PEPTIDER"));
+
+        repository = new PridePeptideSummaryMongoRepositoryImpl();
+        repository.setMongoTemplate(mongoTemplate);
+    }
+
+    @Test
+    public void summaryPipeline() {
+        List<Document> pipeline = PridePeptideSummaryMongoRepositoryImpl.summaryPipeline(Arrays.asList("PEPTIDE", "PEPTIDER"));
+
+        Assert.assertEquals(new Document("$match", new Document(PrideArchiveField.PEPTIDE_SEQUENCE, new Document("$in", Arrays.asList("PEPTIDE", "PEPTIDER")))
+                .append(PrideArchiveField.IS_DECOY, new Document("$ne", true))), pipeline.get(0));
+        // The sequences without peptide evidences are dropped, they don't have a protein to merge on
+        Assert.assertTrue(pipeline.contains(new Document("$unwind", "$evidence")));
+        Assert.assertEquals(new Document("$match", new Document(PrideArchiveField.PROTEIN_ACCESSION,
+                new Document("$exists", true).append("$ne", null))), pipeline.get(pipeline.size() - 2));
+
+        Document project = (Document) pipeline.get(pipeline.size() - 3).get("$project");
+        Assert.assertEquals(0, project.get("_id"));
+        Assert.assertEquals("$_id.sequence", project.get(PrideArchiveField.PEPTIDE_SEQUENCE));
+        Assert.assertEquals("$_id.protein", project.get(PrideArchiveField.PROTEIN_ACCESSION));
+
+        Document merge = (Document) pipeline.get(pipeline.size() - 1).get("$merge");
+        Assert.assertEquals(PrideArchiveField.PEPTIDE_SUMMARY_COLLECTION_NAME, merge.get("into"));
+        Assert.assertEquals(Arrays.asList(PrideArchiveField.PEPTIDE_SEQUENCE, PrideArchiveField.PROTEIN_ACCESSION), merge.get("on"));
+        Assert.assertEquals("replace", merge.get("whenMatched"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void refreshMergesWithTheUniqueIndex() {
+        Assert.assertEquals(2, repository.refreshPeptideSummaries(Arrays.asList(PROJECT, PROJECT)));
+
+        // The unique index is created before the summaries are merged
+        InOrder inOrder = Mockito.inOrder(indexOperations, psms);
+        ArgumentCaptor<IndexDefinition> index = ArgumentCaptor.forClass(IndexDefinition.class);
+        inOrder.verify(indexOperations).ensureIndex(index.capture());
+        inOrder.verify(psms, Mockito.times(2)).aggregate(Mockito.anyList());
+        Assert.assertEquals(new Document(PrideArchiveField.PEPTIDE_SEQUENCE, 1).append(PrideArchiveField.PROTEIN_ACCESSION, 1),
+                index.getValue().getIndexKeys());
+        Assert.assertEquals(PridePeptideSummaryMongoRepositoryImpl.SUMMARY_INDEX_NAME, index.getValue().getIndexOptions().get("name"));
+        Assert.assertEquals(true, index.getValue().getIndexOptions().get("unique"));
+
+        ArgumentCaptor<List> pipelines = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(psms, Mockito.times(2)).aggregate(pipelines.capture());
+        Assert.assertEquals(PridePeptideSummaryMongoRepositoryImpl.summaryPipeline(Arrays.asList("PEPTIDE", "PEPTIDER")),
+                pipelines.getAllValues().get(1));
+
+        // The project is removed from the old summaries, the summaries without projects are deleted
+        ArgumentCaptor<Update> pull = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(mongoTemplate).updateMulti(Mockito.any(Query.class), pull.capture(), Mockito.eq(PrideMongoPeptideSummary.class));
+        Assert.assertTrue(pull.getValue().getUpdateObject().containsKey("$pullAll"));
+        Mockito.verify(mongoTemplate).remove(Mockito.any(Query.class), Mockito.eq(PrideMongoPeptideSummary.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void refreshFailsWithDuplicatedSummaries() {
+        Mockito.when(indexOperations.ensureIndex(Mockito.any(Index.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+        try {
+            repository.refreshPeptideSummaries(Collections.singletonList(PROJECT));
+            Assert.fail("The summaries can't be merged without the unique index");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains(PridePeptideSummaryMongoRepositoryImpl.SUMMARY_INDEX_NAME));
+        }
+        Mockito.verify(psms, Mockito.never()).aggregate(Mockito.anyList());
+    }
+
+    @Test
+    public void refreshNothing() {
+        Assert.assertEquals(0, repository.refreshPeptideSummaries(Collections.emptyList()));
+        Mockito.verifyZeroInteractions(indexOperations);
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> collection(String collectionName, Document... groups) {
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        AggregateIterable<Document> iterable = Mockito.mock(AggregateIterable.class);
+        Mockito.when(mongoTemplate.getCollection(collectionName)).thenReturn(collection);
+        Mockito.when(collection.aggregate(Mockito.anyList())).thenReturn(iterable);
+        Mockito.when(iterable.allowDiskUse(true)).thenReturn(iterable);
+        Mockito.when(iterable.batchSize(Mockito.anyInt())).thenReturn(iterable);
+        Mockito.when(iterable.iterator()).thenAnswer(invocation -> cursor(Arrays.asList(groups).iterator()));
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCursor<Document> cursor(Iterator<Document> documents) {
+        MongoCursor<Document> cursor = Mockito.mock(MongoCursor.class);
+        Mockito.when(cursor.hasNext()).thenAnswer(invocation -> documents.hasNext());
+        Mockito.when(cursor.next()).thenAnswer(invocation -> documents.next());
+        return cursor;
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.protein;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mapping.PropertyHandler;
+import org.springframework.data.mongodb.core.ExecutableFindOperation;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Query;
+import uk.ac.ebi.pride.archive.dataprovider.common.Triple;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideProteinEvidenceView;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
+import uk.ac.ebi.pride.mongodb.utils.PrideMongoUtils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PrideProteinMongoRepositoryImpl} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideProteinMongoRepositoryImplTest {
+
+    private MongoTemplate mongoTemplate;
+    private ExecutableFindOperation.FindWithQuery<PrideProteinEvidenceView> findView;
+    private ExecutableFindOperation.TerminatingFind<PrideProteinEvidenceView> terminatingFind;
+    private PrideProteinMongoRepositoryImpl repository;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        ExecutableFindOperation.ExecutableFind<PrideMongoProteinEvidence> find = Mockito.mock(ExecutableFindOperation.ExecutableFind.class);
+        findView = Mockito.mock(ExecutableFindOperation.FindWithQuery.class);
+        terminatingFind = Mockito.mock(ExecutableFindOperation.TerminatingFind.class);
+        Mockito.when(mongoTemplate.query(PrideMongoProteinEvidence.class)).thenReturn(find);
+        Mockito.when(find.as(PrideProteinEvidenceView.class)).thenReturn(findView);
+        Mockito.when(findView.matching(Mockito.any(Query.class))).thenReturn(terminatingFind);
+
+        repository = new PrideProteinMongoRepositoryImpl();
+        repository.setMongoTemplate(mongoTemplate);
+        repository.setMongoOperations(mongoTemplate);
+        repository.setCountCache(new MongoCountCache(100, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void filterByAttributesAsView() {
+        Mockito.when(terminatingFind.all()).thenReturn(Collections.singletonList(new PrideProteinEvidenceView()));
+
+        List<Triple<String, String, String>> filters = PrideMongoUtils.parseFilterParameters("projectAccession=in=PXD000001");
+        Page<PrideProteinEvidenceView> page = repository.filterByAttributes(filters, PageRequest.of(2, 20), PrideProteinEvidenceView.class);
+        Assert.assertEquals(1, page.getContent().size());
+        // The last page, the total is known without a count
+        Assert.assertEquals(41, page.getTotalElements());
+        Mockito.verify(mongoTemplate, Mockito.never()).count(Mockito.any(Query.class), Mockito.eq(PrideMongoProteinEvidence.class));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(findView).matching(query.capture());
+        Assert.assertEquals(40, query.getValue().getSkip());
+        Assert.assertEquals(20, query.getValue().getLimit());
+        Assert.assertTrue(query.getValue().getQueryObject().containsKey(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION));
+    }
+
+    @Test
+    public void viewReadsStoredFields() {
+        // The fields of the view are read with their property names, they must be the fields of the stored proteins
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        Set<String> storedFields = fieldNames(mappingContext, PrideMongoProteinEvidence.class);
+        for (String field : fieldNames(mappingContext, PrideProteinEvidenceView.class))
+            Assert.assertTrue(field, storedFields.contains(field));
+        Assert.assertFalse(fieldNames(mappingContext, PrideProteinEvidenceView.class).contains(PrideArchiveField.PROTEIN_SEQUENCE));
+    }
+
+    private static Set<String> fieldNames(MongoMappingContext mappingContext, Class<?> type) {
+        Set<String> fields = new HashSet<>();
+        mappingContext.getRequiredPersistentEntity(type)
+                .doWithProperties((PropertyHandler<MongoPersistentProperty>) property -> fields.add(property.getFieldName()));
+        return fields;
+    }
+}
@@ -0,0 +1,138 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.protein;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideMongoProteinSummary;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link PrideProteinSummaryMongoRepositoryImpl} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideProteinSummaryMongoRepositoryImplTest {
+
+    private static final String PROJECT = "PXD000001";
+    private static final List<String> ACCESSIONS = Arrays.asList("P12345", "ENSP00000000001");
+
+    private MongoTemplate mongoTemplate;
+    private IndexOperations indexOperations;
+    private MongoCollection<Document> proteins;
+    private PrideProteinSummaryMongoRepositoryImpl repository;
+
+    @Before
+    public void setUp() {
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        indexOperations = Mockito.mock(IndexOperations.class);
+        Mockito.when(mongoTemplate.indexOps(PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME)).thenReturn(indexOperations);
+        proteins = collection(PrideArchiveField.PRIDE_PROTEIN_COLLECTION_NAME, new Document("_id", "P12345"));
+        collection(PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME, new Document("_id", "ENSP00000000001"), new Document("_id", "P12345"));
+
+        repository = new PrideProteinSummaryMongoRepositoryImpl();
+        repository.setMongoTemplate(mongoTemplate);
+    }
+
+    @Test
+    public void summaryPipeline() {
+        List<Document> pipeline = PrideProteinSummaryMongoRepositoryImpl.summaryPipeline(ACCESSIONS);
+
+        Document match = (Document) pipeline.get(0).get("$match");
+        Assert.assertEquals(Arrays.asList(
+                new Document(PrideArchiveField.UNIPROT_MAPPED_PROTEIN_ACCESSION, new Document("$in", ACCESSIONS)),
+                new Document(PrideArchiveField.ENSEMBL_MAPPED_PROTEIN_ACCESSION, new Document("$in", ACCESSIONS))), match.get("$or"));
+        Assert.assertEquals(new Document("$ne", true), match.get(PrideArchiveField.IS_DECOY));
+        Assert.assertEquals(new Document("$unwind", "$accessions"), pipeline.get(2));
+
+        // One summary by mapped accession: projects, assays, PSMs, best score and coverage
+        Document group = (Document) pipeline.get(3).get("$group");
+        Assert.assertEquals("$accessions", group.get("_id"));
+        Assert.assertEquals(new Document("$addToSet", "$" + PrideArchiveField.EXTERNAL_PROJECT_ACCESSION), group.get(PrideArchiveField.EXTERNAL_PROJECT_ACCESSIONS));
+        Assert.assertEquals(new Document("$sum", "$" + PrideArchiveField.NUMBER_PSMS), group.get(PrideArchiveField.PSMS_COUNT));
+        Assert.assertEquals(new Document("$max", "$" + PrideArchiveField.PROTEIN_COVERAGE), group.get(PrideArchiveField.MAX_SEQUENCE_COVERAGE));
+
+        Document project = (Document) pipeline.get(4).get("$project");
+        Assert.assertEquals(0, project.get("_id"));
+        Assert.assertEquals("$_id", project.get(PrideArchiveField.PROTEIN_ACCESSION));
+        Assert.assertEquals(new Document("$size", "$" + PrideArchiveField.ASSAYS_COUNT), project.get(PrideArchiveField.ASSAYS_COUNT));
+
+        // The summaries replace the summaries with the same accession
+        Assert.assertEquals(new Document("$merge", new Document("into", PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME)
+                .append("on", PrideArchiveField.PROTEIN_ACCESSION)
+                .append("whenMatched", "replace")
+                .append("whenNotMatched", "insert")), pipeline.get(pipeline.size() - 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void refreshMergesWithTheUniqueIndex() {
+        Assert.assertEquals(2, repository.refreshProteinSummaries(Collections.singletonList(PROJECT)));
+
+        // The unique index is created before the summaries are merged
+        InOrder inOrder = Mockito.inOrder(indexOperations, proteins);
+        ArgumentCaptor<IndexDefinition> index = ArgumentCaptor.forClass(IndexDefinition.class);
+        inOrder.verify(indexOperations).ensureIndex(index.capture());
+        inOrder.verify(proteins, Mockito.times(2)).aggregate(Mockito.anyList());
+        Assert.assertEquals(new Document(PrideArchiveField.PROTEIN_ACCESSION, 1), index.getValue().getIndexKeys());
+        Assert.assertEquals(PrideProteinSummaryMongoRepositoryImpl.SUMMARY_INDEX_NAME, index.getValue().getIndexOptions().get("name"));
+        Assert.assertEquals(true, index.getValue().getIndexOptions().get("unique"));
+
+        // The accessions of the evidences and of the summaries of the project are merged in one batch
+        ArgumentCaptor<List> pipelines = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(proteins, Mockito.times(2)).aggregate(pipelines.capture());
+        Assert.assertEquals(PrideProteinSummaryMongoRepositoryImpl.summaryPipeline(Arrays.asList("P12345", "ENSP00000000001")),
+                pipelines.getAllValues().get(1));
+        Mockito.verify(mongoTemplate).remove(Mockito.any(Query.class), Mockito.eq(PrideMongoProteinSummary.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void refreshFailsWithDuplicatedSummaries() {
+        Mockito.when(indexOperations.ensureIndex(Mockito.any(Index.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+        try {
+            repository.refreshProteinSummaries(Collections.singletonList(PROJECT));
+            Assert.fail("The summaries can't be merged without the unique index");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains(PrideArchiveField.PROTEIN_SUMMARY_COLLECTION_NAME));
+        }
+        Mockito.verify(proteins, Mockito.never()).aggregate(Mockito.anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> collection(String collectionName, Document... groups) {
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        AggregateIterable<Document> iterable = Mockito.mock(AggregateIterable.class);
+        Mockito.when(mongoTemplate.getCollection(collectionName)).thenReturn(collection);
+        Mockito.when(collection.aggregate(Mockito.anyList())).thenReturn(iterable);
+        Mockito.when(iterable.allowDiskUse(true)).thenReturn(iterable);
+        Mockito.when(iterable.batchSize(Mockito.anyInt())).thenReturn(iterable);
+        Mockito.when(iterable.iterator()).thenAnswer(invocation -> cursor(Arrays.asList(groups).iterator()));
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCursor<Document> cursor(Iterator<Document> documents) {
+        MongoCursor<Document> cursor = Mockito.mock(MongoCursor.class);
+        Mockito.when(cursor.hasNext()).thenAnswer(invocation -> documents.hasNext());
+        Mockito.when(cursor.next()).thenAnswer(invocation -> documents.next());
+        return cursor;
+    }
+}
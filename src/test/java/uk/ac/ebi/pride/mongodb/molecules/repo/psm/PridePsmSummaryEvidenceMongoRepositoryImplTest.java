@@ -0,0 +1,199 @@
+package uk.ac.ebi.pride.mongodb.molecules.repo.psm;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.molecules.model.psm.PrideMongoPsmSummaryEvidence;
+import uk.ac.ebi.pride.mongodb.molecules.repo.counts.PrideMoleculeCountsMongoRepository;
+import uk.ac.ebi.pride.mongodb.utils.MongoCountCache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class PridePsmSummaryEvidenceMongoRepositoryImplTest {
+
+    private static final String USI = "mzspec:PXD000001:run_1:scan:10:PEPT[UNIMOD:21]IDE/2";
+    private static final String OTHER_USI = "mzspec:PXD000001:run_1:scan:11:PEPTIDER/2";
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations bulkOperations;
+    private PrideMoleculeCountsMongoRepository countsRepository;
+    private PridePsmSummaryEvidenceMongoRepositoryImpl repository;
+
+    @Before
+    public void setUp() {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        mongoTemplate = Mockito.mock(MongoTemplate.class);
+        bulkOperations = Mockito.mock(BulkOperations.class);
+        countsRepository = Mockito.mock(PrideMoleculeCountsMongoRepository.class);
+        Mockito.when(mongoTemplate.getConverter()).thenReturn(converter);
+        Mockito.when(mongoTemplate.getCollectionName(PrideMongoPsmSummaryEvidence.class)).thenReturn(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME);
+        Mockito.when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PrideMongoPsmSummaryEvidence.class)).thenReturn(bulkOperations);
+        Mockito.when(bulkOperations.upsert(Mockito.anyList())).thenReturn(bulkOperations);
+
+        repository = new PridePsmSummaryEvidenceMongoRepositoryImpl();
+        repository.setMongoTemplate(mongoTemplate);
+        repository.setMongoOperations(mongoTemplate);
+        repository.setCountsRepository(countsRepository);
+        repository.setCountCache(new MongoCountCache(100, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void upsertPsmSummaryEvidences() {
+        // The second PSM is new, the first one already exists
+        Mockito.when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1,
+                Collections.singletonList(new BulkWriteUpsert(1, new BsonObjectId()))));
+
+        long upserted = repository.upsertPsmSummaryEvidences(Arrays.asList(psm(USI), psm(OTHER_USI)));
+        Assert.assertEquals(2, upserted);
+
+        List<Pair<Query, Update>> upserts = captureUpserts();
+        Assert.assertEquals(2, upserts.size());
+        Assert.assertEquals(USI, upserts.get(0).getFirst().getQueryObject().get(PrideArchiveField.USI));
+
+        for (Pair<Query, Update> upsert : upserts) {
+            Document update = upsert.getSecond().getUpdateObject();
+            // Only update operators, a replacement document is rejected by the bulk upsert
+            update.keySet().forEach(key -> Assert.assertTrue(key, key.startsWith("$")));
+            Document set = (Document) update.get("$set");
+            Assert.assertEquals(upsert.getFirst().getQueryObject().get(PrideArchiveField.USI), set.get(PrideArchiveField.USI));
+            Assert.assertEquals("PXD000001", set.get(PrideArchiveField.EXTERNAL_PROJECT_ACCESSION));
+            Assert.assertEquals("run_1", set.get(PrideArchiveField.USI_MS_RUN));
+            Assert.assertFalse(set.containsKey("_id"));
+            // The null fields are removed from the stored PSM, as the save of the whole document did
+            Document unset = (Document) update.get("$unset");
+            Assert.assertTrue(unset.containsKey(PrideArchiveField.PSM_SUMMARY_FILE));
+            Assert.assertFalse(unset.containsKey("_id"));
+            unset.keySet().forEach(field -> Assert.assertFalse(field, set.containsKey(field)));
+        }
+        Mockito.verify(countsRepository).increment("PXD000001", "12345", PrideArchiveField.COUNT_PSMS, 1);
+    }
+
+    @Test
+    public void upsertSkipsPsmsWithoutUsi() {
+        Mockito.when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()));
+
+        // The PSMs without USI would all be upserted on {usi: null}
+        Assert.assertEquals(1, repository.upsertPsmSummaryEvidences(Arrays.asList(psm(null), psm(" "), psm(USI))));
+        List<Pair<Query, Update>> upserts = captureUpserts();
+        Assert.assertEquals(1, upserts.size());
+        Assert.assertEquals(USI, upserts.get(0).getFirst().getQueryObject().get(PrideArchiveField.USI));
+
+        Assert.assertEquals(0, repository.upsertPsmSummaryEvidences(Collections.singletonList(psm(null))));
+    }
+
+    @Test
+    public void upsertSameUsiOnce() {
+        Mockito.when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()));
+
+        PrideMongoPsmSummaryEvidence last = psm(USI);
+        last.setCharge(3);
+        Assert.assertEquals(1, repository.upsertPsmSummaryEvidences(Arrays.asList(psm(USI), last)));
+
+        List<Pair<Query, Update>> upserts = captureUpserts();
+        Assert.assertEquals(1, upserts.size());
+        Assert.assertEquals(3, ((Document) upserts.get(0).getSecond().getUpdateObject().get("$set")).get(PrideArchiveField.CHARGE));
+        Mockito.verifyZeroInteractions(countsRepository);
+    }
+
+    @Test
+    public void upsertNothing() {
+        Assert.assertEquals(0, repository.upsertPsmSummaryEvidences(Collections.emptyList()));
+        Mockito.verifyZeroInteractions(bulkOperations);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void updateSpectraUsiOnServersWithoutPipelineUpdates() {
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        Mockito.when(mongoTemplate.getCollection(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME)).thenReturn(collection);
+        Mockito.when(collection.updateMany(Mockito.any(Bson.class), Mockito.anyList())).thenThrow(commandException(14));
+        Mockito.when(mongoTemplate.find(Mockito.any(Query.class), Mockito.eq(Document.class), Mockito.eq(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME)))
+                .thenReturn(Collections.singletonList(new Document("_id", new ObjectId()).append(PrideArchiveField.USI, USI)));
+        Mockito.when(bulkOperations.updateOne(Mockito.anyList())).thenReturn(bulkOperations);
+        Mockito.when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()));
+
+        ObjectId toId = new ObjectId();
+        Assert.assertEquals(1, repository.updateSpectraUsi("PXD000001", null, toId));
+        Assert.assertEquals(1, repository.updateSpectraUsi("PXD000001", null, toId));
+
+        // The fallback is limited to the call, the next range tries the pipeline update again
+        Mockito.verify(collection, Mockito.times(2)).updateMany(Mockito.any(Bson.class), Mockito.anyList());
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(bulkOperations, Mockito.times(2)).updateOne(captor.capture());
+        Pair<Query, Update> update = (Pair<Query, Update>) captor.getValue().get(0);
+        Assert.assertEquals(new Document(PrideArchiveField.SPECTRA_USI, "mzspec:PXD000001:run_1:scan:10"),
+                update.getSecond().getUpdateObject().get("$set"));
+    }
+
+    @Test(expected = MongoCommandException.class)
+    @SuppressWarnings("unchecked")
+    public void updateSpectraUsiThrowsOtherServerErrors() {
+        MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+        Mockito.when(mongoTemplate.getCollection(PrideArchiveField.PRIDE_PSM_COLLECTION_NAME)).thenReturn(collection);
+        Mockito.when(collection.updateMany(Mockito.any(Bson.class), Mockito.anyList())).thenThrow(commandException(11600));
+        try {
+            repository.updateSpectraUsi("PXD000001", null, new ObjectId());
+        } finally {
+            Mockito.verifyZeroInteractions(bulkOperations);
+        }
+    }
+
+    @Test
+    public void deleteBackfillCheckpoint() {
+        repository.deleteBackfillCheckpoint("spectraUsi:PXD000001");
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        Mockito.verify(mongoTemplate).remove(query.capture(), Mockito.eq("backfill_checkpoints"));
+        Assert.assertEquals(new Document("_id", "spectraUsi:PXD000001"), query.getValue().getQueryObject());
+    }
+
+    private static MongoCommandException commandException(int code) {
+        return new MongoCommandException(new BsonDocument("ok", new BsonDouble(0)).append("code", new BsonInt32(code))
+                .append("errmsg", new BsonString("update failed")), new ServerAddress());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Pair<Query, Update>> captureUpserts() {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(bulkOperations).upsert(captor.capture());
+        return (List<Pair<Query, Update>>) captor.getValue();
+    }
+
+    private static PrideMongoPsmSummaryEvidence psm(String usi) {
+        return PrideMongoPsmSummaryEvidence.builder()
+                .usi(usi)
+                .projectAccession("PXD000001")
+                .assayAccession("12345")
+                .peptideSequence("PEPTIDE")
+                .isDecoy(false)
+                .build();
+    }
+}
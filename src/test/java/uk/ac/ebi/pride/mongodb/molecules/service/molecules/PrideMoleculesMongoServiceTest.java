@@ -0,0 +1,61 @@
+package uk.ac.ebi.pride.mongodb.molecules.service.molecules;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import uk.ac.ebi.pride.mongodb.molecules.model.peptide.PridePeptideEvidenceView;
+import uk.ac.ebi.pride.mongodb.molecules.model.protein.PrideProteinEvidenceView;
+import uk.ac.ebi.pride.mongodb.molecules.repo.counts.PrideMoleculeCountsMongoRepository;
+import uk.ac.ebi.pride.mongodb.molecules.repo.peptide.PridePeptideEvidenceMongoRepository;
+import uk.ac.ebi.pride.mongodb.molecules.repo.peptide.PridePeptideSummaryMongoRepository;
+import uk.ac.ebi.pride.mongodb.molecules.repo.protein.PrideProteinMongoRepository;
+import uk.ac.ebi.pride.mongodb.molecules.repo.protein.PrideProteinSummaryMongoRepository;
+import uk.ac.ebi.pride.mongodb.molecules.repo.psm.PridePsmSummaryEvidenceMongoRepository;
+
+import java.util.Collections;
+
+/**
+ * {@link PrideMoleculesMongoService} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideMoleculesMongoServiceTest {
+
+    private PrideProteinMongoRepository proteinRepository;
+    private PridePeptideEvidenceMongoRepository peptideRepository;
+    private PrideMoleculesMongoService service;
+
+    @Before
+    public void setUp() {
+        proteinRepository = Mockito.mock(PrideProteinMongoRepository.class);
+        peptideRepository = Mockito.mock(PridePeptideEvidenceMongoRepository.class);
+        service = new PrideMoleculesMongoService(proteinRepository, peptideRepository,
+                Mockito.mock(PridePsmSummaryEvidenceMongoRepository.class), Mockito.mock(PridePeptideSummaryMongoRepository.class),
+                Mockito.mock(PrideMoleculeCountsMongoRepository.class), Mockito.mock(PrideProteinSummaryMongoRepository.class));
+    }
+
+    @Test
+    public void findAllProteinEvidenceViews() {
+        // Any Pageable, the callers don't have to build a PageRequest
+        Page<PrideProteinEvidenceView> views = new PageImpl<>(Collections.singletonList(new PrideProteinEvidenceView()));
+        Mockito.when(proteinRepository.filterByAttributes(Collections.emptyList(), Pageable.unpaged(), PrideProteinEvidenceView.class))
+                .thenReturn(views);
+        Assert.assertSame(views, service.findAllProteinEvidenceViews(Pageable.unpaged()));
+    }
+
+    @Test
+    public void findViewsByProjectAccession() {
+        Pageable page = Pageable.unpaged();
+        service.findProteinViewsByProjectAccession("PXD000001", page);
+        service.findPeptideEvidenceViewsByProjectAccession("PXD000001", page);
+
+        Mockito.verify(proteinRepository).filterByAttributes(Mockito.argThat(filters -> filters.size() == 1
+                && "PXD000001".equals(filters.get(0).getThird())), Mockito.eq(page), Mockito.eq(PrideProteinEvidenceView.class));
+        Mockito.verify(peptideRepository).filterByAttributes(Mockito.argThat(filters -> filters.size() == 1
+                && "PXD000001".equals(filters.get(0).getThird())), Mockito.eq(page), Mockito.eq(PridePeptideEvidenceView.class));
+    }
+}
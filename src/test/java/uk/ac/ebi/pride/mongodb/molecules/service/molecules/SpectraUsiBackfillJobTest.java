@@ -0,0 +1,84 @@
+package uk.ac.ebi.pride.mongodb.molecules.service.molecules;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import uk.ac.ebi.pride.mongodb.molecules.repo.psm.PridePsmSummaryEvidenceMongoRepository;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * {@link SpectraUsiBackfillJob} unit tests.
+ *
+ * @author ypriverol
+ */
+public class SpectraUsiBackfillJobTest {
+
+    private static final String PROJECT = "PXD000001";
+    private static final String JOB_ID = "spectraUsi:" + PROJECT;
+
+    private PridePsmSummaryEvidenceMongoRepository psmRepository;
+    private ObjectId[] ids;
+
+    @Before
+    public void setUp() {
+        psmRepository = Mockito.mock(PridePsmSummaryEvidenceMongoRepository.class);
+        ids = new ObjectId[5];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = new ObjectId();
+        Mockito.when(psmRepository.updateSpectraUsi(Mockito.eq(PROJECT), Mockito.any(), Mockito.any())).thenReturn(1L);
+    }
+
+    @Test
+    public void runAndResetCheckpoint() throws Exception {
+        Mockito.when(psmRepository.findBackfillCheckpoint(JOB_ID)).thenReturn(Optional.empty());
+        Mockito.when(psmRepository.streamPsmIds(PROJECT, null, 2)).thenReturn(Stream.of(ids));
+
+        SpectraUsiBackfillJob job = new SpectraUsiBackfillJob(psmRepository, PROJECT, 2, 1);
+        Assert.assertEquals(3, job.run());
+        Assert.assertEquals(5, job.getProcessed());
+
+        Mockito.verify(psmRepository).updateSpectraUsi(PROJECT, null, ids[1]);
+        Mockito.verify(psmRepository).updateSpectraUsi(PROJECT, ids[1], ids[3]);
+        Mockito.verify(psmRepository).updateSpectraUsi(PROJECT, ids[3], ids[4]);
+
+        // The checkpoint moves forward with the ranges and is removed when the job completes
+        InOrder inOrder = Mockito.inOrder(psmRepository);
+        inOrder.verify(psmRepository).saveBackfillCheckpoint(JOB_ID, ids[1], 2);
+        inOrder.verify(psmRepository).saveBackfillCheckpoint(JOB_ID, ids[3], 4);
+        inOrder.verify(psmRepository).saveBackfillCheckpoint(JOB_ID, ids[4], 5);
+        inOrder.verify(psmRepository).deleteBackfillCheckpoint(JOB_ID);
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws Exception {
+        Mockito.when(psmRepository.findBackfillCheckpoint(JOB_ID)).thenReturn(Optional.of(ids[1]));
+        Mockito.when(psmRepository.streamPsmIds(PROJECT, ids[1], 5)).thenReturn(Stream.of(ids[2], ids[3], ids[4]));
+
+        Assert.assertEquals(1, new SpectraUsiBackfillJob(psmRepository, PROJECT, 5, 1).run());
+        Mockito.verify(psmRepository).updateSpectraUsi(PROJECT, ids[1], ids[4]);
+        Mockito.verify(psmRepository).deleteBackfillCheckpoint(JOB_ID);
+    }
+
+    @Test
+    public void keepCheckpointOnFailure() throws Exception {
+        Mockito.when(psmRepository.findBackfillCheckpoint(JOB_ID)).thenReturn(Optional.empty());
+        Mockito.when(psmRepository.streamPsmIds(PROJECT, null, 2)).thenReturn(Stream.of(ids));
+        Mockito.when(psmRepository.updateSpectraUsi(PROJECT, ids[1], ids[3])).thenThrow(new IllegalStateException("write failed"));
+
+        try {
+            new SpectraUsiBackfillJob(psmRepository, PROJECT, 2, 1).run();
+            Assert.fail("The second range can't be updated");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Mockito.verify(psmRepository).saveBackfillCheckpoint(JOB_ID, ids[1], 2);
+        Mockito.verify(psmRepository, Mockito.never()).saveBackfillCheckpoint(JOB_ID, ids[3], 4);
+        Mockito.verify(psmRepository, Mockito.never()).deleteBackfillCheckpoint(Mockito.anyString());
+    }
+}
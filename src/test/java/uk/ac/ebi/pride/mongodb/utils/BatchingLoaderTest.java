@@ -0,0 +1,148 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link BatchingLoader} unit tests.
+ *
+ * @author ypriverol
+ */
+public class BatchingLoaderTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "scheduler"));
+    private final ExecutorService queryExecutor = Executors.newFixedThreadPool(2);
+    private final List<Collection<String>> batches = new CopyOnWriteArrayList<>();
+
+    /** Only the accessions starting with PXF exist **/
+    private final Function<Collection<String>, Map<String, String>> finder = keys -> {
+        batches.add(new ArrayList<>(keys));
+        return keys.stream().filter(x -> x.startsWith("PXF")).collect(Collectors.toMap(x -> x, String::toLowerCase));
+    };
+
+    @After
+    public void shutdown() {
+        scheduler.shutdownNow();
+        queryExecutor.shutdownNow();
+    }
+
+    @Test
+    public void coalesceWithinWindow() {
+        BatchingLoader<String, String> loader = new BatchingLoader<>(finder, scheduler, queryExecutor, 50, 100);
+        CompletableFuture<Optional<String>> first = loader.load("PXF1");
+        CompletableFuture<Optional<String>> second = loader.load("PXF2");
+        CompletableFuture<Optional<String>> duplicate = loader.load("PXF1");
+        Assert.assertEquals("pxf1", first.join().get());
+        Assert.assertEquals("pxf2", second.join().get());
+        Assert.assertSame(first, duplicate);
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(2, batches.get(0).size());
+        Assert.assertEquals(1, loader.getDeduplicatedCount());
+    }
+
+    @Test
+    public void loadManyInOrder() {
+        BatchingLoader<String, String> loader = new BatchingLoader<>(finder, scheduler, queryExecutor, 10_000, 100);
+        List<Optional<String>> values = loader.loadMany(Arrays.asList("PXF3", "MISSING", "PXF1", "PXF3"));
+        Assert.assertEquals("pxf3", values.get(0).get());
+        Assert.assertFalse(values.get(1).isPresent());
+        Assert.assertEquals("pxf1", values.get(2).get());
+        Assert.assertEquals("pxf3", values.get(3).get());
+        // Sent without waiting for the window
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(3, batches.get(0).size());
+    }
+
+    @Test
+    public void maxBatchSize() {
+        BatchingLoader<String, String> loader = new BatchingLoader<>(finder, scheduler, queryExecutor, 10_000, 2);
+        List<Optional<String>> values = loader.loadMany(Arrays.asList("PXF1", "PXF2", "PXF3", "PXF4", "PXF5"));
+        Assert.assertEquals(5, values.size());
+        Assert.assertEquals(3, batches.size());
+    }
+
+    @Test
+    public void errorsReachEveryCaller() {
+        BatchingLoader<String, String> loader = new BatchingLoader<>(keys -> {
+            throw new IllegalStateException("database down");
+        }, scheduler, queryExecutor, 1, 100);
+        try {
+            loader.get("PXF1");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("database down", e.getMessage());
+        }
+    }
+
+    @Test
+    public void slowQueriesDoNotBlockTheScheduler() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        BatchingLoader<String, String> slowLoader = new BatchingLoader<>(keys -> {
+            threads.add(Thread.currentThread().getName());
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return finder.apply(keys);
+        }, scheduler, queryExecutor, 1, 100);
+        BatchingLoader<String, String> loader = new BatchingLoader<>(finder, scheduler, queryExecutor, 1, 100);
+
+        CompletableFuture<Optional<String>> slow = slowLoader.load("PXF1");
+        // The window of the other loader ends while the slow query is still running
+        Assert.assertEquals("pxf2", loader.load("PXF2").get(5, TimeUnit.SECONDS).get());
+        Assert.assertFalse(slow.isDone());
+
+        release.countDown();
+        Assert.assertEquals("pxf1", slow.get(5, TimeUnit.SECONDS).get());
+        Assert.assertFalse(threads.contains("scheduler"));
+    }
+
+    @Test
+    public void rejectedBatchesFail() {
+        queryExecutor.shutdown();
+        BatchingLoader<String, String> loader = new BatchingLoader<>(finder, scheduler, queryExecutor, 1, 100);
+        try {
+            loader.get("PXF1");
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            Assert.assertTrue(batches.isEmpty());
+        }
+    }
+
+    @Test
+    public void rejectedWindowsFail() {
+        scheduler.shutdown();
+        BatchingLoader<String, String> loader = new BatchingLoader<>(finder, scheduler, queryExecutor, 1, 100);
+        // Every request of the key fails, none of them waits for a window that will never end
+        for (int i = 0; i < 2; i++) {
+            try {
+                loader.get("PXF1");
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                Assert.assertTrue(batches.isEmpty());
+            }
+        }
+        Assert.assertEquals(0, loader.getDeduplicatedCount());
+    }
+}
@@ -0,0 +1,45 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * {@link BulkWritePipeline} unit tests.
+ *
+ * @author ypriverol
+ */
+public class BulkWritePipelineTest {
+
+    @Test
+    public void writeAllBatches() throws Exception {
+        List<Integer> items = IntStream.range(0, 10_005).boxed().collect(Collectors.toList());
+        AtomicInteger batches = new AtomicInteger();
+        BulkWritePipeline<Integer> pipeline = new BulkWritePipeline<>(100, 4, 4);
+
+        long written = pipeline.run(items.iterator(), batch -> {
+            Assert.assertTrue(batch.size() <= 100);
+            batches.incrementAndGet();
+            return batch.size();
+        });
+
+        Assert.assertEquals(10_005, written);
+        Assert.assertEquals(101, batches.get());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void stopOnFailure() throws Exception {
+        List<Integer> items = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        BulkWritePipeline<Integer> pipeline = new BulkWritePipeline<>(10, 2, 2);
+        pipeline.run(items.iterator(), batch -> {
+            if (batch.contains(500))
+                throw new IllegalStateException("Duplicate key");
+            return batch.size();
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link ExplainSummary} unit tests.
+ *
+ * @author ypriverol
+ */
+public class ExplainSummaryTest {
+
+    private static Map<String, Object> document(Object... keyValues) {
+        Map<String, Object> document = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+            document.put((String) keyValues[i], keyValues[i + 1]);
+        return document;
+    }
+
+    private static Map<String, Object> stats(long keys, long docs, long returned) {
+        return document("totalKeysExamined", keys, "totalDocsExamined", docs, "nReturned", returned);
+    }
+
+    @Test
+    public void indexScan() {
+        Map<String, Object> explain = document(
+                "queryPlanner", document("winningPlan", document("stage", "FETCH",
+                        "inputStage", document("stage", "IXSCAN", "indexName", "projectAccession_1"))),
+                "executionStats", stats(20, 20, 20));
+        ExplainSummary summary = ExplainSummary.of(explain);
+        Assert.assertEquals("FETCH > IXSCAN projectAccession_1", summary.getWinningPlan());
+        Assert.assertFalse(summary.isCollectionScan());
+        Assert.assertEquals(1.0, summary.getExaminedRatio(), 0.001);
+        Assert.assertFalse(summary.isInefficient(ExplainSummary.DEFAULT_MAX_EXAMINED_RATIO));
+    }
+
+    @Test
+    public void collectionScan() {
+        Map<String, Object> explain = document(
+                "queryPlanner", document("winningPlan", document("stage", "COLLSCAN")),
+                "executionStats", stats(0, 5, 5));
+        Assert.assertTrue(ExplainSummary.of(explain).isCollectionScan());
+        Assert.assertTrue(ExplainSummary.of(explain).isInefficient(ExplainSummary.DEFAULT_MAX_EXAMINED_RATIO));
+    }
+
+    @Test
+    public void largeExaminedRatio() {
+        Map<String, Object> explain = document(
+                "queryPlanner", document("winningPlan", document("stage", "FETCH",
+                        "inputStage", document("stage", "IXSCAN", "indexName", "charge_1"))),
+                "executionStats", stats(50000, 50000, 10));
+        ExplainSummary summary = ExplainSummary.of(explain);
+        Assert.assertEquals(5000.0, summary.getExaminedRatio(), 0.001);
+        Assert.assertTrue(summary.isInefficient(ExplainSummary.DEFAULT_MAX_EXAMINED_RATIO));
+    }
+
+    @Test
+    public void aggregatePlanInsideCursorStage() {
+        Map<String, Object> explain = document("stages", Arrays.asList(
+                document("$cursor", document(
+                        "queryPlanner", document("winningPlan", document("stage", "OR", "inputStages", Arrays.asList(
+                                document("stage", "IXSCAN", "indexName", "a_1"), document("stage", "COLLSCAN")))),
+                        "executionStats", stats(1, 100, 1))),
+                document("$group", Collections.emptyMap())));
+        ExplainSummary summary = ExplainSummary.of(explain);
+        Assert.assertEquals("OR > (IXSCAN a_1 | COLLSCAN)", summary.getWinningPlan());
+        Assert.assertTrue(summary.isCollectionScan());
+        Assert.assertEquals(100, summary.getDocsExamined());
+    }
+
+    @Test
+    public void noPlan() {
+        Assert.assertNull(ExplainSummary.of(document("ok", 1)));
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link FilterParser} unit tests.
+ *
+ * @author ypriverol
+ */
+public class FilterParserTest {
+
+    @Test
+    public void parseOperators() {
+        List<FilterExpression> expressions = FilterParser.parse(
+                "fileName==test.raw,projectAccession=in=PXD000001|PXD000002,projectAccessions=all=PXD000003," +
+                        "submissionDate=range=[2018-01-01 TO 2019-01-01],accession=regex=^PXF\\d+");
+        Assert.assertEquals(5, expressions.size());
+
+        Assert.assertEquals(FilterOperator.IS, expressions.get(0).getOperator());
+        Assert.assertEquals("fileName", expressions.get(0).getField());
+        Assert.assertEquals("test.raw", expressions.get(0).getValue());
+
+        Assert.assertEquals(FilterOperator.IN, expressions.get(1).getOperator());
+        Assert.assertEquals(Arrays.asList("PXD000001", "PXD000002"), expressions.get(1).getValues());
+
+        Assert.assertEquals(FilterOperator.ALL, expressions.get(2).getOperator());
+
+        Assert.assertEquals(FilterOperator.RANGE, expressions.get(3).getOperator());
+        Assert.assertEquals(Arrays.asList("2018-01-01", "2019-01-01"), expressions.get(3).getValues());
+
+        Assert.assertEquals(FilterOperator.REGEX, expressions.get(4).getOperator());
+        Assert.assertEquals("^PXF\\d+", expressions.get(4).getValue());
+    }
+
+    @Test
+    public void escapedSeparators() {
+        List<FilterExpression> expressions = FilterParser.parse("species==Homo sapiens\\, human,name=in=a\\|b|c,formula==x\\=y");
+        Assert.assertEquals(3, expressions.size());
+        Assert.assertEquals("Homo sapiens, human", expressions.get(0).getValue());
+        Assert.assertEquals(Arrays.asList("a|b", "c"), expressions.get(1).getValues());
+        Assert.assertEquals("x=y", expressions.get(2).getValue());
+        Assert.assertEquals("a,b", FilterExpression.of(expressions.get(0).getField(), "is",
+                FilterExpression.escape("a,b")).getValue());
+    }
+
+    @Test
+    public void malformedClausesAreSkipped() {
+        List<FilterExpression> expressions = FilterParser.parse("fileName,accession=unknown=PXF1,date=range=2018,fileName==a.raw");
+        Assert.assertEquals(1, expressions.size());
+        Assert.assertEquals("a.raw", expressions.get(0).getValue());
+        Assert.assertTrue(FilterParser.parse((String) null).isEmpty());
+    }
+
+    @Test
+    public void cachedParse() {
+        List<FilterExpression> first = FilterParser.parse("projectAccession=in=PXD000042");
+        Assert.assertSame(first, FilterParser.parse("projectAccession=in=PXD000042"));
+    }
+
+    @Test
+    public void multipleFilters() {
+        List<FilterExpression> expressions = FilterParser.parse("projectAccessions=all=PXD000001", "fileName==a.raw", null);
+        Assert.assertEquals(2, expressions.size());
+        Assert.assertEquals("projectAccessions=all=PXD000001", expressions.get(0).toString());
+    }
+}
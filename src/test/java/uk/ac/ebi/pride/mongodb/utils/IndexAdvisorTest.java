@@ -0,0 +1,106 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@link IndexAdvisor} unit tests.
+ *
+ * @author ypriverol
+ */
+public class IndexAdvisorTest {
+
+    private static Map<String, Object> document(Object... keyValues) {
+        Map<String, Object> document = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+            document.put((String) keyValues[i], keyValues[i + 1]);
+        return document;
+    }
+
+    private static IndexAdvisor.Index index(String name, String... keys) {
+        return new IndexAdvisor.Index(name, Arrays.asList(keys), false);
+    }
+
+    @Test
+    public void equalitySortRangePattern() {
+        IndexAdvisor advisor = new IndexAdvisor();
+        advisor.record("psms", document("projectAccession", "PXD1", "charge", document("$gte", 2),
+                "peptideSequence", Pattern.compile("^PEP")), document("precursorMass", 1));
+        IndexAdvisor.QueryPattern pattern = advisor.getPatterns("psms").keySet().iterator().next();
+        Assert.assertEquals(Collections.singleton("projectAccession"), pattern.getEquality());
+        Assert.assertEquals(Arrays.asList("charge", "peptideSequence"), Arrays.asList(pattern.getRange().toArray()));
+        Assert.assertEquals(Arrays.asList("projectAccession", "precursorMass", "charge", "peptideSequence"), pattern.getSuggestedKeys());
+    }
+
+    @Test
+    public void orBranchesAreSeparatePatterns() {
+        IndexAdvisor advisor = new IndexAdvisor();
+        advisor.recordCommand("find", "projects", document("find", "projects", "filter", document(
+                "submissionType", "COMPLETE",
+                "$or", Arrays.asList(document("accession", "PXD1"), document("title", document("$regex", "cancer"))))));
+        Assert.assertEquals(2, advisor.getPatterns("projects").size());
+    }
+
+    @Test
+    public void supportedPatternsNeedNoIndex() {
+        IndexAdvisor advisor = new IndexAdvisor();
+        advisor.record("psms", document("projectAccession", "PXD1", "assayAccession", "A1"), null);
+        List<IndexAdvisor.Index> indexes = Arrays.asList(index("_id_", "_id"),
+                index("project_assay", "projectAccession", "assayAccession", "peptideSequence"));
+        IndexAdvice advice = advisor.advise("psms", indexes);
+        Assert.assertTrue(advice.getMissingIndexes().isEmpty());
+        Assert.assertTrue(advice.getUnusedIndexes().isEmpty());
+    }
+
+    @Test
+    public void missingCompoundAndRedundantSingleFieldIndexes() {
+        IndexAdvisor advisor = new IndexAdvisor();
+        for (int i = 0; i < 3; i++)
+            advisor.record("psms", document("projectAccession", "PXD" + i, "isDecoy", false, "charge", document("$gt", 1)), null);
+        advisor.record("psms", document("projectAccession", "PXD1", "isDecoy", true), null);
+        List<IndexAdvisor.Index> indexes = Arrays.asList(index("_id_", "_id"),
+                index("projectAccession", "projectAccession"), index("isDecoy", "isDecoy"), index("charge", "charge"),
+                index("project_peptide", "projectAccession", "peptideSequence"),
+                index("modifiedPeptideSequence", "modifiedPeptideSequence"),
+                new IndexAdvisor.Index("usi", Collections.singletonList("usi"), true));
+        IndexAdvice advice = advisor.advise("psms", indexes);
+
+        Assert.assertEquals(1, advice.getMissingIndexes().size());
+        Assert.assertEquals(Arrays.asList("isDecoy", "projectAccession", "charge"), advice.getMissingIndexes().get(0).getKeys());
+        Assert.assertEquals(4, advice.getMissingIndexes().get(0).getQueryCount());
+
+        Assert.assertEquals("project_peptide", advice.getRedundantIndexes().get("projectAccession"));
+        Assert.assertTrue(advice.getRedundantIndexes().get("isDecoy").startsWith("suggested"));
+        Assert.assertFalse(advice.getRedundantIndexes().containsKey("usi"));
+        Assert.assertFalse(advice.getRedundantIndexes().containsKey("_id_"));
+
+        Assert.assertEquals(Collections.singletonList("modifiedPeptideSequence"), advice.getUnusedIndexes());
+    }
+
+    @Test
+    public void sortFieldsMustFollowTheEqualities() {
+        IndexAdvisor advisor = new IndexAdvisor();
+        advisor.record("projects", document("projectAccession", "PXD1"), document("submissionDate", -1));
+        IndexAdvisor.QueryPattern pattern = advisor.getPatterns("projects").keySet().iterator().next();
+        Assert.assertTrue(IndexAdvisor.supports(Arrays.asList("projectAccession", "submissionDate"), pattern));
+        Assert.assertFalse(IndexAdvisor.supports(Arrays.asList("submissionDate", "projectAccession"), pattern));
+        Assert.assertFalse(IndexAdvisor.supports(Collections.singletonList("projectAccession"), pattern));
+    }
+
+    @Test
+    public void aggregateLeadingStages() {
+        IndexAdvisor advisor = new IndexAdvisor();
+        advisor.recordCommand("aggregate", "peptides", document("aggregate", "peptides", "pipeline", Arrays.asList(
+                document("$match", document("proteinAccession", "P12345")), document("$sort", document("bestScore", -1)),
+                document("$group", document("_id", "$peptideSequence")))));
+        IndexAdvisor.QueryPattern pattern = advisor.getPatterns("peptides").keySet().iterator().next();
+        Assert.assertEquals(Arrays.asList("proteinAccession", "bestScore"), pattern.getSuggestedKeys());
+    }
+}
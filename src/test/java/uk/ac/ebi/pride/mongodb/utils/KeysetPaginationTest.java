@@ -0,0 +1,86 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link KeysetPagination} unit tests.
+ *
+ * @author ypriverol
+ */
+public class KeysetPaginationTest {
+
+    private static final ObjectId LAST_ID = new ObjectId("5d6f8a9b0c1d2e3f40506070");
+
+    @Test
+    public void tokenRoundTrip() {
+        String token = KeysetPagination.encodeToken(new Document("_id", LAST_ID).append("projectAccession", "PXD000001"), "projectAccession");
+        Assert.assertFalse(token.contains("PXD000001"));
+
+        Document decoded = KeysetPagination.decodeToken(token, "projectAccession");
+        Assert.assertEquals(LAST_ID, decoded.get("i"));
+        Assert.assertEquals("PXD000001", decoded.get("v"));
+
+        decoded = KeysetPagination.decodeToken(KeysetPagination.encodeToken(new Document("_id", LAST_ID), null), null);
+        Assert.assertEquals(LAST_ID, decoded.get("i"));
+        Assert.assertFalse(decoded.containsKey("v"));
+    }
+
+    @Test
+    public void tokenOfAnotherSortField() {
+        String token = KeysetPagination.encodeToken(new Document("_id", LAST_ID).append("projectAccession", "PXD000001"), "projectAccession");
+        try {
+            KeysetPagination.decodeToken(token, "assayAccession");
+            Assert.fail("The token was generated for another sort field");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("assayAccession"));
+        }
+        try {
+            KeysetPagination.decodeToken(token, null);
+            Assert.fail("The token was generated for a page sorted by projectAccession");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("_id"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidToken() {
+        KeysetPagination.decodeToken("not a token", null);
+    }
+
+    @Test
+    public void seekById() {
+        Document token = KeysetPagination.decodeToken(KeysetPagination.encodeToken(new Document("_id", LAST_ID), null), null);
+        Assert.assertEquals(new Document("_id", new Document("$gt", LAST_ID)),
+                KeysetPagination.seekCriteria(token, null).getCriteriaObject());
+    }
+
+    @Test
+    public void seekBySortFieldAndId() {
+        Document token = new Document("i", LAST_ID).append("f", "charge").append("v", 2);
+        Document criteria = KeysetPagination.seekCriteria(token, "charge").getCriteriaObject();
+
+        Assert.assertEquals(new Document("$gte", 2), criteria.get("charge"));
+        List<?> or = (List<?>) criteria.get("$or");
+        Assert.assertEquals(Arrays.asList(new Document("charge", new Document("$gt", 2)),
+                new Document("_id", new Document("$gt", LAST_ID))), or);
+    }
+
+    @Test
+    public void seekAfterNullSortValue() {
+        // The token of a document without the sort field, the nulls are sorted first
+        String encoded = KeysetPagination.encodeToken(new Document("_id", LAST_ID), "charge");
+        Document token = KeysetPagination.decodeToken(encoded, "charge");
+        Document criteria = KeysetPagination.seekCriteria(token, "charge").getCriteriaObject();
+
+        Assert.assertFalse(criteria.containsKey("charge"));
+        Document sameValue = new Document("charge", null);
+        sameValue.append("_id", new Document("$gt", LAST_ID));
+        Assert.assertEquals(Arrays.asList(sameValue, new Document("charge", new Document("$ne", null))), criteria.get("$or"));
+    }
+}
@@ -0,0 +1,54 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link LruTtlCache} unit tests.
+ *
+ * @author ypriverol
+ */
+public class LruTtlCacheTest {
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        LruTtlCache<String, Long> cache = new LruTtlCache<>(2, 1, TimeUnit.MINUTES);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        Assert.assertEquals(Long.valueOf(1), cache.get("a"));
+        cache.put("c", 3L);
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(Long.valueOf(1), cache.get("a"));
+        Assert.assertEquals(Long.valueOf(3), cache.get("c"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void expireEntries() {
+        AtomicLong clock = new AtomicLong();
+        LruTtlCache<String, Long> cache = new LruTtlCache<>(10, 10, TimeUnit.SECONDS, clock::get);
+        cache.put("PXD000001", 42L);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        Assert.assertEquals(Long.valueOf(42), cache.get("PXD000001"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        Assert.assertNull(cache.get("PXD000001"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidateByPredicate() {
+        LruTtlCache<String, Long> cache = new LruTtlCache<>(10, 1, TimeUnit.MINUTES);
+        cache.put("psm|0|{}", 1L);
+        cache.put("psm|100|{}", 2L);
+        cache.put("peptide|0|{}", 3L);
+        cache.invalidateIf(key -> key.startsWith("psm|"));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.containsKey("peptide|0|{}"));
+    }
+}
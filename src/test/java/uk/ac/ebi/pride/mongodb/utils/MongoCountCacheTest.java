@@ -0,0 +1,93 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MongoCountCache} unit tests.
+ *
+ * @author ypriverol
+ */
+public class MongoCountCacheTest {
+
+    private static final String COLLECTION = "pride_psm_summary_evidence";
+
+    private MongoOperations mongoOperations;
+    private MongoCountCache countCache;
+
+    @Before
+    public void setUp() {
+        mongoOperations = Mockito.mock(MongoOperations.class);
+        Mockito.when(mongoOperations.getCollectionName(Document.class)).thenReturn(COLLECTION);
+        countCache = new MongoCountCache(100, 1, TimeUnit.MINUTES, 100);
+    }
+
+    @Test
+    public void normalizeTopLevelFields() {
+        Document filter = new Document("projectAccession", "PXD000001").append("charge", 2);
+        Document reordered = new Document("charge", 2).append("projectAccession", "PXD000001");
+        Assert.assertEquals(MongoCountCache.normalize(filter), MongoCountCache.normalize(reordered));
+    }
+
+    @Test
+    public void normalizeKeepsEmbeddedDocuments() {
+        // The field order of an embedded document is part of the equality match
+        Document filter = new Document("bestSearchEngineScore", new Document("accession", "MS:1002257").append("value", "0.01"));
+        Document reordered = new Document("bestSearchEngineScore", new Document("value", "0.01").append("accession", "MS:1002257"));
+        Assert.assertNotEquals(MongoCountCache.normalize(filter), MongoCountCache.normalize(reordered));
+    }
+
+    @Test
+    public void normalizeUnorderedOperators() {
+        Document filter = new Document("$and", Arrays.asList(
+                new Document("projectAccession", new Document("$in", Arrays.asList("PXD000002", "PXD000001"))),
+                new Document("isDecoy", false).append("charge", 2)));
+        Document reordered = new Document("$and", Arrays.asList(
+                new Document("charge", 2).append("isDecoy", false),
+                new Document("projectAccession", new Document("$in", Arrays.asList("PXD000001", "PXD000002")))));
+        Assert.assertEquals(MongoCountCache.normalize(filter), MongoCountCache.normalize(reordered));
+
+        // The order of the other arrays is kept
+        Assert.assertNotEquals(MongoCountCache.normalize(new Document("modificationSites", Arrays.asList("UNIMOD:21", "UNIMOD:35"))),
+                MongoCountCache.normalize(new Document("modificationSites", Arrays.asList("UNIMOD:35", "UNIMOD:21"))));
+    }
+
+    @Test
+    public void cacheCounts() {
+        Query query = new BasicQuery(new Document("projectAccession", "PXD000001"));
+        Mockito.when(mongoOperations.count(Mockito.any(Query.class), Mockito.eq(Document.class))).thenReturn(42L, 43L);
+
+        Assert.assertEquals(42, countCache.count(mongoOperations, query, Document.class));
+        Assert.assertEquals(42, countCache.count(mongoOperations, query, Document.class));
+        Mockito.verify(mongoOperations, Mockito.times(1)).count(Mockito.any(Query.class), Mockito.eq(Document.class));
+
+        countCache.onAfterSave(new AfterSaveEvent<>(new Object(), new Document(), COLLECTION));
+        Assert.assertEquals(43, countCache.count(mongoOperations, query, Document.class));
+    }
+
+    @Test
+    public void countForPage() {
+        Query query = new BasicQuery(new Document("projectAccession", "PXD000001"));
+        Mockito.when(mongoOperations.count(Mockito.any(Query.class), Mockito.eq(Document.class))).thenReturn(100L, 150L);
+
+        // The first pages are counted up to 100 documents, the count reaches the cap
+        CappedCount count = countCache.countForPage(mongoOperations, query, Document.class, 0, 20);
+        Assert.assertTrue(count.isCapped());
+        Assert.assertEquals(100, count.getCount());
+
+        // The pages after 100 documents are counted up to 200 documents
+        count = countCache.countForPage(mongoOperations, query, Document.class, 100, 20);
+        Assert.assertTrue(count.isExact());
+        Assert.assertEquals(150, count.getCount());
+    }
+}
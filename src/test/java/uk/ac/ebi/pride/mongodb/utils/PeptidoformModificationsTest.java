@@ -0,0 +1,60 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+
+/**
+ * {@link PeptidoformModifications} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PeptidoformModificationsTest {
+
+    @Test
+    public void modificationSites() {
+        Set<String> sites = PeptidoformModifications.modificationSites("[UNIMOD:214]-YYWGGLYS[UNIMOD:21]WDMSK[UNIMOD:214]");
+        Assert.assertTrue(sites.contains("UNIMOD:214"));
+        Assert.assertTrue(sites.contains("UNIMOD:214@N-term"));
+        Assert.assertTrue(sites.contains("UNIMOD:214@K"));
+        Assert.assertTrue(sites.contains("UNIMOD:21"));
+        Assert.assertTrue(sites.contains("UNIMOD:21@S"));
+        Assert.assertEquals(5, sites.size());
+    }
+
+    @Test
+    public void terminalModifications() {
+        Set<String> sites = PeptidoformModifications.modificationSites("[Acetyl]PEPTM[Oxidation]IDEK-[unimod:2]");
+        Assert.assertTrue(sites.contains("Acetyl@N-term"));
+        Assert.assertTrue(sites.contains("Oxidation@M"));
+        Assert.assertTrue(sites.contains("UNIMOD:2@C-term"));
+    }
+
+    @Test
+    public void unmodifiedPeptide() {
+        Assert.assertTrue(PeptidoformModifications.modificationSites("PEPTIDEK").isEmpty());
+        Assert.assertTrue(PeptidoformModifications.modificationSites(null).isEmpty());
+    }
+
+    @Test
+    public void trailingUnclosedBracket() {
+        Assert.assertTrue(PeptidoformModifications.modificationSites("PEPTIDE[").isEmpty());
+        Set<String> sites = PeptidoformModifications.modificationSites("PEPS[UNIMOD:21]TIDE[");
+        Assert.assertEquals(2, sites.size());
+        Assert.assertTrue(sites.contains("UNIMOD:21@S"));
+    }
+
+    @Test
+    public void unclosedModification() {
+        // The truncated accession is not indexed
+        Assert.assertTrue(PeptidoformModifications.modificationSites("PEP[UNIMOD:21").isEmpty());
+        Assert.assertTrue(PeptidoformModifications.modificationSites("PEP[UNIMOD:21[Oxidation]TIDE").isEmpty());
+    }
+
+    @Test
+    public void modificationKey() {
+        Assert.assertEquals("UNIMOD:21@S", PeptidoformModifications.modificationKey("unimod:21", "s"));
+        Assert.assertEquals("MOD:00046", PeptidoformModifications.modificationKey("MOD:00046", null));
+    }
+}
@@ -0,0 +1,163 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import uk.ac.ebi.pride.mongodb.archive.model.PrideArchiveField;
+import uk.ac.ebi.pride.mongodb.archive.model.files.MongoPrideFile;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * {@link PrideMongoUtils} unit tests.
+ *
+ * @author ypriverol
+ */
+public class PrideMongoUtilsTest {
+
+    private MongoOperations mongoOperations;
+    private BulkOperations bulkOperations;
+
+    @Before
+    public void setUp() {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        mongoOperations = Mockito.mock(MongoOperations.class);
+        bulkOperations = Mockito.mock(BulkOperations.class);
+        Mockito.when(mongoOperations.getConverter()).thenReturn(converter);
+        Mockito.when(mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, MongoPrideFile.class)).thenReturn(bulkOperations);
+        Mockito.when(bulkOperations.insert(Mockito.any(Object.class))).thenReturn(bulkOperations);
+        Mockito.when(bulkOperations.upsert(Mockito.any(Query.class), Mockito.any(Update.class))).thenReturn(bulkOperations);
+    }
+
+    @Test
+    public void bulkSaveInsertsNewDocuments() {
+        Mockito.when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(1, 0, 0, 0, Collections.emptyList()));
+
+        MongoPrideFile file = file("PXF00000000001", null);
+        Assert.assertTrue(PrideMongoUtils.bulkSaveUnordered(mongoOperations, Collections.singletonList(file), MongoPrideFile.class).isEmpty());
+
+        // The id is generated before the insert, the caller gets the saved entity
+        Assert.assertNotNull(file.getId());
+        Mockito.verify(bulkOperations).insert(file);
+        Mockito.verify(bulkOperations, Mockito.never()).upsert(Mockito.any(Query.class), Mockito.any(Update.class));
+    }
+
+    @Test
+    public void bulkSaveUpsertsDocumentsWithId() {
+        Mockito.when(bulkOperations.execute()).thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, Collections.emptyList()));
+
+        ObjectId id = new ObjectId();
+        MongoPrideFile file = file("PXF00000000001", id);
+        Assert.assertTrue(PrideMongoUtils.bulkSaveUnordered(mongoOperations, Collections.singletonList(file), MongoPrideFile.class).isEmpty());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        Mockito.verify(bulkOperations).upsert(query.capture(), update.capture());
+        Mockito.verify(bulkOperations, Mockito.never()).insert(Mockito.any(Object.class));
+
+        // A re-ingest of the entity updates it by _id, the update only contains operators
+        Assert.assertEquals(new Document("_id", id), query.getValue().getQueryObject());
+        Document updateObject = update.getValue().getUpdateObject();
+        Assert.assertEquals(new Document("_id", id), updateObject.get("$setOnInsert"));
+        Document set = (Document) updateObject.get("$set");
+        Assert.assertEquals("PXF00000000001", set.get(PrideArchiveField.ACCESSION));
+        Assert.assertEquals("checksum", set.get("checksum"));
+        Assert.assertFalse(set.containsKey("_id"));
+    }
+
+    @Test
+    public void bulkSaveReturnsDuplicates() {
+        Mockito.when(bulkOperations.execute()).thenThrow(bulkException(PrideMongoUtils.DUPLICATE_KEY_ERROR_CODE, 1));
+
+        Set<Integer> duplicates = PrideMongoUtils.bulkSaveUnordered(mongoOperations,
+                Arrays.asList(file("PXF00000000001", new ObjectId()), file("PXF00000000002", null)), MongoPrideFile.class);
+        Assert.assertEquals(Collections.singleton(1), duplicates);
+    }
+
+    @Test(expected = BulkOperationException.class)
+    public void bulkSaveThrowsOtherErrors() {
+        Mockito.when(bulkOperations.execute()).thenThrow(bulkException(121, 0));
+        PrideMongoUtils.bulkSaveUnordered(mongoOperations, Collections.singletonList(file("PXF00000000001", null)), MongoPrideFile.class);
+    }
+
+    @Test
+    public void bulkSaveNothing() {
+        Assert.assertTrue(PrideMongoUtils.bulkSaveUnordered(mongoOperations, Collections.emptyList(), MongoPrideFile.class).isEmpty());
+        Mockito.verifyZeroInteractions(bulkOperations);
+    }
+
+    @Test
+    public void convertNumericValues() {
+        Assert.assertEquals(42, PrideMongoUtils.convertFilterValue(Integer.class, " 42 "));
+        Assert.assertEquals(5000000000L, PrideMongoUtils.convertFilterValue(Long.class, "5000000000"));
+        Assert.assertEquals(0.01, PrideMongoUtils.convertFilterValue(Double.class, "0.01"));
+        // The values that are not numbers are kept as String
+        Assert.assertEquals("big", PrideMongoUtils.convertFilterValue(Long.class, "big"));
+        Assert.assertEquals("12", PrideMongoUtils.convertFilterValue(String.class, "12"));
+    }
+
+    @Test
+    public void convertBooleanValues() {
+        Assert.assertEquals(Boolean.TRUE, PrideMongoUtils.convertFilterValue(Boolean.class, "true"));
+        Assert.assertEquals(Boolean.FALSE, PrideMongoUtils.convertFilterValue(Boolean.class, "FALSE"));
+        Assert.assertEquals("yes", PrideMongoUtils.convertFilterValue(Boolean.class, "yes"));
+    }
+
+    @Test
+    public void fileIsCompressFilter() {
+        Criteria criteria = PrideMongoUtils.toCriteria(FilterParser.parse(PrideArchiveField.FILE_IS_COMPRESS + "==true").get(0));
+        Assert.assertEquals(new Document(PrideArchiveField.FILE_IS_COMPRESS, true), criteria.getCriteriaObject());
+
+        criteria = PrideMongoUtils.toCriteria(FilterParser.parse(PrideArchiveField.FILE_IS_COMPRESS + "=in=true|false").get(0));
+        Assert.assertEquals(new Document(PrideArchiveField.FILE_IS_COMPRESS, new Document("$in", Arrays.asList(true, false))),
+                criteria.getCriteriaObject());
+    }
+
+    @Test
+    public void fileSizeBytesFilter() {
+        Criteria criteria = PrideMongoUtils.toCriteria(FilterParser.parse(PrideArchiveField.FILE_SIZE_BYTES + "==1024").get(0));
+        Assert.assertEquals(new Document(PrideArchiveField.FILE_SIZE_BYTES, 1024L), criteria.getCriteriaObject());
+
+        criteria = PrideMongoUtils.toCriteria(FilterParser.parse(PrideArchiveField.FILE_SIZE_BYTES + "=range=[1024 TO 5000000000]").get(0));
+        Assert.assertEquals(new Document(PrideArchiveField.FILE_SIZE_BYTES, new Document("$gte", 1024L).append("$lt", 5000000000L)),
+                criteria.getCriteriaObject());
+    }
+
+    private static BulkOperationException bulkException(int code, int index) {
+        BulkWriteError error = new BulkWriteError(code, "write error", new BsonDocument(), index);
+        return new BulkOperationException("Bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(0, 0, 0, 0, Collections.emptyList()),
+                Collections.singletonList(error), null, new ServerAddress()));
+    }
+
+    private static MongoPrideFile file(String accession, ObjectId id) {
+        return MongoPrideFile.builder()
+                .id(id)
+                .accession(accession)
+                .checksum("checksum")
+                .fileName(accession + ".raw")
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link QueryShape} unit tests.
+ *
+ * @author ypriverol
+ */
+public class QueryShapeTest {
+
+    private static Map<String, Object> document(Object... keyValues) {
+        Map<String, Object> document = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+            document.put((String) keyValues[i], keyValues[i + 1]);
+        return document;
+    }
+
+    @Test
+    public void valuesAreReplaced() {
+        Map<String, Object> filter = document("projectAccession", "PXD000001", "fileSizeBytes", document("$gt", 10));
+        Assert.assertEquals("{fileSizeBytes:{$gt:?},projectAccession:?}", QueryShape.shape(filter));
+    }
+
+    @Test
+    public void fieldOrderAndListLengthDontChangeTheShape() {
+        Map<String, Object> first = document("a", 1, "b", document("$in", Arrays.asList("x", "y", "z")));
+        Map<String, Object> second = document("b", document("$in", Collections.singletonList("w")), "a", 2);
+        Assert.assertEquals(QueryShape.shape(first), QueryShape.shape(second));
+        Assert.assertEquals("{a:?,b:{$in:[?]}}", QueryShape.shape(first));
+    }
+
+    @Test
+    public void findWithSort() {
+        Map<String, Object> command = document("find", "pride_projects",
+                "filter", document("accession", "PXD000001"),
+                "sort", document("submissionDate", -1, "accession", 1));
+        Assert.assertEquals("{accession:?} sort:{submissionDate,accession}", QueryShape.commandShape("find", command));
+    }
+
+    @Test
+    public void aggregateAndBulkStatements() {
+        Map<String, Object> aggregate = document("aggregate", "psms",
+                "pipeline", Arrays.asList(document("$match", document("projectAccession", "PXD1")), document("$limit", 10)));
+        Assert.assertEquals("[{$match:{projectAccession:?}},{$limit:?}]", QueryShape.commandShape("aggregate", aggregate));
+
+        Map<String, Object> update = document("update", "files",
+                "updates", Arrays.asList(document("q", document("accession", "1"), "u", document("$set", document("x", 1)))));
+        Assert.assertEquals("{accession:?}", QueryShape.commandShape("update", update));
+    }
+
+    @Test
+    public void arraysKeepTheirOrder() {
+        // The order of the stages is part of the shape, $limit before $match is another query
+        Map<String, Object> matchFirst = document("pipeline", Arrays.asList(document("$match", document("a", 1)), document("$limit", 10)));
+        Map<String, Object> limitFirst = document("pipeline", Arrays.asList(document("$limit", 10), document("$match", document("a", 1))));
+        Assert.assertNotEquals(QueryShape.shape(matchFirst), QueryShape.shape(limitFirst));
+
+        // Repeated clauses are kept
+        Map<String, Object> or = document("$or", Arrays.asList(document("a", 1), document("a", 2), document("b", 3)));
+        Assert.assertEquals("{$or:[{a:?},{a:?},{b:?}]}", QueryShape.shape(or));
+
+        // The values of $nin and $all are sets
+        Map<String, Object> sets = document("a", document("$nin", Arrays.asList(1, 2)), "b", document("$all", Arrays.asList(document("x", 1), "y", document("x", 2))));
+        Assert.assertEquals("{a:{$nin:[?]},b:{$all:[?,{x:?}]}}", QueryShape.shape(sets));
+    }
+
+    @Test
+    public void commandsWithoutFilter() {
+        Assert.assertEquals(QueryShape.NO_SHAPE, QueryShape.commandShape("insert", document("insert", "files")));
+        Assert.assertEquals("{}", QueryShape.commandShape("find", document("find", "files")));
+    }
+
+    @Test
+    public void longShapesAreTruncated() {
+        Map<String, Object> filter = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++)
+            filter.put("field" + i, i);
+        String shape = QueryShape.commandShape("count", document("count", "files", "query", filter));
+        Assert.assertTrue(shape.length() < QueryShape.MAX_SHAPE_LENGTH + 20);
+        Assert.assertTrue(shape.contains("...#"));
+    }
+}
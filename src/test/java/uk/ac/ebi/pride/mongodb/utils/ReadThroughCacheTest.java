@@ -0,0 +1,85 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ReadThroughCache} unit tests.
+ *
+ * @author ypriverol
+ */
+public class ReadThroughCacheTest {
+
+    @Test
+    public void readThrough() {
+        AtomicInteger loads = new AtomicInteger();
+        ReadThroughCache<String> cache = new ReadThroughCache<>(10, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 5; i++)
+            Assert.assertEquals("PXD000001", cache.get("PXD000001", x -> {
+                loads.incrementAndGet();
+                return Optional.of(x);
+            }).get());
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(4, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void negativeEntries() {
+        AtomicInteger loads = new AtomicInteger();
+        ReadThroughCache<String> cache = new ReadThroughCache<>(10, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 3; i++)
+            Assert.assertFalse(cache.get("PXD999999", x -> {
+                loads.incrementAndGet();
+                return Optional.empty();
+            }).isPresent());
+        Assert.assertEquals(1, loads.get());
+
+        cache.invalidate("PXD999999");
+        Assert.assertTrue(cache.get("PXD999999", Optional::of).isPresent());
+    }
+
+    @Test
+    public void expiration() {
+        AtomicLong clock = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        ReadThroughCache<String> cache = new ReadThroughCache<>(10, 10, TimeUnit.NANOSECONDS, clock::get);
+        cache.get("PXD000001", x -> Optional.of("" + loads.incrementAndGet()));
+        clock.addAndGet(11);
+        Assert.assertEquals("2", cache.get("PXD000001", x -> Optional.of("" + loads.incrementAndGet())).get());
+    }
+
+    @Test
+    public void invalidationDuringLoad() {
+        ReadThroughCache<String> cache = new ReadThroughCache<>(10, 1, TimeUnit.MINUTES);
+        // A write happens while the old version is being read, the old version must not be cached
+        Assert.assertEquals("old", cache.get("PXF1", x -> {
+            cache.invalidate(x);
+            return Optional.of("old");
+        }).get());
+        Assert.assertEquals("new", cache.get("PXF1", x -> Optional.of("new")).get());
+    }
+
+    @Test
+    public void sizeEviction() {
+        ReadThroughCache<String> cache = new ReadThroughCache<>(2, 1, TimeUnit.MINUTES);
+        cache.get("A", Optional::of);
+        cache.get("B", Optional::of);
+        cache.get("C", Optional::of);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void copies() {
+        ReadThroughCache<StringBuilder> cache = new ReadThroughCache<>(10, 1, TimeUnit.MINUTES, x -> new StringBuilder(x));
+        cache.get("PXD000001", x -> Optional.of(new StringBuilder(x))).get().append("-changed");
+        // The first caller got a copy, the cached value is unchanged
+        Assert.assertEquals("PXD000001", cache.get("PXD000001", x -> Optional.empty()).get().toString());
+    }
+}
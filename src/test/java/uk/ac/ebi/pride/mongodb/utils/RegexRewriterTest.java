@@ -0,0 +1,54 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * {@link RegexRewriter} unit tests.
+ *
+ * @author ypriverol
+ */
+public class RegexRewriterTest {
+
+    @Test
+    public void exactValue() {
+        Assert.assertEquals(Arrays.asList("PXD000001"), RegexRewriter.rewrite("^PXD000001$"));
+        Assert.assertEquals(Arrays.asList("file.raw"), RegexRewriter.rewrite("^file\\.raw$"));
+    }
+
+    @Test
+    public void prefix() {
+        List<Object> values = RegexRewriter.rewrite("^PXD0000");
+        Assert.assertEquals(1, values.size());
+        Assert.assertEquals("^PXD0000", ((Pattern) values.get(0)).pattern());
+        Assert.assertEquals("^PEPT", ((Pattern) RegexRewriter.rewrite("^PEPT.*").get(0)).pattern());
+    }
+
+    @Test
+    public void alternatives() {
+        List<Object> values = RegexRewriter.rewrite("^PXD000001$|^PXD0002");
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals("PXD000001", values.get(0));
+        Assert.assertTrue(values.get(1) instanceof Pattern);
+    }
+
+    @Test
+    public void notRewritten() {
+        Assert.assertNull(RegexRewriter.rewrite("PXD000001"));
+        Assert.assertNull(RegexRewriter.rewrite("^PXD00000\\d"));
+        Assert.assertNull(RegexRewriter.rewrite("^PEP[TS]IDE"));
+        Assert.assertNull(RegexRewriter.rewrite("^PXD000001|PXD000002"));
+        Assert.assertNull(RegexRewriter.rewrite("^"));
+    }
+
+    @Test
+    public void prefixRegex() {
+        String regex = RegexRewriter.prefixRegex(Arrays.asList("PXD000001", "a.b"));
+        Assert.assertEquals("^PXD000001|^a\\.b", regex);
+        Assert.assertEquals(2, RegexRewriter.rewrite(regex).size());
+    }
+}
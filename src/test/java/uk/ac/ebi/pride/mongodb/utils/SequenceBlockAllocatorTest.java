@@ -0,0 +1,68 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link SequenceBlockAllocator} unit tests.
+ *
+ * @author ypriverol
+ */
+public class SequenceBlockAllocatorTest {
+
+    @Test
+    public void reserveBlocks() {
+        AtomicInteger counter = new AtomicInteger();
+        AtomicInteger roundTrips = new AtomicInteger();
+        SequenceBlockAllocator allocator = new SequenceBlockAllocator(size -> {
+            roundTrips.incrementAndGet();
+            return counter.addAndGet(size);
+        }, 100);
+
+        for (int i = 1; i <= 10_000; i++)
+            Assert.assertEquals(i, allocator.next());
+        Assert.assertEquals(100, roundTrips.get());
+    }
+
+    @Test
+    public void reserveManyValues() {
+        AtomicInteger counter = new AtomicInteger();
+        SequenceBlockAllocator allocator = new SequenceBlockAllocator(counter::addAndGet, 100);
+        Assert.assertEquals(1, allocator.next());
+
+        long[] values = allocator.next(10_000);
+        Assert.assertEquals(2, values[0]);
+        Assert.assertEquals(100, values[98]);
+        Assert.assertEquals(10_001, values[9_999]);
+        Assert.assertEquals(2, allocator.getReservedBlocks());
+    }
+
+    @Test
+    public void uniqueValuesAcrossThreads() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        SequenceBlockAllocator allocator = new SequenceBlockAllocator(counter::addAndGet, 10);
+        Set<Long> values = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++)
+            executorService.execute(() -> {
+                for (int j = 0; j < 1000; j++)
+                    values.add(allocator.next());
+            });
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        Assert.assertEquals(8000, values.size());
+    }
+
+    @Test
+    public void formatAccession() {
+        Assert.assertEquals("PXF00000000042", SequenceBlockAllocator.formatAccession("PXF", 42, 11));
+        Assert.assertEquals("PXF123456789012", SequenceBlockAllocator.formatAccession("PXF", 123456789012L, 11));
+    }
+}
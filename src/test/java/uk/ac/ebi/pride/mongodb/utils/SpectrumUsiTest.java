@@ -0,0 +1,41 @@
+package uk.ac.ebi.pride.mongodb.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * {@link SpectrumUsi} unit tests.
+ *
+ * @author ypriverol
+ */
+public class SpectrumUsiTest {
+
+    @Test
+    public void parseUsiWithInterpretation() {
+        SpectrumUsi usi = SpectrumUsi.parse("mzspec:PXD000966:CPTAC_CompRef_00_iTRAQ_12_5Feb12_Cougar_11-10-11.mzML:scan:11850:[UNIMOD:214]YYWGGLYSWDMSK[UNIMOD:214]/2");
+        Assert.assertNotNull(usi);
+        Assert.assertEquals("PXD000966", usi.getCollection());
+        Assert.assertEquals("CPTAC_CompRef_00_iTRAQ_12_5Feb12_Cougar_11-10-11.mzML", usi.getMsRun());
+        Assert.assertEquals("scan", usi.getIndexType());
+        Assert.assertEquals("11850", usi.getIndex());
+        Assert.assertEquals("[UNIMOD:214]YYWGGLYSWDMSK[UNIMOD:214]", usi.getPeptidoform());
+        Assert.assertEquals(Integer.valueOf(2), usi.getCharge());
+        Assert.assertEquals("mzspec:PXD000966:CPTAC_CompRef_00_iTRAQ_12_5Feb12_Cougar_11-10-11.mzML:scan:11850", usi.getSpectraUsi());
+    }
+
+    @Test
+    public void parseSpectrumUsi() {
+        SpectrumUsi usi = SpectrumUsi.parse("mzspec:PXD000561:Adult_Frontalcortex_bRP_Elite_85_f09:scan:17555");
+        Assert.assertNotNull(usi);
+        Assert.assertEquals("17555", usi.getIndex());
+        Assert.assertNull(usi.getPeptidoform());
+        Assert.assertNull(usi.getCharge());
+    }
+
+    @Test
+    public void rejectInvalidUsi() {
+        Assert.assertNull(SpectrumUsi.parse(null));
+        Assert.assertNull(SpectrumUsi.parse("PXD000561:run:scan:17555"));
+        Assert.assertNull(SpectrumUsi.parse("mzspec:PXD000561::scan:17555"));
+    }
+}